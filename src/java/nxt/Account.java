@@ -41,7 +41,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @SuppressWarnings({"UnusedDeclaration", "SuspiciousNameCombination"})
@@ -677,6 +679,8 @@ public final class Account {
 
     private static final Listeners<AccountLease,Event> leaseListeners = new Listeners<>();
 
+    private static final int DIVIDEND_BATCH_SIZE = 1000;
+
     public static boolean addListener(Listener<Account> listener, Event eventType) {
         return listeners.addListener(listener, eventType);
     }
@@ -1645,13 +1649,20 @@ public final class Account {
     }
 
     void addToBalanceAndUnconfirmedBalanceNQT(LedgerEvent event, long eventId, long amountNQT, long feeNQT) {
+        addToBalanceAndUnconfirmedBalanceNQT(event, eventId, amountNQT, feeNQT, true);
+    }
+
+    private void addToBalanceAndUnconfirmedBalanceNQT(LedgerEvent event, long eventId, long amountNQT, long feeNQT,
+                                                      boolean updateGuaranteedBalance) {
         if (amountNQT == 0 && feeNQT == 0) {
             return;
         }
         long totalAmountNQT = Math.addExact(amountNQT, feeNQT);
         this.balanceNQT = Math.addExact(this.balanceNQT, totalAmountNQT);
         this.unconfirmedBalanceNQT = Math.addExact(this.unconfirmedBalanceNQT, totalAmountNQT);
-        addToGuaranteedBalanceNQT(totalAmountNQT);
+        if (updateGuaranteedBalance) {
+            addToGuaranteedBalanceNQT(totalAmountNQT);
+        }
         checkBalance(this.id, this.balanceNQT, this.unconfirmedBalanceNQT);
         save();
         listeners.notify(this, Event.BALANCE);
@@ -1730,23 +1741,101 @@ public final class Account {
 
     void payDividends(final long transactionId, final long assetId, final int height, final long amountNQTPerQNT) {
         long totalDividend = 0;
-        List<AccountAsset> accountAssets = new ArrayList<>();
+        long[] accountIds = new long[DIVIDEND_BATCH_SIZE];
+        long[] dividends = new long[DIVIDEND_BATCH_SIZE];
+        int count = 0;
         try (DbIterator<AccountAsset> iterator = getAssetAccounts(assetId, height, 0, -1)) {
             while (iterator.hasNext()) {
-                accountAssets.add(iterator.next());
+                AccountAsset accountAsset = iterator.next();
+                if (accountAsset.getAccountId() != this.id && accountAsset.getQuantityQNT() != 0) {
+                    long dividend = Math.multiplyExact(accountAsset.getQuantityQNT(), amountNQTPerQNT);
+                    accountIds[count] = accountAsset.getAccountId();
+                    dividends[count] = dividend;
+                    totalDividend += dividend;
+                    if (++count == DIVIDEND_BATCH_SIZE) {
+                        payDividends(transactionId, accountIds, dividends, count);
+                        count = 0;
+                    }
+                }
             }
         }
-        for (final AccountAsset accountAsset : accountAssets) {
-            if (accountAsset.getAccountId() != this.id && accountAsset.getQuantityQNT() != 0) {
-                long dividend = Math.multiplyExact(accountAsset.getQuantityQNT(), amountNQTPerQNT);
-                Account.getAccount(accountAsset.getAccountId())
-                        .addToBalanceAndUnconfirmedBalanceNQT(LedgerEvent.ASSET_DIVIDEND_PAYMENT, transactionId, dividend);
-                totalDividend += dividend;
-            }
+        if (count > 0) {
+            payDividends(transactionId, accountIds, dividends, count);
         }
         this.addToBalanceNQT(LedgerEvent.ASSET_DIVIDEND_PAYMENT, transactionId, -totalDividend);
     }
 
+    /**
+     * Credit a batch of dividend payments
+     *
+     * The holder accounts are loaded with a single query and the guaranteed balance additions are
+     * written as a single batch.  Balances and ledger entries are updated in holder order, the same
+     * as crediting each account separately.
+     *
+     * @param   transactionId           Dividend transaction identifier
+     * @param   accountIds              Holder account identifiers
+     * @param   dividends               Dividend amounts
+     * @param   count                   Number of holders in the batch
+     */
+    private static void payDividends(long transactionId, long[] accountIds, long[] dividends, int count) {
+        Long[] ids = new Long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = accountIds[i];
+        }
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM account WHERE id IN "
+                     + "(SELECT id FROM (TABLE (id BIGINT = ?))) AND latest = TRUE")) {
+            pstmt.setObject(1, ids);
+            try (DbIterator<Account> accounts = accountTable.getManyBy(con, pstmt, true)) {
+                while (accounts.hasNext()) {
+                    accounts.next();
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        for (int i = 0; i < count; i++) {
+            Account.getAccount(accountIds[i]).addToBalanceAndUnconfirmedBalanceNQT(LedgerEvent.ASSET_DIVIDEND_PAYMENT,
+                    transactionId, dividends[i], 0, false);
+        }
+        addToGuaranteedBalanceNQT(ids, dividends, count);
+    }
+
+    private static void addToGuaranteedBalanceNQT(Long[] accountIds, long[] amounts, int count) {
+        int blockchainHeight = Nxt.getBlockchain().getHeight();
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmtSelect = con.prepareStatement("SELECT account_id, additions FROM account_guaranteed_balance "
+                     + "WHERE account_id IN (SELECT id FROM (TABLE (id BIGINT = ?))) AND height = ?");
+             PreparedStatement pstmtUpdate = con.prepareStatement("MERGE INTO account_guaranteed_balance (account_id, "
+                     + " additions, height) KEY (account_id, height) VALUES(?, ?, ?)")) {
+            Map<Long, Long> additionsMap = new HashMap<>();
+            pstmtSelect.setObject(1, accountIds);
+            pstmtSelect.setInt(2, blockchainHeight);
+            try (ResultSet rs = pstmtSelect.executeQuery()) {
+                while (rs.next()) {
+                    additionsMap.put(rs.getLong("account_id"), rs.getLong("additions"));
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if (amounts[i] <= 0) {
+                    continue;
+                }
+                long additions = amounts[i];
+                Long previous = additionsMap.get(accountIds[i]);
+                if (previous != null) {
+                    additions = Math.addExact(additions, previous);
+                }
+                pstmtUpdate.setLong(1, accountIds[i]);
+                pstmtUpdate.setLong(2, additions);
+                pstmtUpdate.setInt(3, blockchainHeight);
+                pstmtUpdate.addBatch();
+            }
+            pstmtUpdate.executeBatch();
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
     @Override
     public String toString() {
         return "Account " + Long.toUnsignedString(getId());
@@ -30,8 +30,10 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -64,6 +66,9 @@ public class AccountLedger {
     /** Pending ledger entries */
     private static final List<LedgerEntry> pendingEntries = new ArrayList<>();
 
+    /** Pending ledger entries for fast lookup when combining entries */
+    private static final Set<LedgerEntry> pendingEntrySet = new HashSet<>();
+
     /**
      * Process nxt.ledgerAccounts
      */
@@ -228,7 +233,7 @@ public class AccountLedger {
         //
         // Combine multiple ledger entries
         //
-        int index = pendingEntries.indexOf(ledgerEntry);
+        int index = pendingEntrySet.contains(ledgerEntry) ? pendingEntries.indexOf(ledgerEntry) : -1;
         if (index >= 0) {
             LedgerEntry existingEntry = pendingEntries.remove(index);
             ledgerEntry.updateChange(existingEntry.getChange());
@@ -245,6 +250,7 @@ public class AccountLedger {
             }
         }
         pendingEntries.add(ledgerEntry);
+        pendingEntrySet.add(ledgerEntry);
     }
 
     /**
@@ -256,6 +262,7 @@ public class AccountLedger {
             listeners.notify(ledgerEntry, Event.ADD_ENTRY);
         }
         pendingEntries.clear();
+        pendingEntrySet.clear();
     }
 
     /**
@@ -263,6 +270,7 @@ public class AccountLedger {
      */
     static void clearEntries() {
         pendingEntries.clear();
+        pendingEntrySet.clear();
     }
 
     /**
@@ -20,12 +20,14 @@ import nxt.db.DbClause;
 import nxt.db.DbIterator;
 import nxt.db.DbKey;
 import nxt.db.DbUtils;
+import nxt.db.PrefixDbIndex;
 import nxt.db.VersionedEntityDbTable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 public final class Alias {
 
@@ -104,6 +106,8 @@ public final class Alias {
 
     };
 
+    private static final PrefixDbIndex aliasNameIndex = aliasTable.createPrefixIndex("alias_name_lower");
+
     private static final DbKey.LongKeyFactory<Offer> offerDbKeyFactory = new DbKey.LongKeyFactory<Offer>("id") {
 
         @Override
@@ -140,11 +144,16 @@ public final class Alias {
     }
 
     public static Alias getAlias(String aliasName) {
-        return aliasTable.getBy(new DbClause.StringClause("alias_name_lower", aliasName.toLowerCase()));
+        String aliasNameLower = aliasName.toLowerCase();
+        if (!aliasNameIndex.mightContain(aliasNameLower)) {
+            return null;
+        }
+        return aliasTable.getBy(new DbClause.StringClause("alias_name_lower", aliasNameLower));
     }
 
     public static DbIterator<Alias> getAliasesLike(String aliasName, int from, int to) {
-        return aliasTable.getManyBy(new DbClause.LikeClause("alias_name_lower", aliasName.toLowerCase()), from, to);
+        List<String> aliasNames = aliasNameIndex.getKeys(aliasName.toLowerCase(), from, to);
+        return aliasTable.getManyBy(aliasNameIndex.getRangeClause(aliasNames), 0, -1);
     }
 
     public static Alias getAlias(long id) {
@@ -17,6 +17,8 @@
 package nxt;
 
 import nxt.db.DbUtils;
+import nxt.db.PrefixIndexTrigger;
+import nxt.db.RowCountTrigger;
 import nxt.util.Logger;
 
 import java.math.BigInteger;
@@ -333,6 +335,10 @@ final class BlockDb {
                 });
                 stmt.executeUpdate("SET REFERENTIAL_INTEGRITY TRUE");
                 Db.db.commitTransaction();
+                BlockchainProcessorImpl.getInstance().getDerivedTables().forEach(table -> {
+                    RowCountTrigger.invalidate(table.toString());
+                    PrefixIndexTrigger.invalidate(table.toString());
+                });
             } catch (SQLException e) {
                 Db.db.rollbackTransaction();
                 throw e;
@@ -18,6 +18,7 @@ package nxt;
 
 import nxt.AccountLedger.LedgerEvent;
 import nxt.crypto.Crypto;
+import nxt.crypto.SigningContext;
 import nxt.util.Convert;
 import nxt.util.Logger;
 import org.json.simple.JSONArray;
@@ -58,10 +59,11 @@ final class BlockImpl implements Block {
 
 
     BlockImpl(int version, int timestamp, long previousBlockId, long totalAmountNQT, long totalFeeNQT, int payloadLength, byte[] payloadHash,
-              byte[] generatorPublicKey, byte[] generationSignature, byte[] previousBlockHash, List<TransactionImpl> transactions, String secretPhrase) {
+              byte[] generatorPublicKey, byte[] generationSignature, byte[] previousBlockHash, List<TransactionImpl> transactions,
+              SigningContext signingContext) {
         this(version, timestamp, previousBlockId, totalAmountNQT, totalFeeNQT, payloadLength, payloadHash,
                 generatorPublicKey, generationSignature, null, previousBlockHash, transactions);
-        blockSignature = Crypto.sign(bytes(), secretPhrase);
+        blockSignature = signingContext.sign(bytes());
         bytes = null;
     }
 
@@ -0,0 +1,136 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt;
+
+import nxt.util.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Block id and timestamp of every block in the current chain, indexed by height
+ * <p>
+ * The index follows the last block: a block which extends the chain is appended, a block which is
+ * already in the chain truncates it, and any other block causes the index to be reloaded from the
+ * database. Entries above the height of the last block are not valid.
+ */
+final class BlockIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private volatile long[] blockIds = new long[INITIAL_CAPACITY];
+    private volatile int[] timestamps = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Update the index for a new last block
+     *
+     * @param   block           New last block
+     */
+    synchronized void setLastBlock(BlockImpl block) {
+        int height = block.getHeight();
+        if (height == size && (height == 0 || blockIds[height - 1] == block.getPreviousBlockId())) {
+            ensureCapacity(height + 1);
+            blockIds[height] = block.getId();
+            timestamps[height] = block.getTimestamp();
+            size = height + 1;
+        } else if (height < size && blockIds[height] == block.getId()) {
+            size = height + 1;
+        } else {
+            load(block);
+        }
+    }
+
+    /**
+     * Return the block id at a height
+     *
+     * @param   height          Block height, not greater than the last block height
+     * @return                  Block id
+     */
+    long getBlockId(int height) {
+        long[] ids = blockIds;
+        if (height < 0 || height >= ids.length) {
+            throw new RuntimeException("Block at height " + height + " not found in index!");
+        }
+        return ids[height];
+    }
+
+    /**
+     * Return the block timestamp at a height
+     *
+     * @param   height          Block height, not greater than the last block height
+     * @return                  Block timestamp
+     */
+    int getTimestamp(int height) {
+        int[] blockTimestamps = timestamps;
+        if (height < 0 || height >= blockTimestamps.length) {
+            throw new RuntimeException("Block at height " + height + " not found in index!");
+        }
+        return blockTimestamps[height];
+    }
+
+    /**
+     * Return the height of the last block with a timestamp not later than the given timestamp
+     *
+     * @param   timestamp       Timestamp
+     * @param   maxHeight       Height of the last block
+     * @return                  Block height or -1 if all blocks are later
+     */
+    int findHeight(int timestamp, int maxHeight) {
+        int[] blockTimestamps = timestamps;
+        int index = Arrays.binarySearch(blockTimestamps, 0, Math.min(maxHeight + 1, blockTimestamps.length), timestamp);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > blockIds.length) {
+            int newCapacity = Math.max(capacity, blockIds.length + (blockIds.length >> 1));
+            timestamps = Arrays.copyOf(timestamps, newCapacity);
+            blockIds = Arrays.copyOf(blockIds, newCapacity);
+        }
+    }
+
+    private void load(BlockImpl lastBlock) {
+        long start = System.currentTimeMillis();
+        int height = lastBlock.getHeight();
+        int capacity = Math.max(INITIAL_CAPACITY, height + 1 + ((height + 1) >> 3));
+        long[] ids = new long[capacity];
+        int[] blockTimestamps = new int[capacity];
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT id, timestamp, height FROM block WHERE height <= ?")) {
+            pstmt.setInt(1, height);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int blockHeight = rs.getInt("height");
+                    ids[blockHeight] = rs.getLong("id");
+                    blockTimestamps[blockHeight] = rs.getInt("timestamp");
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        ids[height] = lastBlock.getId();
+        blockTimestamps[height] = lastBlock.getTimestamp();
+        timestamps = blockTimestamps;
+        blockIds = ids;
+        size = height + 1;
+        Logger.logDebugMessage(String.format("Loaded block index to height %d in %d ms", height, System.currentTimeMillis() - start));
+    }
+}
@@ -20,6 +20,7 @@ import nxt.db.DbIterator;
 import nxt.db.DbUtils;
 import nxt.util.Convert;
 import nxt.util.Filter;
+import nxt.util.Metrics;
 import nxt.util.ReadWriteUpdateLock;
 
 import java.sql.Connection;
@@ -36,6 +37,13 @@ import java.util.concurrent.atomic.AtomicReference;
 
 final class BlockchainImpl implements Blockchain {
 
+    private static final Metrics.Histogram readLockWait = Metrics.histogram("nxt_blockchain_lock_wait_seconds",
+            "Time spent waiting for the blockchain lock", "lock", "read");
+    private static final Metrics.Histogram updateLockWait = Metrics.histogram("nxt_blockchain_lock_wait_seconds",
+            "Time spent waiting for the blockchain lock", "lock", "update");
+    private static final Metrics.Histogram writeLockWait = Metrics.histogram("nxt_blockchain_lock_wait_seconds",
+            "Time spent waiting for the blockchain lock", "lock", "write");
+
     private static final BlockchainImpl instance = new BlockchainImpl();
 
     static BlockchainImpl getInstance() {
@@ -46,10 +54,13 @@ final class BlockchainImpl implements Blockchain {
 
     private final ReadWriteUpdateLock lock = new ReadWriteUpdateLock();
     private final AtomicReference<BlockImpl> lastBlock = new AtomicReference<>();
+    private final BlockIndex blockIndex = new BlockIndex();
 
     @Override
     public void readLock() {
+        long start = Metrics.start();
         lock.readLock().lock();
+        readLockWait.stop(start);
     }
 
     @Override
@@ -59,7 +70,9 @@ final class BlockchainImpl implements Blockchain {
 
     @Override
     public void updateLock() {
+        long start = Metrics.start();
         lock.updateLock().lock();
+        updateLockWait.stop(start);
     }
 
     @Override
@@ -68,7 +81,9 @@ final class BlockchainImpl implements Blockchain {
     }
 
     void writeLock() {
+        long start = Metrics.start();
         lock.writeLock().lock();
+        writeLockWait.stop(start);
     }
 
     void writeUnlock() {
@@ -81,10 +96,15 @@ final class BlockchainImpl implements Blockchain {
     }
 
     void setLastBlock(BlockImpl block) {
+        blockIndex.setLastBlock(block);
         lastBlock.set(block);
     }
 
     void setLastBlock(BlockImpl previousBlock, BlockImpl block) {
+        if (lastBlock.get() != previousBlock) {
+            throw new IllegalStateException("Last block is no longer previous block");
+        }
+        blockIndex.setLastBlock(block);
         if (! lastBlock.compareAndSet(previousBlock, block)) {
             throw new IllegalStateException("Last block is no longer previous block");
         }
@@ -108,7 +128,8 @@ final class BlockchainImpl implements Blockchain {
         if (timestamp >= block.getTimestamp()) {
             return block;
         }
-        return BlockDb.findLastBlock(timestamp);
+        int height = blockIndex.findHeight(timestamp, block.getHeight());
+        return height >= 0 ? BlockDb.findBlock(blockIndex.getBlockId(height)) : null;
     }
 
     @Override
@@ -325,7 +346,15 @@ final class BlockchainImpl implements Blockchain {
         if (height == block.getHeight()) {
             return block.getId();
         }
-        return BlockDb.findBlockIdAtHeight(height);
+        return blockIndex.getBlockId(height);
+    }
+
+    int getBlockTimestampAtHeight(int height) {
+        Block block = lastBlock.get();
+        if (height > block.getHeight()) {
+            throw new IllegalArgumentException("Invalid height " + height + ", current blockchain is at " + block.getHeight());
+        }
+        return blockIndex.getTimestamp(height);
     }
 
     @Override
@@ -17,6 +17,7 @@
 package nxt;
 
 import nxt.crypto.Crypto;
+import nxt.crypto.SigningContext;
 import nxt.db.DbIterator;
 import nxt.db.DerivedDbTable;
 import nxt.db.FilteringIterator;
@@ -28,6 +29,7 @@ import nxt.util.JSON;
 import nxt.util.Listener;
 import nxt.util.Listeners;
 import nxt.util.Logger;
+import nxt.util.Metrics;
 import nxt.util.ThreadPool;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -60,6 +62,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 final class BlockchainProcessorImpl implements BlockchainProcessor {
 
@@ -116,6 +119,15 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             :
             null;
 
+    private static final Metrics.Histogram pushBlockTime = Metrics.histogram("nxt_block_push_seconds",
+            "Time to push a block, including waiting for the blockchain lock");
+    private static final Metrics.Histogram validateBlockTime = Metrics.histogram("nxt_block_validate_seconds",
+            "Time to validate a block header");
+    private static final Metrics.Histogram validateTransactionsTime = Metrics.histogram("nxt_block_validate_transactions_seconds",
+            "Time to validate the transactions of a block");
+    private static final Metrics.Histogram acceptBlockTime = Metrics.histogram("nxt_block_accept_seconds",
+            "Time to apply a block and its transactions");
+
     private static final BlockchainProcessorImpl instance = new BlockchainProcessorImpl();
 
     static BlockchainProcessorImpl getInstance() {
@@ -157,11 +169,16 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             getCumulativeDifficultyRequest = JSON.prepareRequest(request);
         }
 
+        /** Maximum number of consecutive segments requested from a fast peer */
+        private static final int MAX_SEGMENT_WINDOW = 4;
+
         private boolean peerHasMore;
         private List<Peer> connectedPublicPeers;
         private List<Long> chainBlockIds;
         private long totalTime = 1;
         private int totalBlocks;
+        /** Moving average of the getNextBlocks response time in milliseconds, by peer host */
+        private final Map<String, Long> peerResponseTimes = new HashMap<>();
 
         @Override
         public void run() {
@@ -261,9 +278,22 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                         return;
                     }
                     long lastBlockId = blockchain.getLastBlock().getId();
+                    //
+                    // Fetch the block identifiers needed for the fork confirmations while the blocks are downloaded
+                    //
+                    Map<Peer, Future<JSONArray>> prefetchedBlockIds = new HashMap<>();
+                    for (Peer otherPeer : connectedPublicPeers) {
+                        if (prefetchedBlockIds.size() >= numberOfForkConfirmations) {
+                            break;
+                        }
+                        if (!peer.getHost().equals(otherPeer.getHost())) {
+                            prefetchedBlockIds.put(otherPeer, networkService.submit(() -> getNextBlockIds(otherPeer, commonBlockId, 720)));
+                        }
+                    }
                     downloadBlockchain(peer, commonBlock, commonBlock.getHeight());
 
                     if (blockchain.getHeight() - commonBlock.getHeight() <= 10) {
+                        prefetchedBlockIds.values().forEach(future -> future.cancel(true));
                         return;
                     }
 
@@ -279,7 +309,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                         if (peer.getHost().equals(otherPeer.getHost())) {
                             continue;
                         }
-                        chainBlockIds = getBlockIdsAfterCommon(otherPeer, commonBlockId, true);
+                        chainBlockIds = getBlockIdsAfterCommon(otherPeer, commonBlockId, true, prefetchedBlockIds.remove(otherPeer));
                         if (chainBlockIds.isEmpty()) {
                             continue;
                         }
@@ -304,6 +334,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                         downloadBlockchain(otherPeer, otherPeerCommonBlock, commonBlock.getHeight());
                     }
                     Logger.logDebugMessage("Got " + confirmations + " confirmations");
+                    prefetchedBlockIds.values().forEach(future -> future.cancel(true));
 
                     if (blockchain.getLastBlock().getId() != lastBlockId) {
                         long time = System.currentTimeMillis() - startTime;
@@ -375,30 +406,45 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
         }
 
-        private List<Long> getBlockIdsAfterCommon(final Peer peer, final long startBlockId, final boolean countFromStart) {
+        private List<Long> getBlockIdsAfterCommon(final Peer peer, final long startBlockId, final boolean countFromStart)
+                throws InterruptedException {
+            return getBlockIdsAfterCommon(peer, startBlockId, countFromStart, null);
+        }
+
+        /**
+         * Get the block identifiers following our common block with the peer
+         *
+         * @param   peer                    Peer
+         * @param   startBlockId            Block identifier to start from
+         * @param   countFromStart          TRUE to return at most 720 identifiers counted from the start block
+         * @param   prefetchedBlockIds      Pending getNextBlockIds response for the start block, or null
+         * @return                          Block identifier list starting with the common block, or an empty list
+         */
+        private List<Long> getBlockIdsAfterCommon(final Peer peer, final long startBlockId, final boolean countFromStart,
+                                                  Future<JSONArray> prefetchedBlockIds) throws InterruptedException {
             long matchId = startBlockId;
             List<Long> blockList = new ArrayList<>(720);
             boolean matched = false;
             int limit = countFromStart ? 720 : 1440;
             while (true) {
-                JSONObject request = new JSONObject();
-                request.put("requestType", "getNextBlockIds");
-                request.put("blockId", Long.toUnsignedString(matchId));
-                request.put("limit", limit);
-                JSONObject response = peer.send(JSON.prepareRequest(request));
-                if (response == null) {
+                JSONArray nextBlockIds;
+                if (prefetchedBlockIds != null) {
+                    try {
+                        nextBlockIds = prefetchedBlockIds.get();
+                    } catch (ExecutionException e) {
+                        Logger.logDebugMessage("Failed to get next block ids from " + peer.getHost(), e);
+                        nextBlockIds = null;
+                    }
+                    prefetchedBlockIds = null;
+                } else {
+                    nextBlockIds = getNextBlockIds(peer, matchId, limit);
+                }
+                if (nextBlockIds == null) {
                     return Collections.emptyList();
                 }
-                JSONArray nextBlockIds = (JSONArray) response.get("nextBlockIds");
-                if (nextBlockIds == null || nextBlockIds.size() == 0) {
+                if (nextBlockIds.size() == 0) {
                     break;
                 }
-                // prevent overloading with blockIds
-                if (nextBlockIds.size() > limit) {
-                    Logger.logDebugMessage("Obsolete or rogue peer " + peer.getHost() + " sends too many nextBlockIds, blacklisting");
-                    peer.blacklist("Too many nextBlockIds");
-                    return Collections.emptyList();
-                }
                 boolean matching = true;
                 int count = 0;
                 for (Object nextBlockId : nextBlockIds) {
@@ -432,6 +478,36 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             return blockList;
         }
 
+        /**
+         * Request the block identifiers following a block
+         *
+         * @param   peer                    Peer
+         * @param   blockId                 Block identifier
+         * @param   limit                   Maximum number of identifiers
+         * @return                          Block identifiers, empty if the peer returned none, or null if the peer did not respond
+         */
+        private JSONArray getNextBlockIds(Peer peer, long blockId, int limit) {
+            JSONObject request = new JSONObject();
+            request.put("requestType", "getNextBlockIds");
+            request.put("blockId", Long.toUnsignedString(blockId));
+            request.put("limit", limit);
+            JSONObject response = peer.send(JSON.prepareRequest(request));
+            if (response == null) {
+                return null;
+            }
+            JSONArray nextBlockIds = (JSONArray) response.get("nextBlockIds");
+            if (nextBlockIds == null) {
+                return new JSONArray();
+            }
+            // prevent overloading with blockIds
+            if (nextBlockIds.size() > limit) {
+                Logger.logDebugMessage("Obsolete or rogue peer " + peer.getHost() + " sends too many nextBlockIds, blacklisting");
+                peer.blacklist("Too many nextBlockIds");
+                return null;
+            }
+            return nextBlockIds;
+        }
+
         /**
          * Download the block chain
          *
@@ -452,6 +528,9 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 getList.add(new GetNextBlocks(chainBlockIds, start, Math.min(start + segSize, stop)));
             }
             int nextPeerIndex = ThreadLocalRandom.current().nextInt(connectedPublicPeers.size());
+            int peerSegmentCount = 0;
+            long averageResponseTime = getAverageResponseTime();
+            int pushIndex = 1;
             long maxResponseTime = 0;
             Peer slowestPeer = null;
             //
@@ -467,6 +546,8 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 // be sent to the feeder peer if we failed trying to download the blocks
                 // from another peer.  We will stop the download and process any pending
                 // blocks if we are unable to download a segment from the feeder peer.
+                // Peers which responded faster than average in earlier downloads get
+                // several consecutive segments.
                 //
                 for (GetNextBlocks nextBlocks : getList) {
                     Peer peer;
@@ -479,7 +560,11 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                         if (nextPeerIndex >= connectedPublicPeers.size()) {
                             nextPeerIndex = 0;
                         }
-                        peer = connectedPublicPeers.get(nextPeerIndex++);
+                        peer = connectedPublicPeers.get(nextPeerIndex);
+                        if (++peerSegmentCount >= getSegmentWindow(peer, averageResponseTime)) {
+                            nextPeerIndex++;
+                            peerSegmentCount = 0;
+                        }
                     }
                     if (nextBlocks.getPeer() == peer) {
                         break download;
@@ -506,6 +591,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                         continue;
                     }
                     Peer peer = nextBlocks.getPeer();
+                    peerResponseTimes.merge(peer.getHost(), nextBlocks.getResponseTime(), (oldTime, newTime) -> (3 * oldTime + newTime) / 4);
                     int index = nextBlocks.getStart() + 1;
                     for (BlockImpl block : blockList) {
                         if (block.getId() != chainBlockIds.get(index)) {
@@ -523,6 +609,10 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                         maxResponseTime = nextBlocks.getResponseTime();
                         slowestPeer = nextBlocks.getPeer();
                     }
+                    //
+                    // Push the blocks received so far while the remaining segments are downloaded
+                    //
+                    pushIndex = pushDownloadedBlocks(blockMap, pushIndex, startHeight);
                 }
 
             }
@@ -538,7 +628,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             blockchain.writeLock();
             try {
                 List<BlockImpl> forkBlocks = new ArrayList<>();
-                for (int index = 1; index < chainBlockIds.size() && blockchain.getHeight() - startHeight < 720; index++) {
+                for (int index = pushIndex; index < chainBlockIds.size() && blockchain.getHeight() - startHeight < 720; index++) {
                     PeerBlock peerBlock = blockMap.get(chainBlockIds.get(index));
                     if (peerBlock == null) {
                         break;
@@ -567,6 +657,68 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
         }
 
+        /**
+         * Push the downloaded blocks which extend our current chain, in block identifier list order.
+         * We stop at the first block not yet downloaded or not connecting to our last block, leaving
+         * it for the fork processing done once the download is complete.
+         *
+         * @param   blockMap                Downloaded blocks
+         * @param   index                   Index of the first block identifier not yet processed
+         * @param   startHeight             Height of the common block
+         * @return                          Index of the first block identifier not yet processed
+         */
+        private int pushDownloadedBlocks(Map<Long, PeerBlock> blockMap, int index, int startHeight) {
+            blockchain.writeLock();
+            try {
+                for (; index < chainBlockIds.size() && blockchain.getHeight() - startHeight < 720; index++) {
+                    PeerBlock peerBlock = blockMap.get(chainBlockIds.get(index));
+                    if (peerBlock == null) {
+                        break;
+                    }
+                    BlockImpl block = peerBlock.getBlock();
+                    if (blockchain.getLastBlock().getId() != block.getPreviousBlockId()) {
+                        break;
+                    }
+                    try {
+                        pushBlock(block);
+                    } catch (BlockNotAcceptedException e) {
+                        peerBlock.getPeer().blacklist(e);
+                    }
+                }
+            } finally {
+                blockchain.writeUnlock();
+            }
+            return index;
+        }
+
+        /**
+         * Get the number of consecutive segments to request from a peer, based on how its
+         * getNextBlocks response time compares with the average of the connected peers
+         *
+         * @param   peer                    Peer
+         * @param   averageResponseTime     Average response time, 0 if not known
+         * @return                          Number of segments
+         */
+        private int getSegmentWindow(Peer peer, long averageResponseTime) {
+            Long responseTime = peerResponseTimes.get(peer.getHost());
+            if (responseTime == null || averageResponseTime == 0) {
+                return 1;
+            }
+            return (int) Math.max(1, Math.min(MAX_SEGMENT_WINDOW, averageResponseTime / Math.max(responseTime, 1)));
+        }
+
+        private long getAverageResponseTime() {
+            peerResponseTimes.keySet().retainAll(connectedPublicPeers.stream().map(Peer::getHost).collect(Collectors.toSet()));
+            if (peerResponseTimes.isEmpty()) {
+                return 0;
+            }
+            long totalResponseTime = 0;
+            for (long responseTime : peerResponseTimes.values()) {
+                totalResponseTime += responseTime;
+            }
+            return totalResponseTime / peerResponseTimes.size();
+        }
+
         private void processFork(final Peer peer, final List<BlockImpl> forkBlocks, final Block commonBlock) {
 
             BigInteger curCumulativeDifficulty = blockchain.getLastBlock().getCumulativeDifficulty();
@@ -959,6 +1111,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
     private BlockchainProcessorImpl() {
         final int trimFrequency = Nxt.getIntProperty("nxt.trimFrequency");
+        Metrics.gauge("nxt_blockchain_height", "Height of the last block", blockchain::getHeight);
         blockListeners.addListener(block -> {
             if (block.getHeight() % 5000 == 0) {
                 Logger.logMessage("processed block " + block.getHeight());
@@ -990,6 +1143,13 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
         ThreadPool.runBeforeStart(() -> {
             alreadyInitialized = true;
+            try (Connection con = Db.db.getConnection()) {
+                for (DerivedDbTable table : derivedTables) {
+                    table.createTriggers(con);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
             if (addGenesisBlock()) {
                 scan(0, false);
             } else if (Nxt.getBooleanProperty("nxt.forceScan")) {
@@ -1014,6 +1174,8 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             }
         }, false);
 
+        ThreadPool.runAfterStart(TransactionDb::loadTransactionFilter);
+
         ThreadPool.scheduleThread("GetMoreBlocks", getMoreBlocksThread, 1);
 
     }
@@ -1023,6 +1185,11 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         return blockListeners.addListener(listener, eventType);
     }
 
+    @Override
+    public boolean addAsyncListener(Listener<Block> listener, BlockchainProcessor.Event eventType) {
+        return blockListeners.addAsyncListener(listener, eventType);
+    }
+
     @Override
     public boolean removeListener(Listener<Block> listener, Event eventType) {
         return blockListeners.removeListener(listener, eventType);
@@ -1055,6 +1222,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         lastTrimHeight = Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, 0);
         if (lastTrimHeight > 0) {
             for (DerivedDbTable table : derivedTables) {
+                long start = Metrics.start();
                 blockchain.readLock();
                 try {
                     table.trim(lastTrimHeight);
@@ -1062,6 +1230,9 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 } finally {
                     blockchain.readUnlock();
                 }
+                if (start != 0) {
+                    Metrics.histogram("nxt_table_trim_seconds", "Time to trim a derived table", "table", table.toString()).stop(start);
+                }
             }
         }
     }
@@ -1312,6 +1483,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
     private void pushBlock(final BlockImpl block) throws BlockNotAcceptedException {
 
         int curTime = Nxt.getEpochTime();
+        long pushStart = Metrics.start();
 
         blockchain.writeLock();
         try {
@@ -1320,7 +1492,9 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 Db.db.beginTransaction();
                 previousLastBlock = blockchain.getLastBlock();
 
+                long start = Metrics.start();
                 validate(block, previousLastBlock, curTime);
+                validateBlockTime.stop(start);
 
                 long nextHitTime = Generator.getNextHitTime(previousLastBlock.getId(), curTime);
                 if (nextHitTime > 0 && block.getTimestamp() > nextHitTime + 1) {
@@ -1335,14 +1509,18 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 Map<TransactionType, Map<String, Integer>> duplicates = new HashMap<>();
                 List<TransactionImpl> validPhasedTransactions = new ArrayList<>();
                 List<TransactionImpl> invalidPhasedTransactions = new ArrayList<>();
+                start = Metrics.start();
                 validatePhasedTransactions(previousLastBlock.getHeight(), validPhasedTransactions, invalidPhasedTransactions, duplicates);
                 validateTransactions(block, previousLastBlock, curTime, duplicates, previousLastBlock.getHeight() >= Constants.LAST_CHECKSUM_BLOCK);
+                validateTransactionsTime.stop(start);
 
                 block.setPrevious(previousLastBlock);
                 blockListeners.notify(block, Event.BEFORE_BLOCK_ACCEPT);
                 TransactionProcessorImpl.getInstance().requeueAllUnconfirmedTransactions();
                 addBlock(block);
+                start = Metrics.start();
                 accept(block, validPhasedTransactions, invalidPhasedTransactions, duplicates);
+                acceptBlockTime.stop(start);
 
                 Db.db.commitTransaction();
             } catch (Exception e) {
@@ -1356,6 +1534,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         } finally {
             blockchain.writeUnlock();
         }
+        pushBlockTime.stop(pushStart);
 
         if (block.getTimestamp() >= curTime - (Constants.MAX_TIMEDRIFT + Constants.FORGING_DELAY)) {
             Peers.sendToSomePeers(block);
@@ -1528,7 +1707,12 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             int fromTimestamp = Nxt.getEpochTime() - Constants.MAX_PRUNABLE_LIFETIME;
             for (TransactionImpl transaction : block.getTransactions()) {
                 try {
+                    long start = Metrics.start();
                     transaction.apply();
+                    if (start != 0) {
+                        Metrics.histogram("nxt_transaction_apply_seconds", "Time to apply a transaction",
+                                "type", transaction.getType().getName()).stop(start);
+                    }
                     if (transaction.getTimestamp() > fromTimestamp) {
                         for (Appendix.AbstractAppendix appendage : transaction.getAppendages(true)) {
                             if ((appendage instanceof Appendix.Prunable) &&
@@ -1646,6 +1830,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 }
                 Db.db.clearCache();
                 Db.db.commitTransaction();
+                FullTextTrigger.rollbackIndex(commonBlock.getHeight());
             } catch (RuntimeException e) {
                 Logger.logErrorMessage("Error popping off to " + commonBlock.getHeight() + ", " + e.toString());
                 Db.db.rollbackTransaction();
@@ -1783,6 +1968,12 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             .thenComparingLong(UnconfirmedTransaction::getId);
 
     void generateBlock(String secretPhrase, int blockTimestamp) throws BlockNotAcceptedException {
+        try (SigningContext signingContext = new SigningContext(secretPhrase)) {
+            generateBlock(signingContext, blockTimestamp);
+        }
+    }
+
+    void generateBlock(SigningContext signingContext, int blockTimestamp) throws BlockNotAcceptedException {
 
         Map<TransactionType, Map<String, Integer>> duplicates = new HashMap<>();
         if (blockchain.getHeight() >= Constants.PHASING_BLOCK) {
@@ -1814,12 +2005,12 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         }
         byte[] payloadHash = digest.digest();
         digest.update(previousBlock.getGenerationSignature());
-        final byte[] publicKey = Crypto.getPublicKey(secretPhrase);
+        final byte[] publicKey = signingContext.getPublicKey();
         byte[] generationSignature = digest.digest(publicKey);
         byte[] previousBlockHash = Crypto.sha256().digest(previousBlock.bytes());
 
         BlockImpl block = new BlockImpl(getBlockVersion(previousBlock.getHeight()), blockTimestamp, previousBlock.getId(), totalAmountNQT, totalFeeNQT, payloadLength,
-                payloadHash, publicKey, generationSignature, previousBlockHash, blockTransactions, secretPhrase);
+                payloadHash, publicKey, generationSignature, previousBlockHash, blockTransactions, signingContext);
 
         try {
             pushBlock(block);
@@ -1932,6 +2123,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 }
                 Db.db.clearCache();
                 Db.db.commitTransaction();
+                FullTextTrigger.rollbackIndex(height - 1);
                 Logger.logDebugMessage("Rolled back derived tables");
                 BlockImpl currentBlock = BlockDb.findBlockAtHeight(height);
                 blockListeners.notify(currentBlock, Event.RESCAN_BEGIN);
@@ -19,11 +19,16 @@ package nxt;
 import nxt.db.DbClause;
 import nxt.db.DbIterator;
 import nxt.db.DbKey;
+import nxt.db.SortedDbIndex;
 import nxt.db.VersionedEntityDbTable;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 public final class CurrencyBuyOffer extends CurrencyExchangeOffer {
 
@@ -48,8 +53,35 @@ public final class CurrencyBuyOffer extends CurrencyExchangeOffer {
             buy.save(con, table);
         }
 
+        @Override
+        public void rollback(int height) {
+            super.rollback(height);
+            buyOfferBook.clear();
+            expirationIndex.clear();
+        }
+
+        @Override
+        public void truncate() {
+            super.truncate();
+            buyOfferBook.clear();
+            expirationIndex.clear();
+        }
+
     };
 
+    /**
+     * Offers for each currency in exchange order
+     */
+    private static final SortedDbIndex<CurrencyBuyOffer> buyOfferBook = new SortedDbIndex<>(
+            ((Comparator<CurrencyBuyOffer>) (o1, o2) -> Long.compare(o2.getRateNQT(), o1.getRateNQT())).thenComparing(priorityComparator),
+            CurrencyBuyOffer::loadOffers);
+
+    /**
+     * Offers for each expiration height, the limit and supply of the indexed offers are not kept current
+     */
+    private static final SortedDbIndex<CurrencyBuyOffer> expirationIndex = new SortedDbIndex<>(
+            Comparator.comparingLong(CurrencyBuyOffer::getId), height -> loadExpiringOffers((int) height));
+
     public static int getCount() {
         return buyOfferTable.getCount();
     }
@@ -63,15 +95,26 @@ public final class CurrencyBuyOffer extends CurrencyExchangeOffer {
     }
 
     public static DbIterator<CurrencyBuyOffer> getOffers(Currency currency, int from, int to) {
-        return getCurrencyOffers(currency.getId(), false, from, to);
+        return buyOfferTable.getManyBy(new DbClause.LongClause("currency_id", currency.getId()), from, to,
+                " ORDER BY rate DESC, creation_height ASC, transaction_height ASC, transaction_index ASC ");
     }
 
-    public static DbIterator<CurrencyBuyOffer> getCurrencyOffers(long currencyId, boolean availableOnly, int from, int to) {
-        DbClause dbClause = new DbClause.LongClause("currency_id", currencyId);
-        if (availableOnly) {
-            dbClause = dbClause.and(availableOnlyDbClause);
+    public static List<CurrencyBuyOffer> getCurrencyOffers(long currencyId, boolean availableOnly, int from, int to) {
+        return buyOfferBook.get(currencyId, availableOnly ? CurrencyExchangeOffer::isAvailable : offer -> true, from, to);
+    }
+
+    static List<CurrencyBuyOffer> getAvailableOffers(long currencyId, long minRateNQT) {
+        List<CurrencyBuyOffer> offers = new ArrayList<>();
+        boolean inTransaction = Db.db.isInTransaction();
+        for (CurrencyBuyOffer offer : buyOfferBook.get(currencyId)) {
+            if (minRateNQT > 0 && offer.getRateNQT() < minRateNQT) {
+                break;
+            }
+            if (offer.isAvailable()) {
+                offers.add(inTransaction ? buyOfferTable.getCached(new CurrencyBuyOffer(offer)) : offer);
+            }
         }
-        return buyOfferTable.getManyBy(dbClause, from, to, " ORDER BY rate DESC, creation_height ASC, transaction_height ASC, transaction_index ASC ");
+        return offers;
     }
 
     public static DbIterator<CurrencyBuyOffer> getAccountOffers(long accountId, boolean availableOnly, int from, int to) {
@@ -98,12 +141,54 @@ public final class CurrencyBuyOffer extends CurrencyExchangeOffer {
         return buyOfferTable.getManyBy(dbClause, from, to, sort);
     }
 
+    static List<CurrencyBuyOffer> getExpiredOffers(int height) {
+        List<CurrencyBuyOffer> offers = new ArrayList<>();
+        for (CurrencyBuyOffer offer : expirationIndex.get(height)) {
+            offers.add(getOffer(offer.getId()));
+        }
+        return offers;
+    }
+
+    private static List<CurrencyBuyOffer> loadOffers(long currencyId) {
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM buy_offer WHERE currency_id = ? AND latest = TRUE")) {
+            pstmt.setLong(1, currencyId);
+            return loadOffers(con, pstmt);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    private static List<CurrencyBuyOffer> loadExpiringOffers(int height) {
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM buy_offer WHERE expiration_height = ? AND latest = TRUE")) {
+            pstmt.setInt(1, height);
+            return loadOffers(con, pstmt);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    private static List<CurrencyBuyOffer> loadOffers(Connection con, PreparedStatement pstmt) {
+        List<CurrencyBuyOffer> offers = new ArrayList<>();
+        try (DbIterator<CurrencyBuyOffer> it = buyOfferTable.getManyBy(con, pstmt, false)) {
+            it.forEach(offers::add);
+        }
+        return offers;
+    }
+
     static void addOffer(Transaction transaction, Attachment.MonetarySystemPublishExchangeOffer attachment) {
-        buyOfferTable.insert(new CurrencyBuyOffer(transaction, attachment));
+        CurrencyBuyOffer offer = new CurrencyBuyOffer(transaction, attachment);
+        buyOfferTable.insert(offer);
+        buyOfferBook.add(offer.getCurrencyId(), new CurrencyBuyOffer(offer));
+        expirationIndex.add(offer.getExpirationHeight(), new CurrencyBuyOffer(offer));
     }
 
     static void remove(CurrencyBuyOffer buyOffer) {
-        buyOfferTable.delete(buyOffer);
+        if (buyOfferTable.delete(buyOffer)) {
+            buyOfferBook.remove(buyOffer.getCurrencyId(), buyOffer);
+            expirationIndex.remove(buyOffer.getExpirationHeight(), buyOffer);
+        }
     }
 
     static void init() {}
@@ -122,6 +207,11 @@ public final class CurrencyBuyOffer extends CurrencyExchangeOffer {
         this.dbKey = buyOfferDbKeyFactory.newKey(super.id);
     }
 
+    private CurrencyBuyOffer(CurrencyBuyOffer offer) {
+        super(offer);
+        this.dbKey = offer.dbKey;
+    }
+
     @Override
     public CurrencySellOffer getCounterOffer() {
         return CurrencySellOffer.getOffer(id);
@@ -130,12 +220,14 @@ public final class CurrencyBuyOffer extends CurrencyExchangeOffer {
     long increaseSupply(long delta) {
         long excess = super.increaseSupply(delta);
         buyOfferTable.insert(this);
+        buyOfferBook.add(getCurrencyId(), new CurrencyBuyOffer(this));
         return excess;
     }
 
     void decreaseLimitAndSupply(long delta) {
         super.decreaseLimitAndSupply(delta);
         buyOfferTable.insert(this);
+        buyOfferBook.add(getCurrencyId(), new CurrencyBuyOffer(this));
     }
 
 }
@@ -18,13 +18,13 @@ package nxt;
 
 import nxt.AccountLedger.LedgerEvent;
 import nxt.db.DbClause;
-import nxt.db.DbIterator;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 public abstract class CurrencyExchangeOffer {
@@ -61,12 +61,7 @@ public abstract class CurrencyExchangeOffer {
             if (block.getHeight() <= Constants.MONETARY_SYSTEM_BLOCK) {
                 return;
             }
-            List<CurrencyBuyOffer> expired = new ArrayList<>();
-            try (DbIterator<CurrencyBuyOffer> offers = CurrencyBuyOffer.getOffers(new DbClause.IntClause("expiration_height", block.getHeight()), 0, -1)) {
-                for (CurrencyBuyOffer offer : offers) {
-                    expired.add(offer);
-                }
-            }
+            List<CurrencyBuyOffer> expired = CurrencyBuyOffer.getExpiredOffers(block.getHeight());
             expired.forEach((offer) -> CurrencyExchangeOffer.removeOffer(LedgerEvent.CURRENCY_OFFER_EXPIRED, offer));
         }, BlockchainProcessor.Event.AFTER_BLOCK_APPLY);
 
@@ -98,6 +93,15 @@ public abstract class CurrencyExchangeOffer {
         return new AvailableOffers(rateNQT, Math.subtractExact(units, remainingUnits), totalAmountNQT);
     }
 
+    /**
+     * Time priority of offers with the same rate
+     */
+    static final Comparator<CurrencyExchangeOffer> priorityComparator =
+            Comparator.<CurrencyExchangeOffer>comparingInt(offer -> offer.creationHeight)
+                    .thenComparingInt(offer -> offer.transactionHeight)
+                    .thenComparingInt(offer -> offer.transactionIndex)
+                    .thenComparingLong(offer -> offer.id);
+
     static final DbClause availableOnlyDbClause = new DbClause.LongClause("unit_limit", DbClause.Op.NE, 0)
             .and(new DbClause.LongClause("supply", DbClause.Op.NE, 0));
 
@@ -106,18 +110,7 @@ public abstract class CurrencyExchangeOffer {
     }
 
     private static List<CurrencyExchangeOffer> getAvailableBuyOffers(long currencyId, long minRateNQT) {
-        List<CurrencyExchangeOffer> currencyExchangeOffers = new ArrayList<>();
-        DbClause dbClause = new DbClause.LongClause("currency_id", currencyId).and(availableOnlyDbClause);
-        if (minRateNQT > 0) {
-            dbClause = dbClause.and(new DbClause.LongClause("rate", DbClause.Op.GTE, minRateNQT));
-        }
-        try (DbIterator<CurrencyBuyOffer> offers = CurrencyBuyOffer.getOffers(dbClause, 0, -1,
-                " ORDER BY rate DESC, creation_height ASC, transaction_height ASC, transaction_index ASC ")) {
-            for (CurrencyBuyOffer offer : offers) {
-                currencyExchangeOffers.add(offer);
-            }
-        }
-        return currencyExchangeOffers;
+        return new ArrayList<>(CurrencyBuyOffer.getAvailableOffers(currencyId, minRateNQT));
     }
 
     static void exchangeCurrencyForNXT(Transaction transaction, Account account, final long currencyId, final long rateNQT, final long units) {
@@ -155,18 +148,7 @@ public abstract class CurrencyExchangeOffer {
     }
 
     private static List<CurrencyExchangeOffer> getAvailableSellOffers(long currencyId, long maxRateNQT) {
-        List<CurrencyExchangeOffer> currencySellOffers = new ArrayList<>();
-        DbClause dbClause = new DbClause.LongClause("currency_id", currencyId).and(availableOnlyDbClause);
-        if (maxRateNQT > 0) {
-            dbClause = dbClause.and(new DbClause.LongClause("rate", DbClause.Op.LTE, maxRateNQT));
-        }
-        try (DbIterator<CurrencySellOffer> offers = CurrencySellOffer.getOffers(dbClause, 0, -1,
-                " ORDER BY rate ASC, creation_height ASC, transaction_height ASC, transaction_index ASC ")) {
-            for (CurrencySellOffer offer : offers) {
-                currencySellOffers.add(offer);
-            }
-        }
-        return currencySellOffers;
+        return new ArrayList<>(CurrencySellOffer.getAvailableOffers(currencyId, maxRateNQT));
     }
 
     static void exchangeNXTForCurrency(Transaction transaction, Account account, final long currencyId, final long rateNQT, final long units) {
@@ -295,6 +277,19 @@ public abstract class CurrencyExchangeOffer {
         this.transactionHeight = rs.getInt("transaction_height");
     }
 
+    CurrencyExchangeOffer(CurrencyExchangeOffer offer) {
+        this.id = offer.id;
+        this.currencyId = offer.currencyId;
+        this.accountId = offer.accountId;
+        this.rateNQT = offer.rateNQT;
+        this.limit = offer.limit;
+        this.supply = offer.supply;
+        this.expirationHeight = offer.expirationHeight;
+        this.creationHeight = offer.creationHeight;
+        this.transactionIndex = offer.transactionIndex;
+        this.transactionHeight = offer.transactionHeight;
+    }
+
     void save(Connection con, String table) throws SQLException {
         try (PreparedStatement pstmt = con.prepareStatement("MERGE INTO " + table + " (id, currency_id, account_id, "
                 + "rate, unit_limit, supply, expiration_height, creation_height, transaction_index, transaction_height, height, latest) "
@@ -349,6 +344,10 @@ public abstract class CurrencyExchangeOffer {
 
     public abstract CurrencyExchangeOffer getCounterOffer();
 
+    boolean isAvailable() {
+        return limit != 0 && supply != 0;
+    }
+
     long increaseSupply(long delta) {
         long excess = Math.max(Math.addExact(supply, Math.subtractExact(delta, limit)), 0);
         supply += delta - excess;
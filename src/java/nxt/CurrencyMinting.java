@@ -16,9 +16,16 @@
 
 package nxt;
 
+import nxt.crypto.Crypto;
 import nxt.crypto.HashFunction;
+import nxt.crypto.KNV25;
+import nxt.crypto.Scrypt;
+import nxt.util.Convert;
+import org.json.simple.JSONObject;
 
 import java.math.BigInteger;
+import java.security.DigestException;
+import java.security.MessageDigest;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
@@ -51,6 +58,31 @@ public final class CurrencyMinting {
         return true;
     }
 
+    /**
+     * Compares a 32 byte little-endian hash against a target pre-converted with {@link #getTargetWords(byte[])},
+     * four 64-bit words at a time starting with the most significant one
+     */
+    public static boolean meetsTarget(byte[] hash, long[] targetWords) {
+        for (int i = 3; i >= 0; i--) {
+            int c = Long.compareUnsigned(toLong(hash, i * 8), targetWords[i]);
+            if (c > 0) {
+                return false;
+            }
+            if (c < 0) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    public static long[] getTargetWords(byte[] target) {
+        long[] words = new long[4];
+        for (int i = 0; i < 4; i++) {
+            words[i] = toLong(target, i * 8);
+        }
+        return words;
+    }
+
     public static byte[] getHash(byte algorithm, long nonce, long currencyId, long units, long counter, long accountId) {
         HashFunction hashFunction = HashFunction.getHashFunction(algorithm);
         return getHash(hashFunction, nonce, currencyId, units, counter, accountId);
@@ -87,6 +119,24 @@ public final class CurrencyMinting {
                 currency.getCurrentSupply() - currency.getReserveSupply(), currency.getMaxSupply() - currency.getReserveSupply());
     }
 
+    /**
+     * Build the minting target returned to miners by the getMintingTarget API
+     *
+     * @param   currency            Currency being minted
+     * @param   accountId           Miner account identifier
+     * @param   units               Number of currency units to mint
+     * @return                      JSON object with the currency, difficulty, target bytes and mint counter
+     */
+    public static JSONObject getMintingTarget(Currency currency, long accountId, long units) {
+        BigInteger numericTarget = getNumericTarget(currency, units);
+        JSONObject json = new JSONObject();
+        json.put("currency", Long.toUnsignedString(currency.getId()));
+        json.put("difficulty", String.valueOf(BigInteger.ZERO.equals(numericTarget) ? -1 : BigInteger.valueOf(2).pow(256).subtract(BigInteger.ONE).divide(numericTarget)));
+        json.put("targetBytes", Convert.toHexString(getTarget(numericTarget)));
+        json.put("counter", CurrencyMint.getCounter(currency.getId(), accountId));
+        return json;
+    }
+
     public static BigInteger getNumericTarget(int min, int max, long units, long currentMintableSupply, long totalMintableSupply) {
         if (min < 1 || max > 255) {
             throw new IllegalArgumentException(String.format("Min: %d, Max: %d, allowed range is 1 to 255", min, max));
@@ -95,6 +145,14 @@ public final class CurrencyMinting {
         return BigInteger.valueOf(2).pow(exp).subtract(BigInteger.ONE).divide(BigInteger.valueOf(units));
     }
 
+    private static long toLong(byte[] b, int offset) {
+        long result = 0;
+        for (int i = 7; i >= 0; i--) {
+            result = (result << 8) | (b[offset + i] & 0xff);
+        }
+        return result;
+    }
+
     private static byte[] reverse(byte[] b) {
         for(int i=0; i < b.length/2; i++) {
             byte temp = b[i];
@@ -104,6 +162,90 @@ public final class CurrencyMinting {
         return b;
     }
 
+    /**
+     * Reusable minting hash context, intended to be confined to a single thread.
+     * The mint parameters are fixed at construction, only the nonce changes between hashes,
+     * and neither the input buffer, the hash output, nor the digest state are reallocated per nonce.
+     */
+    public static final class Hasher {
+
+        private final HashFunction hashFunction;
+        private final byte[] input = new byte[8 + 8 + 8 + 8 + 8];
+        private final byte[] hash = new byte[32];
+        private final MessageDigest digest;
+        private final Scrypt scrypt;
+        private final long[] state;
+
+        public Hasher(HashFunction hashFunction, long currencyId, long units, long counter, long accountId) {
+            this.hashFunction = hashFunction;
+            putLong(input, 8, currencyId);
+            putLong(input, 16, units);
+            putLong(input, 24, counter);
+            putLong(input, 32, accountId);
+            switch (hashFunction) {
+                case SHA256:
+                    digest = Crypto.sha256();
+                    scrypt = null;
+                    state = null;
+                    break;
+                case SHA3:
+                    digest = Crypto.sha3();
+                    scrypt = null;
+                    state = null;
+                    break;
+                case SCRYPT:
+                    digest = null;
+                    scrypt = new Scrypt();
+                    state = null;
+                    break;
+                case Keccak25:
+                    digest = null;
+                    scrypt = null;
+                    state = new long[25];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Hash function " + hashFunction + " not accepted for minting");
+            }
+        }
+
+        public HashFunction getHashFunction() {
+            return hashFunction;
+        }
+
+        /**
+         * Returns the hash for the given nonce. The returned array is owned by this hasher and is overwritten
+         * by the next call.
+         */
+        public byte[] hash(long nonce) {
+            putLong(input, 0, nonce);
+            switch (hashFunction) {
+                case SHA256:
+                case SHA3:
+                    digest.update(input);
+                    try {
+                        digest.digest(hash, 0, hash.length);
+                    } catch (DigestException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    break;
+                case SCRYPT:
+                    System.arraycopy(scrypt.hash(input), 0, hash, 0, hash.length);
+                    break;
+                default:
+                    KNV25.hash(input, hash, state);
+            }
+            return hash;
+        }
+
+        private static void putLong(byte[] b, int offset, long value) {
+            for (int i = 0; i < 8; i++) {
+                b[offset + i] = (byte) value;
+                value >>= 8;
+            }
+        }
+
+    }
+
     private CurrencyMinting() {} // never
 
 }
@@ -19,11 +19,16 @@ package nxt;
 import nxt.db.DbClause;
 import nxt.db.DbIterator;
 import nxt.db.DbKey;
+import nxt.db.SortedDbIndex;
 import nxt.db.VersionedEntityDbTable;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 public final class CurrencySellOffer extends CurrencyExchangeOffer {
 
@@ -48,8 +53,27 @@ public final class CurrencySellOffer extends CurrencyExchangeOffer {
             sell.save(con, table);
         }
 
+        @Override
+        public void rollback(int height) {
+            super.rollback(height);
+            sellOfferBook.clear();
+        }
+
+        @Override
+        public void truncate() {
+            super.truncate();
+            sellOfferBook.clear();
+        }
+
     };
 
+    /**
+     * Offers for each currency in exchange order
+     */
+    private static final SortedDbIndex<CurrencySellOffer> sellOfferBook = new SortedDbIndex<>(
+            ((Comparator<CurrencySellOffer>) (o1, o2) -> Long.compare(o1.getRateNQT(), o2.getRateNQT())).thenComparing(priorityComparator),
+            CurrencySellOffer::loadOffers);
+
     public static int getCount() {
         return sellOfferTable.getCount();
     }
@@ -63,15 +87,26 @@ public final class CurrencySellOffer extends CurrencyExchangeOffer {
     }
 
     public static DbIterator<CurrencySellOffer> getOffers(Currency currency, int from, int to) {
-        return getCurrencyOffers(currency.getId(), false, from, to);
+        return sellOfferTable.getManyBy(new DbClause.LongClause("currency_id", currency.getId()), from, to,
+                " ORDER BY rate ASC, creation_height ASC, transaction_height ASC, transaction_index ASC ");
     }
 
-    public static DbIterator<CurrencySellOffer> getCurrencyOffers(long currencyId, boolean availableOnly, int from, int to) {
-        DbClause dbClause = new DbClause.LongClause("currency_id", currencyId);
-        if (availableOnly) {
-            dbClause = dbClause.and(availableOnlyDbClause);
+    public static List<CurrencySellOffer> getCurrencyOffers(long currencyId, boolean availableOnly, int from, int to) {
+        return sellOfferBook.get(currencyId, availableOnly ? CurrencyExchangeOffer::isAvailable : offer -> true, from, to);
+    }
+
+    static List<CurrencySellOffer> getAvailableOffers(long currencyId, long maxRateNQT) {
+        List<CurrencySellOffer> offers = new ArrayList<>();
+        boolean inTransaction = Db.db.isInTransaction();
+        for (CurrencySellOffer offer : sellOfferBook.get(currencyId)) {
+            if (maxRateNQT > 0 && offer.getRateNQT() > maxRateNQT) {
+                break;
+            }
+            if (offer.isAvailable()) {
+                offers.add(inTransaction ? sellOfferTable.getCached(new CurrencySellOffer(offer)) : offer);
+            }
         }
-        return sellOfferTable.getManyBy(dbClause, from, to, " ORDER BY rate ASC, creation_height ASC, transaction_height ASC, transaction_index ASC ");
+        return offers;
     }
 
     public static DbIterator<CurrencySellOffer> getAccountOffers(long accountId, boolean availableOnly, int from, int to) {
@@ -98,12 +133,34 @@ public final class CurrencySellOffer extends CurrencyExchangeOffer {
         return sellOfferTable.getManyBy(dbClause, from, to, sort);
     }
 
+    private static List<CurrencySellOffer> loadOffers(long currencyId) {
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM sell_offer WHERE currency_id = ? AND latest = TRUE")) {
+            pstmt.setLong(1, currencyId);
+            return loadOffers(con, pstmt);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    private static List<CurrencySellOffer> loadOffers(Connection con, PreparedStatement pstmt) {
+        List<CurrencySellOffer> offers = new ArrayList<>();
+        try (DbIterator<CurrencySellOffer> it = sellOfferTable.getManyBy(con, pstmt, false)) {
+            it.forEach(offers::add);
+        }
+        return offers;
+    }
+
     static void addOffer(Transaction transaction, Attachment.MonetarySystemPublishExchangeOffer attachment) {
-        sellOfferTable.insert(new CurrencySellOffer(transaction, attachment));
+        CurrencySellOffer offer = new CurrencySellOffer(transaction, attachment);
+        sellOfferTable.insert(offer);
+        sellOfferBook.add(offer.getCurrencyId(), new CurrencySellOffer(offer));
     }
 
     static void remove(CurrencySellOffer sellOffer) {
-        sellOfferTable.delete(sellOffer);
+        if (sellOfferTable.delete(sellOffer)) {
+            sellOfferBook.remove(sellOffer.getCurrencyId(), sellOffer);
+        }
     }
 
     static void init() {}
@@ -122,6 +179,11 @@ public final class CurrencySellOffer extends CurrencyExchangeOffer {
         this.dbKey = sellOfferDbKeyFactory.newKey(super.id);
     }
 
+    private CurrencySellOffer(CurrencySellOffer offer) {
+        super(offer);
+        this.dbKey = offer.dbKey;
+    }
+
     @Override
     public CurrencyBuyOffer getCounterOffer() {
         return CurrencyBuyOffer.getOffer(id);
@@ -130,11 +192,13 @@ public final class CurrencySellOffer extends CurrencyExchangeOffer {
     long increaseSupply(long delta) {
         long excess = super.increaseSupply(delta);
         sellOfferTable.insert(this);
+        sellOfferBook.add(getCurrencyId(), new CurrencySellOffer(this));
         return excess;
     }
 
     void decreaseLimitAndSupply(long delta) {
         super.decreaseLimitAndSupply(delta);
         sellOfferTable.insert(this);
+        sellOfferBook.add(getCurrencyId(), new CurrencySellOffer(this));
     }
 }
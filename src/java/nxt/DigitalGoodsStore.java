@@ -22,6 +22,7 @@ import nxt.db.DbClause;
 import nxt.db.DbIterator;
 import nxt.db.DbKey;
 import nxt.db.DbUtils;
+import nxt.db.PrefixDbIndex;
 import nxt.db.VersionedEntityDbTable;
 import nxt.db.VersionedValuesDbTable;
 import nxt.util.Convert;
@@ -119,6 +120,8 @@ public final class DigitalGoodsStore {
 
         };
 
+        private static final PrefixDbIndex tagIndex = tagTable.createPrefixIndex("tag");
+
         public static int getCount() {
             return tagTable.getCount();
         }
@@ -138,11 +141,11 @@ public final class DigitalGoodsStore {
         }
 
         public static DbIterator<Tag> getTagsLike(String prefix, boolean inStockOnly, int from, int to) {
-            DbClause dbClause = new DbClause.LikeClause("tag", prefix);
             if (inStockOnly) {
-                dbClause = dbClause.and(inStockOnlyClause);
+                DbClause dbClause = tagIndex.getRangeClause(tagIndex.getKeys(prefix, 0, -1)).and(inStockOnlyClause);
+                return tagTable.getManyBy(dbClause, from, to, " ORDER BY tag ");
             }
-            return tagTable.getManyBy(dbClause, from, to, " ORDER BY tag ");
+            return tagTable.getManyBy(tagIndex.getRangeClause(tagIndex.getKeys(prefix, from, to)), 0, -1, " ORDER BY tag ");
         }
 
         private static void init() {}
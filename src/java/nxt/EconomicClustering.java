@@ -32,19 +32,20 @@ package nxt;
  */
 public final class EconomicClustering {
 
-    private static final Blockchain blockchain = BlockchainImpl.getInstance();
+    private static final BlockchainImpl blockchain = BlockchainImpl.getInstance();
 
     public static Block getECBlock(int timestamp) {
         Block block = blockchain.getLastBlock();
         if (timestamp < block.getTimestamp() - Constants.MAX_TIMEDRIFT) {
             throw new IllegalArgumentException("Timestamp cannot be more than 15 s earlier than last block timestamp: " + block.getTimestamp());
         }
+        int height = block.getHeight();
         int distance = 0;
-        while (block.getTimestamp() > timestamp - Constants.EC_RULE_TERMINATOR && distance < Constants.EC_BLOCK_DISTANCE_LIMIT) {
-            block = blockchain.getBlock(block.getPreviousBlockId());
+        while (blockchain.getBlockTimestampAtHeight(height) > timestamp - Constants.EC_RULE_TERMINATOR && distance < Constants.EC_BLOCK_DISTANCE_LIMIT) {
+            height -= 1;
             distance += 1;
         }
-        return block;
+        return distance == 0 ? block : blockchain.getBlock(blockchain.getBlockIdAtHeight(height));
     }
 
     public static boolean verifyFork(Transaction transaction) {
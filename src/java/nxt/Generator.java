@@ -17,6 +17,7 @@
 package nxt;
 
 import nxt.crypto.Crypto;
+import nxt.crypto.SigningContext;
 import nxt.util.Convert;
 import nxt.util.Listener;
 import nxt.util.Listeners;
@@ -142,6 +143,7 @@ public final class Generator implements Comparable<Generator> {
         Generator generator = new Generator(secretPhrase);
         Generator old = generators.putIfAbsent(secretPhrase, generator);
         if (old != null) {
+            generator.stop();
             Logger.logDebugMessage(old + " is already forging");
             return old;
         }
@@ -153,6 +155,7 @@ public final class Generator implements Comparable<Generator> {
     public static Generator stopForging(String secretPhrase) {
         Generator generator = generators.remove(secretPhrase);
         if (generator != null) {
+            generator.stop();
             sortedForgers = null;
             Logger.logDebugMessage(generator + " stopped");
             listeners.notify(generator, Event.STOP_FORGING);
@@ -166,6 +169,7 @@ public final class Generator implements Comparable<Generator> {
         while (iter.hasNext()) {
             Generator generator = iter.next();
             iter.remove();
+            generator.stop();
             Logger.logDebugMessage(generator + " stopped");
             listeners.notify(generator, Event.STOP_FORGING);
         }
@@ -252,15 +256,16 @@ public final class Generator implements Comparable<Generator> {
 
 
     private final long accountId;
-    private final String secretPhrase;
+    private final SigningContext signingContext;
     private final byte[] publicKey;
     private volatile long hitTime;
     private volatile BigInteger hit;
     private volatile BigInteger effectiveBalance;
+    private boolean stopped;
 
     private Generator(String secretPhrase) {
-        this.secretPhrase = secretPhrase;
-        this.publicKey = Crypto.getPublicKey(secretPhrase);
+        this.signingContext = new SigningContext(secretPhrase);
+        this.publicKey = signingContext.getPublicKey();
         this.accountId = Account.getId(publicKey);
         if (Nxt.getBlockchain().getHeight() >= Constants.LAST_KNOWN_BLOCK) {
             setLastBlock(Nxt.getBlockchain().getLastBlock());
@@ -309,7 +314,18 @@ public final class Generator implements Comparable<Generator> {
         listeners.notify(this, Event.GENERATION_DEADLINE);
     }
 
-    boolean forge(Block lastBlock, int generationLimit) throws BlockchainProcessor.BlockNotAcceptedException {
+    /**
+     * Clear the signing key once the generator has been removed, a forging attempt in progress completes first
+     */
+    private synchronized void stop() {
+        stopped = true;
+        signingContext.close();
+    }
+
+    synchronized boolean forge(Block lastBlock, int generationLimit) throws BlockchainProcessor.BlockNotAcceptedException {
+        if (stopped) {
+            return false;
+        }
         int timestamp = (generationLimit - hitTime > 3600) ? generationLimit : (int)hitTime + 1;
         if (!verifyHit(hit, effectiveBalance, lastBlock, timestamp)) {
             Logger.logDebugMessage(this.toString() + " failed to forge at " + timestamp);
@@ -318,7 +334,7 @@ public final class Generator implements Comparable<Generator> {
         int start = Nxt.getEpochTime();
         while (true) {
             try {
-                BlockchainProcessorImpl.getInstance().generateBlock(secretPhrase, timestamp);
+                BlockchainProcessorImpl.getInstance().generateBlock(signingContext, timestamp);
                 setDelay(Constants.FORGING_DELAY);
                 return true;
             } catch (BlockchainProcessor.TransactionNotAcceptedException e) {
@@ -1139,6 +1139,8 @@ class NxtDbVersion extends DbVersion {
                 BlockchainProcessorImpl.getInstance().scheduleScan(0, false);
                 apply(null);
             case 474:
+                apply("CREATE INDEX IF NOT EXISTS buy_offer_expiration_height_idx ON buy_offer (expiration_height)");
+            case 475:
                 return;
             default:
                 throw new RuntimeException("Blockchain database inconsistent with code, at update " + nextUpdate
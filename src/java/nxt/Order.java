@@ -20,15 +20,27 @@ import nxt.AccountLedger.LedgerEvent;
 import nxt.db.DbClause;
 import nxt.db.DbIterator;
 import nxt.db.DbKey;
+import nxt.db.SortedDbIndex;
 import nxt.db.VersionedEntityDbTable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 public abstract class Order {
 
+    /**
+     * Time priority of orders with the same price
+     */
+    private static final Comparator<Order> priorityComparator = Comparator.comparingInt(Order::getHeight)
+            .thenComparingInt(Order::getTransactionHeight)
+            .thenComparingInt(Order::getTransactionIndex)
+            .thenComparingLong(Order::getId);
+
     private static void matchOrders(long assetId) {
 
         Order.Ask askOrder;
@@ -99,6 +111,17 @@ public abstract class Order {
         this.transactionHeight = rs.getInt("transaction_height");
     }
 
+    private Order(Order order) {
+        this.id = order.id;
+        this.accountId = order.accountId;
+        this.assetId = order.assetId;
+        this.priceNQT = order.priceNQT;
+        this.quantityQNT = order.quantityQNT;
+        this.creationHeight = order.creationHeight;
+        this.transactionIndex = order.transactionIndex;
+        this.transactionHeight = order.transactionHeight;
+    }
+
     private void save(Connection con, String table) throws SQLException {
         try (PreparedStatement pstmt = con.prepareStatement("MERGE INTO " + table + " (id, account_id, asset_id, "
                 + "price, quantity, creation_height, transaction_index, transaction_height, height, latest) KEY (id, height) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, TRUE)")) {
@@ -205,8 +228,26 @@ public abstract class Order {
                 return " ORDER BY creation_height DESC ";
             }
 
+            @Override
+            public void rollback(int height) {
+                super.rollback(height);
+                askOrderBook.clear();
+            }
+
+            @Override
+            public void truncate() {
+                super.truncate();
+                askOrderBook.clear();
+            }
+
         };
 
+        /**
+         * Open orders for each asset in matching order
+         */
+        private static final SortedDbIndex<Ask> askOrderBook = new SortedDbIndex<>(
+                Comparator.comparingLong(Ask::getPriceNQT).thenComparing(priorityComparator), Ask::loadOrders);
+
         public static int getCount() {
             return askOrderTable.getCount();
         }
@@ -232,19 +273,24 @@ public abstract class Order {
             return askOrderTable.getManyBy(dbClause, from, to);
         }
 
-        public static DbIterator<Ask> getSortedOrders(long assetId, int from, int to) {
-            return askOrderTable.getManyBy(new DbClause.LongClause("asset_id", assetId), from, to,
-                    " ORDER BY price ASC, creation_height ASC, transaction_height ASC, transaction_index ASC ");
+        public static List<Ask> getSortedOrders(long assetId, int from, int to) {
+            return askOrderBook.get(assetId, from, to);
         }
 
         private static Ask getNextOrder(long assetId) {
+            Ask order = askOrderBook.first(assetId);
+            return order != null ? askOrderTable.getCached(new Ask(order)) : null;
+        }
+
+        private static List<Ask> loadOrders(long assetId) {
             try (Connection con = Db.db.getConnection();
-                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM ask_order WHERE asset_id = ? "
-                         + "AND latest = TRUE ORDER BY price ASC, creation_height ASC, transaction_height ASC, transaction_index ASC LIMIT 1")) {
+                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM ask_order WHERE asset_id = ? AND latest = TRUE")) {
                 pstmt.setLong(1, assetId);
-                try (DbIterator<Ask> askOrders = askOrderTable.getManyBy(con, pstmt, true)) {
-                    return askOrders.hasNext() ? askOrders.next() : null;
+                List<Ask> orders = new ArrayList<>();
+                try (DbIterator<Ask> askOrders = askOrderTable.getManyBy(con, pstmt, false)) {
+                    askOrders.forEach(orders::add);
                 }
+                return orders;
             } catch (SQLException e) {
                 throw new RuntimeException(e.toString(), e);
             }
@@ -253,11 +299,15 @@ public abstract class Order {
         static void addOrder(Transaction transaction, Attachment.ColoredCoinsAskOrderPlacement attachment) {
             Ask order = new Ask(transaction, attachment);
             askOrderTable.insert(order);
+            askOrderBook.add(order.getAssetId(), new Ask(order));
             matchOrders(attachment.getAssetId());
         }
 
         static void removeOrder(long orderId) {
-            askOrderTable.delete(getAskOrder(orderId));
+            Ask order = getAskOrder(orderId);
+            if (askOrderTable.delete(order)) {
+                askOrderBook.remove(order.getAssetId(), order);
+            }
         }
 
         static void init() {}
@@ -275,6 +325,11 @@ public abstract class Order {
             this.dbKey = askOrderDbKeyFactory.newKey(super.id);
         }
 
+        private Ask(Ask order) {
+            super(order);
+            this.dbKey = order.dbKey;
+        }
+
         private void save(Connection con, String table) throws SQLException {
             super.save(con, table);
         }
@@ -283,8 +338,10 @@ public abstract class Order {
             super.setQuantityQNT(quantityQNT);
             if (quantityQNT > 0) {
                 askOrderTable.insert(this);
+                askOrderBook.add(getAssetId(), new Ask(this));
             } else if (quantityQNT == 0) {
                 askOrderTable.delete(this);
+                askOrderBook.remove(getAssetId(), this);
             } else {
                 throw new IllegalArgumentException("Negative quantity: " + quantityQNT
                         + " for order: " + Long.toUnsignedString(getId()));
@@ -334,8 +391,26 @@ public abstract class Order {
                 return " ORDER BY creation_height DESC ";
             }
 
+            @Override
+            public void rollback(int height) {
+                super.rollback(height);
+                bidOrderBook.clear();
+            }
+
+            @Override
+            public void truncate() {
+                super.truncate();
+                bidOrderBook.clear();
+            }
+
         };
 
+        /**
+         * Open orders for each asset in matching order
+         */
+        private static final SortedDbIndex<Bid> bidOrderBook = new SortedDbIndex<>(
+                ((Comparator<Bid>) (o1, o2) -> Long.compare(o2.getPriceNQT(), o1.getPriceNQT())).thenComparing(priorityComparator), Bid::loadOrders);
+
         public static int getCount() {
             return bidOrderTable.getCount();
         }
@@ -361,19 +436,24 @@ public abstract class Order {
             return bidOrderTable.getManyBy(dbClause, from, to);
         }
 
-        public static DbIterator<Bid> getSortedOrders(long assetId, int from, int to) {
-            return bidOrderTable.getManyBy(new DbClause.LongClause("asset_id", assetId), from, to,
-                    " ORDER BY price DESC, creation_height ASC, transaction_height ASC, transaction_index ASC ");
+        public static List<Bid> getSortedOrders(long assetId, int from, int to) {
+            return bidOrderBook.get(assetId, from, to);
         }
 
         private static Bid getNextOrder(long assetId) {
+            Bid order = bidOrderBook.first(assetId);
+            return order != null ? bidOrderTable.getCached(new Bid(order)) : null;
+        }
+
+        private static List<Bid> loadOrders(long assetId) {
             try (Connection con = Db.db.getConnection();
-                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM bid_order WHERE asset_id = ? "
-                         + "AND latest = TRUE ORDER BY price DESC, creation_height ASC, transaction_height ASC, transaction_index ASC LIMIT 1")) {
+                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM bid_order WHERE asset_id = ? AND latest = TRUE")) {
                 pstmt.setLong(1, assetId);
-                try (DbIterator<Bid> bidOrders = bidOrderTable.getManyBy(con, pstmt, true)) {
-                    return bidOrders.hasNext() ? bidOrders.next() : null;
+                List<Bid> orders = new ArrayList<>();
+                try (DbIterator<Bid> bidOrders = bidOrderTable.getManyBy(con, pstmt, false)) {
+                    bidOrders.forEach(orders::add);
                 }
+                return orders;
             } catch (SQLException e) {
                 throw new RuntimeException(e.toString(), e);
             }
@@ -382,11 +462,15 @@ public abstract class Order {
         static void addOrder(Transaction transaction, Attachment.ColoredCoinsBidOrderPlacement attachment) {
             Bid order = new Bid(transaction, attachment);
             bidOrderTable.insert(order);
+            bidOrderBook.add(order.getAssetId(), new Bid(order));
             matchOrders(attachment.getAssetId());
         }
 
         static void removeOrder(long orderId) {
-            bidOrderTable.delete(getBidOrder(orderId));
+            Bid order = getBidOrder(orderId);
+            if (bidOrderTable.delete(order)) {
+                bidOrderBook.remove(order.getAssetId(), order);
+            }
         }
 
         static void init() {}
@@ -404,6 +488,11 @@ public abstract class Order {
             this.dbKey = bidOrderDbKeyFactory.newKey(super.id);
         }
 
+        private Bid(Bid order) {
+            super(order);
+            this.dbKey = order.dbKey;
+        }
+
         private void save(Connection con, String table) throws SQLException {
             super.save(con, table);
         }
@@ -412,8 +501,10 @@ public abstract class Order {
             super.setQuantityQNT(quantityQNT);
             if (quantityQNT > 0) {
                 bidOrderTable.insert(this);
+                bidOrderBook.add(getAssetId(), new Bid(this));
             } else if (quantityQNT == 0) {
                 bidOrderTable.delete(this);
+                bidOrderBook.remove(getAssetId(), this);
             } else {
                 throw new IllegalArgumentException("Negative quantity: " + quantityQNT
                         + " for order: " + Long.toUnsignedString(getId()));
@@ -39,6 +39,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 public final class Shuffling {
 
@@ -451,29 +452,23 @@ public final class Shuffling {
         }
         boolean isLast = participantIndex == participantCount - 1;
         // decrypt the tokens bundled in the current data
-        List<byte[]> outputDataList = new ArrayList<>();
-        for (byte[] bytes : data) {
-            AnonymouslyEncryptedData encryptedData = AnonymouslyEncryptedData.readEncryptedData(bytes);
-            try {
-                byte[] decrypted = encryptedData.decrypt(secretPhrase);
-                outputDataList.add(decrypted);
-            } catch (Exception e) {
-                Logger.logMessage("Decryption failed", e);
-                return isLast ? new Attachment.ShufflingRecipients(this.id, Convert.EMPTY_BYTES, shufflingStateHash)
-                        : new Attachment.ShufflingProcessing(this.id, Convert.EMPTY_BYTES, shufflingStateHash);
-            }
+        List<byte[]> outputDataList;
+        try {
+            outputDataList = new ArrayList<>(AnonymouslyEncryptedData.decrypt(data, secretPhrase));
+        } catch (Exception e) {
+            Logger.logMessage("Decryption failed", e);
+            return isLast ? new Attachment.ShufflingRecipients(this.id, Convert.EMPTY_BYTES, shufflingStateHash)
+                    : new Attachment.ShufflingProcessing(this.id, Convert.EMPTY_BYTES, shufflingStateHash);
         }
         // Calculate the token for the current sender by iteratively encrypting it using the public key of all the participants
         // which did not perform shuffle processing yet
-        byte[] bytesToEncrypt = recipientPublicKey;
-        byte[] nonce = Convert.toBytes(this.id);
+        List<byte[]> participantPublicKeys = new ArrayList<>();
         for (int i = shufflingParticipants.size() - 1; i > participantIndex; i--) {
             ShufflingParticipant participant = shufflingParticipants.get(i);
-            byte[] participantPublicKey = Account.getPublicKey(participant.getAccountId());
-            AnonymouslyEncryptedData encryptedData = AnonymouslyEncryptedData.encrypt(bytesToEncrypt, secretPhrase, participantPublicKey, nonce);
-            bytesToEncrypt = encryptedData.getBytes();
+            participantPublicKeys.add(Account.getPublicKey(participant.getAccountId()));
         }
-        outputDataList.add(bytesToEncrypt);
+        byte[] nonce = Convert.toBytes(this.id);
+        outputDataList.add(AnonymouslyEncryptedData.encryptLayers(recipientPublicKey, secretPhrase, participantPublicKeys, nonce));
         // Shuffle the tokens and save the shuffled tokens as the participant data
         Collections.sort(outputDataList, Convert.byteArrayComparator);
         if (isLast) {
@@ -552,13 +547,13 @@ public final class Shuffling {
                 throw new RuntimeException("None of the encrypted data could be decrypted");
             }
             // decrypt all iteratively, adding the key seeds to the result
+            List<byte[]> nextParticipantPublicKeys = new ArrayList<>();
             while (participants.hasNext()) {
                 nextParticipantPublicKey = Account.getPublicKey(participants.next().getAccountId());
-                keySeed = Crypto.getKeySeed(secretPhrase, nextParticipantPublicKey, nonce);
-                keySeeds.add(keySeed);
-                AnonymouslyEncryptedData encryptedData = AnonymouslyEncryptedData.readEncryptedData(decryptedBytes);
-                decryptedBytes = encryptedData.decrypt(keySeed, nextParticipantPublicKey);
+                nextParticipantPublicKeys.add(nextParticipantPublicKey);
+                keySeeds.add(Crypto.getKeySeed(secretPhrase, nextParticipantPublicKey, nonce));
             }
+            AnonymouslyEncryptedData.decryptLayers(decryptedBytes, keySeeds.subList(1, keySeeds.size()), nextParticipantPublicKeys);
             return new Attachment.ShufflingCancellation(this.id, data, keySeeds.toArray(new byte[keySeeds.size()][]),
                     shufflingStateHash, cancellingAccountId);
         } finally {
@@ -759,6 +754,21 @@ public final class Shuffling {
             }
             throw new RuntimeException("All participants submitted data and verifications, blame phase should not have been entered");
         }
+        // do the key agreements for all revealed key seeds in parallel, leaving only the AES decryption to the verification loop
+        byte[][] participantPublicKeys = new byte[participantCount][];
+        for (int k = 1; k < participantCount; k++) {
+            participantPublicKeys[k] = Account.getPublicKey(participants.get(k).getAccountId());
+        }
+        AnonymouslyEncryptedData.SharedKey[][] sharedKeys = new AnonymouslyEncryptedData.SharedKey[participantCount][];
+        IntStream.range(0, participantCount - 1).parallel().forEach(i -> {
+            byte[][] keySeeds = participants.get(i).getKeySeeds();
+            sharedKeys[i] = new AnonymouslyEncryptedData.SharedKey[keySeeds.length];
+            for (int j = 0; j < keySeeds.length && i + j + 1 < participantCount; j++) {
+                try {
+                    sharedKeys[i][j] = new AnonymouslyEncryptedData.SharedKey(keySeeds[j], participantPublicKeys[i + j + 1]);
+                } catch (RuntimeException ignore) {}
+            }
+        });
         Set<Long> recipientAccounts = new HashSet<>(participantCount);
         // start from issuer and verify all data up, skipping last participant
         for (int i = 0; i < participantCount - 1; i++) {
@@ -785,12 +795,14 @@ public final class Shuffling {
             }
             for (int k = i + 1; k < participantCount; k++) {
                 ShufflingParticipant nextParticipant = participants.get(k);
-                byte[] nextParticipantPublicKey = Account.getPublicKey(nextParticipant.getAccountId());
-                byte[] keySeed = keySeeds[k - i - 1];
-                byte[] participantBytes;
-                try {
-                    participantBytes = encryptedData.decrypt(keySeed, nextParticipantPublicKey);
-                } catch (Exception e) {
+                AnonymouslyEncryptedData.SharedKey sharedKey = sharedKeys[i][k - i - 1];
+                byte[] participantBytes = null;
+                if (sharedKey != null) {
+                    try {
+                        participantBytes = encryptedData.decrypt(sharedKey);
+                    } catch (Exception ignore) {}
+                }
+                if (participantBytes == null) {
                     // the next participant couldn't decrypt the data either, blame this one
                     Logger.logDebugMessage("Could not decrypt data from participant %s", Long.toUnsignedString(participant.getAccountId()));
                     return participant.getAccountId();
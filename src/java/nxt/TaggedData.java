@@ -20,6 +20,7 @@ import nxt.db.DbClause;
 import nxt.db.DbIterator;
 import nxt.db.DbKey;
 import nxt.db.DbUtils;
+import nxt.db.PrefixDbIndex;
 import nxt.db.VersionedEntityDbTable;
 import nxt.db.VersionedPersistentDbTable;
 import nxt.db.VersionedPrunableDbTable;
@@ -176,6 +177,8 @@ public class TaggedData {
 
         };
 
+        private static final PrefixDbIndex tagIndex = tagTable.createPrefixIndex("tag");
+
         public static int getTagCount() {
             return tagTable.getCount();
         }
@@ -185,8 +188,7 @@ public class TaggedData {
         }
 
         public static DbIterator<Tag> getTagsLike(String prefix, int from, int to) {
-            DbClause dbClause = new DbClause.LikeClause("tag", prefix);
-            return tagTable.getManyBy(dbClause, from, to, " ORDER BY tag ");
+            return tagTable.getManyBy(tagIndex.getRangeClause(tagIndex.getKeys(prefix, from, to)), 0, -1, " ORDER BY tag ");
         }
 
         private static void init() {}
@@ -16,6 +16,7 @@
 
 package nxt;
 
+import nxt.crypto.SigningContext;
 import nxt.util.Filter;
 import org.json.simple.JSONObject;
 
@@ -53,6 +54,8 @@ public interface Transaction {
 
         Transaction build(String secretPhrase) throws NxtException.NotValidException;
 
+        Transaction build(String secretPhrase, SigningContext signingContext) throws NxtException.NotValidException;
+
     }
 
     long getId();
@@ -18,6 +18,8 @@ package nxt;
 
 import nxt.db.DbUtils;
 import nxt.util.Convert;
+import nxt.util.Logger;
+import nxt.util.LongBloomFilter;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -25,13 +27,94 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 final class TransactionDb {
 
+    /** Filter of confirmed transaction ids, used for lookups once it is completely loaded */
+    private static volatile LongBloomFilter transactionFilter;
+
+    /** Filter receiving the ids of saved transactions, possibly still being loaded */
+    private static volatile LongBloomFilter pendingTransactionFilter;
+
+    /** Number of ids added to the pending transaction filter */
+    private static final AtomicLong pendingTransactionFilterKeys = new AtomicLong();
+
+    /** Set while a transaction filter is being loaded */
+    private static final AtomicBoolean loadingTransactionFilter = new AtomicBoolean();
+
+    /**
+     * Load the ids of all confirmed transactions into a new transaction filter
+     *
+     * Ids are never removed from the filter, transactions deleted by a rollback only cause unnecessary
+     * database lookups.  Saved transactions are added to the filter before the initial load starts, so
+     * that a transaction committed during the load is not missed.  The filter is sized for twice the
+     * current number of transactions, and is loaded again in the background once more ids than it is
+     * sized for have been added.
+     */
+    static void loadTransactionFilter() {
+        loadingTransactionFilter.set(true);
+        try {
+            long start = System.currentTimeMillis();
+            LongBloomFilter filter;
+            try (Connection con = Db.db.getConnection();
+                 Statement stmt = con.createStatement()) {
+                long count;
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM transaction")) {
+                    rs.next();
+                    count = rs.getLong(1);
+                }
+                filter = new LongBloomFilter(count * 2);
+                BlockchainImpl.getInstance().readLock();
+                try {
+                    pendingTransactionFilter = filter;
+                    pendingTransactionFilterKeys.set(count);
+                } finally {
+                    BlockchainImpl.getInstance().readUnlock();
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT id FROM transaction")) {
+                    while (rs.next()) {
+                        filter.add(rs.getLong(1));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+            transactionFilter = filter;
+            Logger.logDebugMessage("Loaded transaction filter for " + filter.getCapacity() + " transactions in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            loadingTransactionFilter.set(false);
+        }
+    }
+
+    /**
+     * Load a larger transaction filter in the background, the current filter is used until the new filter
+     * has been loaded
+     */
+    private static void reloadTransactionFilter() {
+        Thread thread = new Thread(() -> {
+            try {
+                loadTransactionFilter();
+            } catch (RuntimeException e) {
+                Logger.logErrorMessage("Unable to load transaction filter", e);
+            }
+        }, "TransactionFilter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static boolean mayHaveTransaction(long transactionId) {
+        LongBloomFilter filter = transactionFilter;
+        return filter == null || filter.mightContain(transactionId);
+    }
+
     static TransactionImpl findTransaction(long transactionId) {
         return findTransaction(transactionId, Integer.MAX_VALUE);
     }
@@ -44,6 +127,9 @@ final class TransactionDb {
                 return transaction.getHeight() <= height ? transaction : null;
             }
         }
+        if (!mayHaveTransaction(transactionId)) {
+            return null;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM transaction WHERE id = ?")) {
@@ -75,6 +161,9 @@ final class TransactionDb {
                         Arrays.equals(transaction.fullHash(), fullHash) ? transaction : null);
             }
         }
+        if (!mayHaveTransaction(transactionId)) {
+            return null;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM transaction WHERE id = ?")) {
@@ -105,6 +194,9 @@ final class TransactionDb {
                 return (transaction.getHeight() <= height);
             }
         }
+        if (!mayHaveTransaction(transactionId)) {
+            return false;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT height FROM transaction WHERE id = ?")) {
@@ -131,6 +223,9 @@ final class TransactionDb {
                         Arrays.equals(transaction.fullHash(), fullHash));
             }
         }
+        if (!mayHaveTransaction(transactionId)) {
+            return false;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT full_hash, height FROM transaction WHERE id = ?")) {
@@ -151,6 +246,9 @@ final class TransactionDb {
                 return transaction.fullHash();
             }
         }
+        if (!mayHaveTransaction(transactionId)) {
+            return null;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT full_hash FROM transaction WHERE id = ?")) {
@@ -186,15 +284,19 @@ final class TransactionDb {
             byte version = rs.getByte("version");
             short transactionIndex = rs.getShort("transaction_index");
 
-            ByteBuffer buffer = null;
-            if (attachmentBytes != null) {
-                buffer = ByteBuffer.wrap(attachmentBytes);
-                buffer.order(ByteOrder.LITTLE_ENDIAN);
-            }
+            int appendagesFlags = 0;
+            appendagesFlags |= rs.getBoolean("has_message") ? 1 : 0;
+            appendagesFlags |= rs.getBoolean("has_encrypted_message") ? 2 : 0;
+            appendagesFlags |= rs.getBoolean("has_public_key_announcement") ? 4 : 0;
+            appendagesFlags |= rs.getBoolean("has_encrypttoself_message") ? 8 : 0;
+            appendagesFlags |= rs.getBoolean("phased") ? 16 : 0;
+            appendagesFlags |= rs.getBoolean("has_prunable_message") ? 32 : 0;
+            appendagesFlags |= rs.getBoolean("has_prunable_encrypted_message") ? 64 : 0;
 
+            // the attachment and appendices are only parsed when they are needed
             TransactionType transactionType = TransactionType.findTransactionType(type, subtype);
             TransactionImpl.BuilderImpl builder = new TransactionImpl.BuilderImpl(version, null,
-                    amountNQT, feeNQT, deadline, transactionType.parseAttachment(buffer, version))
+                    amountNQT, feeNQT, deadline, transactionType, attachmentBytes, appendagesFlags)
                     .timestamp(timestamp)
                     .referencedTransactionFullHash(referencedTransactionFullHash)
                     .signature(signature)
@@ -213,27 +315,6 @@ final class TransactionDb {
                     builder.recipientId(recipientId);
                 }
             }
-            if (rs.getBoolean("has_message")) {
-                builder.appendix(new Appendix.Message(buffer, version));
-            }
-            if (rs.getBoolean("has_encrypted_message")) {
-                builder.appendix(new Appendix.EncryptedMessage(buffer, version));
-            }
-            if (rs.getBoolean("has_public_key_announcement")) {
-                builder.appendix(new Appendix.PublicKeyAnnouncement(buffer, version));
-            }
-            if (rs.getBoolean("has_encrypttoself_message")) {
-                builder.appendix(new Appendix.EncryptToSelfMessage(buffer, version));
-            }
-            if (rs.getBoolean("phased")) {
-                builder.appendix(new Appendix.Phasing(buffer, version));
-            }
-            if (rs.getBoolean("has_prunable_message")) {
-                builder.appendix(new Appendix.PrunablePlainMessage(buffer, version));
-            }
-            if (rs.getBoolean("has_prunable_encrypted_message")) {
-                builder.appendix(new Appendix.PrunableEncryptedMessage(buffer, version));
-            }
 
             return builder.build();
 
@@ -308,7 +389,19 @@ final class TransactionDb {
     static void saveTransactions(Connection con, List<TransactionImpl> transactions) {
         try {
             short index = 0;
+            LongBloomFilter filter = pendingTransactionFilter;
+            LongBloomFilter currentFilter = transactionFilter;
+            if (filter != null && pendingTransactionFilterKeys.addAndGet(transactions.size()) > filter.getCapacity()
+                    && loadingTransactionFilter.compareAndSet(false, true)) {
+                reloadTransactionFilter();
+            }
             for (TransactionImpl transaction : transactions) {
+                if (filter != null) {
+                    filter.add(transaction.getId());
+                }
+                if (currentFilter != null && currentFilter != filter) {
+                    currentFilter.add(transaction.getId());
+                }
                 try (PreparedStatement pstmt = con.prepareStatement("INSERT INTO transaction (id, deadline, "
                         + "recipient_id, amount, fee, referenced_transaction_full_hash, height, "
                         + "block_id, signature, timestamp, type, subtype, sender_id, attachment_bytes, "
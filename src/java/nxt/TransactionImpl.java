@@ -17,6 +17,7 @@
 package nxt;
 
 import nxt.crypto.Crypto;
+import nxt.crypto.SigningContext;
 import nxt.db.DbKey;
 import nxt.util.Convert;
 import nxt.util.Filter;
@@ -66,6 +67,8 @@ final class TransactionImpl implements Transaction {
         private int ecBlockHeight;
         private long ecBlockId;
         private short index = -1;
+        private byte[] appendagesBytes;
+        private int appendagesFlags;
 
         BuilderImpl(byte version, byte[] senderPublicKey, long amountNQT, long feeNQT, short deadline,
                     Attachment.AbstractAttachment attachment) {
@@ -78,8 +81,29 @@ final class TransactionImpl implements Transaction {
             this.type = attachment.getTransactionType();
         }
 
+        /**
+         * Create a builder for a transaction which has already been validated, the attachment
+         * and appendices are parsed from their bytes when they are first accessed
+         */
+        BuilderImpl(byte version, byte[] senderPublicKey, long amountNQT, long feeNQT, short deadline,
+                    TransactionType type, byte[] appendagesBytes, int appendagesFlags) {
+            this.version = version;
+            this.deadline = deadline;
+            this.senderPublicKey = senderPublicKey;
+            this.amountNQT = amountNQT;
+            this.feeNQT = feeNQT;
+            this.type = type;
+            this.appendagesBytes = appendagesBytes != null ? appendagesBytes : Convert.EMPTY_BYTE;
+            this.appendagesFlags = appendagesFlags;
+        }
+
         @Override
         public TransactionImpl build(String secretPhrase) throws NxtException.NotValidException {
+            return build(secretPhrase, null);
+        }
+
+        @Override
+        public TransactionImpl build(String secretPhrase, SigningContext signingContext) throws NxtException.NotValidException {
             if (timestamp == Integer.MAX_VALUE) {
                 timestamp = Nxt.getEpochTime();
             }
@@ -88,7 +112,7 @@ final class TransactionImpl implements Transaction {
                 this.ecBlockHeight = ecBlock.getHeight();
                 this.ecBlockId = ecBlock.getId();
             }
-            return new TransactionImpl(this, secretPhrase);
+            return new TransactionImpl(this, secretPhrase, signingContext);
         }
 
         @Override
@@ -233,17 +257,19 @@ final class TransactionImpl implements Transaction {
     private final byte version;
     private final int timestamp;
     private final byte[] signature;
-    private final Attachment.AbstractAttachment attachment;
-    private final Appendix.Message message;
-    private final Appendix.EncryptedMessage encryptedMessage;
-    private final Appendix.EncryptToSelfMessage encryptToSelfMessage;
-    private final Appendix.PublicKeyAnnouncement publicKeyAnnouncement;
-    private final Appendix.Phasing phasing;
-    private final Appendix.PrunablePlainMessage prunablePlainMessage;
-    private final Appendix.PrunableEncryptedMessage prunableEncryptedMessage;
-
-    private final List<Appendix.AbstractAppendix> appendages;
+    private Attachment.AbstractAttachment attachment;
+    private Appendix.Message message;
+    private Appendix.EncryptedMessage encryptedMessage;
+    private Appendix.EncryptToSelfMessage encryptToSelfMessage;
+    private Appendix.PublicKeyAnnouncement publicKeyAnnouncement;
+    private Appendix.Phasing phasing;
+    private Appendix.PrunablePlainMessage prunablePlainMessage;
+    private Appendix.PrunableEncryptedMessage prunableEncryptedMessage;
+
+    private List<Appendix.AbstractAppendix> appendages;
     private final int appendagesSize;
+    private final int appendagesFlags;
+    private volatile byte[] appendagesBytes;
 
     private volatile int height = Integer.MAX_VALUE;
     private volatile long blockId;
@@ -258,7 +284,7 @@ final class TransactionImpl implements Transaction {
     private volatile byte[] bytes = null;
 
 
-    private TransactionImpl(BuilderImpl builder, String secretPhrase) throws NxtException.NotValidException {
+    private TransactionImpl(BuilderImpl builder, String secretPhrase, SigningContext signingContext) throws NxtException.NotValidException {
 
         this.timestamp = builder.timestamp;
         this.deadline = builder.deadline;
@@ -278,40 +304,47 @@ final class TransactionImpl implements Transaction {
 		this.ecBlockHeight = builder.ecBlockHeight;
         this.ecBlockId = builder.ecBlockId;
 
-        List<Appendix.AbstractAppendix> list = new ArrayList<>();
-        if ((this.attachment = builder.attachment) != null) {
-            list.add(this.attachment);
-        }
-        if ((this.message  = builder.message) != null) {
-            list.add(this.message);
-        }
-        if ((this.encryptedMessage = builder.encryptedMessage) != null) {
-            list.add(this.encryptedMessage);
-        }
-        if ((this.publicKeyAnnouncement = builder.publicKeyAnnouncement) != null) {
-            list.add(this.publicKeyAnnouncement);
-        }
-        if ((this.encryptToSelfMessage = builder.encryptToSelfMessage) != null) {
-            list.add(this.encryptToSelfMessage);
-        }
-        if ((this.phasing = builder.phasing) != null) {
-            list.add(this.phasing);
-        }
-        if ((this.prunablePlainMessage = builder.prunablePlainMessage) != null) {
-            list.add(this.prunablePlainMessage);
-        }
-        if ((this.prunableEncryptedMessage = builder.prunableEncryptedMessage) != null) {
-            list.add(this.prunableEncryptedMessage);
-        }
-        this.appendages = Collections.unmodifiableList(list);
-        int appendagesSize = 0;
-        for (Appendix appendage : appendages) {
-            if (secretPhrase != null && appendage instanceof Appendix.Encryptable) {
-                ((Appendix.Encryptable)appendage).encrypt(secretPhrase);
+        if (builder.appendagesBytes != null) {
+            this.appendagesBytes = builder.appendagesBytes;
+            this.appendagesFlags = builder.appendagesFlags;
+            this.appendagesSize = appendagesBytes.length;
+        } else {
+            List<Appendix.AbstractAppendix> list = new ArrayList<>();
+            if ((this.attachment = builder.attachment) != null) {
+                list.add(this.attachment);
+            }
+            if ((this.message  = builder.message) != null) {
+                list.add(this.message);
+            }
+            if ((this.encryptedMessage = builder.encryptedMessage) != null) {
+                list.add(this.encryptedMessage);
+            }
+            if ((this.publicKeyAnnouncement = builder.publicKeyAnnouncement) != null) {
+                list.add(this.publicKeyAnnouncement);
+            }
+            if ((this.encryptToSelfMessage = builder.encryptToSelfMessage) != null) {
+                list.add(this.encryptToSelfMessage);
+            }
+            if ((this.phasing = builder.phasing) != null) {
+                list.add(this.phasing);
+            }
+            if ((this.prunablePlainMessage = builder.prunablePlainMessage) != null) {
+                list.add(this.prunablePlainMessage);
+            }
+            if ((this.prunableEncryptedMessage = builder.prunableEncryptedMessage) != null) {
+                list.add(this.prunableEncryptedMessage);
             }
-            appendagesSize += appendage.getSize();
+            this.appendages = Collections.unmodifiableList(list);
+            int appendagesSize = 0;
+            for (Appendix appendage : appendages) {
+                if (secretPhrase != null && appendage instanceof Appendix.Encryptable) {
+                    ((Appendix.Encryptable)appendage).encrypt(secretPhrase);
+                }
+                appendagesSize += appendage.getSize();
+            }
+            this.appendagesSize = appendagesSize;
+            this.appendagesFlags = 0;
         }
-        this.appendagesSize = appendagesSize;
         if (builder.feeNQT <= 0 || (Constants.correctInvalidFees && builder.signature == null)) {
             int effectiveHeight = (height < Integer.MAX_VALUE ? height : Nxt.getBlockchain().getHeight());
             long minFee = getMinimumFeeNQT(effectiveHeight);
@@ -320,22 +353,83 @@ final class TransactionImpl implements Transaction {
             feeNQT = builder.feeNQT;
         }
 
-        if (builder.signature != null && secretPhrase != null) {
+        if (builder.signature != null && (secretPhrase != null || signingContext != null)) {
             throw new NxtException.NotValidException("Transaction is already signed");
         } else if (builder.signature != null) {
             this.signature = builder.signature;
+        } else if (signingContext != null) {
+            signature = sign(signingContext);
         } else if (secretPhrase != null) {
-            if (getSenderPublicKey() != null && ! Arrays.equals(senderPublicKey, Crypto.getPublicKey(secretPhrase))) {
-                throw new NxtException.NotValidException("Secret phrase doesn't match transaction sender public key");
+            try (SigningContext context = new SigningContext(secretPhrase)) {
+                signature = sign(context);
             }
-            signature = Crypto.sign(bytes(), secretPhrase);
-            bytes = null;
         } else {
             signature = null;
         }
 
     }
 
+    private byte[] sign(SigningContext signingContext) throws NxtException.NotValidException {
+        if (getSenderPublicKey() != null && ! Arrays.equals(senderPublicKey, signingContext.getPublicKey())) {
+            throw new NxtException.NotValidException("Secret phrase doesn't match transaction sender public key");
+        }
+        byte[] signature = signingContext.sign(bytes());
+        bytes = null;
+        return signature;
+    }
+
+    /**
+     * Parse the attachment and appendices of a transaction loaded from the database
+     */
+    private void loadAppendages() {
+        if (appendagesBytes == null) {
+            return;
+        }
+        synchronized (this) {
+            if (appendagesBytes == null) {
+                return;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(appendagesBytes);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                List<Appendix.AbstractAppendix> list = new ArrayList<>();
+                list.add(attachment = type.parseAttachment(appendagesBytes.length > 0 ? buffer : null, version));
+                int position = 1;
+                if ((appendagesFlags & position) != 0) {
+                    list.add(message = new Appendix.Message(buffer, version));
+                }
+                position <<= 1;
+                if ((appendagesFlags & position) != 0) {
+                    list.add(encryptedMessage = new Appendix.EncryptedMessage(buffer, version));
+                }
+                position <<= 1;
+                if ((appendagesFlags & position) != 0) {
+                    list.add(publicKeyAnnouncement = new Appendix.PublicKeyAnnouncement(buffer, version));
+                }
+                position <<= 1;
+                if ((appendagesFlags & position) != 0) {
+                    list.add(encryptToSelfMessage = new Appendix.EncryptToSelfMessage(buffer, version));
+                }
+                position <<= 1;
+                if ((appendagesFlags & position) != 0) {
+                    list.add(phasing = new Appendix.Phasing(buffer, version));
+                }
+                position <<= 1;
+                if ((appendagesFlags & position) != 0) {
+                    list.add(prunablePlainMessage = new Appendix.PrunablePlainMessage(buffer, version));
+                }
+                position <<= 1;
+                if ((appendagesFlags & position) != 0) {
+                    list.add(prunableEncryptedMessage = new Appendix.PrunableEncryptedMessage(buffer, version));
+                }
+                appendages = Collections.unmodifiableList(list);
+            } catch (NxtException.NotValidException | RuntimeException e) {
+                throw new RuntimeException("Attachment of transaction " + getStringId() + " does not pass validation", e);
+            }
+            appendagesBytes = null;
+        }
+    }
+
     @Override
     public short getDeadline() {
         return deadline;
@@ -459,6 +553,7 @@ final class TransactionImpl implements Transaction {
 
     @Override
     public Attachment.AbstractAttachment getAttachment() {
+        loadAppendages();
         attachment.loadPrunable(this);
         return attachment;
     }
@@ -470,6 +565,7 @@ final class TransactionImpl implements Transaction {
 
     @Override
     public List<Appendix.AbstractAppendix> getAppendages(boolean includeExpiredPrunable) {
+        loadAppendages();
         for (Appendix.AbstractAppendix appendage : appendages) {
             appendage.loadPrunable(this, includeExpiredPrunable);
         }
@@ -478,6 +574,7 @@ final class TransactionImpl implements Transaction {
 
     @Override
     public List<Appendix> getAppendages(Filter<Appendix> filter, boolean includeExpiredPrunable) {
+        loadAppendages();
         List<Appendix> result = new ArrayList<>();
         appendages.forEach(appendix -> {
             if (filter.ok(appendix)) {
@@ -550,34 +647,41 @@ final class TransactionImpl implements Transaction {
 
     @Override
     public Appendix.Message getMessage() {
+        loadAppendages();
         return message;
     }
 
     @Override
     public Appendix.EncryptedMessage getEncryptedMessage() {
+        loadAppendages();
         return encryptedMessage;
     }
 
     @Override
     public Appendix.EncryptToSelfMessage getEncryptToSelfMessage() {
+        loadAppendages();
         return encryptToSelfMessage;
     }
 
     @Override
     public Appendix.Phasing getPhasing() {
+        loadAppendages();
         return phasing;
     }
 
     boolean attachmentIsPhased() {
+        loadAppendages();
         return attachment.isPhased(this);
     }
 
     Appendix.PublicKeyAnnouncement getPublicKeyAnnouncement() {
+        loadAppendages();
         return publicKeyAnnouncement;
     }
 
     @Override
     public Appendix.PrunablePlainMessage getPrunablePlainMessage() {
+        loadAppendages();
         if (prunablePlainMessage != null) {
             prunablePlainMessage.loadPrunable(this);
         }
@@ -585,11 +689,15 @@ final class TransactionImpl implements Transaction {
     }
 
     boolean hasPrunablePlainMessage() {
+        if (appendagesBytes != null) {
+            return (appendagesFlags & 32) != 0;
+        }
         return prunablePlainMessage != null;
     }
 
     @Override
     public Appendix.PrunableEncryptedMessage getPrunableEncryptedMessage() {
+        loadAppendages();
         if (prunableEncryptedMessage != null) {
             prunableEncryptedMessage.loadPrunable(this);
         }
@@ -597,6 +705,9 @@ final class TransactionImpl implements Transaction {
     }
 
     boolean hasPrunableEncryptedMessage() {
+        if (appendagesBytes != null) {
+            return (appendagesFlags & 64) != 0;
+        }
         return prunableEncryptedMessage != null;
     }
 
@@ -638,8 +749,13 @@ final class TransactionImpl implements Transaction {
                     buffer.putInt(ecBlockHeight);
                     buffer.putLong(ecBlockId);
                 }
-                for (Appendix appendage : appendages) {
-                    appendage.putBytes(buffer);
+                byte[] unparsedBytes = appendagesBytes;
+                if (unparsedBytes != null) {
+                    buffer.put(unparsedBytes);
+                } else {
+                    for (Appendix appendage : appendages) {
+                        appendage.putBytes(buffer);
+                    }
                 }
                 bytes = buffer.array();
             } catch (RuntimeException e) {
@@ -763,6 +879,7 @@ final class TransactionImpl implements Transaction {
 
     @Override
     public JSONObject getJSONObject() {
+        loadAppendages();
         JSONObject json = new JSONObject();
         json.put("type", type.getType());
         json.put("subtype", type.getSubtype());
@@ -794,6 +911,7 @@ final class TransactionImpl implements Transaction {
 
     @Override
     public JSONObject getPrunableAttachmentJSON() {
+        loadAppendages();
         JSONObject prunableJSON = null;
         for (Appendix.AbstractAppendix appendage : appendages) {
             if (appendage instanceof Appendix.Prunable) {
@@ -896,7 +1014,7 @@ final class TransactionImpl implements Transaction {
 
     private volatile boolean hasValidSignature = false;
 
-    private boolean checkSignature() {
+    boolean checkSignature() {
         if (!hasValidSignature) {
             hasValidSignature = signature != null && Crypto.verify(signature, zeroSignature(getBytes()), getSenderPublicKey(), useNQT());
         }
@@ -934,7 +1052,10 @@ final class TransactionImpl implements Transaction {
         return data;
     }
 
-    private int getFlags() {
+    int getFlags() {
+        if (appendagesBytes != null) {
+            return appendagesFlags;
+        }
         int flags = 0;
         int position = 1;
         if (message != null) {
@@ -969,6 +1090,7 @@ final class TransactionImpl implements Transaction {
 
     @Override
     public void validate() throws NxtException.ValidationException {
+        loadAppendages();
         if (timestamp == 0 ? (deadline != 0 || feeNQT != 0) : (deadline < 1 || feeNQT <= 0)
                 || feeNQT > Constants.MAX_BALANCE_NQT
                 || amountNQT < 0
@@ -1033,6 +1155,7 @@ final class TransactionImpl implements Transaction {
     }
 
     void apply() {
+        loadAppendages();
         Account senderAccount = Account.getAccount(getSenderId());
         senderAccount.apply(getSenderPublicKey());
         Account recipientAccount = null;
@@ -1090,6 +1213,7 @@ final class TransactionImpl implements Transaction {
     }
 
     private long getMinimumFeeNQT(int blockchainHeight) {
+        loadAppendages();
         long totalFee = 0;
         for (Appendix.AbstractAppendix appendage : appendages) {
             appendage.loadPrunable(this);
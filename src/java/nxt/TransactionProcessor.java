@@ -53,6 +53,17 @@ public interface TransactionProcessor extends Observable<List<? extends Transact
 
     void broadcast(Transaction transaction) throws NxtException.ValidationException;
 
+    /**
+     * Broadcast a batch of transactions, verifying their signatures in parallel and admitting them to the
+     * unconfirmed pool in a single pass under the blockchain write lock.
+     *
+     * @param transactions transactions to broadcast
+     * @param knownTransactions receives the transactions that were already in the blockchain or in the unconfirmed pool
+     * @return list of the same size as the input, containing null for each transaction that was accepted
+     * or already known, and the validation exception for each rejected transaction
+     */
+    List<NxtException.ValidationException> broadcast(List<? extends Transaction> transactions, List<Transaction> knownTransactions);
+
     void processPeerTransactions(JSONObject request) throws NxtException.ValidationException;
 
     void processLater(Collection<? extends Transaction> transactions);
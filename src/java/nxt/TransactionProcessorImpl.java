@@ -316,6 +316,11 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         return transactionListeners.addListener(listener, eventType);
     }
 
+    @Override
+    public boolean addAsyncListener(Listener<List<? extends Transaction>> listener, Event eventType) {
+        return transactionListeners.addAsyncListener(listener, eventType);
+    }
+
     @Override
     public boolean removeListener(Listener<List<? extends Transaction>> listener, Event eventType) {
         return transactionListeners.removeListener(listener, eventType);
@@ -385,39 +390,79 @@ final class TransactionProcessorImpl implements TransactionProcessor {
     public void broadcast(Transaction transaction) throws NxtException.ValidationException {
         BlockchainImpl.getInstance().writeLock();
         try {
-            if (TransactionDb.hasTransaction(transaction.getId())) {
-                Logger.logMessage("Transaction " + transaction.getStringId() + " already in blockchain, will not broadcast again");
-                return;
+            List<Transaction> acceptedTransactions = new ArrayList<>(1);
+            broadcast((TransactionImpl) transaction, acceptedTransactions);
+            if (!acceptedTransactions.isEmpty()) {
+                Peers.sendToSomePeers(acceptedTransactions);
+                transactionListeners.notify(acceptedTransactions, Event.ADDED_UNCONFIRMED_TRANSACTIONS);
             }
-            if (unconfirmedTransactionTable.get(((TransactionImpl) transaction).getDbKey()) != null) {
-                if (enableTransactionRebroadcasting) {
-                    broadcastedTransactions.add((TransactionImpl) transaction);
-                    Logger.logMessage("Transaction " + transaction.getStringId() + " already in unconfirmed pool, will re-broadcast");
-                } else {
-                    Logger.logMessage("Transaction " + transaction.getStringId() + " already in unconfirmed pool, will not broadcast again");
+        } finally {
+            BlockchainImpl.getInstance().writeUnlock();
+        }
+    }
+
+    @Override
+    public List<NxtException.ValidationException> broadcast(List<? extends Transaction> transactions, List<Transaction> knownTransactions) {
+        transactions.parallelStream().forEach(transaction -> ((TransactionImpl) transaction).checkSignature());
+        List<NxtException.ValidationException> results = new ArrayList<>(transactions.size());
+        List<Transaction> acceptedTransactions = new ArrayList<>();
+        BlockchainImpl.getInstance().writeLock();
+        try {
+            for (Transaction transaction : transactions) {
+                try {
+                    if (!broadcast((TransactionImpl) transaction, acceptedTransactions)) {
+                        knownTransactions.add(transaction);
+                    }
+                    results.add(null);
+                } catch (NxtException.ValidationException e) {
+                    results.add(e);
+                } catch (RuntimeException e) {
+                    results.add(new NxtException.NotValidException(e.toString(), e));
                 }
-                return;
             }
-            transaction.validate();
-            UnconfirmedTransaction unconfirmedTransaction = new UnconfirmedTransaction((TransactionImpl) transaction, System.currentTimeMillis());
-            boolean broadcastLater = BlockchainProcessorImpl.getInstance().isProcessingBlock();
-            if (broadcastLater) {
-                waitingTransactions.add(unconfirmedTransaction);
-                broadcastedTransactions.add((TransactionImpl) transaction);
-                Logger.logDebugMessage("Will broadcast new transaction later " + transaction.getStringId());
-            } else {
-                processTransaction(unconfirmedTransaction);
-                Logger.logDebugMessage("Accepted new transaction " + transaction.getStringId());
-                List<Transaction> acceptedTransactions = Collections.singletonList(transaction);
+            if (!acceptedTransactions.isEmpty()) {
                 Peers.sendToSomePeers(acceptedTransactions);
                 transactionListeners.notify(acceptedTransactions, Event.ADDED_UNCONFIRMED_TRANSACTIONS);
-                if (enableTransactionRebroadcasting) {
-                    broadcastedTransactions.add((TransactionImpl) transaction);
-                }
             }
         } finally {
             BlockchainImpl.getInstance().writeUnlock();
         }
+        return results;
+    }
+
+    /**
+     * Returns false if the transaction is already in the blockchain or in the unconfirmed pool
+     */
+    private boolean broadcast(TransactionImpl transaction, List<Transaction> acceptedTransactions) throws NxtException.ValidationException {
+        if (TransactionDb.hasTransaction(transaction.getId())) {
+            Logger.logMessage("Transaction " + transaction.getStringId() + " already in blockchain, will not broadcast again");
+            return false;
+        }
+        if (unconfirmedTransactionTable.get(transaction.getDbKey()) != null) {
+            if (enableTransactionRebroadcasting) {
+                broadcastedTransactions.add(transaction);
+                Logger.logMessage("Transaction " + transaction.getStringId() + " already in unconfirmed pool, will re-broadcast");
+            } else {
+                Logger.logMessage("Transaction " + transaction.getStringId() + " already in unconfirmed pool, will not broadcast again");
+            }
+            return false;
+        }
+        transaction.validate();
+        UnconfirmedTransaction unconfirmedTransaction = new UnconfirmedTransaction(transaction, System.currentTimeMillis());
+        boolean broadcastLater = BlockchainProcessorImpl.getInstance().isProcessingBlock();
+        if (broadcastLater) {
+            waitingTransactions.add(unconfirmedTransaction);
+            broadcastedTransactions.add(transaction);
+            Logger.logDebugMessage("Will broadcast new transaction later " + transaction.getStringId());
+        } else {
+            processTransaction(unconfirmedTransaction);
+            Logger.logDebugMessage("Accepted new transaction " + transaction.getStringId());
+            acceptedTransactions.add(transaction);
+            if (enableTransactionRebroadcasting) {
+                broadcastedTransactions.add(transaction);
+            }
+        }
+        return true;
     }
 
     @Override
@@ -22,16 +22,76 @@ import nxt.util.Convert;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public final class AnonymouslyEncryptedData {
 
     public static AnonymouslyEncryptedData encrypt(byte[] plaintext, String secretPhrase, byte[] theirPublicKey, byte[] nonce) {
-        byte[] keySeed = Crypto.getKeySeed(secretPhrase, theirPublicKey, nonce);
-        byte[] myPrivateKey = Crypto.getPrivateKey(keySeed);
-        byte[] myPublicKey = Crypto.getPublicKey(keySeed);
-        byte[] sharedKey = Crypto.getSharedKey(myPrivateKey, theirPublicKey);
-        byte[] data = Crypto.aesGCMEncrypt(plaintext, sharedKey);
-        return new AnonymouslyEncryptedData(data, myPublicKey);
+        return encrypt(plaintext, new SharedKey(Crypto.getKeySeed(secretPhrase, theirPublicKey, nonce), theirPublicKey));
+    }
+
+    public static AnonymouslyEncryptedData encrypt(byte[] plaintext, SharedKey sharedKey) {
+        byte[] data = Crypto.aesGCMEncrypt(plaintext, sharedKey.sharedKey);
+        return new AnonymouslyEncryptedData(data, sharedKey.publicKey);
+    }
+
+    /**
+     * Encrypt data in layers, one layer for each recipient
+     * <p>
+     * The key agreements for all layers are done in parallel, only the AES encryption is done in sequence.
+     *
+     * @param   plaintext           Data to encrypt
+     * @param   secretPhrase        Sender secret phrase
+     * @param   theirPublicKeys     Recipient public keys, starting with the innermost layer
+     * @param   nonce               Key seed nonce
+     * @return                      Bytes of the outermost layer
+     */
+    public static byte[] encryptLayers(byte[] plaintext, String secretPhrase, List<byte[]> theirPublicKeys, byte[] nonce) {
+        List<SharedKey> sharedKeys = theirPublicKeys.parallelStream()
+                .map(theirPublicKey -> new SharedKey(Crypto.getKeySeed(secretPhrase, theirPublicKey, nonce), theirPublicKey))
+                .collect(Collectors.toList());
+        byte[] bytes = plaintext;
+        for (SharedKey sharedKey : sharedKeys) {
+            bytes = encrypt(bytes, sharedKey).getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Decrypt data encrypted in layers using revealed key seeds
+     * <p>
+     * The key agreements for all layers are done in parallel, only the AES decryption is done in sequence.
+     *
+     * @param   bytes               Bytes of the outermost layer
+     * @param   keySeeds            Sender key seeds, starting with the outermost layer
+     * @param   theirPublicKeys     Recipient public keys, starting with the outermost layer
+     * @return                      Decrypted data
+     */
+    public static byte[] decryptLayers(byte[] bytes, List<byte[]> keySeeds, List<byte[]> theirPublicKeys) {
+        List<SharedKey> sharedKeys = IntStream.range(0, keySeeds.size()).parallel()
+                .mapToObj(i -> new SharedKey(keySeeds.get(i), theirPublicKeys.get(i)))
+                .collect(Collectors.toList());
+        byte[] decrypted = bytes;
+        for (SharedKey sharedKey : sharedKeys) {
+            decrypted = readEncryptedData(decrypted).decrypt(sharedKey);
+        }
+        return decrypted;
+    }
+
+    /**
+     * Decrypt a list of encrypted data in parallel
+     *
+     * @param   encryptedData       Encrypted data bytes
+     * @param   secretPhrase        Recipient secret phrase
+     * @return                      Decrypted data in the same order
+     */
+    public static List<byte[]> decrypt(byte[][] encryptedData, String secretPhrase) {
+        byte[] myPrivateKey = Crypto.getPrivateKey(secretPhrase);
+        return Arrays.stream(encryptedData).parallel()
+                .map(bytes -> readEncryptedData(bytes).decrypt(myPrivateKey))
+                .collect(Collectors.toList());
     }
 
     public static AnonymouslyEncryptedData readEncryptedData(ByteBuffer buffer, int length, int maxLength)
@@ -65,7 +125,11 @@ public final class AnonymouslyEncryptedData {
     }
 
     public byte[] decrypt(String secretPhrase) {
-        byte[] sharedKey = Crypto.getSharedKey(Crypto.getPrivateKey(secretPhrase), publicKey);
+        return decrypt(Crypto.getPrivateKey(secretPhrase));
+    }
+
+    private byte[] decrypt(byte[] myPrivateKey) {
+        byte[] sharedKey = Crypto.getSharedKey(myPrivateKey, publicKey);
         return Crypto.aesGCMDecrypt(data, sharedKey);
     }
 
@@ -77,6 +141,13 @@ public final class AnonymouslyEncryptedData {
         return Crypto.aesGCMDecrypt(data, sharedKey);
     }
 
+    public byte[] decrypt(SharedKey sharedKey) {
+        if (!Arrays.equals(sharedKey.publicKey, publicKey)) {
+            throw new RuntimeException("Data was not encrypted using this keySeed");
+        }
+        return Crypto.aesGCMDecrypt(data, sharedKey.sharedKey);
+    }
+
     public byte[] getData() {
         return data;
     }
@@ -102,4 +173,27 @@ public final class AnonymouslyEncryptedData {
         return "data: " + Convert.toHexString(data) + " publicKey: " + Convert.toHexString(publicKey);
     }
 
+    /**
+     * Result of the key agreement for one encryption layer
+     * <p>
+     * The key agreement is the expensive part of encrypting and decrypting a layer and does not depend
+     * on the data, so it can be done ahead of the AES operations.
+     */
+    public static final class SharedKey {
+
+        private final byte[] publicKey;
+        private final byte[] sharedKey;
+
+        /**
+         * Create the shared key for a layer
+         *
+         * @param   keySeed             Sender key seed
+         * @param   theirPublicKey      Recipient public key
+         */
+        public SharedKey(byte[] keySeed, byte[] theirPublicKey) {
+            this.publicKey = Crypto.getPublicKey(keySeed);
+            this.sharedKey = Crypto.getSharedKey(Crypto.getPrivateKey(keySeed), theirPublicKey);
+        }
+    }
+
 }
@@ -29,6 +29,7 @@ import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
 import org.bouncycastle.jcajce.provider.digest.Keccak;
 import org.bouncycastle.jcajce.provider.digest.RIPEMD160;
+import org.json.simple.JSONObject;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -53,6 +54,8 @@ public final class Crypto {
         }
     };
 
+    private static final ThreadLocal<GCMBlockCipher> gcmCipher = ThreadLocal.withInitial(() -> new GCMBlockCipher(new AESEngine()));
+
     private Crypto() {} //never
 
     public static SecureRandom getSecureRandom() {
@@ -118,29 +121,9 @@ public final class Crypto {
     }
 
     public static byte[] sign(byte[] message, String secretPhrase) {
-        byte[] P = new byte[32];
-        byte[] s = new byte[32];
-        MessageDigest digest = Crypto.sha256();
-        Curve25519.keygen(P, s, digest.digest(Convert.toBytes(secretPhrase)));
-
-        byte[] m = digest.digest(message);
-
-        digest.update(m);
-        byte[] x = digest.digest(s);
-
-        byte[] Y = new byte[32];
-        Curve25519.keygen(Y, null, x);
-
-        digest.update(m);
-        byte[] h = digest.digest(Y);
-
-        byte[] v = new byte[32];
-        Curve25519.sign(v, h, x, s);
-
-        byte[] signature = new byte[64];
-        System.arraycopy(v, 0, signature, 0, 32);
-        System.arraycopy(h, 0, signature, 32, 32);
-        return signature;
+        try (SigningContext context = new SigningContext(secretPhrase)) {
+            return context.sign(message);
+        }
     }
 
     public static boolean verify(byte[] signature, byte[] message, byte[] publicKey, boolean enforceCanonical) {
@@ -224,7 +207,7 @@ public final class Crypto {
         try {
             byte[] iv = new byte[16];
             secureRandom.get().nextBytes(iv);
-            GCMBlockCipher aes = new GCMBlockCipher(new AESEngine());
+            GCMBlockCipher aes = gcmCipher.get();
             CipherParameters ivAndKey = new ParametersWithIV(new KeyParameter(key), iv);
             aes.init(true, ivAndKey);
             byte[] output = new byte[aes.getOutputSize(plaintext.length)];
@@ -267,12 +250,12 @@ public final class Crypto {
                 throw new InvalidCipherTextException("invalid ivCiphertext length");
             }
             byte[] iv = Arrays.copyOfRange(ivCiphertext, 0, 16);
-            byte[] ciphertext = Arrays.copyOfRange(ivCiphertext, 16, ivCiphertext.length);
-            GCMBlockCipher aes = new GCMBlockCipher(new AESEngine());
+            int ciphertextLength = ivCiphertext.length - 16;
+            GCMBlockCipher aes = gcmCipher.get();
             CipherParameters ivAndKey = new ParametersWithIV(new KeyParameter(key), iv);
             aes.init(false, ivAndKey);
-            byte[] output = new byte[aes.getOutputSize(ciphertext.length)];
-            int plaintextLength = aes.processBytes(ciphertext, 0, ciphertext.length, output, 0);
+            byte[] output = new byte[aes.getOutputSize(ciphertextLength)];
+            int plaintextLength = aes.processBytes(ivCiphertext, 16, ciphertextLength, output, 0);
             plaintextLength += aes.doFinal(output, plaintextLength);
             byte[] result = new byte[plaintextLength];
             System.arraycopy(output, 0, result, 0, result.length);
@@ -283,17 +266,27 @@ public final class Crypto {
     }
 
     public static String rsEncode(long id) {
-        return ReedSolomon.encode(id);
+        String rs = ReedSolomonCache.getAddress(id);
+        if (rs == null) {
+            rs = ReedSolomon.encode(id);
+            ReedSolomonCache.put(id, rs);
+        }
+        return rs;
     }
 
     public static long rsDecode(String rsString) {
         rsString = rsString.toUpperCase();
+        ReedSolomonCache.Entry entry = ReedSolomonCache.getEntry(rsString);
+        if (entry != null) {
+            return entry.id;
+        }
         try {
             long id = ReedSolomon.decode(rsString);
             if (! rsString.equals(ReedSolomon.encode(id))) {
                 throw new RuntimeException("ERROR: Reed-Solomon decoding of " + rsString
                         + " not reversible, decoded to " + id);
             }
+            ReedSolomonCache.put(id, rsString);
             return id;
         } catch (ReedSolomon.DecodeException e) {
             Logger.logDebugMessage("Reed-Solomon decoding failed for " + rsString + ": " + e.toString());
@@ -301,6 +294,10 @@ public final class Crypto {
         }
     }
 
+    public static JSONObject getRSCacheStatistics() {
+        return ReedSolomonCache.getStatistics();
+    }
+
     public static boolean isCanonicalPublicKey(byte[] publicKey) {
         return Curve25519.isCanonicalPublicKey(publicKey);
     }
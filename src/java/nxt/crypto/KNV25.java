@@ -16,6 +16,8 @@
 
 package nxt.crypto;
 
+import java.util.Arrays;
+
 public final class KNV25 {
 
     private static final long[] constants = {
@@ -26,15 +28,24 @@ public final class KNV25 {
                 -9223372034707259263L, -9223372036854742912L, 2147483649L, -9223372034707259384L, 1L
             };
 
-    @SuppressWarnings("ShiftOutOfRange")
     public static byte[] hash(final byte input[]) {
+        byte[] output = new byte[32];
+        hash(input, output, new long[25]);
+        return output;
+    }
+
+    /**
+     * Compute the hash into a caller supplied 32 byte output array, using a caller supplied 25 element state array
+     * which is cleared before use. Allows repeated hashing without allocating new arrays.
+     */
+    @SuppressWarnings("ShiftOutOfRange")
+    public static void hash(final byte input[], final byte output[], final long state[]) {
         int inputOffset = 0;
         int inputLength = input.length;
         if (inputLength % 8 != 0) {
             throw new IllegalArgumentException(String.format("input length %d must be a multiple of 8", inputLength));
         }
-        byte[] output = new byte[32];
-        long[] state = new long[25];
+        Arrays.fill(state, 0);
         while (inputOffset <= inputLength) {
             int i = 0;
             while (inputOffset < inputLength && i < 17) {
@@ -116,7 +127,6 @@ public final class KNV25 {
         for (int i = 0; i < 32; i++) {
             output[i] = (byte)(state[i >> 3] >> ((i & 7) << 3));
         }
-        return output;
     }
 
 }
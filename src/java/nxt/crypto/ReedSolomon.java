@@ -6,7 +6,7 @@
 */
 package nxt.crypto;
 
-import java.math.BigInteger;
+import java.util.Arrays;
 
 final class ReedSolomon {
 
@@ -19,59 +19,50 @@ final class ReedSolomon {
     private static final int base_32_length = 13;
     private static final int base_10_length = 20;
 
-    static String encode(long plain) {
+    private static final int[] gmult_table = new int[32 * 32];
+    private static final int[] alphabet_index = new int[128];
 
-        String plain_string = Long.toUnsignedString(plain);
-        int length = plain_string.length();
-        int[] plain_string_10 = new int[ReedSolomon.base_10_length];
-        for (int i = 0; i < length; i++) {
-            plain_string_10[i] = (int)plain_string.charAt(i) - (int)'0';
+    static {
+        for (int a = 1; a < 32; a++) {
+            for (int b = 1; b < 32; b++) {
+                ReedSolomon.gmult_table[(a << 5) | b] = ReedSolomon.gexp[(ReedSolomon.glog[a] + ReedSolomon.glog[b]) % 31];
+            }
+        }
+        Arrays.fill(ReedSolomon.alphabet_index, -1);
+        for (int i = 0; i < ReedSolomon.alphabet.length(); i++) {
+            ReedSolomon.alphabet_index[ReedSolomon.alphabet.charAt(i)] = i;
         }
+    }
 
-        int codeword_length = 0;
-        int[] codeword = new int[ReedSolomon.initial_codeword.length];
+    static String encode(long plain) {
 
-        do {  // base 10 to base 32 conversion
-            int new_length = 0;
-            int digit_32 = 0;
-            for (int i = 0; i < length; i++) {
-                digit_32 = digit_32 * 10 + plain_string_10[i];
-                if (digit_32 >= 32) {
-                    plain_string_10[new_length] = digit_32 >> 5;
-                    digit_32 &= 31;
-                    new_length += 1;
-                } else if (new_length > 0) {
-                    plain_string_10[new_length] = 0;
-                    new_length += 1;
-                }
-            }
-            length = new_length;
-            codeword[codeword_length] = digit_32;
-            codeword_length += 1;
-        } while(length > 0);
+        int[] codeword = new int[ReedSolomon.initial_codeword.length];
+        for (int i = 0; i < ReedSolomon.base_32_length; i++) {  // base 32 digits of the unsigned value
+            codeword[i] = (int)(plain >>> (5 * i)) & 31;
+        }
 
-        int[] p = {0, 0, 0, 0};
+        int p0 = 0, p1 = 0, p2 = 0, p3 = 0;
         for (int i = ReedSolomon.base_32_length - 1; i >= 0; i--) {
-            final int fb = codeword[i] ^ p[3];
-            p[3] = p[2] ^ ReedSolomon.gmult(30, fb);
-            p[2] = p[1] ^ ReedSolomon.gmult(6, fb);
-            p[1] = p[0] ^ ReedSolomon.gmult(9, fb);
-            p[0] =        ReedSolomon.gmult(17, fb);
+            final int fb = codeword[i] ^ p3;
+            p3 = p2 ^ ReedSolomon.gmult(30, fb);
+            p2 = p1 ^ ReedSolomon.gmult(6, fb);
+            p1 = p0 ^ ReedSolomon.gmult(9, fb);
+            p0 =      ReedSolomon.gmult(17, fb);
         }
+        codeword[ReedSolomon.base_32_length] = p0;
+        codeword[ReedSolomon.base_32_length + 1] = p1;
+        codeword[ReedSolomon.base_32_length + 2] = p2;
+        codeword[ReedSolomon.base_32_length + 3] = p3;
 
-        System.arraycopy(p, 0, codeword, ReedSolomon.base_32_length, ReedSolomon.initial_codeword.length - ReedSolomon.base_32_length);
-
-        StringBuilder cypher_string_builder = new StringBuilder();
+        char[] cypher_chars = new char[20];
+        int length = 0;
         for (int i = 0; i < 17; i++) {
-            final int codework_index = ReedSolomon.codeword_map[i];
-            final int alphabet_index = codeword[codework_index];
-            cypher_string_builder.append(ReedSolomon.alphabet.charAt(alphabet_index));
-
+            cypher_chars[length++] = ReedSolomon.alphabet.charAt(codeword[ReedSolomon.codeword_map[i]]);
             if ((i & 3) == 3 && i < 13) {
-                cypher_string_builder.append('-');
+                cypher_chars[length++] = '-';
             }
         }
-        return cypher_string_builder.toString();
+        return new String(cypher_chars);
     }
 
     static long decode(String cypher_string) throws DecodeException {
@@ -81,9 +72,10 @@ final class ReedSolomon {
 
         int codeword_length = 0;
         for (int i = 0; i < cypher_string.length(); i++) {
-            int position_in_alphabet = ReedSolomon.alphabet.indexOf(cypher_string.charAt(i));
+            char c = cypher_string.charAt(i);
+            int position_in_alphabet = c < ReedSolomon.alphabet_index.length ? ReedSolomon.alphabet_index[c] : -1;
 
-            if (position_in_alphabet <= -1 || position_in_alphabet > ReedSolomon.alphabet.length()) {
+            if (position_in_alphabet <= -1) {
                 continue;
             }
 
@@ -100,45 +92,15 @@ final class ReedSolomon {
             throw new CodewordInvalidException();
         }
 
-        int length = ReedSolomon.base_32_length;
-        int[] cypher_string_32 = new int[length];
-        for (int i = 0; i < length; i++) {
-            cypher_string_32[i] = codeword[length - i - 1];
+        long plain = 0;
+        for (int i = 0; i < ReedSolomon.base_32_length; i++) {  // base 32 to binary, truncated to 64 bits
+            plain |= (long)codeword[i] << (5 * i);
         }
-
-        StringBuilder plain_string_builder = new StringBuilder();
-        do { // base 32 to base 10 conversion
-            int new_length = 0;
-            int digit_10 = 0;
-
-            for (int i = 0; i < length; i++) {
-                digit_10 = digit_10 * 32 + cypher_string_32[i];
-
-                if (digit_10 >= 10) {
-                    cypher_string_32[new_length] = digit_10 / 10;
-                    digit_10 %= 10;
-                    new_length += 1;
-                } else if (new_length > 0) {
-                    cypher_string_32[new_length] = 0;
-                    new_length += 1;
-                }
-            }
-            length = new_length;
-            plain_string_builder.append((char)(digit_10 + (int)'0'));
-        } while (length > 0);
-
-        BigInteger bigInt = new BigInteger(plain_string_builder.reverse().toString());
-        return bigInt.longValue();
+        return plain;
     }
 
     private static int gmult(int a, int b) {
-        if (a == 0 || b == 0) {
-            return 0;
-        }
-
-        int idx = (ReedSolomon.glog[a] + ReedSolomon.glog[b]) % 31;
-
-        return ReedSolomon.gexp[idx];
+        return ReedSolomon.gmult_table[(a << 5) | b];
     }
 
     private static boolean is_codeword_valid(int[] codeword) {
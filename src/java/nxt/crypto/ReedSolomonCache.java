@@ -0,0 +1,131 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.crypto;
+
+import nxt.Nxt;
+import org.json.simple.JSONObject;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of Reed-Solomon account address encodings
+ * <p>
+ * The cache is direct-mapped: each account id and each address string has a single slot,
+ * and a new entry replaces the entry already stored in its slot. Entries are immutable,
+ * so lookups and updates do not need any locking.
+ */
+final class ReedSolomonCache {
+
+    private static final int cacheSize = Integer.highestOneBit(Math.max(Nxt.getIntProperty("nxt.rsCacheSize", 8192), 1));
+    private static final int mask = cacheSize - 1;
+    private static final Entry[] idEntries = new Entry[cacheSize];
+    private static final Entry[] rsEntries = new Entry[cacheSize];
+
+    private static final LongAdder encodeHits = new LongAdder();
+    private static final LongAdder encodeMisses = new LongAdder();
+    private static final LongAdder decodeHits = new LongAdder();
+    private static final LongAdder decodeMisses = new LongAdder();
+
+    /**
+     * Return the cached address for an account id
+     *
+     * @param   id              Account id
+     * @return                  Address or null if the id is not cached
+     */
+    static String getAddress(long id) {
+        if (cacheSize == 1) {
+            return null;
+        }
+        Entry entry = idEntries[slot(Long.hashCode(id))];
+        if (entry != null && entry.id == id) {
+            encodeHits.increment();
+            return entry.rs;
+        }
+        encodeMisses.increment();
+        return null;
+    }
+
+    /**
+     * Return the cached account id for an address
+     *
+     * @param   rs              Upper-case address
+     * @return                  Entry or null if the address is not cached
+     */
+    static Entry getEntry(String rs) {
+        if (cacheSize == 1) {
+            return null;
+        }
+        Entry entry = rsEntries[slot(rs.hashCode())];
+        if (entry != null && entry.rs.equals(rs)) {
+            decodeHits.increment();
+            return entry;
+        }
+        decodeMisses.increment();
+        return null;
+    }
+
+    /**
+     * Cache an account id and its address
+     *
+     * @param   id              Account id
+     * @param   rs              Address
+     */
+    static void put(long id, String rs) {
+        if (cacheSize == 1) {
+            return;
+        }
+        Entry entry = new Entry(id, rs);
+        idEntries[slot(Long.hashCode(id))] = entry;
+        rsEntries[slot(rs.hashCode())] = entry;
+    }
+
+    /**
+     * Return the cache statistics
+     *
+     * @return                  Cache size and encode and decode hit counts
+     */
+    static JSONObject getStatistics() {
+        JSONObject json = new JSONObject();
+        json.put("size", cacheSize == 1 ? 0 : cacheSize);
+        json.put("encodeHits", encodeHits.sum());
+        json.put("encodeMisses", encodeMisses.sum());
+        json.put("decodeHits", decodeHits.sum());
+        json.put("decodeMisses", decodeMisses.sum());
+        return json;
+    }
+
+    private static int slot(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash & mask;
+    }
+
+    static final class Entry {
+
+        final long id;
+        final String rs;
+
+        private Entry(long id, String rs) {
+            this.id = id;
+            this.rs = rs;
+        }
+    }
+
+    private ReedSolomonCache() {} // never
+}
@@ -0,0 +1,124 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.crypto;
+
+import nxt.util.Convert;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Signing key pair derived once from a secret phrase.
+ * <p>
+ * Deriving the keys costs a SHA-256 and a Curve25519 key generation, which {@link Crypto#sign(byte[], String)}
+ * repeats for every signature. A forging {@link nxt.Generator} keeps one context for as long as the account
+ * forges, and transaction creation uses one context for both the sender public key and the signature. The
+ * owner signs using per-thread digests and scratch arrays, and closes the context when done, which clears
+ * the signing key. Contexts are not cached, so the secret phrase and the signing key are held only as long as
+ * the caller keeps the context. A context can be shared between threads until it is closed.
+ */
+public final class SigningContext implements AutoCloseable {
+
+    private static final ThreadLocal<Scratch> threadLocalScratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final byte[] publicKey = new byte[32];
+    private final byte[] signingKey = new byte[32];
+    private volatile boolean closed;
+
+    public SigningContext(String secretPhrase) {
+        byte[] keySeed = Crypto.sha256().digest(Convert.toBytes(secretPhrase));
+        Curve25519.keygen(publicKey, signingKey, keySeed);
+        Arrays.fill(keySeed, (byte)0);
+    }
+
+    public byte[] getPublicKey() {
+        return publicKey.clone();
+    }
+
+    public byte[] sign(byte[] message) {
+        if (closed) {
+            throw new IllegalStateException("Signing context is closed");
+        }
+        Scratch scratch = threadLocalScratch.get();
+        MessageDigest digest = scratch.digest;
+        byte[] m = scratch.m;
+        byte[] x = scratch.x;
+        byte[] Y = scratch.Y;
+        byte[] h = scratch.h;
+        byte[] v = scratch.v;
+        try {
+            digest.update(message);
+            digest.digest(m, 0, 32);
+
+            digest.update(m);
+            digest.update(signingKey);
+            digest.digest(x, 0, 32);
+
+            Curve25519.keygen(Y, null, x);
+
+            digest.update(m);
+            digest.update(Y);
+            digest.digest(h, 0, 32);
+
+            Curve25519.sign(v, h, x, signingKey);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            Arrays.fill(x, (byte)0);
+        }
+
+        byte[] signature = new byte[64];
+        System.arraycopy(v, 0, signature, 0, 32);
+        System.arraycopy(h, 0, signature, 32, 32);
+        return signature;
+    }
+
+    public List<byte[]> sign(List<byte[]> messages) {
+        List<byte[]> signatures = new ArrayList<>(messages.size());
+        for (byte[] message : messages) {
+            signatures.add(sign(message));
+        }
+        return signatures;
+    }
+
+    /**
+     * Clear the signing key, the context cannot be used for signing afterwards
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Arrays.fill(signingKey, (byte)0);
+    }
+
+    private static final class Scratch {
+        private final MessageDigest digest = Crypto.sha256();
+        private final byte[] m = new byte[32];
+        private final byte[] x = new byte[32];
+        private final byte[] Y = new byte[32];
+        private final byte[] h = new byte[32];
+        private final byte[] v = new byte[32];
+    }
+
+}
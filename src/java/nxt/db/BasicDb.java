@@ -135,6 +135,11 @@ public class BasicDb {
             throw new RuntimeException(e.toString(), e);
         }
         dbVersion.init(this);
+        try (Connection con = cp.getConnection()) {
+            FullTextTrigger.recover(con);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
         initialized = true;
     }
 
@@ -89,8 +89,15 @@ public abstract class DbClause {
 
     public static final class NotNullClause extends DbClause {
 
+        private final String columnName;
+
         public NotNullClause(String columnName) {
             super(" " + columnName + " IS NOT NULL ");
+            this.columnName = columnName;
+        }
+
+        String getColumnName() {
+            return columnName;
         }
 
         @Override
@@ -109,6 +116,11 @@ public abstract class DbClause {
             this.value = value;
         }
 
+        public StringClause(String columnName, Op operator, String value) {
+            super(" " + columnName + operator.operator() + "? ");
+            this.value = value;
+        }
+
         @Override
         protected int set(PreparedStatement pstmt, int index) throws SQLException {
             pstmt.setString(index, value);
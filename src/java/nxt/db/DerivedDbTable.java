@@ -68,6 +68,10 @@ public abstract class DerivedDbTable {
         //implemented in EntityDbTable only
     }
 
+    public void createTriggers(Connection con) throws SQLException {
+        //implemented in EntityDbTable only
+    }
+
     public boolean isPersistent() {
         return false;
     }
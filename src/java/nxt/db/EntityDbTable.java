@@ -23,6 +23,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public abstract class EntityDbTable<T> extends DerivedDbTable {
 
@@ -30,6 +32,8 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     protected final DbKey.Factory<T> dbKeyFactory;
     private final String defaultSort;
     private final String fullTextSearchColumns;
+    private final RowCountTrigger.Counter rowCounter;
+    private final List<PrefixDbIndex> prefixIndexes = new CopyOnWriteArrayList<>();
 
     protected EntityDbTable(String table, DbKey.Factory<T> dbKeyFactory) {
         this(table, dbKeyFactory, false, null);
@@ -45,6 +49,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         this.multiversion = multiversion;
         this.defaultSort = " ORDER BY " + (multiversion ? dbKeyFactory.getPKColumns() : " height DESC, db_id DESC ");
         this.fullTextSearchColumns = fullTextSearchColumns;
+        this.rowCounter = RowCountTrigger.getCounter(table, multiversion);
     }
 
     protected abstract T load(Connection con, ResultSet rs) throws SQLException;
@@ -68,6 +73,18 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         }
     }
 
+    /**
+     * Create an in-memory prefix index for a string column, must be called before the blockchain is started
+     *
+     * @param   column          Column name
+     * @return                  Prefix index
+     */
+    public final PrefixDbIndex createPrefixIndex(String column) {
+        PrefixDbIndex index = new PrefixDbIndex(table, column, multiversion);
+        prefixIndexes.add(index);
+        return index;
+    }
+
     public final T newEntity(DbKey dbKey) {
         boolean cache = db.isInTransaction();
         if (cache) {
@@ -83,6 +100,19 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         return t;
     }
 
+    public final T getCached(T t) {
+        if (!db.isInTransaction()) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        DbKey dbKey = dbKeyFactory.newKey(t);
+        T cachedT = (T) db.getCache(table).get(dbKey);
+        if (cachedT != null) {
+            return cachedT;
+        }
+        db.getCache(table).put(dbKey, t);
+        return t;
+    }
+
     public final T get(DbKey dbKey) {
         return get(dbKey, true);
     }
@@ -334,6 +364,10 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     }
 
     public final int getCount() {
+        return rowCounter.get(null, this::countRows);
+    }
+
+    private int countRows() {
         try (Connection con = db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT COUNT(*) FROM " + table
                      + (multiversion ? " WHERE latest = TRUE" : ""))) {
@@ -344,6 +378,13 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     }
 
     public final int getCount(DbClause dbClause) {
+        if (dbClause instanceof DbClause.NotNullClause) {
+            return rowCounter.get(((DbClause.NotNullClause)dbClause).getColumnName(), () -> countRows(dbClause));
+        }
+        return countRows(dbClause);
+    }
+
+    private int countRows(DbClause dbClause) {
         try (Connection con = db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT COUNT(*) FROM " + table
                      + " WHERE " + dbClause.getClause() + (multiversion ? " AND latest = TRUE" : ""))) {
@@ -434,6 +475,13 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         }
     }
 
+    @Override
+    public void truncate() {
+        super.truncate();
+        rowCounter.truncate();
+        prefixIndexes.forEach(PrefixDbIndex::truncate);
+    }
+
     @Override
     public void trim(int height) {
         if (multiversion) {
@@ -451,4 +499,12 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         }
     }
 
+    @Override
+    public final void createTriggers(Connection con) throws SQLException {
+        RowCountTrigger.createTrigger(con, table);
+        if (!prefixIndexes.isEmpty()) {
+            PrefixIndexTrigger.createTrigger(con, table);
+        }
+    }
+
 }
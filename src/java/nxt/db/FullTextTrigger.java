@@ -17,6 +17,7 @@
 package nxt.db;
 
 import nxt.Db;
+import nxt.Nxt;
 import nxt.util.Logger;
 import nxt.util.ReadWriteUpdateLock;
 import org.apache.lucene.analysis.Analyzer;
@@ -24,6 +25,7 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
@@ -33,6 +35,7 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
@@ -52,10 +55,13 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.StringJoiner;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 /**
@@ -127,6 +133,24 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
     /** Lucene analyzer (thread-safe) */
     private static final Analyzer analyzer = new StandardAnalyzer();
 
+    /** Index reader refresh interval (milliseconds) */
+    private static int refreshInterval;
+
+    /** Index commit interval (milliseconds) */
+    private static int commitInterval;
+
+    /** Index has changes not visible to the current index reader */
+    private static volatile boolean indexChanged = false;
+
+    /** Time of the last index reader refresh */
+    private static volatile long lastRefreshTime;
+
+    /** Time of the last index commit */
+    private static volatile long lastCommitTime;
+
+    /** Highest blockchain height for which all committed rows have been passed to the index writer */
+    private static final AtomicInteger indexedHeight = new AtomicInteger(-1);
+
     /** Index trigger is enabled */
     private volatile boolean isEnabled = false;
 
@@ -142,6 +166,9 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
     /** Database identifier column ordinal */
     private int dbColumn = -1;
 
+    /** Height column ordinal */
+    private int heightColumn = -1;
+
     /** Indexed column ordinals */
     private final List<Integer>indexColumns = new ArrayList<>();
 
@@ -159,6 +186,16 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
      * @param   active              TRUE to enable database triggers
      */
     public static void setActive(boolean active) {
+        if (active) {
+            refreshInterval = Nxt.getIntProperty("nxt.fullTextRefreshInterval", 1000);
+            commitInterval = Nxt.getIntProperty("nxt.fullTextCommitInterval", 60) * 1000;
+        } else {
+            try {
+                commitIndex(true);
+            } catch (SQLException exc) {
+                Logger.logErrorMessage("Unable to commit the Lucene index", exc);
+            }
+        }
         isActive = active;
         if (!active) {
             indexTriggers.values().forEach((trigger) -> trigger.isEnabled = false);
@@ -167,6 +204,92 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
         }
     }
 
+    /**
+     * Bring the Lucene index up to date with the database
+     *
+     * Index updates are committed periodically, so the index files might not contain the
+     * updates made by the last database transactions if the application was not shut down
+     * cleanly.  The index commit records the height of the indexed rows at the time of the
+     * commit, lowered to the rollback height by {@link #rollbackIndex(int)}, and just the rows
+     * above that height are reindexed.  The complete index is rebuilt if the index commit
+     * does not contain the height.
+     *
+     * This method should be called after the database has been initialized
+     *
+     * @param   conn                SQL connection
+     * @throws  SQLException        Unable to update the Lucene index
+     */
+    public static void recover(Connection conn) throws SQLException {
+        if (!isActive || indexTriggers.isEmpty()) {
+            return;
+        }
+        getIndexAccess(conn);
+        String indexHeight;
+        indexLock.readLock().lock();
+        try {
+            indexHeight = indexWriter.getCommitData().get("height");
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        if (indexHeight == null) {
+            Logger.logInfoMessage("Lucene search index height not available");
+            reindex(conn);
+            return;
+        }
+        int committedHeight = Integer.parseInt(indexHeight);
+        int blockchainHeight = getBlockchainHeight(conn);
+        if (committedHeight == blockchainHeight) {
+            indexedHeight.set(committedHeight);
+            return;
+        }
+        int height = Math.min(committedHeight, blockchainHeight);
+        indexedHeight.set(blockchainHeight);
+        Logger.logInfoMessage("Updating the Lucene search index from height " + height);
+        indexLock.readLock().lock();
+        try {
+            indexWriter.deleteDocuments(NumericRangeQuery.newIntRange("_HEIGHT", height, null, false, true));
+            indexChanged = true;
+        } catch (IOException exc) {
+            Logger.logErrorMessage("Unable to delete indexed rows", exc);
+            throw new SQLException("Unable to delete indexed rows", exc);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        for (FullTextTrigger trigger : indexTriggers.values()) {
+            trigger.reindexTable(conn, height);
+        }
+        refreshIndex(true);
+        commitIndex(true);
+        Logger.logInfoMessage("Lucene search index successfully updated");
+    }
+
+    /**
+     * Commit the Lucene index after the derived tables have been rolled back
+     *
+     * The rolled back rows have already been removed from the index writer when the rollback
+     * was committed, but the index files keep them until the next index commit.  The index is
+     * committed right away with the rollback height, so that {@link #recover(Connection)}
+     * reindexes the rows above that height even if blocks from a new fork are added before
+     * the application stops.
+     *
+     * This method should be called after the rollback has been committed and before the
+     * blockchain lock is released
+     *
+     * @param   height              Rollback height
+     */
+    public static void rollbackIndex(int height) {
+        if (!isActive || indexTriggers.isEmpty()) {
+            return;
+        }
+        indexedHeight.accumulateAndGet(height, Math::min);
+        try {
+            refreshIndex(true);
+            commitIndex(true);
+        } catch (SQLException exc) {
+            Logger.logErrorMessage("Unable to commit the Lucene index after rollback to height " + height, exc);
+        }
+    }
+
     /**
      * Initialize the fulltext support for a new database
      *
@@ -265,12 +388,15 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
             // Delete the current Lucene index
             //
             removeIndexFiles(conn);
+            indexedHeight.set(getBlockchainHeight(conn));
             //
             // Reindex each table
             //
             for (FullTextTrigger trigger : indexTriggers.values()) {
-                trigger.reindexTable(conn);
+                trigger.reindexTable(conn, -1);
             }
+            refreshIndex(true);
+            commitIndex(true);
         } catch (SQLException exc) {
             throw new SQLException("Unable to rebuild the Lucene index", exc);
         }
@@ -316,7 +442,9 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
             Logger.logErrorMessage("NRS fulltext trigger for table " + tableName + " was not initialized");
         } else {
             try {
-                trigger.reindexTable(conn);
+                trigger.reindexTable(conn, -1);
+                refreshIndex(true);
+                commitIndex(true);
                 Logger.logInfoMessage("Lucene search index created for table " + tableName);
             } catch (SQLException exc) {
                 Logger.logErrorMessage("Unable to create Lucene search index for table " + tableName);
@@ -422,6 +550,10 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
         result.addColumn("KEYS", Types.ARRAY, 0, 0);
         result.addColumn("SCORE", Types.FLOAT, 0, 0);
         //
+        // Make recent index updates visible if the refresh interval has elapsed
+        //
+        refreshIndex(false);
+        //
         // Perform the search
         //
         // The _QUERY field contains the table and row identification (schema.table;keyName;keyValue)
@@ -507,6 +639,8 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
                     columnTypes.add(columnType);
                     if (columnName.equals("DB_ID")) {
                         dbColumn = index;
+                    } else if (columnName.equals("HEIGHT")) {
+                        heightColumn = index;
                     }
                     index++;
                 }
@@ -601,7 +735,8 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
         if (!Db.db.isInTransaction()) {
             try {
                 commitRow(oldRow, newRow);
-                commitIndex();
+                refreshIndex(false);
+                commitIndex(false);
             } catch (SQLException exc) {
                 Logger.logErrorMessage("Unable to update the Lucene index", exc);
             }
@@ -633,22 +768,33 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
             // by the current thread.
             //
             boolean commit = false;
+            int height = -1;
             synchronized(tableUpdates) {
                 Iterator<TableUpdate> updateIt = tableUpdates.iterator();
                 while (updateIt.hasNext()) {
                     TableUpdate update = updateIt.next();
                     if (update.getThread() == thread) {
                         commitRow(update.getOldRow(), update.getNewRow());
+                        if (heightColumn >= 0 && update.getNewRow() != null) {
+                            height = Math.max(height, (Integer)update.getNewRow()[heightColumn]);
+                        }
                         updateIt.remove();
                         commit = true;
                     }
                 }
             }
             //
-            // Commit the index updates
+            // Raise the indexed height once all of the rows have been passed to the index writer.
+            // The rows deleted by a rollback are not counted since they are above the rollback height.
+            //
+            indexedHeight.accumulateAndGet(height, Math::max);
+            //
+            // Refresh the index reader and commit the index updates once the
+            // respective intervals have elapsed
             //
             if (commit) {
-                commitIndex();
+                refreshIndex(false);
+                commitIndex(false);
             }
         } catch (SQLException exc) {
             Logger.logErrorMessage("Unable to update the Lucene index", exc);
@@ -695,9 +841,10 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
      * Reindex the table
      *
      * @param   conn                SQL connection
+     * @param   height              Reindex rows above this height or -1 to reindex all rows
      * @throws  SQLException        Unable to reindex table
      */
-    private void reindexTable(Connection conn) throws SQLException {
+    private void reindexTable(Connection conn, int height) throws SQLException {
         if (indexColumns.isEmpty()) {
             return;
         }
@@ -706,10 +853,16 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
         //
         StringBuilder sb = new StringBuilder();
         sb.append("SELECT DB_ID");
+        if (heightColumn >= 0) {
+            sb.append(", HEIGHT");
+        }
         for (int index : indexColumns) {
             sb.append(", ").append(columnNames.get(index));
         }
         sb.append(" FROM ").append(tableName);
+        if (height >= 0 && heightColumn >= 0) {
+            sb.append(" WHERE HEIGHT > ").append(height);
+        }
         Object[] row = new Object[columnNames.size()];
         //
         // Index each row in the table
@@ -717,18 +870,17 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
         try (Statement qstmt = conn.createStatement();
                 ResultSet rs = qstmt.executeQuery(sb.toString())) {
             while (rs.next()) {
-                row[dbColumn] = rs.getObject(1);
-                int i = 2;
+                int i = 1;
+                row[dbColumn] = rs.getObject(i++);
+                if (heightColumn >= 0) {
+                    row[heightColumn] = rs.getObject(i++);
+                }
                 for (int index : indexColumns) {
                     row[index] = rs.getObject(i++);
                 }
                 indexRow(row);
             }
         }
-        //
-        // Commit the index updates
-        //
-        commitIndex();
     }
 
     /**
@@ -746,6 +898,9 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
             long now = System.currentTimeMillis();
             document.add(new TextField("_MODIFIED", DateTools.timeToString(now, DateTools.Resolution.SECOND), Field.Store.NO));
             document.add(new TextField("_TABLE", tableName, Field.Store.NO));
+            if (heightColumn >= 0) {
+                document.add(new IntField("_HEIGHT", (Integer)row[heightColumn], Field.Store.NO));
+            }
             StringJoiner sj = new StringJoiner(" ");
             for (int index : indexColumns) {
                 String data = (row[index] != null ? (String)row[index] : "NULL");
@@ -754,6 +909,7 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
             }
             document.add(new TextField("_DATA", sj.toString(), Field.Store.NO));
             indexWriter.updateDocument(new Term("_QUERY", query), document);
+            indexChanged = true;
         } catch (IOException exc) {
             Logger.logErrorMessage("Unable to index row", exc);
             throw new SQLException("Unable to index row", exc);
@@ -773,6 +929,7 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
         indexLock.readLock().lock();
         try {
             indexWriter.deleteDocuments(new Term("_QUERY", query));
+            indexChanged = true;
         } catch (IOException exc) {
             Logger.logErrorMessage("Unable to delete indexed row", exc);
             throw new SQLException("Unable to delete indexed row", exc);
@@ -782,20 +939,64 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
     }
 
     /**
-     * Commit the index updates
+     * Refresh the near-real-time index reader to make the index updates visible to searches
      *
-     * @throws  SQLException        Unable to commit index updates
+     * @param   force               TRUE to refresh even if the refresh interval has not elapsed
+     * @throws  SQLException        Unable to refresh the index reader
      */
-    private static void commitIndex() throws SQLException {
+    private static void refreshIndex(boolean force) throws SQLException {
+        long now = System.currentTimeMillis();
+        if (!indexChanged || (!force && now - lastRefreshTime < refreshInterval)) {
+            return;
+        }
         indexLock.writeLock().lock();
         try {
-            indexWriter.commit();
-            DirectoryReader newReader = DirectoryReader.openIfChanged(indexReader);
+            if (indexWriter == null) {
+                return;
+            }
+            indexChanged = false;
+            lastRefreshTime = now;
+            DirectoryReader newReader = DirectoryReader.openIfChanged(indexReader, indexWriter, true);
             if (newReader != null) {
                 indexReader.close();
                 indexReader = newReader;
                 indexSearcher = new IndexSearcher(indexReader);
             }
+        } catch (IOException exc) {
+            Logger.logErrorMessage("Unable to refresh the Lucene index reader", exc);
+            throw new SQLException("Unable to refresh the Lucene index reader", exc);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Commit the index updates to the index files
+     *
+     * The commit records the indexed height, which is used by {@link #recover(Connection)}
+     * to reindex just the uncommitted rows.  The indexed height is read while holding the
+     * index write lock, so every row counted in it is included in the commit.  It does not
+     * include a block whose database transaction has been committed but whose rows have not
+     * yet been passed to the index writer by the transaction callback.
+     *
+     * @param   force               TRUE to commit even if the commit interval has not elapsed
+     * @throws  SQLException        Unable to commit index updates
+     */
+    private static void commitIndex(boolean force) throws SQLException {
+        long now = System.currentTimeMillis();
+        if (indexWriter == null || (!force && now - lastCommitTime < commitInterval)) {
+            return;
+        }
+        indexLock.writeLock().lock();
+        try {
+            if (indexWriter == null) {
+                return;
+            }
+            lastCommitTime = now;
+            Map<String, String> commitData = new HashMap<>();
+            commitData.put("height", Integer.toString(indexedHeight.get()));
+            indexWriter.setCommitData(commitData);
+            indexWriter.commit();
         } catch (IOException exc) {
             Logger.logErrorMessage("Unable to commit Lucene index updates", exc);
             throw new SQLException("Unable to commit Lucene index updates", exc);
@@ -804,6 +1005,22 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
         }
     }
 
+    /**
+     * Get the current blockchain height
+     *
+     * @param   conn                SQL connection
+     * @return                      Blockchain height or -1 if there are no blocks
+     * @throws  SQLException        Unable to get the blockchain height
+     */
+    private static int getBlockchainHeight(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT MAX(height) FROM block")) {
+            rs.next();
+            int height = rs.getInt(1);
+            return rs.wasNull() ? -1 : height;
+        }
+    }
+
     /**
      * Get the Lucene index path
      *
@@ -864,8 +1081,10 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
                         document.add(new StringField("_QUERY", "_CONTROL_DOCUMENT_", Field.Store.YES));
                         indexWriter.updateDocument(new Term("_QUERY", "_CONTROL_DOCUMENT_"), document);
                         indexWriter.commit();
-                        indexReader = DirectoryReader.open(directory);
+                        indexReader = DirectoryReader.open(indexWriter, true);
                         indexSearcher = new IndexSearcher(indexReader);
+                        indexChanged = false;
+                        lastRefreshTime = lastCommitTime = System.currentTimeMillis();
                     }
                 } finally {
                     indexLock.writeLock().unlock();
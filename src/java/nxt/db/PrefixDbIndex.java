@@ -0,0 +1,296 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.db;
+
+import nxt.Db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory sorted index of the values of a string column of the latest table rows, used for
+ * exact and prefix lookups
+ * <p>
+ * The index is loaded from the database on first access and is then maintained by a database
+ * trigger, so it follows every change to the table including rollbacks. Changes made inside a
+ * database transaction are applied when the transaction is committed. A thread with uncommitted
+ * changes to the table, or a lookup made while the index cannot be loaded, uses the database.
+ * Create the index with {@link EntityDbTable#createPrefixIndex(String)}.
+ */
+public final class PrefixDbIndex implements TransactionalDb.TransactionCallback {
+
+    private static final TransactionalDb db = Db.db;
+
+    private static final DbClause NO_MATCH = new DbClause.FixedClause(" FALSE ");
+
+    private final String table;
+    private final String column;
+    private final boolean multiversion;
+    private final NavigableSet<String> keys = new ConcurrentSkipListSet<>();
+    private final ThreadLocal<Changes> localChanges = new ThreadLocal<>();
+    private boolean installed;
+    private volatile boolean loaded;
+    private int pendingTransactions;
+    private int version;
+
+    PrefixDbIndex(String table, String column, boolean multiversion) {
+        this.table = table.toUpperCase();
+        this.column = column.toUpperCase();
+        this.multiversion = multiversion;
+        PrefixIndexTrigger.addIndex(this);
+    }
+
+    /**
+     * Check if a value may be present in the latest rows
+     *
+     * @param   key             Column value
+     * @return                  FALSE if no latest row has this value
+     */
+    public boolean mightContain(String key) {
+        return !isAvailable() || keys.contains(key);
+    }
+
+    /**
+     * Return a range of the sorted column values starting with a prefix, using the same index
+     * conventions as the database queries
+     *
+     * @param   prefix          Value prefix
+     * @param   from            Index of the first value
+     * @param   to              Index of the last value or -1 for all values
+     * @return                  Value list
+     */
+    public List<String> getKeys(String prefix, int from, int to) {
+        if (!isAvailable()) {
+            return loadKeys(prefix, from, to);
+        }
+        int limit = to >= 0 && to >= from && to < Integer.MAX_VALUE ? to - from + 1 : Integer.MAX_VALUE;
+        List<String> result = new ArrayList<>();
+        int skip = from;
+        for (String key : keys.tailSet(prefix)) {
+            if (result.size() >= limit || !key.startsWith(prefix)) {
+                break;
+            }
+            if (skip > 0) {
+                skip--;
+            } else {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return a clause selecting the rows from the first to the last of a sorted value list
+     *
+     * @param   keys            Sorted values returned by {@link #getKeys(String, int, int)}
+     * @return                  Database clause
+     */
+    public DbClause getRangeClause(List<String> keys) {
+        if (keys.isEmpty()) {
+            return NO_MATCH;
+        }
+        return new DbClause.StringClause(column, DbClause.Op.GTE, keys.get(0))
+                .and(new DbClause.StringClause(column, DbClause.Op.LTE, keys.get(keys.size() - 1)));
+    }
+
+    /**
+     * Database transaction has been committed
+     */
+    @Override
+    public void commit() {
+        Changes changes = localChanges.get();
+        if (changes == null) {
+            return;
+        }
+        localChanges.remove();
+        synchronized (this) {
+            pendingTransactions--;
+            if (changes.truncated) {
+                keys.clear();
+            }
+            apply(changes.keys);
+            version++;
+        }
+    }
+
+    /**
+     * Database transaction has been rolled back
+     */
+    @Override
+    public void rollback() {
+        if (localChanges.get() == null) {
+            return;
+        }
+        localChanges.remove();
+        synchronized (this) {
+            pendingTransactions--;
+        }
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    synchronized void setInstalled(boolean installed) {
+        this.installed = installed;
+        if (!installed) {
+            loaded = false;
+            keys.clear();
+            version++;
+        }
+    }
+
+    /**
+     * Record a truncated table within the current database transaction
+     */
+    void truncate() {
+        Changes changes = getChanges();
+        changes.truncated = true;
+        changes.keys.clear();
+    }
+
+    /**
+     * Discard the index after the table has been changed without firing the trigger
+     */
+    synchronized void invalidate() {
+        loaded = false;
+        keys.clear();
+        version++;
+    }
+
+    void update(Object[] oldRow, Object[] newRow, Map<String, Integer> columnPositions) {
+        String oldKey = getKey(oldRow, columnPositions);
+        String newKey = getKey(newRow, columnPositions);
+        if (oldKey == null && newKey == null || oldKey != null && oldKey.equals(newKey)) {
+            return;
+        }
+        if (!db.isInTransaction()) {
+            synchronized (this) {
+                if (loaded) {
+                    if (oldKey != null) {
+                        keys.remove(oldKey);
+                    }
+                    if (newKey != null) {
+                        keys.add(newKey);
+                    }
+                }
+                version++;
+            }
+            return;
+        }
+        Changes changes = getChanges();
+        if (oldKey != null) {
+            changes.keys.put(oldKey, Boolean.FALSE);
+        }
+        if (newKey != null) {
+            changes.keys.put(newKey, Boolean.TRUE);
+        }
+    }
+
+    private String getKey(Object[] row, Map<String, Integer> columnPositions) {
+        if (row == null) {
+            return null;
+        }
+        if (multiversion && !Boolean.TRUE.equals(row[columnPositions.get("LATEST")])) {
+            return null;
+        }
+        Integer position = columnPositions.get(column);
+        return position != null ? (String)row[position] : null;
+    }
+
+    private void apply(Map<String, Boolean> changes) {
+        changes.forEach((key, present) -> {
+            if (present) {
+                keys.add(key);
+            } else {
+                keys.remove(key);
+            }
+        });
+    }
+
+    private Changes getChanges() {
+        Changes changes = localChanges.get();
+        if (changes == null) {
+            changes = new Changes();
+            synchronized (this) {
+                pendingTransactions++;
+            }
+            localChanges.set(changes);
+            db.registerCallback(this);
+        }
+        return changes;
+    }
+
+    private boolean isAvailable() {
+        if (loaded) {
+            return localChanges.get() == null;
+        }
+        int loadVersion;
+        synchronized (this) {
+            if (!installed || pendingTransactions > 0 || db.isInTransaction()) {
+                return false;
+            }
+            loadVersion = version;
+        }
+        List<String> loadedKeys = loadKeys("", 0, -1);
+        synchronized (this) {
+            if (loaded) {
+                return true;
+            }
+            if (version != loadVersion || pendingTransactions > 0) {
+                return false;
+            }
+            keys.addAll(loadedKeys);
+            loaded = true;
+        }
+        return true;
+    }
+
+    private List<String> loadKeys(String prefix, int from, int to) {
+        DbClause dbClause = new DbClause.LikeClause(column, prefix);
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT " + column + " FROM " + table
+                     + " WHERE " + dbClause.getClause() + (multiversion ? " AND latest = TRUE" : "")
+                     + " ORDER BY " + column + DbUtils.limitsClause(from, to))) {
+            int i = dbClause.set(pstmt, 1);
+            DbUtils.setLimits(i, pstmt, from, to);
+            List<String> result = new ArrayList<>();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getString(1));
+                }
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    private static final class Changes {
+        private final Map<String, Boolean> keys = new HashMap<>();
+        private boolean truncated;
+    }
+}
@@ -0,0 +1,159 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.db;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * PrefixIndexTrigger reports the changes to an indexed table to the prefix indexes
+ * defined for the table.  The trigger sees every inserted, updated and deleted row
+ * whether the change is made by the derived table or by SQL statements executed
+ * by the table owner.
+ *
+ * The table trigger is defined as follows:
+ *   CREATE TRIGGER PFX_table_name AFTER INSERT,UPDATE,DELETE ON table_name FOR EACH ROW CALL "nxt.db.PrefixIndexTrigger"
+ */
+public final class PrefixIndexTrigger implements Trigger {
+
+    /** Prefix indexes by table name */
+    private static final ConcurrentHashMap<String, List<PrefixDbIndex>> tableIndexes = new ConcurrentHashMap<>();
+
+    /** Table name */
+    private String tableName;
+
+    /** Column positions indexed by column name */
+    private final Map<String, Integer> columnPositions = new HashMap<>();
+
+    /**
+     * Register a prefix index
+     *
+     * @param   index               Prefix index
+     */
+    static void addIndex(PrefixDbIndex index) {
+        tableIndexes.computeIfAbsent(index.getTable(), name -> new CopyOnWriteArrayList<>()).add(index);
+    }
+
+    /**
+     * Discard the prefix indexes for a table after the table has been changed without firing the trigger
+     *
+     * @param   table               Table name
+     */
+    public static void invalidate(String table) {
+        List<PrefixDbIndex> indexes = tableIndexes.get(table.toUpperCase());
+        if (indexes != null) {
+            indexes.forEach(PrefixDbIndex::invalidate);
+        }
+    }
+
+    /**
+     * Create the trigger for an indexed table if it does not exist
+     *
+     * @param   conn                SQL connection
+     * @param   table               Table name
+     * @throws  SQLException        Unable to create the trigger
+     */
+    static void createTrigger(Connection conn, String table) throws SQLException {
+        String tableName = table.toUpperCase();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(String.format("CREATE TRIGGER IF NOT EXISTS PFX_%s AFTER INSERT,UPDATE,DELETE ON %s "
+                    + "FOR EACH ROW CALL \"%s\"", tableName, tableName, PrefixIndexTrigger.class.getName()));
+        }
+        List<PrefixDbIndex> indexes = tableIndexes.get(tableName);
+        if (indexes != null) {
+            indexes.forEach(index -> index.setInstalled(true));
+        }
+    }
+
+    /**
+     * Initialize the trigger (Trigger interface)
+     *
+     * @param   conn                Database connection
+     * @param   schema              Database schema name
+     * @param   trigger             Database trigger name
+     * @param   table               Database table name
+     * @param   before              TRUE if trigger is called before database operation
+     * @param   type                Trigger type
+     * @throws  SQLException        A SQL error occurred
+     */
+    @Override
+    public void init(Connection conn, String schema, String trigger, String table, boolean before, int type)
+                                    throws SQLException {
+        //
+        // Ignore the trigger if this is a temporary table copy
+        //
+        if (table.contains("_COPY_")) {
+            return;
+        }
+        try (ResultSet rs = conn.getMetaData().getColumns(null, schema, table, null)) {
+            while (rs.next()) {
+                columnPositions.put(rs.getString("COLUMN_NAME"), rs.getInt("ORDINAL_POSITION") - 1);
+            }
+        }
+        tableName = table;
+    }
+
+    /**
+     * Close the trigger (Trigger interface)
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Remove the trigger (Trigger interface)
+     */
+    @Override
+    public void remove() {
+        if (tableName != null) {
+            List<PrefixDbIndex> indexes = tableIndexes.get(tableName);
+            if (indexes != null) {
+                indexes.forEach(index -> index.setInstalled(false));
+            }
+        }
+    }
+
+    /**
+     * Trigger has fired (Trigger interface)
+     *
+     * @param   conn                Database connection
+     * @param   oldRow              The old row or null
+     * @param   newRow              The new row or null
+     */
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) {
+        if (tableName == null) {
+            return;
+        }
+        List<PrefixDbIndex> indexes = tableIndexes.get(tableName);
+        if (indexes != null) {
+            for (PrefixDbIndex index : indexes) {
+                index.update(oldRow, newRow, columnPositions);
+            }
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.db;
+
+import nxt.Db;
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+/**
+ * RowCountTrigger maintains the number of live rows of a derived table, so that the
+ * table row count does not require a table scan.  A row is live if it is the latest
+ * version of a multiversion table row or if it is a row of a table without versions.
+ * Besides the total count, the number of live rows with a non-null value can be
+ * maintained for individual columns.
+ *
+ * Each counted table has a database trigger defined, which sees every inserted, updated
+ * and deleted row whether the change is made by the derived table or by SQL statements
+ * executed by the table owner.  Row count changes made within a database transaction are
+ * applied when the transaction is committed and are discarded when it is rolled back.
+ * TRUNCATE TABLE does not fire triggers, so a truncated table must be reported using
+ * {@link Counter#truncate()} or {@link #invalidate(String)}.
+ *
+ * A count is loaded from the database the first time it is requested and is then
+ * maintained incrementally.  A count is not loaded while another thread has uncommitted
+ * changes to the table, the database query is used instead until the changes are resolved.
+ *
+ * The table trigger is defined as follows:
+ *   CREATE TRIGGER CNT_table_name AFTER INSERT,UPDATE,DELETE ON table_name FOR EACH ROW CALL "nxt.db.RowCountTrigger"
+ */
+public final class RowCountTrigger implements Trigger {
+
+    /** Table counters */
+    private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /** Table name */
+    private String tableName;
+
+    /** Column positions indexed by column name */
+    private final Map<String, Integer> columnPositions = new HashMap<>();
+
+    /**
+     * Return the counter for a table, creating it if necessary
+     *
+     * @param   table               Table name
+     * @param   multiversion        TRUE if the table has a LATEST column
+     * @return                      Table counter
+     */
+    static Counter getCounter(String table, boolean multiversion) {
+        return counters.computeIfAbsent(table.toUpperCase(), name -> new Counter(multiversion));
+    }
+
+    /**
+     * Discard the counts for a table after the table has been changed without firing the trigger
+     *
+     * @param   table               Table name
+     */
+    public static void invalidate(String table) {
+        Counter counter = counters.get(table.toUpperCase());
+        if (counter != null) {
+            counter.invalidate();
+        }
+    }
+
+    /**
+     * Create the trigger for a counted table if it does not exist
+     *
+     * @param   conn                SQL connection
+     * @param   table               Table name
+     * @throws  SQLException        Unable to create the trigger
+     */
+    static void createTrigger(Connection conn, String table) throws SQLException {
+        String tableName = table.toUpperCase();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(String.format("CREATE TRIGGER IF NOT EXISTS CNT_%s AFTER INSERT,UPDATE,DELETE ON %s "
+                    + "FOR EACH ROW CALL \"%s\"", tableName, tableName, RowCountTrigger.class.getName()));
+        }
+        Counter counter = counters.get(tableName);
+        if (counter != null) {
+            counter.setInstalled(true);
+        }
+    }
+
+    /**
+     * Initialize the trigger (Trigger interface)
+     *
+     * @param   conn                Database connection
+     * @param   schema              Database schema name
+     * @param   trigger             Database trigger name
+     * @param   table               Database table name
+     * @param   before              TRUE if trigger is called before database operation
+     * @param   type                Trigger type
+     * @throws  SQLException        A SQL error occurred
+     */
+    @Override
+    public void init(Connection conn, String schema, String trigger, String table, boolean before, int type)
+                                    throws SQLException {
+        //
+        // Ignore the trigger if this is a temporary table copy
+        //
+        if (table.contains("_COPY_")) {
+            return;
+        }
+        try (ResultSet rs = conn.getMetaData().getColumns(null, schema, table, null)) {
+            while (rs.next()) {
+                columnPositions.put(rs.getString("COLUMN_NAME"), rs.getInt("ORDINAL_POSITION") - 1);
+            }
+        }
+        tableName = table;
+    }
+
+    /**
+     * Close the trigger (Trigger interface)
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Remove the trigger (Trigger interface)
+     */
+    @Override
+    public void remove() {
+        if (tableName != null) {
+            Counter counter = counters.get(tableName);
+            if (counter != null) {
+                counter.setInstalled(false);
+            }
+        }
+    }
+
+    /**
+     * Trigger has fired (Trigger interface)
+     *
+     * @param   conn                Database connection
+     * @param   oldRow              The old row or null
+     * @param   newRow              The new row or null
+     */
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) {
+        if (tableName == null) {
+            return;
+        }
+        Counter counter = counters.get(tableName);
+        if (counter != null) {
+            counter.update(oldRow, newRow, columnPositions);
+        }
+    }
+
+    /**
+     * Live row counts for a table
+     */
+    static final class Counter implements TransactionalDb.TransactionCallback {
+
+        private static final TransactionalDb db = Db.db;
+
+        /** TRUE if the table has a LATEST column */
+        private final boolean multiversion;
+
+        /** Counted columns, the first entry counts all live rows */
+        private volatile String[] columns = new String[] {null};
+
+        /** Committed counts indexed like the counted columns, -1 if not loaded */
+        private int[] counts = new int[] {-1};
+
+        /** Number of transactions with uncommitted changes */
+        private int pendingTransactions;
+
+        /** Incremented whenever committed changes are applied */
+        private int version;
+
+        /** TRUE if the table trigger has been created */
+        private boolean installed;
+
+        /** Uncommitted changes for the current thread */
+        private final ThreadLocal<Changes> localChanges = new ThreadLocal<>();
+
+        private Counter(boolean multiversion) {
+            this.multiversion = multiversion;
+        }
+
+        /**
+         * Return the number of live rows as seen by the current thread
+         *
+         * @param   column          Column which must be non-null or null to count all live rows
+         * @param   loader          Counts the rows using a database query
+         * @return                  Number of rows
+         */
+        int get(String column, IntSupplier loader) {
+            boolean load = false;
+            int loadVersion = 0;
+            synchronized (this) {
+                if (installed) {
+                    int index = getIndex(column);
+                    int count = counts[index];
+                    if (db.isInTransaction() && localChanges.get() != null) {
+                        Changes changes = localChanges.get();
+                        if (index < changes.deltas.length) {
+                            if (changes.truncated) {
+                                return changes.deltas[index];
+                            }
+                            if (count >= 0) {
+                                return count + changes.deltas[index];
+                            }
+                        }
+                    } else if (count >= 0) {
+                        return count;
+                    } else if (pendingTransactions == 0 && !db.isInTransaction()) {
+                        load = true;
+                        loadVersion = version;
+                    }
+                }
+            }
+            int count = loader.getAsInt();
+            if (load) {
+                synchronized (this) {
+                    if (version == loadVersion && pendingTransactions == 0) {
+                        counts[getIndex(column)] = count;
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Record a truncated table within the current database transaction
+         */
+        void truncate() {
+            if (!db.isInTransaction()) {
+                throw new IllegalStateException("Not in transaction");
+            }
+            Changes changes = getChanges();
+            changes.truncated = true;
+            Arrays.fill(changes.deltas, 0);
+        }
+
+        /**
+         * Discard the committed counts
+         */
+        synchronized void invalidate() {
+            Arrays.fill(counts, -1);
+            version++;
+        }
+
+        /**
+         * Database transaction has been committed
+         */
+        @Override
+        public void commit() {
+            Changes changes = localChanges.get();
+            if (changes == null) {
+                return;
+            }
+            localChanges.remove();
+            synchronized (this) {
+                pendingTransactions--;
+                for (int i = 0; i < counts.length; i++) {
+                    if (i >= changes.deltas.length) {
+                        counts[i] = -1;
+                    } else if (changes.truncated) {
+                        counts[i] = changes.deltas[i];
+                    } else if (counts[i] >= 0) {
+                        counts[i] += changes.deltas[i];
+                    }
+                }
+                version++;
+            }
+        }
+
+        /**
+         * Database transaction has been rolled back
+         */
+        @Override
+        public void rollback() {
+            if (localChanges.get() == null) {
+                return;
+            }
+            localChanges.remove();
+            synchronized (this) {
+                pendingTransactions--;
+            }
+        }
+
+        private synchronized void setInstalled(boolean installed) {
+            this.installed = installed;
+            if (!installed) {
+                invalidate();
+            }
+        }
+
+        private void update(Object[] oldRow, Object[] newRow, Map<String, Integer> columnPositions) {
+            String[] countedColumns = columns;
+            int[] deltas = null;
+            for (int i = 0; i < countedColumns.length; i++) {
+                int delta = (isCounted(newRow, countedColumns[i], columnPositions) ? 1 : 0)
+                        - (isCounted(oldRow, countedColumns[i], columnPositions) ? 1 : 0);
+                if (delta != 0) {
+                    if (deltas == null) {
+                        deltas = new int[countedColumns.length];
+                    }
+                    deltas[i] = delta;
+                }
+            }
+            if (deltas == null) {
+                return;
+            }
+            if (!db.isInTransaction()) {
+                synchronized (this) {
+                    for (int i = 0; i < deltas.length; i++) {
+                        if (counts[i] >= 0) {
+                            counts[i] += deltas[i];
+                        }
+                    }
+                    version++;
+                }
+                return;
+            }
+            Changes changes = getChanges();
+            for (int i = 0; i < changes.deltas.length && i < deltas.length; i++) {
+                changes.deltas[i] += deltas[i];
+            }
+        }
+
+        private boolean isCounted(Object[] row, String column, Map<String, Integer> columnPositions) {
+            if (row == null) {
+                return false;
+            }
+            if (multiversion && !Boolean.TRUE.equals(row[columnPositions.get("LATEST")])) {
+                return false;
+            }
+            if (column == null) {
+                return true;
+            }
+            Integer position = columnPositions.get(column);
+            return position != null && row[position] != null;
+        }
+
+        private Changes getChanges() {
+            Changes changes = localChanges.get();
+            if (changes == null) {
+                synchronized (this) {
+                    changes = new Changes(columns.length);
+                    pendingTransactions++;
+                }
+                localChanges.set(changes);
+                db.registerCallback(this);
+            }
+            return changes;
+        }
+
+        private int getIndex(String column) {
+            String columnName = column != null ? column.toUpperCase() : null;
+            String[] countedColumns = columns;
+            for (int i = 0; i < countedColumns.length; i++) {
+                if (columnName == null ? countedColumns[i] == null : columnName.equals(countedColumns[i])) {
+                    return i;
+                }
+            }
+            columns = Arrays.copyOf(countedColumns, countedColumns.length + 1);
+            columns[countedColumns.length] = columnName;
+            counts = Arrays.copyOf(counts, countedColumns.length + 1);
+            counts[countedColumns.length] = -1;
+            return countedColumns.length;
+        }
+    }
+
+    /**
+     * Uncommitted row count changes for a database transaction
+     */
+    private static final class Changes {
+
+        /** Count changes indexed like the counted columns when the transaction started */
+        private final int[] deltas;
+
+        /** TRUE if the table has been truncated */
+        private boolean truncated;
+
+        private Changes(int columnCount) {
+            this.deltas = new int[columnCount];
+        }
+    }
+}
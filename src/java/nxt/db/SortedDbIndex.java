@@ -0,0 +1,263 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.db;
+
+import nxt.Db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+
+/**
+ * In-memory sorted index over the latest rows of a derived table, grouped by a long key
+ * <p>
+ * Groups are loaded from the database on first access. Changes made inside a database transaction
+ * are applied to private copies of the affected groups, which replace the shared groups when the
+ * transaction is committed and are discarded when it is rolled back. Groups which are empty when
+ * the transaction is committed are dropped, so that an index keyed by height does not keep the
+ * groups of past heights. The owner of the index must report every change made to the underlying
+ * rows, and must call {@link #clear()} after a table rollback or truncate. Elements must not be
+ * modified once they have been added to the index.
+ */
+public final class SortedDbIndex<T> implements TransactionalDb.TransactionCallback {
+
+    private static final TransactionalDb db = Db.db;
+
+    private final Comparator<? super T> comparator;
+    private final LongFunction<Collection<T>> loader;
+    private final Map<Long, NavigableSet<T>> groups = new ConcurrentHashMap<>();
+    private final ThreadLocal<Changes<T>> localChanges = new ThreadLocal<>();
+    private final Object lock = new Object();
+    private volatile int version;
+
+    /**
+     * Create an index
+     *
+     * @param   comparator      Element order, elements which compare equal are the same row
+     * @param   loader          Returns the latest rows for a group key
+     */
+    public SortedDbIndex(Comparator<? super T> comparator, LongFunction<Collection<T>> loader) {
+        this.comparator = comparator;
+        this.loader = loader;
+    }
+
+    /**
+     * Return the sorted elements of a group as seen by the current thread
+     *
+     * @param   key             Group key
+     * @return                  Unmodifiable sorted set
+     */
+    public NavigableSet<T> get(long key) {
+        return Collections.unmodifiableNavigableSet(getGroup(key));
+    }
+
+    /**
+     * Return a range of the sorted elements of a group, using the same index conventions as the database queries
+     *
+     * @param   key             Group key
+     * @param   from            Index of the first element
+     * @param   to              Index of the last element or -1 for all elements
+     * @return                  Element list
+     */
+    public List<T> get(long key, int from, int to) {
+        return get(key, t -> true, from, to);
+    }
+
+    /**
+     * Return a range of the sorted elements of a group which match a filter
+     *
+     * @param   key             Group key
+     * @param   filter          Element filter
+     * @param   from            Index of the first matching element
+     * @param   to              Index of the last matching element or -1 for all elements
+     * @return                  Element list
+     */
+    public List<T> get(long key, Predicate<? super T> filter, int from, int to) {
+        int limit = to >= 0 && to >= from && to < Integer.MAX_VALUE ? to - from + 1 : Integer.MAX_VALUE;
+        List<T> result = new ArrayList<>();
+        int skip = from;
+        for (T t : getGroup(key)) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (filter.test(t)) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    result.add(t);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the first element of a group
+     *
+     * @param   key             Group key
+     * @return                  First element or null if the group is empty
+     */
+    public T first(long key) {
+        NavigableSet<T> group = getGroup(key);
+        return group.isEmpty() ? null : group.first();
+    }
+
+    /**
+     * Add an element, replacing the element for the same row
+     *
+     * @param   key             Group key
+     * @param   t               Element
+     */
+    public void add(long key, T t) {
+        NavigableSet<T> group = getLocalGroup(key);
+        group.remove(t);
+        group.add(t);
+    }
+
+    /**
+     * Remove the element for a row
+     *
+     * @param   key             Group key
+     * @param   t               Element
+     */
+    public void remove(long key, T t) {
+        getLocalGroup(key).remove(t);
+    }
+
+    /**
+     * Discard all groups after the underlying table has been rolled back or truncated
+     */
+    public void clear() {
+        Changes<T> changes = getChanges();
+        changes.groups.clear();
+        changes.cleared = true;
+    }
+
+    /**
+     * Database transaction has been committed
+     */
+    @Override
+    public void commit() {
+        Changes<T> changes = localChanges.get();
+        if (changes == null) {
+            return;
+        }
+        localChanges.remove();
+        synchronized (lock) {
+            if (changes.cleared) {
+                groups.clear();
+            }
+            changes.groups.forEach((key, group) -> {
+                if (group.isEmpty()) {
+                    groups.remove(key);
+                } else {
+                    groups.put(key, group);
+                }
+            });
+            version++;
+        }
+    }
+
+    /**
+     * Database transaction has been rolled back
+     */
+    @Override
+    public void rollback() {
+        localChanges.remove();
+    }
+
+    private NavigableSet<T> getGroup(long key) {
+        if (db.isInTransaction()) {
+            Changes<T> changes = localChanges.get();
+            if (changes != null) {
+                NavigableSet<T> group = changes.groups.get(key);
+                if (group != null) {
+                    return group;
+                }
+                if (changes.cleared) {
+                    group = load(key);
+                    changes.groups.put(key, group);
+                    return group;
+                }
+            }
+            NavigableSet<T> group = groups.get(key);
+            if (group == null) {
+                group = load(key);
+                getChanges().groups.put(key, group);
+            }
+            return group;
+        }
+        NavigableSet<T> group = groups.get(key);
+        if (group == null) {
+            int loadVersion = version;
+            group = load(key);
+            synchronized (lock) {
+                if (version == loadVersion) {
+                    NavigableSet<T> current = groups.putIfAbsent(key, group);
+                    if (current != null) {
+                        group = current;
+                    }
+                }
+            }
+        }
+        return group;
+    }
+
+    private NavigableSet<T> getLocalGroup(long key) {
+        if (!db.isInTransaction()) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        Changes<T> changes = getChanges();
+        NavigableSet<T> group = changes.groups.get(key);
+        if (group == null) {
+            NavigableSet<T> shared = changes.cleared ? null : groups.get(key);
+            group = shared != null ? new TreeSet<>(shared) : load(key);
+            changes.groups.put(key, group);
+        }
+        return group;
+    }
+
+    private Changes<T> getChanges() {
+        Changes<T> changes = localChanges.get();
+        if (changes == null) {
+            changes = new Changes<>();
+            localChanges.set(changes);
+            db.registerCallback(this);
+        }
+        return changes;
+    }
+
+    private NavigableSet<T> load(long key) {
+        NavigableSet<T> group = new TreeSet<>(comparator);
+        group.addAll(loader.apply(key));
+        return group;
+    }
+
+    private static final class Changes<T> {
+        private final Map<Long, NavigableSet<T>> groups = new HashMap<>();
+        private boolean cleared;
+    }
+}
@@ -18,6 +18,7 @@ package nxt.db;
 
 import nxt.Nxt;
 import nxt.util.Logger;
+import nxt.util.Metrics;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -46,6 +47,10 @@ public class TransactionalDb extends BasicDb {
     private final ThreadLocal<Map<String,Map<DbKey,Object>>> transactionCaches = new ThreadLocal<>();
     private final ThreadLocal<Set<TransactionCallback>> transactionCallback = new ThreadLocal<>();
     private volatile long txTimes = 0;
+    private static final Metrics.Histogram transactionTime = Metrics.histogram("nxt_db_transaction_seconds",
+            "Duration of database transactions");
+    private static final Metrics.Histogram commitTime = Metrics.histogram("nxt_db_commit_seconds",
+            "Duration of database commits including commit callbacks");
     private volatile long txCount = 0;
     private volatile long statsTime = 0;
 
@@ -75,6 +80,7 @@ public class TransactionalDb extends BasicDb {
             con.setAutoCommit(false);
             con = new DbConnection(con);
             ((DbConnection)con).txStart = System.currentTimeMillis();
+            ((DbConnection)con).txStartNanos = Metrics.start();
             localConnection.set((DbConnection)con);
             transactionCaches.set(new HashMap<>());
             return con;
@@ -88,6 +94,7 @@ public class TransactionalDb extends BasicDb {
         if (con == null) {
             throw new IllegalStateException("Not in transaction");
         }
+        long start = Metrics.start();
         try {
             con.doCommit();
             Set<TransactionCallback> callbacks = transactionCallback.get();
@@ -98,6 +105,7 @@ public class TransactionalDb extends BasicDb {
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
+        commitTime.stop(start);
     }
 
     public void rollbackTransaction() {
@@ -126,6 +134,7 @@ public class TransactionalDb extends BasicDb {
         }
         localConnection.set(null);
         transactionCaches.set(null);
+        transactionTime.stop(((DbConnection)con).txStartNanos);
         long now = System.currentTimeMillis();
         long elapsed = now - ((DbConnection)con).txStart;
         if (elapsed >= txThreshold) {
@@ -204,6 +213,7 @@ public class TransactionalDb extends BasicDb {
     private final class DbConnection extends FilteredConnection {
 
         long txStart = 0;
+        long txStartNanos = 0;
 
         private DbConnection(Connection con) {
             super(con, factory);
@@ -204,6 +204,8 @@ public final class API {
 
             apiHandler.addServlet(DbShellServlet.class, "/dbshell");
 
+            apiHandler.addServlet(MetricsServlet.class, "/metrics");
+
             if (Nxt.getBooleanProperty("nxt.apiServerCORS")) {
                 FilterHolder filterHolder = apiHandler.addFilter(CrossOriginFilter.class, "/*", null);
                 filterHolder.setInitParameter("allowedHeaders", "*");
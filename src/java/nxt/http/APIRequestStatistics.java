@@ -0,0 +1,212 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.http;
+
+import nxt.Nxt;
+import nxt.util.Logger;
+import org.json.simple.JSONObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Processing statistics and concurrency limit for an API request type
+ * <p>
+ * The request latencies are counted in power of two buckets starting at 1 millisecond, and
+ * the reported percentiles are the upper bound of the bucket containing the percentile.
+ * The number of concurrent requests of a type is limited by nxt.apiMaxConcurrentRequests,
+ * which is a list of requestType:limit entries, and for the remaining request types by
+ * nxt.apiDefaultMaxConcurrentRequests. A limit of 0 allows any number of concurrent requests.
+ */
+final class APIRequestStatistics {
+
+    private static final int LATENCY_BUCKETS = 24;
+
+    private static final int defaultMaxConcurrentRequests = Nxt.getIntProperty("nxt.apiDefaultMaxConcurrentRequests");
+    private static final Map<String, Integer> maxConcurrentRequests = new HashMap<>();
+    static {
+        for (String entry : Nxt.getStringListProperty("nxt.apiMaxConcurrentRequests")) {
+            int pos = entry.indexOf(':');
+            try {
+                if (pos <= 0) {
+                    throw new NumberFormatException("Missing request limit");
+                }
+                maxConcurrentRequests.put(entry.substring(0, pos).trim(), Integer.valueOf(entry.substring(pos + 1).trim()));
+            } catch (NumberFormatException e) {
+                Logger.logWarningMessage("Invalid nxt.apiMaxConcurrentRequests entry '" + entry + "' ignored");
+            }
+        }
+    }
+
+    /**
+     * Create the statistics for a set of request types
+     *
+     * @param   requestTypes        Request types
+     * @return                      Unmodifiable map of statistics by request type
+     */
+    static Map<String, APIRequestStatistics> create(Iterable<String> requestTypes) {
+        Map<String, APIRequestStatistics> map = new HashMap<>();
+        for (String requestType : requestTypes) {
+            Integer limit = maxConcurrentRequests.get(requestType);
+            map.put(requestType, new APIRequestStatistics(requestType, limit != null ? limit : defaultMaxConcurrentRequests));
+        }
+        maxConcurrentRequests.keySet().stream().filter(requestType -> !map.containsKey(requestType)).forEach(requestType ->
+                Logger.logWarningMessage("Unknown request type '" + requestType + "' in nxt.apiMaxConcurrentRequests ignored"));
+        return Collections.unmodifiableMap(map);
+    }
+
+    private final String requestType;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final AtomicLong maxTime = new AtomicLong();
+    private final LongAdder lockWaitTime = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS);
+
+    private APIRequestStatistics(String requestType, int maxInFlight) {
+        this.requestType = requestType;
+        this.maxInFlight = Math.max(maxInFlight, 0);
+    }
+
+    /**
+     * Start processing a request
+     *
+     * @return                      FALSE if the concurrency limit has been reached
+     */
+    boolean enter() {
+        while (true) {
+            int count = inFlight.get();
+            if (maxInFlight > 0 && count >= maxInFlight) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(count, count + 1)) {
+                peakInFlight.accumulateAndGet(count + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Finish processing a request started by {@link #enter()}
+     *
+     * @param   millis              Processing time in milliseconds
+     */
+    void exit(long millis) {
+        inFlight.decrementAndGet();
+        calls.increment();
+        totalTime.add(millis);
+        maxTime.accumulateAndGet(millis, Math::max);
+        int bucket = millis <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(millis - 1);
+        latencies.incrementAndGet(Math.min(bucket, LATENCY_BUCKETS - 1));
+    }
+
+    /**
+     * Record an exception thrown while processing a request
+     */
+    void addException() {
+        exceptions.increment();
+    }
+
+    /**
+     * Record the time spent waiting for the blockchain read lock
+     *
+     * @param   millis              Wait time in milliseconds
+     */
+    void addLockWaitTime(long millis) {
+        lockWaitTime.add(millis);
+    }
+
+    /**
+     * Record the size of a response
+     *
+     * @param   rowCount            Number of array elements in the response
+     * @param   byteCount           Number of characters written
+     */
+    void addResponse(long rowCount, long byteCount) {
+        rows.add(rowCount);
+        responseBytes.add(byteCount);
+    }
+
+    /**
+     * Check if any requests have been processed or rejected
+     *
+     * @return                      TRUE if the request type has been used
+     */
+    boolean isUsed() {
+        return calls.sum() != 0 || rejected.sum() != 0 || inFlight.get() != 0;
+    }
+
+    /**
+     * Return the statistics as a JSON object
+     *
+     * @return                      JSON object
+     */
+    JSONObject getJSON() {
+        long[] counts = new long[LATENCY_BUCKETS];
+        long count = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            counts[i] = latencies.get(i);
+            count += counts[i];
+        }
+        JSONObject json = new JSONObject();
+        json.put("requestType", requestType);
+        json.put("calls", count);
+        json.put("rejected", rejected.sum());
+        json.put("exceptions", exceptions.sum());
+        json.put("inFlight", inFlight.get());
+        json.put("peakInFlight", peakInFlight.get());
+        json.put("maxInFlight", maxInFlight);
+        json.put("totalTime", totalTime.sum());
+        json.put("averageTime", count != 0 ? totalTime.sum() / count : 0);
+        json.put("maxTime", maxTime.get());
+        json.put("p50Time", getPercentile(counts, count, 50));
+        json.put("p90Time", getPercentile(counts, count, 90));
+        json.put("p99Time", getPercentile(counts, count, 99));
+        json.put("lockWaitTime", lockWaitTime.sum());
+        json.put("rows", rows.sum());
+        json.put("responseBytes", responseBytes.sum());
+        return json;
+    }
+
+    private static long getPercentile(long[] counts, long count, int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long threshold = (count * percentile + 99) / 100;
+        long sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += counts[i];
+            if (sum >= threshold) {
+                return 1L << i;
+            }
+        }
+        return 1L << (counts.length - 1);
+    }
+}
@@ -0,0 +1,301 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.http;
+
+import nxt.Block;
+import nxt.BlockchainProcessor;
+import nxt.Nxt;
+import nxt.NxtException;
+import nxt.TransactionProcessor;
+import nxt.util.JSON;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Response cache for read-only API requests
+ * <p>
+ * A request handler allows caching by overriding {@link APIServlet.APIRequestHandler#allowResponseCache(HttpServletRequest)}.
+ * Responses are keyed by the request type and parameters and tagged with the id of the last block. A handler
+ * which reports unconfirmed state also overrides {@link APIServlet.APIRequestHandler#includesUnconfirmedState()}
+ * and its responses are tagged with the version of the unconfirmed transaction pool as well. A cached response
+ * is served only while its tag is current, and the tag is returned as the ETag so that a client can poll with
+ * If-None-Match and receive 304 Not Modified until the tag changes.
+ * <p>
+ * Cache misses are processed while holding the blockchain read lock, so the response always matches the block
+ * used for its tag. The cache is cleared when a block is pushed or popped and when a rescan completes. The cache
+ * size is set by nxt.apiResponseCacheSize in kilobytes of response text, and the cache is disabled if it is 0.
+ */
+final class APIResponseCache {
+
+    /** Maximum total response length in characters */
+    private static volatile long maxSize = (long)Nxt.getIntProperty("nxt.apiResponseCacheSize") * 1024;
+
+    /** Ignored request parameters */
+    private static final String[] ignoredParameters = new String[] {"random"};
+
+    /** Cached responses in access order */
+    private static final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+    /** Total response length of the cached responses */
+    private static long size;
+
+    /** Unconfirmed transaction pool version */
+    private static final AtomicLong unconfirmedVersion = new AtomicLong();
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder notModified = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    static {
+        BlockchainProcessor blockchainProcessor = Nxt.getBlockchainProcessor();
+        blockchainProcessor.addListener(block -> clear(), BlockchainProcessor.Event.BLOCK_PUSHED);
+        blockchainProcessor.addListener(block -> clear(), BlockchainProcessor.Event.BLOCK_POPPED);
+        blockchainProcessor.addListener(block -> clear(), BlockchainProcessor.Event.RESCAN_END);
+        TransactionProcessor transactionProcessor = Nxt.getTransactionProcessor();
+        transactionProcessor.addListener(transactions -> unconfirmedVersion.incrementAndGet(),
+                TransactionProcessor.Event.ADDED_UNCONFIRMED_TRANSACTIONS);
+        transactionProcessor.addListener(transactions -> unconfirmedVersion.incrementAndGet(),
+                TransactionProcessor.Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
+    }
+
+    private APIResponseCache() {} // never
+
+    /**
+     * Check if the response cache is enabled
+     *
+     * @return                      TRUE if the cache is enabled
+     */
+    static boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Set the maximum cache size, used by the tests to enable the cache
+     *
+     * @param   size                Maximum total response length in characters or 0 to disable the cache
+     */
+    static void setMaxSize(long size) {
+        maxSize = size;
+        clear();
+    }
+
+    /**
+     * Return the cache key for a request
+     *
+     * @param   req                 API request
+     * @return                      Cache key or null if the request cannot be cached
+     */
+    static String getKey(HttpServletRequest req) {
+        Map<String, String[]> parameters = req.getParameterMap();
+        if (parameters.containsKey("adminPassword")) {
+            return null;
+        }
+        String[] names = parameters.keySet().toArray(new String[parameters.size()]);
+        Arrays.sort(names);
+        StringBuilder sb = new StringBuilder(64);
+        for (String name : names) {
+            if (isIgnored(name)) {
+                continue;
+            }
+            for (String value : parameters.get(name)) {
+                sb.append(name).append('=').append(value).append('&');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Process a request using the cache
+     *
+     * @param   handler             API request handler
+     * @param   key                 Cache key returned by {@link #getKey(HttpServletRequest)}
+     * @param   req                 API request
+     * @param   resp                API response
+     * @return                      Response or null if the response has not been modified
+     * @throws  NxtException        Unable to process the request
+     */
+    static JSONStreamAware processRequest(APIServlet.APIRequestHandler handler, String key,
+                                          HttpServletRequest req, HttpServletResponse resp) throws NxtException {
+        resp.setHeader("Cache-Control", "no-cache, private");
+        String tag = getTag(handler);
+        if (matches(req.getHeader("If-None-Match"), tag)) {
+            notModified.increment();
+            resp.setHeader("ETag", "\"" + tag + "\"");
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return null;
+        }
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        if (entry != null && entry.tag.equals(tag)) {
+            hits.increment();
+            resp.setHeader("ETag", "\"" + tag + "\"");
+            return (JSONObject)copy(entry.response);
+        }
+        misses.increment();
+        Nxt.getBlockchain().readLock();
+        try {
+            tag = getTag(handler);
+            JSONStreamAware response = handler.processRequest(req, resp);
+            if (response instanceof JSONObject && ((JSONObject)response).get("errorCode") == null) {
+                JSONObject json = (JSONObject)response;
+                put(key, new Entry(tag, (JSONObject)copy(json), JSON.toJSONString(json).length()));
+                resp.setHeader("ETag", "\"" + tag + "\"");
+            }
+            return response;
+        } finally {
+            Nxt.getBlockchain().readUnlock();
+        }
+    }
+
+    /**
+     * Return the cache statistics
+     *
+     * @return                      JSON object
+     */
+    static JSONObject getStatistics() {
+        JSONObject json = new JSONObject();
+        json.put("maxSize", maxSize);
+        synchronized (cache) {
+            json.put("size", size);
+            json.put("entries", cache.size());
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long notModifiedCount = notModified.sum();
+        long total = hitCount + missCount + notModifiedCount;
+        json.put("hits", hitCount);
+        json.put("misses", missCount);
+        json.put("notModified", notModifiedCount);
+        json.put("evictions", evictions.sum());
+        json.put("hitRate", total != 0 ? (double)(hitCount + notModifiedCount) / total : 0.0);
+        return json;
+    }
+
+    private static String getTag(APIServlet.APIRequestHandler handler) {
+        Block lastBlock = Nxt.getBlockchain().getLastBlock();
+        String tag = lastBlock.getStringId();
+        return handler.includesUnconfirmedState() ? tag + "-" + unconfirmedVersion.get() : tag;
+    }
+
+    private static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String value : ifNoneMatch.split(",")) {
+            value = value.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.length() == tag.length() + 2 && value.charAt(0) == '"' && value.endsWith("\"") &&
+                    value.regionMatches(1, tag, 0, tag.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIgnored(String name) {
+        for (String ignored : ignoredParameters) {
+            if (ignored.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copy a response including its nested objects and arrays, so that neither the handler nor the
+     * servlet and its callers can change the cached response
+     *
+     * @param   value               Response value
+     * @return                      Value copy
+     */
+    @SuppressWarnings("unchecked")
+    private static Object copy(Object value) {
+        if (value instanceof Map) {
+            JSONObject json = new JSONObject();
+            ((Map<Object, Object>)value).forEach((name, element) -> json.put(name, copy(element)));
+            return json;
+        }
+        if (value instanceof List) {
+            List<Object> list = (List<Object>)value;
+            JSONArray json = new JSONArray();
+            json.ensureCapacity(list.size());
+            list.forEach(element -> json.add(copy(element)));
+            return json;
+        }
+        return value;
+    }
+
+    private static void put(String key, Entry entry) {
+        long maxSize = APIResponseCache.maxSize;
+        if (entry.length > maxSize / 4) {
+            return;
+        }
+        synchronized (cache) {
+            Entry previous = cache.put(key, entry);
+            if (previous != null) {
+                size -= previous.length;
+            }
+            size += entry.length;
+            Iterator<Entry> it = cache.values().iterator();
+            while (size > maxSize && it.hasNext()) {
+                size -= it.next().length;
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private static void clear() {
+        synchronized (cache) {
+            cache.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Cached response
+     */
+    private static final class Entry {
+
+        private final String tag;
+        private final JSONObject response;
+        private final int length;
+
+        private Entry(String tag, JSONObject response, int length) {
+            this.tag = tag;
+            this.response = response;
+            this.length = length;
+        }
+    }
+}
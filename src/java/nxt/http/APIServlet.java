@@ -19,11 +19,15 @@ package nxt.http;
 import nxt.Db;
 import nxt.Nxt;
 import nxt.NxtException;
+import nxt.util.CountingOutputWriter;
 import nxt.util.JSON;
 import nxt.util.Logger;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -42,6 +46,7 @@ import java.util.Set;
 import static nxt.http.JSONResponses.ERROR_INCORRECT_REQUEST;
 import static nxt.http.JSONResponses.ERROR_NOT_ALLOWED;
 import static nxt.http.JSONResponses.POST_REQUIRED;
+import static nxt.http.JSONResponses.REQUEST_TYPE_BUSY;
 import static nxt.http.JSONResponses.REQUIRED_BLOCK_NOT_FOUND;
 import static nxt.http.JSONResponses.REQUIRED_LAST_BLOCK_NOT_FOUND;
 
@@ -110,10 +115,19 @@ public final class APIServlet extends HttpServlet {
             return true;
         }
 
+        boolean allowResponseCache(HttpServletRequest req) {
+            return false;
+        }
+
+        boolean includesUnconfirmedState() {
+            return false;
+        }
+
     }
 
     private static final boolean enforcePost = Nxt.getBooleanProperty("nxt.apiServerEnforcePOST");
     static final Map<String,APIRequestHandler> apiRequestHandlers;
+    static final Map<String,APIRequestStatistics> apiRequestStatistics;
 
     static {
 
@@ -121,6 +135,7 @@ public final class APIServlet extends HttpServlet {
 
         map.put("approveTransaction", ApproveTransaction.instance);
         map.put("broadcastTransaction", BroadcastTransaction.instance);
+        map.put("broadcastTransactions", BroadcastTransactions.instance);
         map.put("calculateFullHash", CalculateFullHash.instance);
         map.put("cancelAskOrder", CancelAskOrder.instance);
         map.put("cancelBidOrder", CancelBidOrder.instance);
@@ -355,6 +370,7 @@ public final class APIServlet extends HttpServlet {
         map.put("dumpPeers", DumpPeers.instance);
         map.put("getLog", GetLog.instance);
         map.put("getStackTraces", GetStackTraces.instance);
+        map.put("getAPIRequestStatistics", GetAPIRequestStatistics.instance);
         map.put("retrievePrunedData", RetrievePrunedData.instance);
         map.put("retrievePrunedTransaction", RetrievePrunedTransaction.instance);
         map.put("setLogging", SetLogging.instance);
@@ -368,6 +384,7 @@ public final class APIServlet extends HttpServlet {
         map.put("detectMimeType", DetectMimeType.instance);
 
         apiRequestHandlers = Collections.unmodifiableMap(map);
+        apiRequestStatistics = APIRequestStatistics.create(apiRequestHandlers.keySet());
     }
 
     @Override
@@ -388,11 +405,11 @@ public final class APIServlet extends HttpServlet {
         resp.setContentType("text/plain; charset=UTF-8");
 
         JSONStreamAware response = JSON.emptyJSON;
+        APIRequestStatistics statistics = null;
+        long startTime = System.currentTimeMillis();
 
         try {
 
-            long startTime = System.currentTimeMillis();
-
             if (! API.isAllowed(req.getRemoteHost())) {
                 response = ERROR_NOT_ALLOWED;
                 return;
@@ -415,6 +432,13 @@ public final class APIServlet extends HttpServlet {
                 return;
             }
 
+            statistics = apiRequestStatistics.get(requestType);
+            if (!statistics.enter()) {
+                statistics = null;
+                response = REQUEST_TYPE_BUSY;
+                return;
+            }
+
             try {
                 if (apiRequestHandler.requirePassword()) {
                     API.verifyPassword(req);
@@ -424,7 +448,9 @@ public final class APIServlet extends HttpServlet {
                 final long requireLastBlockId = apiRequestHandler.allowRequiredBlockParameters() ?
                         ParameterParser.getUnsignedLong(req, "requireLastBlock", false) : 0;
                 if (requireBlockId != 0 || requireLastBlockId != 0) {
+                    long lockStartTime = System.currentTimeMillis();
                     Nxt.getBlockchain().readLock();
+                    statistics.addLockWaitTime(System.currentTimeMillis() - lockStartTime);
                 }
                 try {
                     try {
@@ -439,7 +465,13 @@ public final class APIServlet extends HttpServlet {
                             response = REQUIRED_LAST_BLOCK_NOT_FOUND;
                             return;
                         }
-                        response = apiRequestHandler.processRequest(req, resp);
+                        String cacheKey = requireBlockId == 0 && requireLastBlockId == 0 && apiRequestHandler.allowResponseCache(req)
+                                && APIResponseCache.isEnabled() ? APIResponseCache.getKey(req) : null;
+                        if (cacheKey != null) {
+                            response = APIResponseCache.processRequest(apiRequestHandler, cacheKey, req, resp);
+                        } else {
+                            response = apiRequestHandler.processRequest(req, resp);
+                        }
                         if (requireLastBlockId == 0 && requireBlockId != 0 && response instanceof JSONObject) {
                             ((JSONObject) response).put("lastBlock", Nxt.getBlockchain().getLastBlock().getStringId());
                         }
@@ -457,6 +489,7 @@ public final class APIServlet extends HttpServlet {
                 response = e.getErrorResponse();
             } catch (NxtException |RuntimeException e) {
                 Logger.logDebugMessage("Error processing API request", e);
+                statistics.addException();
                 JSONObject json = new JSONObject();
                 JSONData.putException(json, e);
                 response = JSON.prepare(json);
@@ -469,16 +502,80 @@ public final class APIServlet extends HttpServlet {
             }
         } catch (Exception e) {
             Logger.logErrorMessage("Error processing request", e);
+            if (statistics != null) {
+                statistics.addException();
+            }
             response = ERROR_INCORRECT_REQUEST;
         } finally {
+            if (statistics != null) {
+                // An asynchronous request is still in flight until its context completes.  The completion is
+                // deferred until we return, so the listener is always notified.
+                if (response == null && req.isAsyncStarted()) {
+                    req.getAsyncContext().addListener(new StatisticsListener(statistics, startTime));
+                } else {
+                    statistics.exit(System.currentTimeMillis() - startTime);
+                }
+            }
             // The response will be null if we created an asynchronous context
             if (response != null) {
-                try (Writer writer = resp.getWriter()) {
+                try (CountingOutputWriter writer = new CountingOutputWriter(resp.getWriter())) {
                     JSON.writeJSONString(response, writer);
+                    if (statistics != null) {
+                        statistics.addResponse(getRowCount(response), writer.getCount());
+                    }
                 }
             }
         }
 
     }
 
+    /**
+     * Finish the statistics for an asynchronous request when its context completes
+     */
+    private static final class StatisticsListener implements AsyncListener {
+
+        private final APIRequestStatistics statistics;
+        private final long startTime;
+
+        private StatisticsListener(APIRequestStatistics statistics, long startTime) {
+            this.statistics = statistics;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            statistics.exit(System.currentTimeMillis() - startTime);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+    }
+
+    /**
+     * Return the number of rows in a response, which is the total size of its top-level arrays
+     *
+     * @param   response            API response
+     * @return                      Row count
+     */
+    private static long getRowCount(JSONStreamAware response) {
+        long count = 0;
+        if (response instanceof JSONObject) {
+            for (Object value : ((JSONObject)response).values()) {
+                if (value instanceof JSONArray) {
+                    count += ((JSONArray)value).size();
+                }
+            }
+        }
+        return count;
+    }
+
 }
@@ -0,0 +1,165 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.http;
+
+import nxt.Constants;
+import nxt.Nxt;
+import nxt.NxtException;
+import nxt.Transaction;
+import nxt.util.Convert;
+import nxt.util.JSONReader;
+import nxt.util.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.json.simple.parser.ParseException;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static nxt.http.JSONResponses.incorrect;
+import static nxt.http.JSONResponses.missing;
+
+/**
+ * Bulk version of {@link nxt.http.BroadcastTransaction}.
+ * <p>
+ * {@link nxt.http.BroadcastTransactions} accepts a single parameter:<br>
+ * transactions - JSON array of at most {@link nxt.Constants#MAX_NUMBER_OF_TRANSACTIONS} signed transactions, each
+ * element being either the transaction JSON, a string with the hex transaction bytes, or an object with
+ * transactionBytes and prunableAttachmentJSON members<br>
+ * <p>
+ * Transactions are parsed and their signatures verified in parallel, then all of them are admitted to the
+ * unconfirmed pool in a single pass and relayed to peers in batched processTransactions messages.
+ * The response contains a transactions array with one result per submitted transaction, in the same order,
+ * holding either the transaction id and full hash, or the error for that transaction. Transactions which were
+ * already in the blockchain or in the unconfirmed pool are marked as known, and are counted in known instead of
+ * accepted.
+ */
+public final class BroadcastTransactions extends APIServlet.APIRequestHandler {
+
+    static final BroadcastTransactions instance = new BroadcastTransactions();
+
+    private BroadcastTransactions() {
+        super(new APITag[] {APITag.TRANSACTIONS}, "transactions");
+    }
+
+    @Override
+    JSONStreamAware processRequest(HttpServletRequest req) throws ParameterException {
+
+        String transactionsValue = Convert.emptyToNull(req.getParameter("transactions"));
+        if (transactionsValue == null) {
+            throw new ParameterException(missing("transactions"));
+        }
+        List<?> transactionsData;
+        try {
+            transactionsData = (JSONArray) JSONReader.parse(transactionsValue);
+        } catch (ParseException | RuntimeException e) {
+            throw new ParameterException(incorrect("transactions"));
+        }
+        if (transactionsData.size() > Constants.MAX_NUMBER_OF_TRANSACTIONS) {
+            throw new ParameterException(incorrect("transactions",
+                    "cannot contain more than " + Constants.MAX_NUMBER_OF_TRANSACTIONS + " transactions"));
+        }
+
+        List<Object> parsed = transactionsData.parallelStream().map(BroadcastTransactions::parseTransaction).collect(Collectors.toList());
+        List<Transaction> transactions = new ArrayList<>(parsed.size());
+        for (Object o : parsed) {
+            if (o instanceof Transaction) {
+                transactions.add((Transaction) o);
+            }
+        }
+        List<Transaction> knownTransactions = new ArrayList<>();
+        List<NxtException.ValidationException> results = Nxt.getTransactionProcessor().broadcast(transactions, knownTransactions);
+        Set<Transaction> known = Collections.newSetFromMap(new IdentityHashMap<>());
+        known.addAll(knownTransactions);
+
+        JSONArray responses = new JSONArray();
+        int accepted = 0;
+        int alreadyKnown = 0;
+        for (int i = 0, j = 0; i < parsed.size(); i++) {
+            Object o = parsed.get(i);
+            JSONObject json;
+            if (o instanceof Transaction) {
+                json = new JSONObject();
+                NxtException.ValidationException e = results.get(j++);
+                if (e == null) {
+                    json.put("transaction", ((Transaction) o).getStringId());
+                    json.put("fullHash", ((Transaction) o).getFullHash());
+                    if (known.contains(o)) {
+                        json.put("known", true);
+                        alreadyKnown += 1;
+                    } else {
+                        accepted += 1;
+                    }
+                } else {
+                    JSONData.putException(json, e, "Failed to broadcast transaction");
+                }
+            } else {
+                json = (JSONObject) o;
+            }
+            responses.add(json);
+        }
+        JSONObject response = new JSONObject();
+        response.put("transactions", responses);
+        response.put("accepted", accepted);
+        response.put("known", alreadyKnown);
+        return response;
+
+    }
+
+    /**
+     * Returns the built transaction, or the error response JSON if the transaction could not be parsed
+     */
+    private static Object parseTransaction(Object transactionData) {
+        try {
+            Transaction.Builder builder;
+            if (transactionData instanceof String) {
+                builder = Nxt.newTransactionBuilder(Convert.parseHexString((String) transactionData));
+            } else {
+                JSONObject json = (JSONObject) transactionData;
+                String transactionBytes = (String) json.get("transactionBytes");
+                if (transactionBytes != null) {
+                    builder = Nxt.newTransactionBuilder(Convert.parseHexString(transactionBytes), (JSONObject) json.get("prunableAttachmentJSON"));
+                } else {
+                    builder = Nxt.newTransactionBuilder(json);
+                }
+            }
+            return builder.build();
+        } catch (NxtException.ValidationException | RuntimeException e) {
+            Logger.logDebugMessage(e.getMessage(), e);
+            JSONObject response = new JSONObject();
+            JSONData.putException(response, e, "Incorrect transaction");
+            return response;
+        }
+    }
+
+    @Override
+    boolean requirePost() {
+        return true;
+    }
+
+    @Override
+    final boolean allowRequiredBlockParameters() {
+        return false;
+    }
+
+}
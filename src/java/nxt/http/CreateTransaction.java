@@ -24,7 +24,7 @@ import nxt.Nxt;
 import nxt.NxtException;
 import nxt.PhasingParams;
 import nxt.Transaction;
-import nxt.crypto.Crypto;
+import nxt.crypto.SigningContext;
 import nxt.util.Convert;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
@@ -180,10 +180,10 @@ abstract class CreateTransaction extends APIServlet.APIRequestHandler {
 
         JSONObject response = new JSONObject();
 
-        // shouldn't try to get publicKey from senderAccount as it may have not been set yet
-        byte[] publicKey = secretPhrase != null ? Crypto.getPublicKey(secretPhrase) : Convert.parseHexString(publicKeyValue);
-
-        try {
+        // the signing context derives the keys once, for both the sender public key and the signature
+        try (SigningContext signingContext = secretPhrase != null ? new SigningContext(secretPhrase) : null) {
+            // shouldn't try to get publicKey from senderAccount as it may have not been set yet
+            byte[] publicKey = signingContext != null ? signingContext.getPublicKey() : Convert.parseHexString(publicKeyValue);
             Transaction.Builder builder = Nxt.newTransactionBuilder(publicKey, amountNQT, feeNQT,
                     deadline, attachment).referencedTransactionFullHash(referencedTransactionFullHash);
             if (attachment.getTransactionType().canHaveRecipient()) {
@@ -196,7 +196,7 @@ abstract class CreateTransaction extends APIServlet.APIRequestHandler {
             builder.appendix(phasing);
             builder.appendix(prunablePlainMessage);
             builder.appendix(prunableEncryptedMessage);
-            Transaction transaction = builder.build(secretPhrase);
+            Transaction transaction = builder.build(secretPhrase, signingContext);
             try {
                 if (Math.addExact(amountNQT, transaction.getFeeNQT()) > senderAccount.getUnconfirmedBalanceNQT()) {
                     return NOT_ENOUGH_FUNDS;
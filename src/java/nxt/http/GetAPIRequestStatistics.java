@@ -0,0 +1,121 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.http;
+
+import nxt.util.Convert;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>The GetAPIRequestStatistics API will return the processing statistics
+ * for each API request type which has been used since the server was started.</p>
+ *
+ * <p>Request parameters:</p>
+ * <ul>
+ * <li>requestType - Return the statistics for this request type only (optional)</li>
+ * </ul>
+ *
+ * <p>Response parameters:</p>
+ * <ul>
+ * <li>requests - An array of request statistics objects</li>
+ * </ul>
+ *
+ * <p>Request statistics object (times are in milliseconds):</p>
+ * <ul>
+ * <li>requestType    - Request type</li>
+ * <li>calls          - Number of completed requests</li>
+ * <li>rejected       - Number of requests rejected by the concurrency limit</li>
+ * <li>exceptions     - Number of requests which failed with an exception</li>
+ * <li>inFlight       - Number of requests being processed</li>
+ * <li>peakInFlight   - Highest number of requests processed at the same time</li>
+ * <li>maxInFlight    - Concurrency limit or 0 if there is no limit</li>
+ * <li>totalTime      - Total processing time</li>
+ * <li>averageTime    - Average processing time</li>
+ * <li>maxTime        - Longest processing time</li>
+ * <li>p50Time        - Median processing time</li>
+ * <li>p90Time        - 90th percentile processing time</li>
+ * <li>p99Time        - 99th percentile processing time</li>
+ * <li>lockWaitTime   - Total time spent waiting for the blockchain read lock</li>
+ * <li>rows           - Total number of array elements returned</li>
+ * <li>responseBytes  - Total number of response characters written</li>
+ * </ul>
+ */
+public final class GetAPIRequestStatistics extends APIServlet.APIRequestHandler {
+
+    /** GetAPIRequestStatistics instance */
+    static final GetAPIRequestStatistics instance = new GetAPIRequestStatistics();
+
+    /**
+     * Create the GetAPIRequestStatistics instance
+     */
+    private GetAPIRequestStatistics() {
+        super(new APITag[] {APITag.DEBUG}, "requestType");
+    }
+
+    /**
+     * Process the GetAPIRequestStatistics API request
+     *
+     * @param   req                 API request
+     * @return                      API response
+     * @throws  ParameterException  Unknown request type
+     */
+    @Override
+    JSONStreamAware processRequest(HttpServletRequest req) throws ParameterException {
+        String requestType = Convert.emptyToNull(req.getParameter("requestType"));
+        JSONArray requestsJSON = new JSONArray();
+        if (requestType != null) {
+            APIRequestStatistics statistics = APIServlet.apiRequestStatistics.get(requestType);
+            if (statistics == null) {
+                throw new ParameterException(JSONResponses.incorrect("requestType"));
+            }
+            requestsJSON.add(statistics.getJSON());
+        } else {
+            Map<String, APIRequestStatistics> sorted = new TreeMap<>(APIServlet.apiRequestStatistics);
+            sorted.values().stream().filter(APIRequestStatistics::isUsed).forEach(statistics -> requestsJSON.add(statistics.getJSON()));
+        }
+        JSONObject response = new JSONObject();
+        response.put("requests", requestsJSON);
+        return response;
+    }
+
+    /**
+     * Require the administrator password
+     *
+     * @return                      TRUE if the admin password is required
+     */
+    @Override
+    boolean requirePassword() {
+        return true;
+    }
+
+    @Override
+    boolean allowRequiredBlockParameters() {
+        return false;
+    }
+
+    @Override
+    boolean requireBlockchain() {
+        return false;
+    }
+
+}
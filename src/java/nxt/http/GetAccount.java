@@ -131,4 +131,14 @@ public final class GetAccount extends APIServlet.APIRequestHandler {
 
     }
 
+    @Override
+    boolean allowResponseCache(HttpServletRequest req) {
+        return true;
+    }
+
+    @Override
+    boolean includesUnconfirmedState() {
+        return true;
+    }
+
 }
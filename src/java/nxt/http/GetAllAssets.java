@@ -50,4 +50,9 @@ public final class GetAllAssets extends APIServlet.APIRequestHandler {
         return response;
     }
 
+    @Override
+    boolean allowResponseCache(HttpServletRequest req) {
+        return true;
+    }
+
 }
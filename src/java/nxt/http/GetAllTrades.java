@@ -55,4 +55,9 @@ public final class GetAllTrades extends APIServlet.APIRequestHandler {
         return response;
     }
 
+    @Override
+    boolean allowResponseCache(HttpServletRequest req) {
+        return true;
+    }
+
 }
@@ -22,7 +22,6 @@ import nxt.NxtException;
 import nxt.Order;
 import nxt.Transaction;
 import nxt.TransactionType;
-import nxt.db.DbIterator;
 import nxt.util.Filter;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -61,15 +60,12 @@ public final class GetAskOrders extends APIServlet.APIRequestHandler {
         }
 
         JSONArray orders = new JSONArray();
-        try (DbIterator<Order.Ask> askOrders = Order.Ask.getSortedOrders(assetId, firstIndex, lastIndex)) {
-            while (askOrders.hasNext()) {
-                Order.Ask order = askOrders.next();
-                JSONObject orderJSON = JSONData.askOrder(order);
-                if (showExpectedCancellations && Arrays.binarySearch(cancellations, order.getId()) >= 0) {
-                    orderJSON.put("expectedCancellation", Boolean.TRUE);
-                }
-                orders.add(orderJSON);
+        for (Order.Ask order : Order.Ask.getSortedOrders(assetId, firstIndex, lastIndex)) {
+            JSONObject orderJSON = JSONData.askOrder(order);
+            if (showExpectedCancellations && Arrays.binarySearch(cancellations, order.getId()) >= 0) {
+                orderJSON.put("expectedCancellation", Boolean.TRUE);
             }
+            orders.add(orderJSON);
         }
 
         JSONObject response = new JSONObject();
@@ -78,4 +74,14 @@ public final class GetAskOrders extends APIServlet.APIRequestHandler {
 
     }
 
+    @Override
+    boolean allowResponseCache(HttpServletRequest req) {
+        return true;
+    }
+
+    @Override
+    boolean includesUnconfirmedState() {
+        return true;
+    }
+
 }
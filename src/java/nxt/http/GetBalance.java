@@ -35,4 +35,14 @@ public final class GetBalance extends APIServlet.APIRequestHandler {
         return JSONData.accountBalance(ParameterParser.getAccount(req), includeEffectiveBalance);
     }
 
+    @Override
+    boolean allowResponseCache(HttpServletRequest req) {
+        return true;
+    }
+
+    @Override
+    boolean includesUnconfirmedState() {
+        return true;
+    }
+
 }
@@ -22,7 +22,6 @@ import nxt.NxtException;
 import nxt.Order;
 import nxt.Transaction;
 import nxt.TransactionType;
-import nxt.db.DbIterator;
 import nxt.util.Filter;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -61,19 +60,26 @@ public final class GetBidOrders extends APIServlet.APIRequestHandler {
         }
 
         JSONArray orders = new JSONArray();
-        try (DbIterator<Order.Bid> bidOrders = Order.Bid.getSortedOrders(assetId, firstIndex, lastIndex)) {
-            while (bidOrders.hasNext()) {
-                Order.Bid order = bidOrders.next();
-                JSONObject orderJSON = JSONData.bidOrder(order);
-                if (showExpectedCancellations && Arrays.binarySearch(cancellations, order.getId()) >= 0) {
-                    orderJSON.put("expectedCancellation", Boolean.TRUE);
-                }
-                orders.add(orderJSON);
+        for (Order.Bid order : Order.Bid.getSortedOrders(assetId, firstIndex, lastIndex)) {
+            JSONObject orderJSON = JSONData.bidOrder(order);
+            if (showExpectedCancellations && Arrays.binarySearch(cancellations, order.getId()) >= 0) {
+                orderJSON.put("expectedCancellation", Boolean.TRUE);
             }
+            orders.add(orderJSON);
         }
         JSONObject response = new JSONObject();
         response.put("bidOrders", orders);
         return response;
     }
 
+    @Override
+    boolean allowResponseCache(HttpServletRequest req) {
+        return true;
+    }
+
+    @Override
+    boolean includesUnconfirmedState() {
+        return true;
+    }
+
 }
@@ -84,4 +84,10 @@ public final class GetBlock extends APIServlet.APIRequestHandler {
 
     }
 
+    @Override
+    boolean allowResponseCache(HttpServletRequest req) {
+        // prunable transaction data can be received after the block, without changing the last block
+        return !"true".equalsIgnoreCase(req.getParameter("includeTransactions"));
+    }
+
 }
\ No newline at end of file
@@ -58,4 +58,9 @@ public final class GetBlockId extends APIServlet.APIRequestHandler {
 
     }
 
+    @Override
+    boolean allowResponseCache(HttpServletRequest req) {
+        return true;
+    }
+
 }
\ No newline at end of file
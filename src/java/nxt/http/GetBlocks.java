@@ -60,4 +60,10 @@ public final class GetBlocks extends APIServlet.APIRequestHandler {
         return response;
     }
 
+    @Override
+    boolean allowResponseCache(HttpServletRequest req) {
+        // prunable transaction data can be received after the block, without changing the last block
+        return !"true".equalsIgnoreCase(req.getParameter("includeTransactions"));
+    }
+
 }
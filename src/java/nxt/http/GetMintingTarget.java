@@ -19,12 +19,9 @@ package nxt.http;
 import nxt.Currency;
 import nxt.CurrencyMinting;
 import nxt.NxtException;
-import nxt.util.Convert;
-import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
 import javax.servlet.http.HttpServletRequest;
-import java.math.BigInteger;
 
 /**
  * Currency miners can use this API to obtain their target hash value for minting currency units
@@ -47,14 +44,8 @@ public final class GetMintingTarget extends APIServlet.APIRequestHandler {
     @Override
     JSONStreamAware processRequest(HttpServletRequest req) throws NxtException {
         Currency currency = ParameterParser.getCurrency(req);
-        JSONObject json = new JSONObject();
-        json.put("currency", Long.toUnsignedString(currency.getId()));
         long units = ParameterParser.getLong(req, "units", 1, currency.getMaxSupply() - currency.getReserveSupply(), true);
-        BigInteger numericTarget = CurrencyMinting.getNumericTarget(currency, units);
-        json.put("difficulty", String.valueOf(BigInteger.ZERO.equals(numericTarget) ? -1 : BigInteger.valueOf(2).pow(256).subtract(BigInteger.ONE).divide(numericTarget)));
-        json.put("targetBytes", Convert.toHexString(CurrencyMinting.getTarget(numericTarget)));
-        json.put("counter", nxt.CurrencyMint.getCounter(currency.getId(), ParameterParser.getAccountId(req, true)));
-        return json;
+        return CurrencyMinting.getMintingTarget(currency, ParameterParser.getAccountId(req, true), units);
     }
 
 }
@@ -18,7 +18,6 @@ package nxt.http;
 
 import nxt.CurrencySellOffer;
 import nxt.db.DbIterator;
-import nxt.db.DbUtils;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
@@ -50,24 +49,21 @@ public final class GetSellOffers extends APIServlet.APIRequestHandler {
         JSONArray offerData = new JSONArray();
         response.put("offers", offerData);
 
-        DbIterator<CurrencySellOffer> offers= null;
-        try {
-            if (accountId == 0) {
-                offers = CurrencySellOffer.getCurrencyOffers(currencyId, availableOnly, firstIndex, lastIndex);
-            } else if (currencyId == 0) {
-                offers = CurrencySellOffer.getAccountOffers(accountId, availableOnly, firstIndex, lastIndex);
-            } else {
-                CurrencySellOffer offer = CurrencySellOffer.getOffer(currencyId, accountId);
-                if (offer != null) {
-                    offerData.add(JSONData.offer(offer));
+        if (accountId == 0) {
+            for (CurrencySellOffer offer : CurrencySellOffer.getCurrencyOffers(currencyId, availableOnly, firstIndex, lastIndex)) {
+                offerData.add(JSONData.offer(offer));
+            }
+        } else if (currencyId == 0) {
+            try (DbIterator<CurrencySellOffer> offers = CurrencySellOffer.getAccountOffers(accountId, availableOnly, firstIndex, lastIndex)) {
+                while (offers.hasNext()) {
+                    offerData.add(JSONData.offer(offers.next()));
                 }
-                return response;
             }
-            while (offers.hasNext()) {
-                offerData.add(JSONData.offer(offers.next()));
+        } else {
+            CurrencySellOffer offer = CurrencySellOffer.getOffer(currencyId, accountId);
+            if (offer != null) {
+                offerData.add(JSONData.offer(offer));
             }
-        } finally {
-            DbUtils.close(offers);
         }
 
         return response;
@@ -37,7 +37,9 @@ import nxt.Shuffling;
 import nxt.TaggedData;
 import nxt.Trade;
 import nxt.Vote;
+import nxt.crypto.Crypto;
 import nxt.peer.Peers;
+import nxt.util.Listeners;
 import nxt.util.UPnP;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
@@ -91,6 +93,10 @@ public final class GetState extends APIServlet.APIRequestHandler {
         }
         response.put("numberOfPeers", Peers.getAllPeers().size());
         response.put("numberOfActivePeers", Peers.getActivePeers().size());
+        response.put("peerRequests", Peers.getRequestStatistics());
+        response.put("rsCache", Crypto.getRSCacheStatistics());
+        response.put("asyncListeners", Listeners.getAsyncListenerStatistics());
+        response.put("apiResponseCache", APIResponseCache.getStatistics());
         response.put("numberOfUnlockedAccounts", Generator.getAllGenerators().size());
         response.put("availableProcessors", Runtime.getRuntime().availableProcessors());
         response.put("maxMemory", Runtime.getRuntime().maxMemory());
@@ -359,6 +359,14 @@ public final class JSONResponses {
         PRUNED_TRANSACTION = JSON.prepare(response);
     }
 
+    public static final JSONStreamAware REQUEST_TYPE_BUSY;
+    static {
+        JSONObject response = new JSONObject();
+        response.put("errorCode", 16);
+        response.put("errorDescription", "Too many concurrent requests of this type, please try again later");
+        REQUEST_TYPE_BUSY = JSON.prepare(response);
+    }
+
     static JSONStreamAware missing(String... paramNames) {
         JSONObject response = new JSONObject();
         response.put("errorCode", 3);
@@ -0,0 +1,55 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.http;
+
+import nxt.util.Metrics;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Metrics scrape endpoint
+ * <p>
+ * Returns the node metrics in the Prometheus text format. The request must come from an allowed
+ * API host and must include the administrator password unless password protection is disabled.
+ */
+public final class MetricsServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setHeader("Cache-Control", "no-cache, no-store, must-revalidate, private");
+        resp.setHeader("Pragma", "no-cache");
+        resp.setDateHeader("Expires", 0);
+        if (!API.isAllowed(req.getRemoteHost()) || !API.checkPassword(req)) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        if (!Metrics.isEnabled()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Metrics are not enabled");
+            return;
+        }
+        resp.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        try (Writer writer = resp.getWriter()) {
+            Metrics.write(writer);
+        }
+    }
+}
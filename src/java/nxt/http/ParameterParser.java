@@ -34,10 +34,10 @@ import nxt.Transaction;
 import nxt.crypto.Crypto;
 import nxt.crypto.EncryptedData;
 import nxt.util.Convert;
+import nxt.util.JSONReader;
 import nxt.util.Logger;
 import nxt.util.Search;
 import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
 import org.json.simple.parser.ParseException;
 
 import javax.servlet.ServletException;
@@ -537,7 +537,7 @@ final class ParameterParser {
         }
         if (transactionJSON != null) {
             try {
-                JSONObject json = (JSONObject) JSONValue.parseWithException(transactionJSON);
+                JSONObject json = (JSONObject) JSONReader.parse(transactionJSON);
                 return Nxt.newTransactionBuilder(json);
             } catch (NxtException.ValidationException | RuntimeException | ParseException e) {
                 Logger.logDebugMessage(e.getMessage(), e);
@@ -548,7 +548,7 @@ final class ParameterParser {
         } else {
             try {
                 byte[] bytes = Convert.parseHexString(transactionBytes);
-                JSONObject prunableAttachments = prunableAttachmentJSON == null ? null : (JSONObject)JSONValue.parseWithException(prunableAttachmentJSON);
+                JSONObject prunableAttachments = prunableAttachmentJSON == null ? null : (JSONObject)JSONReader.parse(prunableAttachmentJSON);
                 return Nxt.newTransactionBuilder(bytes, prunableAttachments);
             } catch (NxtException.ValidationException|RuntimeException | ParseException e) {
                 Logger.logDebugMessage(e.getMessage(), e);
@@ -18,6 +18,7 @@ package nxt.mint;
 
 import nxt.Attachment;
 import nxt.Constants;
+import nxt.Currency;
 import nxt.CurrencyMinting;
 import nxt.Nxt;
 import nxt.NxtException;
@@ -66,6 +67,8 @@ import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class MintWorker {
 
@@ -98,11 +101,20 @@ public class MintWorker {
         sslSocketFactory = sc.getSocketFactory();
     }
 
+    private static final long HASH_RATE_LOG_INTERVAL = 60;
+
     public static void main(String[] args) {
         MintWorker mintWorker = new MintWorker();
+        if (mintWorker.isInProcess) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Nxt::shutdown));
+            Nxt.init();
+        }
         mintWorker.mint();
     }
 
+    private final boolean isInProcess = Nxt.getBooleanProperty("nxt.mint.inProcess");
+    private final LongAdder hashCounter = new LongAdder();
+
     private void mint() {
         String currencyCode = Convert.emptyToNull(Nxt.getStringProperty("nxt.mint.currencyCode"));
         if (currencyCode == null) {
@@ -172,17 +184,21 @@ public class MintWorker {
     private JSONObject mintImpl(String secretPhrase, long accountId, long units, long currencyId, byte algorithm,
                                 long counter, byte[] target, long initialNonce, int threadPoolSize, ExecutorService executorService, BigInteger difficulty, boolean isSubmitted) {
         long startTime = System.currentTimeMillis();
+        hashCounter.reset();
         List<Callable<Long>> workersList = new ArrayList<>();
+        // split the 64-bit nonce space into one contiguous range per thread
+        long rangeSize = Long.divideUnsigned(-1L, threadPoolSize);
         for (int i=0; i < threadPoolSize; i++) {
-            HashSolver hashSolver = new HashSolver(algorithm, currencyId, accountId, counter, units, initialNonce + i, target, threadPoolSize);
+            HashSolver hashSolver = new HashSolver(algorithm, currencyId, accountId, counter, units, initialNonce + i * rangeSize,
+                    target, hashCounter);
             workersList.add(hashSolver);
         }
-        long solution = solve(executorService, workersList);
+        long solution = solve(executorService, workersList, startTime);
         long computationTime = System.currentTimeMillis() - startTime;
         if (computationTime == 0) {
             computationTime = 1;
         }
-        long hashes = solution - initialNonce;
+        long hashes = hashCounter.sum();
         float hashesPerDifficulty = BigInteger.valueOf(-1).equals(difficulty) ? 0 : (float) hashes / difficulty.floatValue();
         Logger.logInfoMessage("solution nonce %d unitsNQT %d counter %d computed hashes %d time [sec] %.2f hash rate [KH/Sec] %d actual time vs. expected %.2f is submitted %b",
                 solution, units, counter, hashes, (float) computationTime / 1000, hashes / computationTime, hashesPerDifficulty, isSubmitted);
@@ -196,12 +212,18 @@ public class MintWorker {
         return response;
     }
 
-    private long solve(Executor executor, Collection<Callable<Long>> solvers) {
+    private long solve(Executor executor, Collection<Callable<Long>> solvers, long startTime) {
         CompletionService<Long> ecs = new ExecutorCompletionService<>(executor);
         List<Future<Long>> futures = new ArrayList<>(solvers.size());
         solvers.forEach(solver -> futures.add(ecs.submit(solver)));
         try {
-            return ecs.take().get();
+            Future<Long> result;
+            while ((result = ecs.poll(HASH_RATE_LOG_INTERVAL, TimeUnit.SECONDS)) == null) {
+                long time = Math.max(System.currentTimeMillis() - startTime, 1);
+                long hashes = hashCounter.sum();
+                Logger.logInfoMessage("computed %d [MH] hash rate [KH/Sec] %d", hashes / 1000000, hashes / time);
+            }
+            return result.get();
         } catch (ExecutionException | InterruptedException e) {
             throw new IllegalStateException(e);
         } finally {
@@ -212,11 +234,26 @@ public class MintWorker {
     }
 
     private JSONObject currencyMint(String secretPhrase, long currencyId, long nonce, long units, long counter) {
-        JSONObject ecBlock = getECBlock();
         Attachment attachment = new Attachment.MonetarySystemCurrencyMinting(nonce, currencyId, units, counter);
         Transaction.Builder builder = Nxt.newTransactionBuilder(Crypto.getPublicKey(secretPhrase), 0, Constants.ONE_NXT,
-                (short) 120, attachment)
-                .timestamp(((Long) ecBlock.get("timestamp")).intValue())
+                (short) 120, attachment);
+        if (isInProcess) {
+            try {
+                Transaction transaction = builder.build(secretPhrase);
+                Nxt.getTransactionProcessor().broadcast(transaction);
+                JSONObject response = new JSONObject();
+                response.put("transaction", transaction.getStringId());
+                response.put("fullHash", transaction.getFullHash());
+                return response;
+            } catch (NxtException.ValidationException e) {
+                Logger.logInfoMessage("local broadcast failed", e);
+                JSONObject response = new JSONObject();
+                response.put("error", e.toString());
+                return response;
+            }
+        }
+        JSONObject ecBlock = getECBlock();
+        builder.timestamp(((Long) ecBlock.get("timestamp")).intValue())
                 .ecBlockHeight(((Long) ecBlock.get("ecBlockHeight")).intValue())
                 .ecBlockId(Convert.parseUnsignedLong((String) ecBlock.get("ecBlockId")));
         try {
@@ -234,6 +271,16 @@ public class MintWorker {
     }
 
     private JSONObject getCurrency(String currencyCode) {
+        if (isInProcess) {
+            Currency currency = Currency.getCurrencyByCode(currencyCode);
+            JSONObject response = new JSONObject();
+            if (currency != null) {
+                response.put("currency", Long.toUnsignedString(currency.getId()));
+                response.put("algorithm", (long) currency.getAlgorithm());
+                response.put("decimals", (long) currency.getDecimals());
+            }
+            return response;
+        }
         Map<String, String> params = new HashMap<>();
         params.put("requestType", "getCurrency");
         params.put("code", currencyCode);
@@ -241,6 +288,13 @@ public class MintWorker {
     }
 
     private JSONObject getMintingTarget(long currencyId, String rsAccount, long units) {
+        if (isInProcess) {
+            Currency currency = Currency.getCurrency(currencyId);
+            if (currency == null) {
+                throw new IllegalStateException("Unknown currency " + Long.toUnsignedString(currencyId));
+            }
+            return CurrencyMinting.getMintingTarget(currency, Convert.parseAccountId(rsAccount), units);
+        }
         Map<String, String> params = new HashMap<>();
         params.put("requestType", "getMintingTarget");
         params.put("currency", Long.toUnsignedString(currencyId));
@@ -335,43 +389,47 @@ public class MintWorker {
 
     private static class HashSolver implements Callable<Long> {
 
-        private final HashFunction hashFunction;
+        private static final int HASH_COUNT_BATCH = 1 << 12;
+
+        private final CurrencyMinting.Hasher hasher;
         private final long currencyId;
         private final long accountId;
         private final long counter;
         private final long units;
         private final long nonce;
         private final byte[] target;
-        private final int poolSize;
+        private final long[] targetWords;
+        private final LongAdder hashCounter;
 
         private HashSolver(byte algorithm, long currencyId, long accountId, long counter, long units, long nonce,
-                           byte[] target, int poolSize) {
-            this.hashFunction = HashFunction.getHashFunction(algorithm);
+                           byte[] target, LongAdder hashCounter) {
+            this.hasher = new CurrencyMinting.Hasher(HashFunction.getHashFunction(algorithm), currencyId, units, counter, accountId);
             this.currencyId = currencyId;
             this.accountId = accountId;
             this.counter = counter;
             this.units = units;
             this.nonce = nonce;
             this.target = target;
-            this.poolSize = poolSize;
+            this.targetWords = CurrencyMinting.getTargetWords(target);
+            this.hashCounter = hashCounter;
         }
 
         @Override
         public Long call() {
             long n = nonce;
             while (!Thread.currentThread().isInterrupted()) {
-                byte[] hash = CurrencyMinting.getHash(hashFunction, n, currencyId, units, counter, accountId);
-                if (CurrencyMinting.meetsTarget(hash, target)) {
-                    Logger.logDebugMessage("%s found solution hash %s nonce %d currencyId %d units %d counter %d accountId %d" +
-                            " hash %s meets target %s",
-                            Thread.currentThread().getName(), hashFunction, n, currencyId, units, counter, accountId,
-                            Arrays.toString(hash), Arrays.toString(target));
-                    return n;
-                }
-                n+=poolSize;
-                if (((n - nonce) % (poolSize * 1000000)) == 0) {
-                    Logger.logInfoMessage("%s computed %d [MH]", Thread.currentThread().getName(), (n - nonce) / poolSize / 1000000);
+                for (int i = 0; i < HASH_COUNT_BATCH; i++, n++) {
+                    byte[] hash = hasher.hash(n);
+                    if (CurrencyMinting.meetsTarget(hash, targetWords)) {
+                        hashCounter.add(i + 1);
+                        Logger.logDebugMessage("%s found solution hash %s nonce %d currencyId %d units %d counter %d accountId %d" +
+                                " hash %s meets target %s",
+                                Thread.currentThread().getName(), hasher.getHashFunction(), n, currencyId, units, counter, accountId,
+                                Arrays.toString(hash), Arrays.toString(target));
+                        return n;
+                    }
                 }
+                hashCounter.add(HASH_COUNT_BATCH);
             }
             return null;
         }
@@ -56,4 +56,9 @@ final class AddPeers extends PeerServlet.PeerRequestHandler {
         return false;
     }
 
+    @Override
+    RequestPriority getPriority() {
+        return RequestPriority.LOW;
+    }
+
 }
@@ -28,6 +28,8 @@ final class Errors {
     final static String MAX_INBOUND_CONNECTIONS = "Maximum number of inbound connections exceeded";
     final static String TOO_MANY_BLOCKS_REQUESTED = "Too many blocks requested";
     final static String DOWNLOADING = "Blockchain download in progress";
+    final static String INVALID_COMPACT_BLOCK = "Invalid compact block";
+    final static String BUSY = "Too many pending requests, try again later";
 
     private Errors() {} // never
 }
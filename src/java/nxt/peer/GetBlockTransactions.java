@@ -0,0 +1,77 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.peer;
+
+import nxt.Block;
+import nxt.Nxt;
+import nxt.Transaction;
+import nxt.util.Convert;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Get the transactions of a block announced as a compact block
+ *
+ * The transactions are returned in the order of the requested transaction identifiers.
+ * No transactions are returned if the block is not in the blockchain or if any of
+ * the requested transactions is not in the block.
+ */
+final class GetBlockTransactions extends PeerServlet.PeerRequestHandler {
+
+    static final GetBlockTransactions instance = new GetBlockTransactions();
+
+    private GetBlockTransactions() {}
+
+    @Override
+    JSONStreamAware processRequest(JSONObject request, Peer peer) {
+        JSONObject response = new JSONObject();
+        JSONArray transactionArray = new JSONArray();
+        long blockId = Convert.parseUnsignedLong((String)request.get("blockId"));
+        List<String> transactionIds = (List<String>)request.get("transactionIds");
+        Block block = Nxt.getBlockchain().getBlock(blockId);
+        if (block != null && transactionIds != null) {
+            Map<Long, Transaction> blockTransactions = new HashMap<>();
+            block.getTransactions().forEach(transaction -> blockTransactions.put(transaction.getId(), transaction));
+            for (String transactionId : transactionIds) {
+                Transaction transaction = blockTransactions.get(Convert.parseUnsignedLong(transactionId));
+                if (transaction == null) {
+                    transactionArray.clear();
+                    break;
+                }
+                transactionArray.add(transaction.getJSONObject());
+            }
+        }
+        response.put("transactions", transactionArray);
+        return response;
+    }
+
+    @Override
+    boolean rejectWhileDownloading() {
+        return true;
+    }
+
+    @Override
+    RequestPriority getPriority() {
+        return RequestPriority.HIGH;
+    }
+
+}
@@ -108,4 +108,9 @@ final class GetInfo extends PeerServlet.PeerRequestHandler {
         return false;
     }
 
+    @Override
+    RequestPriority getPriority() {
+        return RequestPriority.LOW;
+    }
+
 }
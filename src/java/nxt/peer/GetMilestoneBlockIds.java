@@ -97,4 +97,9 @@ final class GetMilestoneBlockIds extends PeerServlet.PeerRequestHandler {
         return true;
     }
 
+    @Override
+    RequestPriority getPriority() {
+        return RequestPriority.HIGH;
+    }
+
 }
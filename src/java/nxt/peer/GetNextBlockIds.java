@@ -54,4 +54,9 @@ final class GetNextBlockIds extends PeerServlet.PeerRequestHandler {
         return true;
     }
 
+    @Override
+    RequestPriority getPriority() {
+        return RequestPriority.HIGH;
+    }
+
 }
@@ -74,4 +74,9 @@ final class GetNextBlocks extends PeerServlet.PeerRequestHandler {
         return true;
     }
 
+    @Override
+    RequestPriority getPriority() {
+        return RequestPriority.HIGH;
+    }
+
 }
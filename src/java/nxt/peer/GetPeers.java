@@ -48,4 +48,9 @@ final class GetPeers extends PeerServlet.PeerRequestHandler {
         return false;
     }
 
+    @Override
+    RequestPriority getPriority() {
+        return RequestPriority.LOW;
+    }
+
 }
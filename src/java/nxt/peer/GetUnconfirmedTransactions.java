@@ -60,4 +60,9 @@ final class GetUnconfirmedTransactions extends PeerServlet.PeerRequestHandler {
         return true;
     }
 
+    @Override
+    RequestPriority getPriority() {
+        return RequestPriority.LOW;
+    }
+
 }
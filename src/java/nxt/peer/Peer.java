@@ -19,6 +19,8 @@ package nxt.peer;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface Peer extends Comparable<Peer> {
 
     enum State {
@@ -29,7 +31,8 @@ public interface Peer extends Comparable<Peer> {
         HALLMARK(1),                    // Hallmarked node
         PRUNABLE(2),                    // Stores expired prunable messages
         API(4),                         // Provides open API access over http
-        API_SSL(8);                     // Provides open API access over https
+        API_SSL(8),                     // Provides open API access over https
+        COMPACT_BLOCKS(16);             // Accepts compact block announcements
 
         private final long code;        // Service code - must be a power of 2
 
@@ -104,4 +107,6 @@ public interface Peer extends Comparable<Peer> {
 
     JSONObject send(JSONStreamAware request, int maxResponseSize);
 
+    CompletableFuture<JSONObject> sendAsync(JSONStreamAware request, int maxResponseSize);
+
 }
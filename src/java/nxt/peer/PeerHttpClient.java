@@ -0,0 +1,699 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.peer;
+
+import nxt.NxtException;
+import nxt.util.Logger;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpParser;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.io.AbstractConnection;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.ManagedSelector;
+import org.eclipse.jetty.io.SelectChannelEndPoint;
+import org.eclipse.jetty.io.SelectorManager;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * PeerHttpClient sends peer requests using non-blocking HTTP connections
+ *
+ * The connections are managed by a selector and the responses are processed as they arrive,
+ * so a request does not occupy a thread while waiting for the response.  Connections are kept
+ * open until they have been idle for the peer read timeout.  Up to two connections are opened
+ * to the same peer and additional requests are pipelined on the least busy connection.  A peer
+ * destination is removed when its last connection is closed and no requests are waiting.
+ *
+ * The response futures are completed by the client threads, so dependent actions should not block.
+ */
+final class PeerHttpClient {
+
+    /** Maximum number of connections to a peer */
+    private static final int MAX_CONNECTIONS = 2;
+
+    /** Input buffer size */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** Client threads */
+    private static QueuedThreadPool executor;
+
+    /** Client scheduler */
+    private static ScheduledExecutorScheduler scheduler;
+
+    /** Selector manager */
+    private static ClientSelectorManager selectorManager;
+
+    /** Start the HTTP client */
+    static {
+        try {
+            executor = new QueuedThreadPool(Math.max(8, Runtime.getRuntime().availableProcessors() * 2), 2);
+            executor.setName("PeerHttpClient");
+            executor.setDaemon(true);
+            executor.start();
+            scheduler = new ScheduledExecutorScheduler("PeerHttpClient-scheduler", true);
+            scheduler.start();
+            selectorManager = new ClientSelectorManager();
+            selectorManager.setConnectTimeout(Peers.connectTimeout);
+            selectorManager.start();
+        } catch (Exception exc) {
+            Logger.logErrorMessage("Unable to start peer HTTP client", exc);
+            selectorManager = null;
+        }
+    }
+
+    /** Destinations with open connections or waiting requests (host:port) */
+    private static final ConcurrentHashMap<String, Destination> destinations = new ConcurrentHashMap<>();
+
+    /**
+     * Check if the HTTP client is available
+     *
+     * @return                      TRUE if the client has been started
+     */
+    static boolean isAvailable() {
+        return selectorManager != null;
+    }
+
+    /**
+     * Send a POST request
+     *
+     * The future is completed with the response message, or with an I/O exception if the request
+     * fails or the peer does not return HTTP status 200.  The response is not read if the maximum
+     * response size is 0 and the future is then completed with null.
+     *
+     * @param   host                Peer host
+     * @param   port                Peer port
+     * @param   request             Request message
+     * @param   maxResponseSize     Maximum response size
+     * @return                      Response future
+     */
+    static CompletableFuture<String> post(String host, int port, String request, int maxResponseSize) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (selectorManager == null) {
+            future.completeExceptionally(new IOException("Peer HTTP client is not available"));
+            return future;
+        }
+        byte[] content = request.getBytes(StandardCharsets.UTF_8);
+        String header = "POST /nxt HTTP/1.1\r\n"
+                + "Host: " + host + ":" + port + "\r\n"
+                + "Accept-Encoding: gzip\r\n"
+                + "Content-Type: text/plain; charset=UTF-8\r\n"
+                + "Content-Length: " + content.length + "\r\n\r\n";
+        byte[] headerBytes = header.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer buf = ByteBuffer.allocate(headerBytes.length + content.length);
+        buf.put(headerBytes).put(content).flip();
+        Exchange exchange = new Exchange(buf, maxResponseSize, future);
+        String address = host + ":" + port;
+        while (!destinations.computeIfAbsent(address, key -> new Destination(host, port)).send(exchange)) {
+            // The destination has been removed, retry with a new one
+        }
+        return future;
+    }
+
+    /**
+     * Stop the HTTP client
+     */
+    static void shutdown() {
+        if (selectorManager != null) {
+            try {
+                selectorManager.stop();
+                scheduler.stop();
+                executor.stop();
+            } catch (Exception exc) {
+                Logger.logShutdownMessage("Unable to stop peer HTTP client", exc);
+            }
+        }
+    }
+
+    /**
+     * Selector manager for the client connections
+     */
+    private static class ClientSelectorManager extends SelectorManager {
+
+        /**
+         * Create the selector manager
+         */
+        private ClientSelectorManager() {
+            super(executor, scheduler, 1);
+        }
+
+        /**
+         * Create the end point for a new connection
+         *
+         * @param   channel             Socket channel
+         * @param   selector            Selector
+         * @param   key                 Selection key
+         * @return                      End point
+         */
+        @Override
+        protected EndPoint newEndPoint(SocketChannel channel, ManagedSelector selector, SelectionKey key) {
+            return new SelectChannelEndPoint(channel, selector, key, getScheduler(), Peers.readTimeout);
+        }
+
+        /**
+         * Create a new connection
+         *
+         * @param   channel             Socket channel
+         * @param   endPoint            End point
+         * @param   attachment          Connection destination
+         * @return                      Connection
+         */
+        @Override
+        public Connection newConnection(SocketChannel channel, EndPoint endPoint, Object attachment) {
+            return new HttpConnection(endPoint, (Destination)attachment);
+        }
+
+        /**
+         * Connection attempt failed
+         *
+         * @param   channel             Socket channel
+         * @param   exc                 Failure reason
+         * @param   attachment          Connection destination
+         */
+        @Override
+        protected void connectionFailed(SocketChannel channel, Throwable exc, Object attachment) {
+            ((Destination)attachment).connectionFailed(exc);
+        }
+    }
+
+    /**
+     * Connections to a peer
+     */
+    private static class Destination {
+
+        /** Peer host */
+        private final String host;
+
+        /** Peer port */
+        private final int port;
+
+        /** Resolved peer address */
+        private volatile InetSocketAddress resolvedAddress;
+
+        /** Open connections */
+        private final List<HttpConnection> connections = new ArrayList<>();
+
+        /** Requests waiting for a connection */
+        private final Queue<Exchange> waiting = new ArrayDeque<>();
+
+        /** Number of connection attempts in progress */
+        private int pendingConnections;
+
+        /** Destination has been removed */
+        private boolean removed;
+
+        /**
+         * Create a destination
+         *
+         * @param   host                Peer host
+         * @param   port                Peer port
+         */
+        private Destination(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        /**
+         * Send a request on an idle connection, on a new connection or pipelined on the least busy connection
+         *
+         * @param   exchange            Request exchange
+         * @return                      FALSE if the destination has been removed
+         */
+        private boolean send(Exchange exchange) {
+            boolean canConnect;
+            synchronized (this) {
+                if (removed) {
+                    return false;
+                }
+                HttpConnection connection = null;
+                for (HttpConnection c : connections) {
+                    if (connection == null || c.getPendingCount() < connection.getPendingCount()) {
+                        connection = c;
+                    }
+                }
+                canConnect = connections.size() + pendingConnections < MAX_CONNECTIONS;
+                if (connection != null && (connection.getPendingCount() == 0 || !canConnect)) {
+                    connection.send(exchange);
+                    return true;
+                }
+                waiting.add(exchange);
+                if (canConnect) {
+                    pendingConnections++;
+                }
+            }
+            if (canConnect) {
+                connect();
+            }
+            return true;
+        }
+
+        /**
+         * Open a new connection
+         * <p>
+         * The caller has already counted the connection as pending and must not hold the destination
+         * lock, since the peer host is resolved on the first connection
+         */
+        private void connect() {
+            SocketChannel channel = null;
+            try {
+                InetSocketAddress address = resolvedAddress;
+                if (address == null) {
+                    address = new InetSocketAddress(host, port);
+                    if (!address.isUnresolved()) {
+                        resolvedAddress = address;
+                    }
+                }
+                channel = SocketChannel.open();
+                channel.socket().setTcpNoDelay(true);
+                channel.configureBlocking(false);
+                if (channel.connect(address)) {
+                    selectorManager.accept(channel, this);
+                } else {
+                    selectorManager.connect(channel, this);
+                }
+            } catch (IOException | RuntimeException exc) {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignore) {}
+                }
+                executor.execute(() -> connectionFailed(exc));
+            }
+        }
+
+        /**
+         * Connection has been opened
+         *
+         * @param   connection          Connection
+         */
+        private synchronized void connectionOpened(HttpConnection connection) {
+            pendingConnections--;
+            connections.add(connection);
+            Exchange exchange;
+            while ((exchange = waiting.poll()) != null) {
+                connection.send(exchange);
+            }
+        }
+
+        /**
+         * Connection attempt failed
+         *
+         * @param   exc                 Failure reason
+         */
+        private void connectionFailed(Throwable exc) {
+            List<Exchange> failed = new ArrayList<>();
+            synchronized (this) {
+                pendingConnections--;
+                if (connections.isEmpty() && pendingConnections == 0) {
+                    failed.addAll(waiting);
+                    waiting.clear();
+                }
+                removeIfIdle();
+            }
+            failed.forEach(exchange -> exchange.fail(exc));
+        }
+
+        /**
+         * Connection has been closed
+         *
+         * @param   connection          Connection
+         */
+        private void connectionClosed(HttpConnection connection) {
+            boolean reconnect;
+            synchronized (this) {
+                connections.remove(connection);
+                reconnect = !waiting.isEmpty() && connections.size() + pendingConnections < MAX_CONNECTIONS;
+                if (reconnect) {
+                    pendingConnections++;
+                }
+                removeIfIdle();
+            }
+            if (reconnect) {
+                connect();
+            }
+        }
+
+        /**
+         * Remove the destination if it has no connections and no waiting requests
+         */
+        private void removeIfIdle() {
+            if (connections.isEmpty() && pendingConnections == 0 && waiting.isEmpty()) {
+                removed = true;
+                destinations.remove(host + ":" + port, this);
+            }
+        }
+    }
+
+    /**
+     * HTTP connection
+     */
+    private static class HttpConnection extends AbstractConnection implements HttpParser.ResponseHandler {
+
+        /** Connection destination */
+        private final Destination destination;
+
+        /** Response parser */
+        private final HttpParser parser = new HttpParser(this);
+
+        /** Input buffer */
+        private final ByteBuffer buffer = BufferUtil.allocate(BUFFER_SIZE);
+
+        /** Requests sent or waiting to be sent, in order */
+        private final Queue<Exchange> exchanges = new ConcurrentLinkedQueue<>();
+
+        /** Requests waiting to be written */
+        private final Queue<ByteBuffer> writes = new ArrayDeque<>();
+
+        /** Write in progress */
+        private boolean writing;
+
+        /** Write completion callback */
+        private final Callback writeCallback = new Callback() {
+            @Override
+            public void succeeded() {
+                writeNext();
+            }
+
+            @Override
+            public void failed(Throwable exc) {
+                closeCause = exc;
+                close();
+            }
+        };
+
+        /** Reason for closing the connection */
+        private volatile Throwable closeCause;
+
+        /** Current response status */
+        private int status;
+
+        /** Current response is compressed */
+        private boolean compressed;
+
+        /** Current response exceeds the maximum response size */
+        private boolean tooLarge;
+
+        /** Current response content */
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        /**
+         * Create the connection
+         *
+         * @param   endPoint            End point
+         * @param   destination         Connection destination
+         */
+        private HttpConnection(EndPoint endPoint, Destination destination) {
+            super(endPoint, executor);
+            this.destination = destination;
+        }
+
+        /**
+         * Return the number of requests waiting for a response
+         *
+         * @return                  Number of requests
+         */
+        private int getPendingCount() {
+            return exchanges.size();
+        }
+
+        /**
+         * Send a request
+         *
+         * @param   exchange        Request exchange
+         */
+        private void send(Exchange exchange) {
+            synchronized (this) {
+                exchanges.add(exchange);
+                if (writing) {
+                    writes.add(exchange.request);
+                    return;
+                }
+                writing = true;
+            }
+            getEndPoint().write(writeCallback, exchange.request);
+        }
+
+        /**
+         * Write the next request
+         */
+        private void writeNext() {
+            ByteBuffer request;
+            synchronized (this) {
+                request = writes.poll();
+                if (request == null) {
+                    writing = false;
+                    return;
+                }
+            }
+            getEndPoint().write(writeCallback, request);
+        }
+
+        /**
+         * Connection has been opened
+         */
+        @Override
+        public void onOpen() {
+            super.onOpen();
+            fillInterested();
+            destination.connectionOpened(this);
+        }
+
+        /**
+         * Connection has been closed
+         */
+        @Override
+        public void onClose() {
+            super.onClose();
+            destination.connectionClosed(this);
+            Throwable exc = closeCause;
+            if (exc == null) {
+                exc = new SocketException("Connection closed");
+            }
+            Exchange exchange;
+            while ((exchange = exchanges.poll()) != null) {
+                exchange.fail(exc);
+            }
+        }
+
+        /**
+         * Read timeout
+         *
+         * @return                  TRUE to close the connection
+         */
+        @Override
+        protected boolean onReadTimeout() {
+            closeCause = new SocketTimeoutException("Read timed out");
+            return true;
+        }
+
+        /**
+         * Response data is available
+         */
+        @Override
+        public void onFillable() {
+            try {
+                while (true) {
+                    int count = getEndPoint().fill(buffer);
+                    if (count > 0) {
+                        while (buffer.hasRemaining() && parser.parseNext(buffer)) {
+                            if (parser.isComplete()) {
+                                parser.reset();
+                            }
+                        }
+                        if (!buffer.hasRemaining()) {
+                            BufferUtil.clear(buffer);
+                        }
+                    } else if (count == 0) {
+                        fillInterested();
+                        return;
+                    } else {
+                        parser.atEOF();
+                        parser.parseNext(BufferUtil.EMPTY_BUFFER);
+                        close();
+                        return;
+                    }
+                }
+            } catch (IOException | RuntimeException exc) {
+                closeCause = exc;
+                close();
+            }
+        }
+
+        @Override
+        public boolean startResponse(HttpVersion version, int status, String reason) {
+            this.status = status;
+            compressed = false;
+            tooLarge = false;
+            content.reset();
+            return false;
+        }
+
+        @Override
+        public void parsedHeader(HttpField field) {
+            if (field.getHeader() == HttpHeader.CONTENT_ENCODING && "gzip".equalsIgnoreCase(field.getValue())) {
+                compressed = true;
+            }
+        }
+
+        @Override
+        public boolean headerComplete() {
+            return false;
+        }
+
+        @Override
+        public boolean content(ByteBuffer buf) {
+            Exchange exchange = exchanges.peek();
+            if (exchange == null || tooLarge || exchange.maxResponseSize <= 0) {
+                buf.position(buf.limit());
+            } else if (content.size() + buf.remaining() > exchange.maxResponseSize) {
+                tooLarge = true;
+                buf.position(buf.limit());
+            } else if (buf.hasArray()) {
+                content.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                buf.position(buf.limit());
+            } else {
+                while (buf.hasRemaining()) {
+                    content.write(buf.get());
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean messageComplete() {
+            Exchange exchange = exchanges.poll();
+            if (exchange != null) {
+                if (status != 200) {
+                    exchange.fail(new IOException("Peer responded with HTTP " + status));
+                } else if (tooLarge) {
+                    exchange.fail(new NxtException.NxtIOException("Maximum size exceeded: " + parser.getContentLength()));
+                } else {
+                    exchange.complete(content.toByteArray(), compressed);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void earlyEOF() {
+            closeCause = new EOFException("Unexpected end of HTTP response");
+        }
+
+        @Override
+        public void badMessage(int status, String reason) {
+            closeCause = new IOException("Invalid HTTP response: " + reason);
+            close();
+        }
+
+        @Override
+        public int getHeaderCacheSize() {
+            return 256;
+        }
+    }
+
+    /**
+     * Request and response exchange
+     */
+    private static class Exchange {
+
+        /** Request bytes */
+        private final ByteBuffer request;
+
+        /** Maximum response size */
+        private final int maxResponseSize;
+
+        /** Response future */
+        private final CompletableFuture<String> future;
+
+        /**
+         * Create an exchange
+         *
+         * @param   request             Request bytes
+         * @param   maxResponseSize     Maximum response size
+         * @param   future              Response future
+         */
+        private Exchange(ByteBuffer request, int maxResponseSize, CompletableFuture<String> future) {
+            this.request = request;
+            this.maxResponseSize = maxResponseSize;
+            this.future = future;
+        }
+
+        /**
+         * Complete the exchange with the response content
+         *
+         * @param   content             Response content
+         * @param   compressed          TRUE if the content is compressed
+         */
+        private void complete(byte[] content, boolean compressed) {
+            if (maxResponseSize <= 0) {
+                future.complete(null);
+                return;
+            }
+            if (!compressed) {
+                future.complete(new String(content, StandardCharsets.UTF_8));
+                return;
+            }
+            try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(content))) {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.length * 4);
+                byte[] buf = new byte[8192];
+                int count;
+                while ((count = inputStream.read(buf)) > 0) {
+                    outputStream.write(buf, 0, count);
+                    if (outputStream.size() > maxResponseSize) {
+                        throw new NxtException.NxtIOException("Maximum size exceeded: " + outputStream.size());
+                    }
+                }
+                future.complete(outputStream.toString("UTF-8"));
+            } catch (IOException exc) {
+                future.completeExceptionally(exc);
+            }
+        }
+
+        /**
+         * Complete the exchange with an exception
+         *
+         * @param   exc                 Failure reason
+         */
+        private void fail(Throwable exc) {
+            future.completeExceptionally(exc);
+        }
+    }
+}
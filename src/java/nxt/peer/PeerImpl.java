@@ -26,10 +26,10 @@ import nxt.util.CountingInputReader;
 import nxt.util.CountingInputStream;
 import nxt.util.CountingOutputWriter;
 import nxt.util.JSON;
+import nxt.util.JSONReader;
 import nxt.util.Logger;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
-import org.json.simple.JSONValue;
 import org.json.simple.parser.ParseException;
 
 import java.io.BufferedReader;
@@ -53,6 +53,8 @@ import java.net.UnknownHostException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.zip.GZIPInputStream;
 
 final class PeerImpl implements Peer {
@@ -114,12 +116,15 @@ final class PeerImpl implements Peer {
         }
         if (this.state == State.NON_CONNECTED) {
             this.state = state;
+            Peers.updatePeerViews(this);
             Peers.notifyListeners(this, Peers.Event.ADDED_ACTIVE_PEER);
         } else if (state != State.NON_CONNECTED) {
             this.state = state;
+            Peers.updatePeerViews(this);
             Peers.notifyListeners(this, Peers.Event.CHANGED_ACTIVE_PEER);
         } else {
             this.state = state;
+            Peers.updatePeerViews(this);
         }
     }
 
@@ -185,7 +190,7 @@ final class PeerImpl implements Peer {
                     Logger.logDebugMessage(String.format("Blacklisting %s version %s", host, version));
                 }
                 blacklistingCause = "Old version: " + version;
-                lastInboundRequest = 0;
+                setLastInboundRequest(0);
                 setState(State.NON_CONNECTED);
                 Peers.notifyListeners(this, Peers.Event.BLACKLIST);
             }
@@ -338,7 +343,7 @@ final class PeerImpl implements Peer {
         blacklistingTime = Nxt.getEpochTime();
         blacklistingCause = cause;
         setState(State.NON_CONNECTED);
-        lastInboundRequest = 0;
+        setLastInboundRequest(0);
         Peers.notifyListeners(this, Peers.Event.BLACKLIST);
     }
 
@@ -399,7 +404,12 @@ final class PeerImpl implements Peer {
     }
 
     void setLastInboundRequest(int now) {
+        boolean wasInbound = isInbound();
         lastInboundRequest = now;
+        // Only a change of the inbound status needs the peer views updated
+        if (wasInbound != isInbound()) {
+            Peers.updatePeerViews(this);
+        }
     }
 
     void setInboundWebSocket(PeerWebSocket inboundSocket) {
@@ -467,7 +477,7 @@ final class PeerImpl implements Peer {
                     }
                     if (wsResponse.length() > maxResponseSize)
                         throw new NxtException.NxtIOException("Maximum size exceeded: " + wsResponse.length());
-                    response = (JSONObject)JSONValue.parseWithException(wsResponse);
+                    response = (JSONObject)JSONReader.parse(wsResponse);
                     updateDownloadedVolume(wsResponse.length());
                 }
             } else {
@@ -509,7 +519,7 @@ final class PeerImpl implements Peer {
                                               cis.getCount(), (double)cis.getCount()/(double) responseValue.length());
                             log += " >>> " + responseValue;
                             showLog = true;
-                            response = (JSONObject) JSONValue.parseWithException(responseValue);
+                            response = (JSONObject) JSONReader.parse(responseValue);
                             updateDownloadedVolume(responseValue.length());
                         } else {
                             InputStream responseStream = connection.getInputStream();
@@ -517,7 +527,7 @@ final class PeerImpl implements Peer {
                                 responseStream = new GZIPInputStream(responseStream);
                             try (Reader reader = new BufferedReader(new InputStreamReader(responseStream, "UTF-8"))) {
                                 CountingInputReader cir = new CountingInputReader(reader, maxResponseSize);
-                                response = (JSONObject)JSONValue.parseWithException(cir);
+                                response = (JSONObject)JSONReader.parse(cir);
                                 updateDownloadedVolume(cir.getCount());
                             }
                         }
@@ -535,36 +545,15 @@ final class PeerImpl implements Peer {
             //
             // Check for an error response
             //
-            if (response != null && response.get("error") != null) {
-                deactivate();
-                if (Errors.SEQUENCE_ERROR.equals(response.get("error")) && request != Peers.myPeerInfoRequest) {
-                    Logger.logDebugMessage("Sequence error, reconnecting to " + host);
-                    connect();
-                } else {
-                    Logger.logDebugMessage("Peer " + host + " version " + version + " returned error: " +
-                            response.toJSONString() + ", request was: " + JSON.toString(request) +
-                            ", disconnecting");
-                    if (connection != null) {
-                        connection.disconnect();
-                    }
-                }
-            }
-        } catch (NxtException.NxtIOException e) {
-            blacklist(e);
-            if (connection != null) {
+            if (processErrorResponse(request, response, this::connect) && connection != null) {
                 connection.disconnect();
             }
         } catch (RuntimeException|ParseException|IOException e) {
-            if (!(e instanceof UnknownHostException || e instanceof SocketTimeoutException ||
-                                        e instanceof SocketException || Errors.END_OF_FILE.equals(e.getMessage()))) {
-                Logger.logDebugMessage(String.format("Error sending request to peer %s: %s",
-                                       host, e.getMessage()!=null ? e.getMessage() : e.toString()));
-            }
-            if ((communicationLoggingMask & Peers.LOGGING_MASK_EXCEPTIONS) != 0) {
-                log += " >>> " + e.toString();
+            String exceptionLog = processException(e, communicationLoggingMask);
+            if (exceptionLog != null) {
+                log += exceptionLog;
                 showLog = true;
             }
-            deactivate();
             if (connection != null) {
                 connection.disconnect();
             }
@@ -576,6 +565,132 @@ final class PeerImpl implements Peer {
         return response;
     }
 
+    @Override
+    public CompletableFuture<JSONObject> sendAsync(final JSONStreamAware request, int maxResponseSize) {
+        //
+        // Use a non-blocking request if the WebSocket session is already open or if
+        // the peer does not support WebSockets.  Otherwise, the blocking send is done
+        // by the peers service since it may need to create the WebSocket session.
+        //
+        boolean useHttpClient = !useWebSocket && !Peers.useProxy && PeerHttpClient.isAvailable();
+        if (!useHttpClient && !(useWebSocket && webSocket.isOpen())) {
+            return CompletableFuture.supplyAsync(() -> send(request, maxResponseSize), Peers.peersService);
+        }
+        String requestValue = JSON.toString(request);
+        String log = null;
+        if (Peers.communicationLoggingMask != 0) {
+            log = (useHttpClient ? "\"http://" + host + ":" + getPort() + "/nxt\": " : "WebSocket " + host + ": ") + requestValue;
+        }
+        CompletableFuture<String> futureResponse = (useHttpClient ?
+                PeerHttpClient.post(host, getPort(), requestValue, maxResponseSize) : webSocket.doPostAsync(requestValue));
+        updateUploadedVolume(requestValue.length());
+        final String requestLog = log;
+        return futureResponse.handle((responseValue, exc) ->
+                processResponse(request, requestLog, responseValue, exc, maxResponseSize));
+    }
+
+    /**
+     * Process the response for a non-blocking request
+     *
+     * @param   request             Request message
+     * @param   log                 Request log message or null
+     * @param   responseValue       Response message
+     * @param   exc                 Request exception or null
+     * @param   maxResponseSize     Maximum response size
+     * @return                      Response or null if the request failed
+     */
+    private JSONObject processResponse(JSONStreamAware request, String log, String responseValue, Throwable exc,
+                                       int maxResponseSize) {
+        JSONObject response = null;
+        boolean showLog = false;
+        int communicationLoggingMask = Peers.communicationLoggingMask;
+        try {
+            if (exc != null) {
+                Throwable cause = (exc instanceof CompletionException && exc.getCause() != null ? exc.getCause() : exc);
+                if (cause instanceof IOException) {
+                    throw (IOException)cause;
+                }
+                throw new RuntimeException(cause.toString(), cause);
+            }
+            if (maxResponseSize > 0 && responseValue != null) {
+                if ((communicationLoggingMask & Peers.LOGGING_MASK_200_RESPONSES) != 0) {
+                    log += " >>> " + responseValue;
+                    showLog = true;
+                }
+                if (responseValue.length() > maxResponseSize)
+                    throw new NxtException.NxtIOException("Maximum size exceeded: " + responseValue.length());
+                response = (JSONObject)JSONReader.parse(responseValue);
+                updateDownloadedVolume(responseValue.length());
+            }
+            processErrorResponse(request, response, () -> Peers.peersService.submit(this::connect));
+        } catch (RuntimeException|ParseException|IOException e) {
+            String exceptionLog = processException(e, communicationLoggingMask);
+            if (exceptionLog != null) {
+                log += exceptionLog;
+                showLog = true;
+            }
+        }
+        if (showLog) {
+            Logger.logMessage(log + "\n");
+        }
+        return response;
+    }
+
+    /**
+     * Check a response for an error reply
+     * <p>
+     * This is used by both the blocking and the non-blocking requests, so that an error reply
+     * is handled the same way whichever transport was used.  A busy reply only means that the
+     * peer is shedding load, so the peer is not deactivated.
+     *
+     * @param   request             Request message
+     * @param   response            Response or null
+     * @param   reconnect           Reconnects to the peer after a sequence error
+     * @return                      TRUE if the peer returned an error and the connection should be closed
+     */
+    boolean processErrorResponse(JSONStreamAware request, JSONObject response, Runnable reconnect) {
+        if (response == null || response.get("error") == null) {
+            return false;
+        }
+        if (Errors.BUSY.equals(response.get("error"))) {
+            Logger.logDebugMessage("Peer " + host + " is busy, request was: " + JSON.toString(request));
+            return false;
+        }
+        deactivate();
+        if (Errors.SEQUENCE_ERROR.equals(response.get("error")) && request != Peers.myPeerInfoRequest) {
+            Logger.logDebugMessage("Sequence error, reconnecting to " + host);
+            reconnect.run();
+            return false;
+        }
+        Logger.logDebugMessage("Peer " + host + " version " + version + " returned error: " +
+                response.toJSONString() + ", request was: " + JSON.toString(request) +
+                ", disconnecting");
+        return true;
+    }
+
+    /**
+     * Process an exception while sending a request or reading the response
+     * <p>
+     * The peer is blacklisted if the response is too large, and is deactivated otherwise.
+     *
+     * @param   e                           Exception
+     * @param   communicationLoggingMask    Communication logging mask
+     * @return                              Communication log text or null if exceptions are not logged
+     */
+    private String processException(Exception e, int communicationLoggingMask) {
+        if (e instanceof NxtException.NxtIOException) {
+            blacklist(e);
+            return null;
+        }
+        if (!(e instanceof UnknownHostException || e instanceof SocketTimeoutException ||
+                                    e instanceof SocketException || Errors.END_OF_FILE.equals(e.getMessage()))) {
+            Logger.logDebugMessage(String.format("Error sending request to peer %s: %s",
+                                   host, e.getMessage()!=null ? e.getMessage() : e.toString()));
+        }
+        deactivate();
+        return (communicationLoggingMask & Peers.LOGGING_MASK_EXCEPTIONS) != 0 ? " >>> " + e.toString() : null;
+    }
+
     @Override
     public int compareTo(Peer o) {
         if (getWeight() > o.getWeight()) {
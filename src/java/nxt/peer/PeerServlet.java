@@ -21,7 +21,9 @@ import nxt.Nxt;
 import nxt.util.CountingInputReader;
 import nxt.util.CountingOutputWriter;
 import nxt.util.JSON;
+import nxt.util.JSONReader;
 import nxt.util.Logger;
+import nxt.util.Metrics;
 import org.eclipse.jetty.websocket.servlet.ServletUpgradeRequest;
 import org.eclipse.jetty.websocket.servlet.ServletUpgradeResponse;
 import org.eclipse.jetty.websocket.servlet.WebSocketCreator;
@@ -29,10 +31,13 @@ import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
 import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
-import org.json.simple.JSONValue;
 import org.json.simple.parser.ParseException;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
@@ -43,12 +48,17 @@ import java.net.InetSocketAddress;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public final class PeerServlet extends WebSocketServlet {
 
     abstract static class PeerRequestHandler {
         abstract JSONStreamAware processRequest(JSONObject request, Peer peer);
         abstract boolean rejectWhileDownloading();
+        RequestPriority getPriority() {
+            return RequestPriority.NORMAL;
+        }
     }
 
     private static final Map<String,PeerRequestHandler> peerRequestHandlers;
@@ -56,6 +66,7 @@ public final class PeerServlet extends WebSocketServlet {
     static {
         Map<String,PeerRequestHandler> map = new HashMap<>();
         map.put("addPeers", AddPeers.instance);
+        map.put("getBlockTransactions", GetBlockTransactions.instance);
         map.put("getCumulativeDifficulty", GetCumulativeDifficulty.instance);
         map.put("getInfo", GetInfo.instance);
         map.put("getMilestoneBlockIds", GetMilestoneBlockIds.instance);
@@ -65,6 +76,7 @@ public final class PeerServlet extends WebSocketServlet {
         map.put("getTransactions", GetTransactions.instance);
         map.put("getUnconfirmedTransactions", GetUnconfirmedTransactions.instance);
         map.put("processBlock", ProcessBlock.instance);
+        map.put("processCompactBlock", ProcessCompactBlock.instance);
         map.put("processTransactions", ProcessTransactions.instance);
         peerRequestHandlers = Collections.unmodifiableMap(map);
     }
@@ -111,8 +123,28 @@ public final class PeerServlet extends WebSocketServlet {
         DOWNLOADING = JSON.prepare(response);
     }
 
+    private static final JSONStreamAware BUSY;
+    static {
+        JSONObject response = new JSONObject();
+        response.put("error", Errors.BUSY);
+        BUSY = JSON.prepare(response);
+    }
+
     private static final BlockchainProcessor blockchainProcessor = Nxt.getBlockchainProcessor();
 
+    /**
+     * Return the request processing statistics for each priority class
+     *
+     * @return                      Statistics by priority class
+     */
+    static JSONObject getRequestStatistics() {
+        JSONObject json = new JSONObject();
+        for (RequestPriority priority : RequestPriority.values()) {
+            json.put(priority.name(), priority.getStatistics());
+        }
+        return json;
+    }
+
     static JSONStreamAware error(Exception e) {
         JSONObject response = new JSONObject();
         response.put("error", Peers.hideErrorDetails ? e.getClass().getName() : e.toString());
@@ -133,6 +165,9 @@ public final class PeerServlet extends WebSocketServlet {
 
     /**
      * Process HTTP POST request
+     * <p>
+     * The request is parsed by the servlet thread and then processed asynchronously by the
+     * executor for its priority class, which completes the request when the response is sent.
      *
      * @param   req                 HTTP request
      * @param   resp                HTTP response
@@ -141,24 +176,59 @@ public final class PeerServlet extends WebSocketServlet {
      */
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        JSONStreamAware jsonResponse;
-        //
-        // Process the peer request
-        //
         PeerImpl peer = Peers.findOrCreatePeer(req.getRemoteAddr());
+        AsyncContext asyncContext = req.startAsync();
+        asyncContext.setTimeout(Peers.readTimeout + RequestPriority.getMaxQueueWait());
+        AtomicBoolean completed = new AtomicBoolean();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                if (completed.compareAndSet(false, true)) {
+                    sendResponse(asyncContext, peer, BUSY);
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                completed.set(true);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        Consumer<JSONStreamAware> responder = jsonResponse -> {
+            if (completed.compareAndSet(false, true)) {
+                sendResponse(asyncContext, peer, jsonResponse);
+            }
+        };
         if (peer == null) {
-            jsonResponse = UNKNOWN_PEER;
+            responder.accept(UNKNOWN_PEER);
         } else {
-            jsonResponse = process(peer, req.getReader());
+            process(peer, req.getReader(), responder);
         }
-        //
-        // Return the response
-        //
-        resp.setContentType("text/plain; charset=UTF-8");
-        try (CountingOutputWriter writer = new CountingOutputWriter(resp.getWriter())) {
-            JSON.writeJSONString(jsonResponse, writer);
-            if (peer != null) {
-                peer.updateUploadedVolume(writer.getCount());
+    }
+
+    /**
+     * Send the response for an HTTP POST request and complete the request
+     *
+     * @param   asyncContext        Asynchronous context of the request
+     * @param   peer                Peer or null if the peer is unknown
+     * @param   jsonResponse        JSON response
+     */
+    private static void sendResponse(AsyncContext asyncContext, PeerImpl peer, JSONStreamAware jsonResponse) {
+        try {
+            ServletResponse resp = asyncContext.getResponse();
+            resp.setContentType("text/plain; charset=UTF-8");
+            try (CountingOutputWriter writer = new CountingOutputWriter(resp.getWriter())) {
+                JSON.writeJSONString(jsonResponse, writer);
+                if (peer != null) {
+                    peer.updateUploadedVolume(writer.getCount());
+                }
             }
         } catch (RuntimeException | IOException e) {
             if (peer != null) {
@@ -172,7 +242,8 @@ public final class PeerServlet extends WebSocketServlet {
                 }
                 peer.blacklist(e);
             }
-            throw e;
+        } finally {
+            asyncContext.complete();
         }
     }
 
@@ -184,7 +255,6 @@ public final class PeerServlet extends WebSocketServlet {
      * @param   request             Request message
      */
     void doPost(PeerWebSocket webSocket, long requestId, String request) {
-        JSONStreamAware jsonResponse;
         //
         // Process the peer request
         //
@@ -195,14 +265,22 @@ public final class PeerServlet extends WebSocketServlet {
         String remoteAddress = socketAddress.getHostString();
         PeerImpl peer = Peers.findOrCreatePeer(remoteAddress);
         if (peer == null) {
-            jsonResponse = UNKNOWN_PEER;
+            sendResponse(webSocket, requestId, null, UNKNOWN_PEER);
         } else {
             peer.setInboundWebSocket(webSocket);
-            jsonResponse = process(peer, new StringReader(request));
+            process(peer, new StringReader(request), jsonResponse -> sendResponse(webSocket, requestId, peer, jsonResponse));
         }
-        //
-        // Return the response
-        //
+    }
+
+    /**
+     * Send the response for a WebSocket POST request
+     *
+     * @param   webSocket           WebSocket for the connection
+     * @param   requestId           Request identifier
+     * @param   peer                Peer or null if the peer is unknown
+     * @param   jsonResponse        JSON response
+     */
+    private static void sendResponse(PeerWebSocket webSocket, long requestId, PeerImpl peer, JSONStreamAware jsonResponse) {
         try {
             StringWriter writer = new StringWriter(1000);
             JSON.writeJSONString(jsonResponse, writer);
@@ -228,12 +306,16 @@ public final class PeerServlet extends WebSocketServlet {
 
     /**
      * Process the peer request
+     * <p>
+     * The request is parsed and checked by the calling thread. A valid request is then queued
+     * for the executor of its priority class, so the calling thread is not held while the request
+     * waits. The responder is called exactly once, either by the calling thread or by the executor.
      *
      * @param   peer                Peer
      * @param   inputReader         Input reader
-     * @return                      JSON response
+     * @param   responder           Sends the JSON response
      */
-    private JSONStreamAware process(PeerImpl peer, Reader inputReader) {
+    private void process(PeerImpl peer, Reader inputReader, Consumer<JSONStreamAware> responder) {
         //
         // Check for blacklisted peer
         //
@@ -241,44 +323,82 @@ public final class PeerServlet extends WebSocketServlet {
             JSONObject jsonObject = new JSONObject();
             jsonObject.put("error", Errors.BLACKLISTED);
             jsonObject.put("cause", peer.getBlacklistingCause());
-            return jsonObject;
+            responder.accept(jsonObject);
+            return;
         }
         Peers.addPeer(peer);
         //
-        // Process the request
+        // Parse and check the request
         //
+        JSONObject request;
+        PeerRequestHandler peerRequestHandler;
         try (CountingInputReader cr = new CountingInputReader(inputReader, Peers.MAX_REQUEST_SIZE)) {
-            JSONObject request = (JSONObject)JSONValue.parseWithException(cr);
+            request = (JSONObject)JSONReader.parse(cr);
             peer.updateDownloadedVolume(cr.getCount());
             if (request.get("protocol") == null || ((Number)request.get("protocol")).intValue() != 1) {
                 Logger.logDebugMessage("Unsupported protocol " + request.get("protocol"));
-                return UNSUPPORTED_PROTOCOL;
+                responder.accept(UNSUPPORTED_PROTOCOL);
+                return;
             }
-            PeerRequestHandler peerRequestHandler = peerRequestHandlers.get((String)request.get("requestType"));
+            peerRequestHandler = peerRequestHandlers.get((String)request.get("requestType"));
             if (peerRequestHandler == null) {
-                return UNSUPPORTED_REQUEST_TYPE;
+                responder.accept(UNSUPPORTED_REQUEST_TYPE);
+                return;
             }
             if (peer.getState() == Peer.State.DISCONNECTED) {
                 peer.setState(Peer.State.CONNECTED);
             }
             if (peer.getVersion() == null && !"getInfo".equals(request.get("requestType"))) {
-                return SEQUENCE_ERROR;
+                responder.accept(SEQUENCE_ERROR);
+                return;
             }
             if (!peer.isInbound()) {
                 if (Peers.hasTooManyInboundPeers()) {
-                    return MAX_INBOUND_CONNECTIONS;
+                    responder.accept(MAX_INBOUND_CONNECTIONS);
+                    return;
                 }
                 Peers.notifyListeners(peer, Peers.Event.ADD_INBOUND);
             }
             peer.setLastInboundRequest(Nxt.getEpochTime());
             if (peerRequestHandler.rejectWhileDownloading() && blockchainProcessor.isDownloading()) {
-                return DOWNLOADING;
+                responder.accept(DOWNLOADING);
+                return;
             }
-            return peerRequestHandler.processRequest(request, peer);
         } catch (RuntimeException|ParseException|IOException e) {
             Logger.logDebugMessage("Error processing POST request: " + e.toString());
             peer.blacklist(e);
-            return error(e);
+            responder.accept(error(e));
+            return;
+        }
+        //
+        // Process the request using the executor for its priority class
+        //
+        String requestType = (String)request.get("requestType");
+        Runnable busyTask = () -> {
+            if (Metrics.isEnabled()) {
+                Metrics.counter("nxt_peer_requests_busy_total", "Peer requests rejected because the node was busy",
+                        "request", requestType).increment();
+            }
+            responder.accept(BUSY);
+        };
+        boolean queued = peerRequestHandler.getPriority().execute(() -> {
+            JSONStreamAware jsonResponse;
+            long start = Metrics.start();
+            try {
+                jsonResponse = peerRequestHandler.processRequest(request, peer);
+            } catch (RuntimeException e) {
+                Logger.logDebugMessage("Error processing POST request: " + e.toString());
+                peer.blacklist(e);
+                jsonResponse = error(e);
+            }
+            if (start != 0) {
+                Metrics.histogram("nxt_peer_request_seconds", "Time to process a peer request",
+                        "request", requestType).stop(start);
+            }
+            responder.accept(jsonResponse);
+        }, busyTask);
+        if (!queued) {
+            busyTask.run();
         }
     }
 
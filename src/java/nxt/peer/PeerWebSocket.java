@@ -18,9 +18,11 @@ package nxt.peer;
 
 import nxt.util.Logger;
 import nxt.util.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.UpgradeException;
 import org.eclipse.jetty.websocket.api.WebSocketException;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
@@ -28,8 +30,6 @@ import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -38,18 +38,23 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * PeerWebSocket represents an HTTP/HTTPS upgraded connection
@@ -60,8 +65,40 @@ public class PeerWebSocket {
     /** Compressed message flag */
     private static final int FLAG_COMPRESSED = 1;
 
+    /** Compressed with the preset dictionary flag */
+    private static final int FLAG_DICTIONARY = 2;
+
     /** Our WebSocket message version */
-    private static final int VERSION = 1;
+    private static final int VERSION = 2;
+
+    /** First WebSocket message version supporting the preset dictionary */
+    private static final int VERSION_DICTIONARY = 2;
+
+    /**
+     * Preset compression dictionary
+     *
+     * The dictionary contains the field names and values which occur in most peer messages,
+     * with the most frequent ones at the end.  It must not be changed without changing the
+     * message version since it is used by both ends of the connection.
+     */
+    private static final byte[] DICTIONARY = ("\"application\":\"NRS\",\"platform\":\"\"shareAddress\":true,"
+            + "\"announcedAddress\":\"\"services\":\"\"apiPort\":\"apiSSLPort\":\"hallmark\":"
+            + "\"blockchainHeight\":\"cumulativeDifficulty\":\"error\":\"cause\":\"peers\":["
+            + "\"requestType\":\"getInfo\"getPeers\"getCumulativeDifficulty\"getMilestoneBlockIds\""
+            + "\"getNextBlockIds\"getNextBlocks\"getTransactions\"getUnconfirmedTransactions\""
+            + "\"processBlock\"processTransactions\"milestoneBlockIds\":[\"nextBlockIds\":[\"nextBlocks\":["
+            + "\"unconfirmedTransactions\":[\"protocol\":1,\"last\":true,"
+            + "\"previousBlockHash\":\"previousBlock\":\"generationSignature\":\"generatorPublicKey\":\""
+            + "\"blockSignature\":\"payloadHash\":\"payloadLength\":\"totalAmountNQT\":\"totalFeeNQT\":"
+            + "\"transactions\":[{\"referencedTransactionFullHash\":\"ecBlockHeight\":\"ecBlockId\":\""
+            + "\"attachment\":{\"version.\":1,\"message\":\"messageIsText\":true,\"recipient\":\""
+            + "\"senderPublicKey\":\"amountNQT\":0,\"feeNQT\":100000000,\"deadline\":1440,"
+            + "\"signature\":\"timestamp\":\"subtype\":0,\"type\":0,\"version\":1,")
+            .getBytes(StandardCharsets.UTF_8);
+
+    /** Per-thread compression contexts */
+    private static final ThreadLocal<CompressionContext> compressionContext =
+            ThreadLocal.withInitial(CompressionContext::new);
 
     /** Create the WebSocket client */
     private static WebSocketClient peerClient;
@@ -79,7 +116,10 @@ public class PeerWebSocket {
     }
 
     /** Negotiated WebSocket message version */
-    private int version = VERSION;
+    private volatile int version = VERSION;
+
+    /** WebSocket message version of the remote peer or 0 if no message has been received */
+    private volatile int remoteVersion = 0;
 
     /** Thread pool for server request processing */
     private static final ExecutorService threadPool = new QueuedThreadPool(
@@ -99,7 +139,7 @@ public class PeerWebSocket {
     private final ConcurrentHashMap<Long, PostRequest> requestMap = new ConcurrentHashMap<>();
 
     /** Next POST request identifier */
-    private long nextRequestId = 0;
+    private final AtomicLong nextRequestId = new AtomicLong();
 
     /** WebSocket connection timestamp */
     private long connectTime = 0;
@@ -220,60 +260,77 @@ public class PeerWebSocket {
      * waiting for a response.  This method is used by the connection
      * originator.
      *
+     * Multiple requests can be in progress at the same time since the
+     * responses are matched to the requests by the request identifier.
+     *
      * @param   request             Request message
      * @return                      Response message
      * @throws  IOException         I/O error occurred
      */
     public String doPost(String request) throws IOException {
-        long requestId;
-        //
-        // Send the POST request
-        //
-        lock.lock();
-        try {
-            if (session == null || !session.isOpen()) {
-                throw new IOException("WebSocket session is not open");
-            }
-            requestId = nextRequestId++;
-            byte[] requestBytes = request.getBytes("UTF-8");
-            int requestLength = requestBytes.length;
-            int flags = 0;
-            if (Peers.isGzipEnabled && requestLength >= Peers.MIN_COMPRESS_SIZE) {
-                flags |= FLAG_COMPRESSED;
-                ByteArrayOutputStream outStream = new ByteArrayOutputStream(requestLength);
-                try (GZIPOutputStream gzipStream = new GZIPOutputStream(outStream)) {
-                    gzipStream.write(requestBytes);
-                }
-                requestBytes = outStream.toByteArray();
-            }
-            ByteBuffer buf = ByteBuffer.allocate(requestBytes.length + 20);
-            buf.putInt(version)
-               .putLong(requestId)
-               .putInt(flags)
-               .putInt(requestLength)
-               .put(requestBytes)
-               .flip();
-            if (buf.limit() > Peers.MAX_MESSAGE_SIZE) {
-                throw new ProtocolException("POST request length exceeds max message size");
-            }
-            session.getRemote().sendBytes(buf);
-        } catch (WebSocketException exc) {
-            throw new SocketException(exc.getMessage());
-        } finally {
-            lock.unlock();
+        Session s = session;
+        if (s == null || !s.isOpen()) {
+            throw new IOException("WebSocket session is not open");
         }
         //
-        // Get the response
+        // Register the POST request before sending it, so that the response
+        // cannot arrive before we are waiting for it
         //
-        String response;
+        long requestId = nextRequestId.getAndIncrement();
+        PostRequest postRequest = new PostRequest();
+        requestMap.put(requestId, postRequest);
         try {
-            PostRequest postRequest = new PostRequest();
-            requestMap.put(requestId, postRequest);
-            response = postRequest.get(Peers.readTimeout, TimeUnit.MILLISECONDS);
+            sendMessage(s, requestId, request);
+            return postRequest.get(Peers.readTimeout, TimeUnit.MILLISECONDS);
         } catch (InterruptedException exc) {
             throw new SocketTimeoutException("WebSocket POST interrupted");
+        } finally {
+            requestMap.remove(requestId);
+        }
+    }
+
+    /**
+     * Send a POST request without waiting for the response
+     *
+     * The returned future is completed with the response message, or with an I/O exception if the
+     * request cannot be sent, the connection is closed or the read timeout is exceeded.
+     *
+     * @param   request             Request message
+     * @return                      Response future
+     */
+    public CompletableFuture<String> doPostAsync(String request) {
+        PostRequest postRequest = new PostRequest();
+        CompletableFuture<String> future = postRequest.getFuture();
+        Session s = session;
+        if (s == null || !s.isOpen()) {
+            postRequest.complete(new IOException("WebSocket session is not open"));
+            return future;
+        }
+        long requestId = nextRequestId.getAndIncrement();
+        requestMap.put(requestId, postRequest);
+        future.whenComplete((response, exc) -> requestMap.remove(requestId));
+        try {
+            ByteBuffer buf = encodeMessage(requestId, request);
+            Scheduler.Task timeoutTask = peerClient.getScheduler().schedule(
+                    () -> postRequest.complete(new SocketTimeoutException("WebSocket read timeout exceeded")),
+                    Peers.readTimeout, TimeUnit.MILLISECONDS);
+            future.whenComplete((response, exc) -> timeoutTask.cancel());
+            s.getRemote().sendBytes(buf, new WriteCallback() {
+                @Override
+                public void writeFailed(Throwable exc) {
+                    postRequest.complete(new SocketException(exc.getMessage()));
+                }
+
+                @Override
+                public void writeSuccess() {
+                }
+            });
+        } catch (IOException exc) {
+            postRequest.complete(exc);
+        } catch (WebSocketException | IllegalStateException exc) {
+            postRequest.complete(new SocketException(exc.getMessage()));
         }
-        return response;
+        return future;
     }
 
     /**
@@ -286,37 +343,80 @@ public class PeerWebSocket {
      * @throws  IOException         I/O error occurred
      */
     public void sendResponse(long requestId, String response) throws IOException {
-        lock.lock();
-        try {
-            if (session != null && session.isOpen()) {
-                byte[] responseBytes = response.getBytes("UTF-8");
-                int responseLength = responseBytes.length;
-                int flags = 0;
-                if (Peers.isGzipEnabled && responseLength >= Peers.MIN_COMPRESS_SIZE) {
-                    flags |= FLAG_COMPRESSED;
-                    ByteArrayOutputStream outStream = new ByteArrayOutputStream(responseLength);
-                    try (GZIPOutputStream gzipStream = new GZIPOutputStream(outStream)) {
-                        gzipStream.write(responseBytes);
-                    }
-                    responseBytes = outStream.toByteArray();
-                }
-                ByteBuffer buf = ByteBuffer.allocate(responseBytes.length + 20);
-                buf.putInt(version)
-                   .putLong(requestId)
-                   .putInt(flags)
-                   .putInt(responseLength)
-                   .put(responseBytes)
-                   .flip();
-                if (buf.limit() > Peers.MAX_MESSAGE_SIZE) {
-                    throw new ProtocolException("POST response length exceeds max message size");
-                }
-                session.getRemote().sendBytes(buf);
+        Session s = session;
+        if (s != null && s.isOpen()) {
+            try {
+                sendMessage(s, requestId, response);
+            } catch (InterruptedException exc) {
+                throw new SocketTimeoutException("WebSocket response interrupted");
             }
-        } catch (WebSocketException exc) {
+        }
+    }
+
+    /**
+     * Send a message
+     *
+     * The message is sent asynchronously so that concurrent requests and responses do not
+     * have to wait for each other, and then we wait for the send to complete.
+     *
+     * @param   s                       WebSocket session
+     * @param   requestId               Request identifier
+     * @param   message                 Message
+     * @throws  InterruptedException    Wait interrupted
+     * @throws  IOException             I/O error occurred
+     */
+    private void sendMessage(Session s, long requestId, String message) throws InterruptedException, IOException {
+        ByteBuffer buf = encodeMessage(requestId, message);
+        try {
+            s.getRemote().sendBytesByFuture(buf).get(Peers.readTimeout, TimeUnit.MILLISECONDS);
+        } catch (WebSocketException | IllegalStateException exc) {
             throw new SocketException(exc.getMessage());
-        } finally {
-            lock.unlock();
+        } catch (ExecutionException exc) {
+            Throwable cause = exc.getCause();
+            throw new SocketException(cause != null ? cause.getMessage() : exc.getMessage());
+        } catch (TimeoutException exc) {
+            throw new SocketTimeoutException("WebSocket write timeout exceeded");
+        }
+    }
+
+    /**
+     * Encode a message, compressing it if it is large enough
+     *
+     * @param   requestId               Request identifier
+     * @param   message                 Message
+     * @return                          Message buffer
+     * @throws  IOException             Message is too large
+     */
+    private ByteBuffer encodeMessage(long requestId, String message) throws IOException {
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        int messageLength = messageBytes.length;
+        int flags = 0;
+        ByteBuffer buf;
+        if (Peers.isGzipEnabled && messageLength >= Peers.MIN_COMPRESS_SIZE) {
+            boolean useDictionary = Peers.useCompressionDictionary && remoteVersion >= VERSION_DICTIONARY;
+            flags |= (useDictionary ? FLAG_COMPRESSED | FLAG_DICTIONARY : FLAG_COMPRESSED);
+            CompressionContext context = compressionContext.get();
+            int length = context.compress(messageBytes, useDictionary);
+            buf = ByteBuffer.allocate(length + 20);
+            buf.putInt(version)
+               .putLong(requestId)
+               .putInt(flags)
+               .putInt(messageLength)
+               .put(context.buffer, 0, length)
+               .flip();
+        } else {
+            buf = ByteBuffer.allocate(messageLength + 20);
+            buf.putInt(version)
+               .putLong(requestId)
+               .putInt(flags)
+               .putInt(messageLength)
+               .put(messageBytes)
+               .flip();
+        }
+        if (buf.limit() > Peers.MAX_MESSAGE_SIZE) {
+            throw new ProtocolException("WebSocket message length exceeds max message size");
         }
+        return buf;
     }
 
     /**
@@ -328,30 +428,22 @@ public class PeerWebSocket {
      */
     @OnWebSocketMessage
     public void onMessage(byte[] inbuf, int off, int len) {
-        lock.lock();
         try {
             ByteBuffer buf = ByteBuffer.wrap(inbuf, off, len);
-            version = Math.min(buf.getInt(), VERSION);
+            int messageVersion = buf.getInt();
+            remoteVersion = messageVersion;
+            version = Math.min(messageVersion, VERSION);
             Long requestId = buf.getLong();
             int flags = buf.getInt();
             int length = buf.getInt();
-            byte[] msgBytes = new byte[buf.remaining()];
-            buf.get(msgBytes);
+            String message;
             if ((flags&FLAG_COMPRESSED) != 0) {
-                ByteArrayInputStream inStream = new ByteArrayInputStream(msgBytes);
-                try (GZIPInputStream gzipStream = new GZIPInputStream(inStream, 1024)) {
-                    msgBytes = new byte[length];
-                    int offset = 0;
-                    while (offset < msgBytes.length) {
-                        int count = gzipStream.read(msgBytes, offset, msgBytes.length - offset);
-                        if (count < 0) {
-                            throw new EOFException("End-of-data reading compressed data");
-                        }
-                        offset += count;
-                    }
-                }
+                byte[] msgBytes = compressionContext.get().decompress(inbuf, buf.position(), buf.remaining(),
+                        length, (flags&FLAG_DICTIONARY) != 0);
+                message = new String(msgBytes, StandardCharsets.UTF_8);
+            } else {
+                message = new String(inbuf, buf.position(), buf.remaining(), StandardCharsets.UTF_8);
             }
-            String message = new String(msgBytes, "UTF-8");
             if (peerServlet != null) {
                 threadPool.execute(() -> peerServlet.doPost(this, requestId, message));
             } else {
@@ -362,8 +454,6 @@ public class PeerWebSocket {
             }
         } catch (Exception exc) {
             Logger.logDebugMessage("Exception while processing WebSocket message", exc);
-        } finally {
-            lock.unlock();
         }
     }
 
@@ -411,18 +501,176 @@ public class PeerWebSocket {
     }
 
     /**
-     * POST request
+     * Compression context
+     *
+     * A context holds a deflater, an inflater and an output buffer which are reused for every
+     * message compressed or decompressed by the owning thread.  Messages without the preset
+     * dictionary use the GZIP format, so they can be exchanged with peers using GZIP streams.
      */
-    private class PostRequest {
+    private static final class CompressionContext {
+
+        /** GZIP header magic */
+        private static final int GZIP_MAGIC = 0x8b1f;
+
+        /** GZIP header with no optional fields */
+        private static final byte[] GZIP_HEADER = {(byte)0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte)0xff};
+
+        /** GZIP header flags */
+        private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+        /** Deflater producing raw compressed data */
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        /** Inflater consuming raw compressed data */
+        private final Inflater inflater = new Inflater(true);
+
+        /** Checksum for the GZIP trailer */
+        private final CRC32 crc = new CRC32();
+
+        /** Compression output buffer */
+        private byte[] buffer = new byte[8192];
+
+        /**
+         * Compress a message into the output buffer
+         *
+         * @param   data                Uncompressed message
+         * @param   useDictionary       TRUE to use the preset dictionary instead of the GZIP format
+         * @return                      Compressed length
+         */
+        private int compress(byte[] data, boolean useDictionary) {
+            deflater.reset();
+            int length = 0;
+            if (useDictionary) {
+                deflater.setDictionary(DICTIONARY);
+            } else {
+                System.arraycopy(GZIP_HEADER, 0, buffer, 0, GZIP_HEADER.length);
+                length = GZIP_HEADER.length;
+            }
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            if (!useDictionary) {
+                if (length + 8 > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, length + 8);
+                }
+                crc.reset();
+                crc.update(data);
+                putInt(buffer, length, (int)crc.getValue());
+                putInt(buffer, length + 4, data.length);
+                length += 8;
+            }
+            return length;
+        }
+
+        /**
+         * Decompress a message
+         *
+         * @param   data                Compressed message buffer
+         * @param   off                 Starting offset
+         * @param   len                 Compressed length
+         * @param   length              Uncompressed length
+         * @param   useDictionary       TRUE if the message was compressed using the preset dictionary
+         * @return                      Uncompressed message
+         * @throws  IOException         Compressed data is not valid
+         */
+        private byte[] decompress(byte[] data, int off, int len, int length, boolean useDictionary) throws IOException {
+            int pos = off;
+            int end = off + len;
+            if (!useDictionary) {
+                pos = skipHeader(data, pos, end);
+            }
+            byte[] result = new byte[length];
+            inflater.reset();
+            if (useDictionary) {
+                inflater.setDictionary(DICTIONARY);
+            }
+            inflater.setInput(data, pos, end - pos);
+            try {
+                int offset = 0;
+                while (offset < length) {
+                    int count = inflater.inflate(result, offset, length - offset);
+                    if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new EOFException("End-of-data reading compressed data");
+                    }
+                    offset += count;
+                }
+            } catch (DataFormatException exc) {
+                throw new IOException("Compressed data is not valid", exc);
+            }
+            if (!useDictionary) {
+                pos = end - inflater.getRemaining();
+                if (end - pos >= 8) {
+                    crc.reset();
+                    crc.update(result);
+                    if (getInt(data, pos) != (int)crc.getValue()) {
+                        throw new IOException("Compressed data checksum is not valid");
+                    }
+                }
+            }
+            return result;
+        }
 
-        /** Request latch */
-        private final CountDownLatch latch = new CountDownLatch(1);
+        /**
+         * Skip the GZIP header
+         *
+         * @param   data                Compressed message buffer
+         * @param   pos                 Header offset
+         * @param   end                 End of the compressed data
+         * @return                      Offset of the compressed data
+         * @throws  IOException         GZIP header is not valid
+         */
+        private static int skipHeader(byte[] data, int pos, int end) throws IOException {
+            if (end - pos < 10 || ((data[pos] & 0xff) | (data[pos + 1] & 0xff) << 8) != GZIP_MAGIC
+                    || data[pos + 2] != Deflater.DEFLATED) {
+                throw new IOException("Not in GZIP format");
+            }
+            int flags = data[pos + 3] & 0xff;
+            pos += 10;
+            if ((flags & FEXTRA) != 0) {
+                if (end - pos < 2) {
+                    throw new EOFException("End-of-data reading GZIP header");
+                }
+                pos += 2 + ((data[pos] & 0xff) | (data[pos + 1] & 0xff) << 8);
+            }
+            if ((flags & FNAME) != 0) {
+                while (pos < end && data[pos++] != 0) ;
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (pos < end && data[pos++] != 0) ;
+            }
+            if ((flags & FHCRC) != 0) {
+                pos += 2;
+            }
+            if (pos > end) {
+                throw new EOFException("End-of-data reading GZIP header");
+            }
+            return pos;
+        }
 
-        /** Response message */
-        private volatile String response;
+        private static void putInt(byte[] buf, int pos, int value) {
+            buf[pos] = (byte)value;
+            buf[pos + 1] = (byte)(value >> 8);
+            buf[pos + 2] = (byte)(value >> 16);
+            buf[pos + 3] = (byte)(value >> 24);
+        }
 
-        /** Socket exception */
-        private volatile IOException exception;
+        private static int getInt(byte[] buf, int pos) {
+            return (buf[pos] & 0xff) | (buf[pos + 1] & 0xff) << 8 | (buf[pos + 2] & 0xff) << 16 | (buf[pos + 3] & 0xff) << 24;
+        }
+    }
+
+    /**
+     * POST request
+     */
+    private class PostRequest {
+
+        /** Response future */
+        private final CompletableFuture<String> future = new CompletableFuture<>();
 
         /**
          * Create a post request
@@ -433,8 +681,6 @@ public class PeerWebSocket {
         /**
          * Wait for the response
          *
-         * The caller must hold the lock for the request condition
-         *
          * @param   timeout                 Wait timeout
          * @param   unit                    Time unit
          * @return                          Response message
@@ -442,37 +688,43 @@ public class PeerWebSocket {
          * @throws  IOException             I/O error occurred
          */
         public String get(long timeout, TimeUnit unit) throws InterruptedException, IOException {
-            if (!latch.await(timeout, unit)) {
+            try {
+                return future.get(timeout, unit);
+            } catch (TimeoutException exc) {
                 throw new SocketTimeoutException("WebSocket read timeout exceeded");
+            } catch (ExecutionException exc) {
+                if (exc.getCause() instanceof IOException) {
+                    throw (IOException)exc.getCause();
+                }
+                throw new IOException(exc.getCause());
             }
-            if (exception != null) {
-                throw exception;
-            }
-            return response;
         }
 
         /**
-         * Complete the request with a response message
+         * Return the response future
          *
-         * The caller must hold the lock for the request condition
+         * @return                          Response future
+         */
+        public CompletableFuture<String> getFuture() {
+            return future;
+        }
+
+        /**
+         * Complete the request with a response message
          *
          * @param   response                Response message
          */
         public void complete(String response) {
-            this.response = response;
-            latch.countDown();
+            future.complete(response);
         }
 
         /**
          * Complete the request with an exception
          *
-         * The caller must hold the lock for the request condition
-         *
          * @param   exception             I/O exception
          */
         public void complete(IOException exception) {
-            this.exception = exception;
-            latch.countDown();
+            future.completeExceptionally(exception);
         }
     }
 }
@@ -53,6 +53,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -100,6 +101,7 @@ public final class Peers {
     public static final int MIN_COMPRESS_SIZE = 256;
     static final boolean useWebSockets;
     static final int webSocketIdleTimeout;
+    static final boolean useCompressionDictionary;
     static final boolean useProxy = System.getProperty("socksProxyHost") != null || System.getProperty("http.proxyHost") != null;
     static final boolean isGzipEnabled;
 
@@ -120,6 +122,7 @@ public final class Peers {
     private static final int pushThreshold;
     private static final int pullThreshold;
     private static final int sendToPeersLimit;
+    private static final boolean enableCompactBlocks = Nxt.getBooleanProperty("nxt.enableCompactBlocks");
     private static final boolean usePeersDb;
     private static final boolean savePeers;
     static final boolean ignorePeerAnnouncedAddress;
@@ -137,6 +140,10 @@ public final class Peers {
     private static final Listeners<Peer,Event> listeners = new Listeners<>();
 
     private static final ConcurrentMap<String, PeerImpl> peers = new ConcurrentHashMap<>();
+    /** Connected peers, the subset of peers kept up to date on each peer state change */
+    private static final ConcurrentMap<String, PeerImpl> connectedPeers = new ConcurrentHashMap<>();
+    /** Inbound peers, the subset of peers kept up to date on each inbound request and inbound status expiration */
+    private static final ConcurrentMap<String, PeerImpl> inboundPeers = new ConcurrentHashMap<>();
     private static final ConcurrentMap<String, String> selfAnnouncedAddresses = new ConcurrentHashMap<>();
 
     static final Collection<PeerImpl> allPeers = Collections.unmodifiableCollection(peers.values());
@@ -267,6 +274,9 @@ public final class Peers {
             json.put("apiSSLPort", API.openAPISSLPort);
             servicesList.add(Peer.Service.API_SSL);
         }
+        if (enableCompactBlocks) {
+            servicesList.add(Peer.Service.COMPACT_BLOCKS);
+        }
         long services = 0;
         for (Peer.Service service : servicesList) {
             services |= service.getCode();
@@ -303,6 +313,7 @@ public final class Peers {
         pullThreshold = Nxt.getIntProperty("nxt.pullThreshold");
         useWebSockets = Nxt.getBooleanProperty("nxt.useWebSockets");
         webSocketIdleTimeout = Nxt.getIntProperty("nxt.webSocketIdleTimeout");
+        useCompressionDictionary = Nxt.getBooleanProperty("nxt.useWebSocketCompressionDictionary");
         isGzipEnabled = Nxt.getBooleanProperty("nxt.enablePeerServerGZIPFilter");
         blacklistingPeriod = Nxt.getIntProperty("nxt.blacklistingPeriod") / 1000;
         communicationLoggingMask = Nxt.getIntProperty("nxt.communicationLoggingMask");
@@ -397,6 +408,7 @@ public final class Peers {
                 ctxHandler.setContextPath("/");
 
                 ServletHolder peerServletHolder = new ServletHolder(new PeerServlet());
+                peerServletHolder.setAsyncSupported(true);
                 ctxHandler.addServlet(peerServletHolder, "/*");
 
                 if (Nxt.getBooleanProperty("nxt.enablePeerServerDoSFilter")) {
@@ -517,12 +529,14 @@ public final class Peers {
                         }
                     }
 
-                    peers.values().forEach(peer -> {
+                    connectedPeers.values().forEach(peer -> {
                         if (peer.getState() == Peer.State.CONNECTED
                                 && now - peer.getLastUpdated() > 3600
                                 && now - peer.getLastConnectAttempt() > 600) {
                             peersService.submit(peer::connect);
                         }
+                    });
+                    inboundPeers.values().forEach(peer -> {
                         if (peer.getLastInboundRequest() != 0 &&
                                 now - peer.getLastInboundRequest() > Peers.webSocketIdleTimeout / 1000) {
                             peer.setLastInboundRequest(0);
@@ -775,6 +789,7 @@ public final class Peers {
         }
         ThreadPool.shutdownExecutor("sendingService", sendingService, 2);
         ThreadPool.shutdownExecutor("peersService", peersService, 5);
+        PeerHttpClient.shutdown();
     }
 
     public static boolean addListener(Listener<Peer> listener, Event eventType) {
@@ -802,7 +817,8 @@ public final class Peers {
     }
 
     public static List<Peer> getPeers(final Peer.State state) {
-        return getPeers(peer -> peer.getState() == state);
+        return getPeers(state == Peer.State.CONNECTED ? connectedPeers.values() : peers.values(),
+                peer -> peer.getState() == state, Integer.MAX_VALUE);
     }
 
     public static List<Peer> getPeers(Filter<Peer> filter) {
@@ -810,8 +826,12 @@ public final class Peers {
     }
 
     public static List<Peer> getPeers(Filter<Peer> filter, int limit) {
+        return getPeers(peers.values(), filter, limit);
+    }
+
+    private static List<Peer> getPeers(Collection<PeerImpl> source, Filter<Peer> filter, int limit) {
         List<Peer> result = new ArrayList<>();
-        for (Peer peer : peers.values()) {
+        for (Peer peer : source) {
             if (filter.ok(peer)) {
                 result.add(peer);
                 if (result.size() >= limit) {
@@ -827,15 +847,24 @@ public final class Peers {
     }
 
     public static List<Peer> getInboundPeers() {
-        return getPeers(Peer::isInbound);
+        return getPeers(inboundPeers.values(), Peer::isInbound, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Return the inbound request processing statistics for each request priority class
+     *
+     * @return                      Statistics by priority class
+     */
+    public static JSONObject getRequestStatistics() {
+        return PeerServlet.getRequestStatistics();
     }
 
     public static boolean hasTooManyInboundPeers() {
-        return getPeers(Peer::isInbound, maxNumberOfInboundConnections).size() >= maxNumberOfInboundConnections;
+        return getPeers(inboundPeers.values(), Peer::isInbound, maxNumberOfInboundConnections).size() >= maxNumberOfInboundConnections;
     }
 
     public static boolean hasTooManyOutboundConnections() {
-        return getPeers(peer -> !peer.isBlacklisted() && peer.getState() == Peer.State.CONNECTED && peer.getAnnouncedAddress() != null,
+        return getPeers(connectedPeers.values(), peer -> !peer.isBlacklisted() && peer.getState() == Peer.State.CONNECTED && peer.getAnnouncedAddress() != null,
                 maxNumberOfOutboundConnections).size() >= maxNumberOfOutboundConnections;
     }
 
@@ -939,6 +968,7 @@ public final class Peers {
                         + ", removing old peer " + oldHost);
                 oldPeer = peers.remove(oldHost);
                 if (oldPeer != null) {
+                    updatePeerViews((PeerImpl) oldPeer);
                     Peers.notifyListeners(oldPeer, Event.REMOVE);
                 }
             }
@@ -952,7 +982,12 @@ public final class Peers {
     }
 
     public static boolean addPeer(Peer peer) {
-        if (peers.put(peer.getHost(), (PeerImpl) peer) == null) {
+        PeerImpl oldPeer = peers.put(peer.getHost(), (PeerImpl) peer);
+        if (oldPeer != null && oldPeer != peer) {
+            updatePeerViews(oldPeer);
+        }
+        updatePeerViews((PeerImpl) peer);
+        if (oldPeer == null) {
             listeners.notify(peer, Event.NEW_PEER);
             return true;
         }
@@ -963,7 +998,32 @@ public final class Peers {
         if (peer.getAnnouncedAddress() != null) {
             selfAnnouncedAddresses.remove(peer.getAnnouncedAddress());
         }
-        return peers.remove(peer.getHost());
+        PeerImpl removedPeer = peers.remove(peer.getHost());
+        updatePeerViews((PeerImpl) peer);
+        return removedPeer;
+    }
+
+    /**
+     * Update the connected and inbound peer views after a change of the peer state,
+     * inbound status, or membership in the peer map
+     *
+     * @param   peer                Peer
+     */
+    static void updatePeerViews(PeerImpl peer) {
+        String host = peer.getHost();
+        synchronized (connectedPeers) {
+            boolean isKnown = peers.get(host) == peer;
+            if (isKnown && peer.getState() == Peer.State.CONNECTED) {
+                connectedPeers.put(host, peer);
+            } else {
+                connectedPeers.remove(host, peer);
+            }
+            if (isKnown && peer.isInbound()) {
+                inboundPeers.put(host, peer);
+            } else {
+                inboundPeers.remove(host, peer);
+            }
+        }
     }
 
     public static void connectPeer(Peer peer) {
@@ -974,7 +1034,21 @@ public final class Peers {
     public static void sendToSomePeers(Block block) {
         JSONObject request = block.getJSONObject();
         request.put("requestType", "processBlock");
-        sendToSomePeers(request);
+        JSONObject compactRequest = null;
+        if (enableCompactBlocks) {
+            //
+            // Peers accepting compact blocks get the transaction identifiers instead of
+            // the transactions and rebuild the block from their unconfirmed transactions
+            //
+            compactRequest = new JSONObject(request);
+            compactRequest.remove("transactions");
+            JSONArray transactionIds = new JSONArray();
+            block.getTransactions().forEach(transaction -> transactionIds.add(transaction.getStringId()));
+            compactRequest.put("transactionIds", transactionIds);
+            compactRequest.put("blockId", block.getStringId());
+            compactRequest.put("requestType", "processCompactBlock");
+        }
+        sendToSomePeers(request, compactRequest);
     }
 
     private static final int sendTransactionsBatchSize = 10;
@@ -989,31 +1063,35 @@ public final class Peers {
             }
             request.put("requestType", "processTransactions");
             request.put("transactions", transactionsData);
-            sendToSomePeers(request);
+            sendToSomePeers(request, null);
             nextBatchStart += sendTransactionsBatchSize;
         }
     }
 
-    private static void sendToSomePeers(final JSONObject request) {
+    private static void sendToSomePeers(final JSONObject request, final JSONObject compactRequest) {
         sendingService.submit(() -> {
             final JSONStreamAware jsonRequest = JSON.prepareRequest(request);
+            final JSONStreamAware jsonCompactRequest = (compactRequest != null ? JSON.prepareRequest(compactRequest) : null);
 
             int successful = 0;
             List<Future<JSONObject>> expectedResponses = new ArrayList<>();
-            for (final Peer peer : peers.values()) {
+            for (final Peer peer : connectedPeers.values()) {
 
                 if (Peers.enableHallmarkProtection && peer.getWeight() < Peers.pushThreshold) {
                     continue;
                 }
 
                 if (!peer.isBlacklisted() && peer.getState() == Peer.State.CONNECTED && peer.getAnnouncedAddress() != null) {
-                    Future<JSONObject> futureResponse = peersService.submit(() -> peer.send(jsonRequest));
+                    Future<JSONObject> futureResponse = peer.sendAsync(
+                            jsonCompactRequest != null && peer.providesService(Peer.Service.COMPACT_BLOCKS) ?
+                                    jsonCompactRequest : jsonRequest, Peers.MAX_RESPONSE_SIZE);
                     expectedResponses.add(futureResponse);
                 }
                 if (expectedResponses.size() >= Peers.sendToPeersLimit - successful) {
+                    long deadline = System.currentTimeMillis() + Peers.connectTimeout + Peers.readTimeout;
                     for (Future<JSONObject> future : expectedResponses) {
                         try {
-                            JSONObject response = future.get();
+                            JSONObject response = future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
                             if (response != null && response.get("error") == null) {
                                 successful += 1;
                             }
@@ -1021,6 +1099,8 @@ public final class Peers {
                             Thread.currentThread().interrupt();
                         } catch (ExecutionException e) {
                             Logger.logDebugMessage("Error in sendToSomePeers", e);
+                        } catch (TimeoutException e) {
+                            future.cancel(false);
                         }
 
                     }
@@ -1038,8 +1118,10 @@ public final class Peers {
     }
 
     public static List<Peer> getPublicPeers(final Peer.State state, final boolean applyPullThreshold) {
-        return getPeers(peer -> !peer.isBlacklisted() && peer.getState() == state && peer.getAnnouncedAddress() != null
-                && (!applyPullThreshold || !Peers.enableHallmarkProtection || peer.getWeight() >= Peers.pullThreshold));
+        return getPeers(state == Peer.State.CONNECTED ? connectedPeers.values() : peers.values(),
+                peer -> !peer.isBlacklisted() && peer.getState() == state && peer.getAnnouncedAddress() != null
+                && (!applyPullThreshold || !Peers.enableHallmarkProtection || peer.getWeight() >= Peers.pullThreshold),
+                Integer.MAX_VALUE);
     }
 
     public static Peer getWeightedPeer(List<Peer> selectedPeers) {
@@ -1049,25 +1131,23 @@ public final class Peers {
         if (! Peers.enableHallmarkProtection || ThreadLocalRandom.current().nextInt(3) == 0) {
             return selectedPeers.get(ThreadLocalRandom.current().nextInt(selectedPeers.size()));
         }
+        //
+        // Read each peer weight once into a cumulative weight table and
+        // locate the random hit with a binary search
+        //
+        long[] cumulativeWeights = new long[selectedPeers.size()];
         long totalWeight = 0;
-        for (Peer peer : selectedPeers) {
-            long weight = peer.getWeight();
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            long weight = selectedPeers.get(i).getWeight();
             if (weight == 0) {
                 weight = 1;
             }
             totalWeight += weight;
+            cumulativeWeights[i] = totalWeight;
         }
         long hit = ThreadLocalRandom.current().nextLong(totalWeight);
-        for (Peer peer : selectedPeers) {
-            long weight = peer.getWeight();
-            if (weight == 0) {
-                weight = 1;
-            }
-            if ((hit -= weight) < 0) {
-                return peer;
-            }
-        }
-        return null;
+        int index = Arrays.binarySearch(cumulativeWeights, hit + 1);
+        return selectedPeers.get(index >= 0 ? index : -index - 1);
     }
 
     static String addressWithPort(String address) {
@@ -1093,7 +1173,7 @@ public final class Peers {
     }
 
     private static boolean hasEnoughConnectedPublicPeers(int limit) {
-        return getPeers(peer -> !peer.isBlacklisted() && peer.getState() == Peer.State.CONNECTED && peer.getAnnouncedAddress() != null
+        return getPeers(connectedPeers.values(), peer -> !peer.isBlacklisted() && peer.getState() == Peer.State.CONNECTED && peer.getAnnouncedAddress() != null
                 && (! Peers.enableHallmarkProtection || peer.getWeight() > 0), limit).size() >= limit;
     }
 
@@ -55,4 +55,9 @@ final class ProcessBlock extends PeerServlet.PeerRequestHandler {
         return true;
     }
 
+    @Override
+    RequestPriority getPriority() {
+        return RequestPriority.HIGH;
+    }
+
 }
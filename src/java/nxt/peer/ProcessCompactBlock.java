@@ -0,0 +1,199 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.peer;
+
+import nxt.Block;
+import nxt.Constants;
+import nxt.Nxt;
+import nxt.NxtException;
+import nxt.Transaction;
+import nxt.TransactionProcessor;
+import nxt.util.Convert;
+import nxt.util.JSON;
+import nxt.util.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process a block announced as the block header and the transaction identifiers
+ *
+ * The block is rebuilt using the unconfirmed transactions and the missing transactions
+ * are requested from the announcing peer.  The rebuilt block is then processed in the
+ * same way as a block received with all of its transactions.  If the block can not be
+ * rebuilt or the rebuilt block is not accepted, the full block is requested from the
+ * announcing peer and the peer is blacklisted only if the full block is not valid.
+ */
+final class ProcessCompactBlock extends PeerServlet.PeerRequestHandler {
+
+    static final ProcessCompactBlock instance = new ProcessCompactBlock();
+
+    private static final JSONStreamAware INVALID_COMPACT_BLOCK;
+    static {
+        JSONObject response = new JSONObject();
+        response.put("error", Errors.INVALID_COMPACT_BLOCK);
+        INVALID_COMPACT_BLOCK = JSON.prepare(response);
+    }
+
+    private ProcessCompactBlock() {}
+
+    @Override
+    JSONStreamAware processRequest(final JSONObject request, final Peer peer) {
+        final List<Long> transactionIds = parseTransactionIds(request.get("transactionIds"));
+        if (transactionIds == null || !(request.get("blockId") instanceof String)) {
+            return INVALID_COMPACT_BLOCK;
+        }
+        String previousBlockId = (String)request.get("previousBlock");
+        Block lastBlock = Nxt.getBlockchain().getLastBlock();
+        if (lastBlock.getStringId().equals(previousBlockId) ||
+                (Convert.parseUnsignedLong(previousBlockId) == lastBlock.getPreviousBlockId()
+                        && lastBlock.getTimestamp() > Convert.parseLong(request.get("timestamp")))) {
+            Peers.peersService.submit(() -> {
+                try {
+                    JSONObject blockData = rebuildBlock(request, transactionIds, peer);
+                    if (blockData != null) {
+                        Nxt.getBlockchainProcessor().processPeerBlock(blockData);
+                        return;
+                    }
+                } catch (NxtException | RuntimeException e) {
+                    Logger.logDebugMessage("Compact block " + request.get("blockId") + " not accepted, requesting full block: "
+                            + e.toString());
+                }
+                if (peer == null) {
+                    return;
+                }
+                try {
+                    JSONObject blockData = getFullBlock(request, peer);
+                    if (blockData != null) {
+                        Nxt.getBlockchainProcessor().processPeerBlock(blockData);
+                    }
+                } catch (NxtException | RuntimeException e) {
+                    peer.blacklist(e);
+                }
+            });
+        }
+        return JSON.emptyJSON;
+    }
+
+    @Override
+    boolean rejectWhileDownloading() {
+        return true;
+    }
+
+    @Override
+    RequestPriority getPriority() {
+        return RequestPriority.HIGH;
+    }
+
+    /**
+     * Parse the transaction identifiers of a compact block
+     *
+     * @param   transactionIds      Transaction identifiers from the request
+     * @return                      Transaction identifiers or null if the identifiers are missing or not valid
+     */
+    private static List<Long> parseTransactionIds(Object transactionIds) {
+        if (!(transactionIds instanceof JSONArray) ||
+                ((JSONArray)transactionIds).size() > Constants.MAX_NUMBER_OF_TRANSACTIONS) {
+            return null;
+        }
+        List<Long> ids = new ArrayList<>(((JSONArray)transactionIds).size());
+        for (Object transactionId : (JSONArray)transactionIds) {
+            if (!(transactionId instanceof String)) {
+                return null;
+            }
+            try {
+                ids.add(Convert.parseUnsignedLong((String)transactionId));
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Rebuild the block data with the transactions
+     *
+     * @param   request             Compact block request
+     * @param   transactionIds      Block transaction identifiers
+     * @param   peer                Announcing peer
+     * @return                      Block data or null if the missing transactions are not available
+     */
+    private static JSONObject rebuildBlock(JSONObject request, List<Long> transactionIds, Peer peer) {
+        TransactionProcessor transactionProcessor = Nxt.getTransactionProcessor();
+        JSONArray transactionsData = new JSONArray();
+        List<Integer> missingIndexes = new ArrayList<>();
+        JSONArray missingIds = new JSONArray();
+        for (long transactionId : transactionIds) {
+            Transaction transaction = transactionProcessor.getUnconfirmedTransaction(transactionId);
+            if (transaction == null) {
+                missingIndexes.add(transactionsData.size());
+                missingIds.add(Long.toUnsignedString(transactionId));
+            }
+            transactionsData.add(transaction != null ? transaction.getJSONObject() : null);
+        }
+        if (!missingIds.isEmpty()) {
+            if (peer == null) {
+                return null;
+            }
+            JSONObject transactionsRequest = new JSONObject();
+            transactionsRequest.put("requestType", "getBlockTransactions");
+            transactionsRequest.put("blockId", request.get("blockId"));
+            transactionsRequest.put("transactionIds", missingIds);
+            JSONObject response = peer.send(JSON.prepareRequest(transactionsRequest), Peers.MAX_RESPONSE_SIZE);
+            JSONArray missingTransactions = (response != null ? (JSONArray)response.get("transactions") : null);
+            if (missingTransactions == null || missingTransactions.size() != missingIds.size()) {
+                Logger.logDebugMessage("Unable to get " + missingIds.size() + " missing transactions for compact block "
+                        + request.get("blockId") + " from " + peer.getHost());
+                return null;
+            }
+            for (int i = 0; i < missingIndexes.size(); i++) {
+                transactionsData.set(missingIndexes.get(i), missingTransactions.get(i));
+            }
+        }
+        JSONObject blockData = new JSONObject(request);
+        blockData.remove("transactionIds");
+        blockData.remove("blockId");
+        blockData.put("transactions", transactionsData);
+        return blockData;
+    }
+
+    /**
+     * Get the full block from the announcing peer
+     *
+     * @param   request             Compact block request
+     * @param   peer                Announcing peer
+     * @return                      Block data or null if the block is not available
+     */
+    private static JSONObject getFullBlock(JSONObject request, Peer peer) {
+        JSONObject blockRequest = new JSONObject();
+        blockRequest.put("requestType", "getNextBlocks");
+        blockRequest.put("blockId", request.get("previousBlock"));
+        JSONArray blockIds = new JSONArray();
+        blockIds.add(request.get("blockId"));
+        blockRequest.put("blockIds", blockIds);
+        JSONObject response = peer.send(JSON.prepareRequest(blockRequest), Peers.MAX_RESPONSE_SIZE);
+        JSONArray nextBlocks = (response != null ? (JSONArray)response.get("nextBlocks") : null);
+        if (nextBlocks == null || nextBlocks.size() != 1) {
+            Logger.logDebugMessage("Unable to get full block " + request.get("blockId") + " from " + peer.getHost());
+            return null;
+        }
+        return (JSONObject)nextBlocks.get(0);
+    }
+}
@@ -0,0 +1,134 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.peer;
+
+import nxt.Nxt;
+import org.json.simple.JSONObject;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Priority class of an inbound peer request
+ * <p>
+ * Each class has its own executor, with a limit on the number of requests being processed and
+ * on the number of requests waiting in the class queue, so a request is never queued behind
+ * requests of another class and no thread is held while a request waits. A request which finds
+ * the queue full, or which has waited longer than the maximum queue wait when it reaches the
+ * front of the queue, is rejected with a busy response. Low priority requests are rejected
+ * immediately while high priority requests are waiting.
+ */
+enum RequestPriority {
+
+    /** Block propagation and blockchain download */
+    HIGH(16, 64),
+    /** Transaction propagation */
+    NORMAL(8, 32),
+    /** Peer discovery and unconfirmed pool synchronization */
+    LOW(4, 8);
+
+    private static final long maxQueueWait = Nxt.getIntProperty("nxt.peerRequests.maxQueueWait", 2000);
+
+    private final int maxActive;
+    private final int maxQueued;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final AtomicInteger peakQueued = new AtomicInteger();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    RequestPriority(int defaultMaxActive, int defaultMaxQueued) {
+        String prefix = "nxt.peerRequests." + name().toLowerCase();
+        this.maxActive = Math.max(1, Nxt.getIntProperty(prefix + ".maxActive", defaultMaxActive));
+        this.maxQueued = Math.max(1, Nxt.getIntProperty(prefix + ".maxQueued", defaultMaxQueued));
+        this.executor = new ThreadPoolExecutor(maxActive, maxActive, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxQueued), runnable -> {
+                    Thread thread = new Thread(runnable, "PeerRequest-" + name() + "-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Return the maximum time a request can wait in a class queue
+     *
+     * @return                      Maximum queue wait in milliseconds
+     */
+    static long getMaxQueueWait() {
+        return maxQueueWait;
+    }
+
+    /**
+     * Queue a request for processing
+     * <p>
+     * The busy task is run instead of the request task if the request has waited longer than the
+     * maximum queue wait. Nothing is run if the request is rejected when it is queued.
+     *
+     * @param   task                Processes the request and sends the response
+     * @param   busyTask            Sends the busy response
+     * @return                      FALSE if the request was rejected and the caller must send the busy response
+     */
+    boolean execute(Runnable task, Runnable busyTask) {
+        if (this == LOW && !HIGH.executor.getQueue().isEmpty()) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        long queueTime = System.currentTimeMillis();
+        try {
+            executor.execute(() -> {
+                if (System.currentTimeMillis() - queueTime > maxQueueWait) {
+                    rejected.incrementAndGet();
+                    busyTask.run();
+                } else {
+                    try {
+                        task.run();
+                    } finally {
+                        processed.incrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        peakQueued.accumulateAndGet(executor.getQueue().size(), Math::max);
+        return true;
+    }
+
+    /**
+     * Return the processing statistics for this class
+     *
+     * @return                      Statistics
+     */
+    JSONObject getStatistics() {
+        JSONObject json = new JSONObject();
+        json.put("maxActive", maxActive);
+        json.put("maxQueued", maxQueued);
+        json.put("active", executor.getActiveCount());
+        json.put("queued", executor.getQueue().size());
+        json.put("peakQueued", peakQueued.get());
+        json.put("processed", processed.get());
+        json.put("rejected", rejected.get());
+        return json;
+    }
+}
@@ -343,7 +343,7 @@ public final class Users {
                 Users.sendNewDataToAll(response);
             }, Peers.Event.NEW_PEER);
 
-            Nxt.getTransactionProcessor().addListener(transactions -> {
+            Nxt.getTransactionProcessor().addAsyncListener(transactions -> {
                 JSONObject response = new JSONObject();
                 JSONArray removedUnconfirmedTransactions = new JSONArray();
                 for (Transaction transaction : transactions) {
@@ -355,7 +355,7 @@ public final class Users {
                 Users.sendNewDataToAll(response);
             }, TransactionProcessor.Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
 
-            Nxt.getTransactionProcessor().addListener(transactions -> {
+            Nxt.getTransactionProcessor().addAsyncListener(transactions -> {
                 JSONObject response = new JSONObject();
                 JSONArray addedUnconfirmedTransactions = new JSONArray();
                 for (Transaction transaction : transactions) {
@@ -374,7 +374,7 @@ public final class Users {
                 Users.sendNewDataToAll(response);
             }, TransactionProcessor.Event.ADDED_UNCONFIRMED_TRANSACTIONS);
 
-            Nxt.getTransactionProcessor().addListener(transactions -> {
+            Nxt.getTransactionProcessor().addAsyncListener(transactions -> {
                 JSONObject response = new JSONObject();
                 JSONArray addedConfirmedTransactions = new JSONArray();
                 for (Transaction transaction : transactions) {
@@ -393,7 +393,7 @@ public final class Users {
                 Users.sendNewDataToAll(response);
             }, TransactionProcessor.Event.ADDED_CONFIRMED_TRANSACTIONS);
 
-            Nxt.getBlockchainProcessor().addListener(block -> {
+            Nxt.getBlockchainProcessor().addAsyncListener(block -> {
                 JSONObject response = new JSONObject();
                 JSONArray addedOrphanedBlocks = new JSONArray();
                 JSONObject addedOrphanedBlock = new JSONObject();
@@ -413,7 +413,7 @@ public final class Users {
                 Users.sendNewDataToAll(response);
             }, BlockchainProcessor.Event.BLOCK_POPPED);
 
-            Nxt.getBlockchainProcessor().addListener(block -> {
+            Nxt.getBlockchainProcessor().addAsyncListener(block -> {
                 JSONObject response = new JSONObject();
                 JSONArray addedRecentBlocks = new JSONArray();
                 JSONObject addedRecentBlock = new JSONObject();
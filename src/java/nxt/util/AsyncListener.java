@@ -0,0 +1,200 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.util;
+
+import nxt.Nxt;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener which receives its events on a background thread
+ * <p>
+ * Events are added to a bounded queue and delivered to the wrapped listener in the order in
+ * which they were generated, one at a time. When the queue is full, the notifying thread waits
+ * up to nxt.asyncListenerMaxWait milliseconds for space and then drops the event. The wrapped
+ * listener runs outside of any database transaction or lock held by the notifying thread, so it
+ * must only use the event object itself or state which may have changed since the event.
+ */
+final class AsyncListener<T> implements Listener<T> {
+
+    private static final int queueSize = Math.max(Nxt.getIntProperty("nxt.asyncListenerQueueSize", 1000), 1);
+    private static final int maxWait = Nxt.getIntProperty("nxt.asyncListenerMaxWait", 1000);
+    private static final int batchSize = 100;
+
+    private static final List<AsyncListener<?>> asyncListeners = new CopyOnWriteArrayList<>();
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "AsyncListener-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final Listener<T> listener;
+    private final BlockingQueue<QueuedEvent<T>> queue = new ArrayBlockingQueue<>(queueSize);
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long lastLag;
+    private volatile long maxLag;
+    private volatile int maxQueued;
+    private int registrations;
+
+    /**
+     * Create an asynchronous listener
+     *
+     * @param   name                Name used in the statistics
+     * @param   listener            Wrapped listener
+     */
+    AsyncListener(String name, Listener<T> listener) {
+        this.name = name;
+        this.listener = listener;
+    }
+
+    /**
+     * Queue an event for the wrapped listener
+     *
+     * @param   t                   Event object
+     */
+    @Override
+    public void notify(T t) {
+        QueuedEvent<T> event = new QueuedEvent<>(t);
+        if (!queue.offer(event)) {
+            delayed.increment();
+            boolean queued = false;
+            try {
+                queued = queue.offer(event, maxWait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!queued) {
+                dropped.increment();
+                Logger.logWarningMessage("Event queue for asynchronous listener " + name + " is full, event dropped");
+                return;
+            }
+        }
+        int size = queue.size();
+        if (size > maxQueued) {
+            maxQueued = size;
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::dispatch);
+        }
+    }
+
+    /**
+     * Register the listener for an additional event type
+     */
+    void register() {
+        synchronized (asyncListeners) {
+            if (registrations++ == 0) {
+                asyncListeners.add(this);
+            }
+        }
+    }
+
+    /**
+     * Remove a registration of the listener
+     *
+     * @return                      TRUE if the listener has no remaining registrations
+     */
+    boolean unregister() {
+        synchronized (asyncListeners) {
+            if (--registrations == 0) {
+                asyncListeners.remove(this);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Return the statistics for all asynchronous listeners
+     *
+     * @return                      Array of listener statistics
+     */
+    static JSONArray getStatistics() {
+        JSONArray array = new JSONArray();
+        asyncListeners.forEach(asyncListener -> {
+            JSONObject json = new JSONObject();
+            json.put("name", asyncListener.name);
+            json.put("queued", asyncListener.queue.size());
+            json.put("maxQueued", asyncListener.maxQueued);
+            json.put("dispatched", asyncListener.dispatched.sum());
+            json.put("delayed", asyncListener.delayed.sum());
+            json.put("dropped", asyncListener.dropped.sum());
+            json.put("lagMillis", asyncListener.lastLag);
+            json.put("maxLagMillis", asyncListener.maxLag);
+            array.add(json);
+        });
+        return array;
+    }
+
+    private void dispatch() {
+        int count = 0;
+        while (true) {
+            QueuedEvent<T> event = queue.poll();
+            if (event == null) {
+                scheduled.set(false);
+                // an event may have been queued after the poll but before the flag was cleared
+                if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            long lag = System.currentTimeMillis() - event.time;
+            lastLag = lag;
+            if (lag > maxLag) {
+                maxLag = lag;
+            }
+            try {
+                listener.notify(event.t);
+            } catch (Exception e) {
+                Logger.logErrorMessage("Asynchronous listener " + name + " failed", e);
+            }
+            dispatched.increment();
+            if (++count >= batchSize) {
+                // give other listeners a chance to run, the queue is still owned by this listener
+                executor.execute(this::dispatch);
+                return;
+            }
+        }
+    }
+
+    private static final class QueuedEvent<T> {
+
+        private final T t;
+        private final long time = System.currentTimeMillis();
+
+        private QueuedEvent(T t) {
+            this.t = t;
+        }
+    }
+}
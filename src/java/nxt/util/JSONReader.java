@@ -0,0 +1,407 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.util;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming JSON parser
+ * <p>
+ * The parser builds the same JSONObject and JSONArray trees as the json-simple parser and reports
+ * errors with the same ParseException types, but it scans the input directly from its own character
+ * buffer without creating token objects or intermediate strings for numbers, and it reuses the string
+ * instances of frequently seen object keys. Integers are returned as Long and other numbers as Double.
+ */
+public final class JSONReader {
+
+    /** Maximum nesting depth of objects and arrays */
+    private static final int MAX_DEPTH = 64;
+
+    /** Unexpected token reported at the end of the input, the same as the json-simple token */
+    private static final String END_OF_FILE = "END OF FILE";
+
+    /** Maximum length of a cached object key */
+    private static final int MAX_KEY_LENGTH = 32;
+
+    /** Cached object keys, a key replaces the key stored in the same slot */
+    private static final String[] keyCache = new String[1024];
+
+    /** Input reader or null if the buffer contains the complete input */
+    private final Reader reader;
+
+    /** Input buffer */
+    private final char[] buffer;
+
+    /** Current position in the buffer */
+    private int position;
+
+    /** Number of characters in the buffer */
+    private int limit;
+
+    /** Number of characters read before the start of the buffer */
+    private int offset;
+
+    /** Current nesting depth */
+    private int depth;
+
+    /** String builder for strings which contain escapes or cross a buffer boundary */
+    private final StringBuilder sb = new StringBuilder();
+
+    /**
+     * Parse a JSON value from a reader
+     *
+     * @param   reader              Input reader
+     * @return                      Parsed value
+     * @throws  IOException         I/O error occurred
+     * @throws  ParseException      Input is not valid JSON
+     */
+    public static Object parse(Reader reader) throws IOException, ParseException {
+        return new JSONReader(reader, new char[8192], 0).parseDocument();
+    }
+
+    /**
+     * Parse a JSON value from a string
+     *
+     * @param   input               Input string
+     * @return                      Parsed value
+     * @throws  ParseException      Input is not valid JSON
+     */
+    public static Object parse(String input) throws ParseException {
+        try {
+            return new JSONReader(null, input.toCharArray(), input.length()).parseDocument();
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString(), e);    // not possible without a reader
+        }
+    }
+
+    private JSONReader(Reader reader, char[] buffer, int limit) {
+        this.reader = reader;
+        this.buffer = buffer;
+        this.limit = limit;
+    }
+
+    private Object parseDocument() throws IOException, ParseException {
+        int c = skipWhitespace();
+        if (c < 0) {
+            throw new ParseException(getPosition(), ParseException.ERROR_UNEXPECTED_TOKEN, END_OF_FILE);
+        }
+        Object value = parseValue(c);
+        c = skipWhitespace();
+        if (c >= 0) {
+            throw new ParseException(getPosition(), ParseException.ERROR_UNEXPECTED_CHAR, (char)c);
+        }
+        return value;
+    }
+
+    private Object parseValue(int c) throws IOException, ParseException {
+        switch (c) {
+            case '{':
+                position++;
+                return parseObject();
+            case '[':
+                position++;
+                return parseArray();
+            case '"':
+                position++;
+                return parseString(false);
+            case 't':
+                parseLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                parseLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                parseLiteral("null");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return parseNumber();
+                }
+                throw unexpected(c);
+        }
+    }
+
+    private JSONObject parseObject() throws IOException, ParseException {
+        if (++depth > MAX_DEPTH) {
+            throw new ParseException(getPosition(), ParseException.ERROR_UNEXPECTED_EXCEPTION, "Maximum nesting depth exceeded");
+        }
+        JSONObject object = new JSONObject();
+        int c = skipWhitespace();
+        if (c == '}') {
+            position++;
+            depth--;
+            return object;
+        }
+        while (true) {
+            if (c != '"') {
+                throw unexpected(c);
+            }
+            position++;
+            String key = parseString(true);
+            c = skipWhitespace();
+            if (c != ':') {
+                throw unexpected(c);
+            }
+            position++;
+            object.put(key, parseValue(skipWhitespace()));
+            c = skipWhitespace();
+            position++;
+            if (c == '}') {
+                depth--;
+                return object;
+            }
+            if (c != ',') {
+                position--;
+                throw unexpected(c);
+            }
+            c = skipWhitespace();
+        }
+    }
+
+    private JSONArray parseArray() throws IOException, ParseException {
+        if (++depth > MAX_DEPTH) {
+            throw new ParseException(getPosition(), ParseException.ERROR_UNEXPECTED_EXCEPTION, "Maximum nesting depth exceeded");
+        }
+        JSONArray array = new JSONArray();
+        int c = skipWhitespace();
+        if (c == ']') {
+            position++;
+            depth--;
+            return array;
+        }
+        while (true) {
+            array.add(parseValue(c));
+            c = skipWhitespace();
+            position++;
+            if (c == ']') {
+                depth--;
+                return array;
+            }
+            if (c != ',') {
+                position--;
+                throw unexpected(c);
+            }
+            c = skipWhitespace();
+        }
+    }
+
+    private String parseString(boolean isKey) throws IOException, ParseException {
+        //
+        // Return a string from the buffer if it does not contain escapes
+        //
+        int start = position;
+        int hash = 0;
+        for (int i = start; i < limit; i++) {
+            char c = buffer[i];
+            if (c == '"') {
+                position = i + 1;
+                return isKey ? getKey(start, i - start, hash) : new String(buffer, start, i - start);
+            }
+            if (c == '\\') {
+                break;
+            }
+            hash = 31 * hash + c;
+        }
+        //
+        // Build the string
+        //
+        sb.setLength(0);
+        while (true) {
+            if (position >= limit) {
+                if (!fill()) {
+                    throw new ParseException(getPosition(), ParseException.ERROR_UNEXPECTED_TOKEN, END_OF_FILE);
+                }
+            }
+            char c = buffer[position++];
+            if (c == '"') {
+                break;
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            int e = read();
+            switch (e) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append((char)e);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int d = Character.digit(read(), 16);
+                        if (d < 0) {
+                            throw new ParseException(getPosition() - 1, ParseException.ERROR_UNEXPECTED_CHAR, buffer[position - 1]);
+                        }
+                        value = (value << 4) | d;
+                    }
+                    sb.append((char)value);
+                    break;
+                default:
+                    throw unexpected(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    private Object parseNumber() throws IOException, ParseException {
+        sb.setLength(0);
+        boolean isInteger = true;
+        while (true) {
+            if (position >= limit && !fill()) {
+                break;
+            }
+            char c = buffer[position];
+            if (c >= '0' && c <= '9' || c == '-') {
+                sb.append(c);
+            } else if (c == '.' || c == 'e' || c == 'E' || c == '+') {
+                sb.append(c);
+                isInteger = false;
+            } else {
+                break;
+            }
+            position++;
+        }
+        int length = sb.length();
+        if (isInteger) {
+            boolean negative = sb.charAt(0) == '-';
+            int i = negative ? 1 : 0;
+            if (i < length && length - i <= 19) {
+                long value = 0;
+                for (; i < length; i++) {
+                    char c = sb.charAt(i);
+                    if (c < '0' || c > '9') {
+                        break;
+                    }
+                    value = value * 10 + (c - '0');
+                }
+                // values of 19 digits can overflow, they are checked by the fallback below
+                if (i == length && (length - (negative ? 1 : 0) < 19 || value >= 0)) {
+                    return negative ? -value : value;
+                }
+            }
+        }
+        try {
+            return isInteger ? (Object)Long.valueOf(sb.toString()) : (Object)Double.valueOf(sb.toString());
+        } catch (NumberFormatException e) {
+            throw new ParseException(getPosition() - length, ParseException.ERROR_UNEXPECTED_TOKEN, sb.toString());
+        }
+    }
+
+    private void parseLiteral(String literal) throws IOException, ParseException {
+        for (int i = 0; i < literal.length(); i++) {
+            int c = read();
+            if (c != literal.charAt(i)) {
+                if (c >= 0) {
+                    position--;
+                }
+                throw unexpected(c);
+            }
+        }
+    }
+
+    private String getKey(int start, int length, int hash) {
+        if (length > MAX_KEY_LENGTH) {
+            return new String(buffer, start, length);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (keyCache.length - 1);
+        String key = keyCache[slot];
+        if (key != null && key.length() == length) {
+            int i = 0;
+            while (i < length && key.charAt(i) == buffer[start + i]) {
+                i++;
+            }
+            if (i == length) {
+                return key;
+            }
+        }
+        key = new String(buffer, start, length);
+        keyCache[slot] = key;
+        return key;
+    }
+
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            if (position >= limit && !fill()) {
+                return -1;
+            }
+            char c = buffer[position];
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+            position++;
+        }
+    }
+
+    private int read() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        if (reader == null) {
+            return false;
+        }
+        offset += limit;
+        position = 0;
+        limit = 0;
+        int count;
+        do {
+            count = reader.read(buffer, 0, buffer.length);
+        } while (count == 0);
+        if (count < 0) {
+            return false;
+        }
+        limit = count;
+        return true;
+    }
+
+    private int getPosition() {
+        return offset + position;
+    }
+
+    private ParseException unexpected(int c) {
+        if (c < 0) {
+            return new ParseException(getPosition(), ParseException.ERROR_UNEXPECTED_TOKEN, END_OF_FILE);
+        }
+        return new ParseException(getPosition(), ParseException.ERROR_UNEXPECTED_CHAR, (char)c);
+    }
+}
@@ -16,6 +16,8 @@
 
 package nxt.util;
 
+import org.json.simple.JSONArray;
+
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -23,6 +25,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public final class Listeners<T,E extends Enum<E>> {
 
     private final ConcurrentHashMap<Enum<E>, List<Listener<T>>> listenersMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Listener<T>, AsyncListener<T>> asyncListenersMap = new ConcurrentHashMap<>();
 
     public boolean addListener(Listener<T> listener, Enum<E> eventType) {
         synchronized (eventType) {
@@ -35,7 +38,46 @@ public final class Listeners<T,E extends Enum<E>> {
         }
     }
 
+    /**
+     * Add a listener which is notified on a background thread
+     * <p>
+     * The events of the listener are delivered in order, but after notify has returned, so the
+     * listener must not be needed for consensus and must not depend on the database state at the
+     * time of the event. A listener registered for several event types receives all of them in order.
+     *
+     * @param   listener            Listener
+     * @param   eventType           Event type
+     * @return                      TRUE if the listener was added
+     */
+    public boolean addAsyncListener(Listener<T> listener, Enum<E> eventType) {
+        synchronized (asyncListenersMap) {
+            AsyncListener<T> asyncListener = asyncListenersMap.computeIfAbsent(listener,
+                    l -> new AsyncListener<>(getName(eventType), l));
+            if (!addListener(asyncListener, eventType)) {
+                return false;
+            }
+            asyncListener.register();
+            return true;
+        }
+    }
+
     public boolean removeListener(Listener<T> listener, Enum<E> eventType) {
+        synchronized (asyncListenersMap) {
+            AsyncListener<T> asyncListener = asyncListenersMap.get(listener);
+            if (asyncListener != null) {
+                if (!removeListener0(asyncListener, eventType)) {
+                    return false;
+                }
+                if (asyncListener.unregister()) {
+                    asyncListenersMap.remove(listener);
+                }
+                return true;
+            }
+        }
+        return removeListener0(listener, eventType);
+    }
+
+    private boolean removeListener0(Listener<T> listener, Enum<E> eventType) {
         synchronized (eventType) {
             List<Listener<T>> listeners = listenersMap.get(eventType);
             if (listeners != null) {
@@ -48,10 +90,29 @@ public final class Listeners<T,E extends Enum<E>> {
     public void notify(T t, Enum<E> eventType) {
         List<Listener<T>> listeners = listenersMap.get(eventType);
         if (listeners != null) {
+            long start = Metrics.start();
             for (Listener<T> listener : listeners) {
                 listener.notify(t);
             }
+            if (start != 0) {
+                Metrics.histogram("nxt_listener_seconds", "Time spent in the synchronous listeners for an event",
+                        "event", getName(eventType)).stop(start);
+            }
         }
     }
 
+    /**
+     * Return the queue statistics of the asynchronous listeners
+     *
+     * @return                      Array of listener statistics
+     */
+    public static JSONArray getAsyncListenerStatistics() {
+        return AsyncListener.getStatistics();
+    }
+
+    private static String getName(Enum<?> eventType) {
+        String className = eventType.getDeclaringClass().getName();
+        return className.substring(className.lastIndexOf('.') + 1).replace('$', '.') + "." + eventType.name();
+    }
+
 }
@@ -0,0 +1,98 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter for 64-bit keys
+ * <p>
+ * The keys are expected to be uniformly distributed, such as identifiers derived from a hash,
+ * so the bit positions are taken directly from the key bits. A negative answer is exact,
+ * a positive answer means the key may have been added.
+ */
+public final class LongBloomFilter {
+
+    private static final int HASH_COUNT = 4;
+
+    private static final int BITS_PER_KEY = 20;
+
+    private final AtomicLongArray bits;
+    private final long mask;
+
+    /**
+     * Create a Bloom filter
+     *
+     * @param   expectedKeys        Expected number of keys, 20 bits are reserved for each key
+     */
+    public LongBloomFilter(long expectedKeys) {
+        long bitCount = Long.highestOneBit(Math.max(expectedKeys, 1L << 16) * BITS_PER_KEY - 1) << 1;
+        if (bitCount > (long)Integer.MAX_VALUE * 64) {
+            bitCount = Long.highestOneBit((long)Integer.MAX_VALUE * 64);
+        }
+        this.bits = new AtomicLongArray((int)(bitCount >>> 6));
+        this.mask = bitCount - 1;
+    }
+
+    /**
+     * Return the number of keys the filter is sized for
+     *
+     * @return                      Key capacity
+     */
+    public long getCapacity() {
+        return (mask + 1) / BITS_PER_KEY;
+    }
+
+    /**
+     * Add a key
+     *
+     * @param   key                 Key
+     */
+    public void add(long key) {
+        long hash = key;
+        long increment = Long.rotateLeft(key, 32) | 1;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = hash & mask;
+            int index = (int)(bit >>> 6);
+            long value = 1L << bit;
+            long word = bits.get(index);
+            while ((word & value) == 0 && !bits.compareAndSet(index, word, word | value)) {
+                word = bits.get(index);
+            }
+            hash += increment;
+        }
+    }
+
+    /**
+     * Check if a key may have been added
+     *
+     * @param   key                 Key
+     * @return                      FALSE if the key has not been added
+     */
+    public boolean mightContain(long key) {
+        long hash = key;
+        long increment = Long.rotateLeft(key, 32) | 1;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = hash & mask;
+            if ((bits.get((int)(bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            hash += increment;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,299 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.util;
+
+import nxt.Nxt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of counters, gauges and timing histograms
+ * <p>
+ * Metrics are collected only when nxt.enableMetrics is set. A timed section is written as
+ * <pre>
+ *     long start = Metrics.start();
+ *     ...
+ *     histogram.stop(start);
+ * </pre>
+ * and costs a single field read when metrics are disabled. Metric names follow the Prometheus
+ * conventions, and {@link #write(Writer)} produces the Prometheus text exposition format.
+ */
+public final class Metrics {
+
+    private static final boolean enabled = Nxt.getBooleanProperty("nxt.enableMetrics");
+
+    /** Registered metrics, keyed by name and labels separated by a space so that each name is sorted together */
+    private static final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    private Metrics() {} // never
+
+    /**
+     * Check if metrics are enabled
+     *
+     * @return                      TRUE if metrics are collected
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start a timed section
+     *
+     * @return                      Start time or 0 if metrics are disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Return a counter
+     *
+     * @param   name                Metric name
+     * @param   help                Metric description
+     * @return                      Counter
+     */
+    public static Counter counter(String name, String help) {
+        return (Counter)metrics.computeIfAbsent(name + " ", key -> new Counter(name, "", help));
+    }
+
+    /**
+     * Return a labeled counter
+     *
+     * @param   name                Metric name
+     * @param   help                Metric description
+     * @param   label               Label name
+     * @param   value               Label value
+     * @return                      Counter
+     */
+    public static Counter counter(String name, String help, String label, String value) {
+        String labels = getLabels(label, value);
+        return (Counter)metrics.computeIfAbsent(name + " " + labels, key -> new Counter(name, labels, help));
+    }
+
+    /**
+     * Return a timing histogram
+     *
+     * @param   name                Metric name
+     * @param   help                Metric description
+     * @return                      Histogram
+     */
+    public static Histogram histogram(String name, String help) {
+        return (Histogram)metrics.computeIfAbsent(name + " ", key -> new Histogram(name, "", help));
+    }
+
+    /**
+     * Return a labeled timing histogram
+     *
+     * @param   name                Metric name
+     * @param   help                Metric description
+     * @param   label               Label name
+     * @param   value               Label value
+     * @return                      Histogram
+     */
+    public static Histogram histogram(String name, String help, String label, String value) {
+        String labels = getLabels(label, value);
+        return (Histogram)metrics.computeIfAbsent(name + " " + labels, key -> new Histogram(name, labels, help));
+    }
+
+    /**
+     * Register a gauge
+     *
+     * @param   name                Metric name
+     * @param   help                Metric description
+     * @param   supplier            Returns the current value
+     */
+    public static void gauge(String name, String help, LongSupplier supplier) {
+        metrics.put(name + " ", new Gauge(name, help, supplier));
+    }
+
+    /**
+     * Write all metrics in the Prometheus text format
+     *
+     * @param   writer              Writer
+     * @throws  IOException         I/O error occurred
+     */
+    public static void write(Writer writer) throws IOException {
+        StringBuilder sb = new StringBuilder(4096);
+        String family = null;
+        for (Metric metric : metrics.values()) {
+            if (!metric.name.equals(family)) {
+                family = metric.name;
+                sb.append("# HELP ").append(family).append(' ').append(metric.help).append('\n');
+                sb.append("# TYPE ").append(family).append(' ').append(metric.getType()).append('\n');
+            }
+            metric.write(sb);
+        }
+        writer.write(sb.toString());
+    }
+
+    private static String getLabels(String label, String value) {
+        return "{" + label + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    private static abstract class Metric {
+
+        final String name;
+        final String labels;
+        final String help;
+
+        private Metric(String name, String labels, String help) {
+            this.name = name;
+            this.labels = labels;
+            this.help = help;
+        }
+
+        abstract String getType();
+
+        abstract void write(StringBuilder sb);
+    }
+
+    /**
+     * Counter of events
+     */
+    public static final class Counter extends Metric {
+
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name, String labels, String help) {
+            super(name, labels, help);
+        }
+
+        /**
+         * Increment the counter
+         */
+        public void increment() {
+            if (enabled) {
+                count.increment();
+            }
+        }
+
+        /**
+         * Add to the counter
+         *
+         * @param   value           Value to add
+         */
+        public void add(long value) {
+            if (enabled) {
+                count.add(value);
+            }
+        }
+
+        @Override
+        String getType() {
+            return "counter";
+        }
+
+        @Override
+        void write(StringBuilder sb) {
+            sb.append(name).append(labels).append(' ').append(count.sum()).append('\n');
+        }
+    }
+
+    /**
+     * Gauge reporting a current value
+     */
+    private static final class Gauge extends Metric {
+
+        private final LongSupplier supplier;
+
+        private Gauge(String name, String help, LongSupplier supplier) {
+            super(name, "", help);
+            this.supplier = supplier;
+        }
+
+        @Override
+        String getType() {
+            return "gauge";
+        }
+
+        @Override
+        void write(StringBuilder sb) {
+            sb.append(name).append(' ').append(supplier.getAsLong()).append('\n');
+        }
+    }
+
+    /**
+     * Histogram of durations with power of two buckets from 1 microsecond to 34 seconds
+     */
+    public static final class Histogram extends Metric {
+
+        private static final int MIN_SHIFT = 10;
+        private static final int BUCKET_COUNT = 26;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT + 1);
+        private final LongAdder sum = new LongAdder();
+
+        private Histogram(String name, String labels, String help) {
+            super(name, labels, help);
+        }
+
+        /**
+         * End a timed section
+         *
+         * @param   start           Start time returned by {@link Metrics#start()}
+         */
+        public void stop(long start) {
+            if (start != 0) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Record a duration
+         *
+         * @param   nanos           Duration in nanoseconds
+         */
+        public void record(long nanos) {
+            if (!enabled) {
+                return;
+            }
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            int bucket = nanos <= 1L << MIN_SHIFT ? 0 : 64 - Long.numberOfLeadingZeros(nanos - 1) - MIN_SHIFT;
+            buckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT));
+            sum.add(nanos);
+        }
+
+        @Override
+        String getType() {
+            return "histogram";
+        }
+
+        @Override
+        void write(StringBuilder sb) {
+            String bucketLabels = labels.isEmpty() ? "{le=\"" : labels.substring(0, labels.length() - 1) + ",le=\"";
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += buckets.get(i);
+                sb.append(name).append("_bucket").append(bucketLabels)
+                        .append((double)(1L << (MIN_SHIFT + i)) / 1e9).append("\"} ").append(count).append('\n');
+            }
+            count += buckets.get(BUCKET_COUNT);
+            sb.append(name).append("_bucket").append(bucketLabels).append("+Inf\"} ").append(count).append('\n');
+            sb.append(name).append("_sum").append(labels).append(' ').append((double)sum.sum() / 1e9).append('\n');
+            sb.append(name).append("_count").append(labels).append(' ').append(count).append('\n');
+        }
+    }
+}
@@ -20,6 +20,16 @@ public interface Observable<T,E extends Enum<E>> {
 
     boolean addListener(Listener<T> listener, E eventType);
 
+    /**
+     * Add a listener which is notified in order on a background thread, for listeners
+     * which are not needed for consensus and must not delay the notifying thread
+     *
+     * @param   listener            Listener
+     * @param   eventType           Event type
+     * @return                      TRUE if the listener was added
+     */
+    boolean addAsyncListener(Listener<T> listener, E eventType);
+
     boolean removeListener(Listener<T> listener, E eventType);
 
 }
@@ -17,12 +17,15 @@
 package nxt;
 
 import nxt.crypto.HashFunction;
+import nxt.crypto.Scrypt;
 import nxt.util.Convert;
 import nxt.util.Logger;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 public class TestMintCalculations {
@@ -85,6 +88,23 @@ public class TestMintCalculations {
         Assert.assertEquals(5123, nonce);
     }
 
+    @Test
+    public void reusableHasher() {
+        for (HashFunction hashFunction : CurrencyMinting.acceptedHashFunctions) {
+            CurrencyMinting.Hasher hasher = new CurrencyMinting.Hasher(hashFunction, 123, 100, 1, 987);
+            byte[] target = CurrencyMinting.getTarget(8, 16, 100, 0, 100000);
+            long[] targetWords = CurrencyMinting.getTargetWords(target);
+            for (long nonce = -100; nonce < 100; nonce++) {
+                ByteBuffer buffer = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putLong(nonce).putLong(123).putLong(100).putLong(1).putLong(987);
+                // the scrypt test below relies on an unused thread local Scrypt instance
+                byte[] hash = hashFunction == HashFunction.SCRYPT ? new Scrypt().hash(buffer.array()) : hashFunction.hash(buffer.array());
+                Assert.assertArrayEquals(hash, hasher.hash(nonce));
+                Assert.assertEquals(CurrencyMinting.meetsTarget(hash, target), CurrencyMinting.meetsTarget(hash, targetWords));
+            }
+        }
+    }
+
     @Test
     public void sha256() {
         byte[] hash = HashFunction.SHA256.hash(new byte[]{0x61,0x62,0x63});
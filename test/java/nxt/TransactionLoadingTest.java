@@ -0,0 +1,108 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt;
+
+import nxt.crypto.Crypto;
+import nxt.crypto.EncryptedData;
+import nxt.util.Convert;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TransactionLoadingTest extends BlockchainTest {
+
+    @Test
+    public void lazyLoadedTransactionsMatchParsedTransactions() throws Exception {
+        byte[] newPublicKey = Crypto.getPublicKey("lazy loading test " + System.nanoTime());
+        List<TransactionImpl> transactions = new ArrayList<>();
+        transactions.add(build(newBuilder(Attachment.ORDINARY_PAYMENT, Constants.ONE_NXT)
+                .recipientId(BOB.getId())
+                .appendix(new Appendix.Message("plain message"))
+                .appendix(new Appendix.EncryptedMessage(encryptTo(BOB, "encrypted message"), true, true))
+                .appendix(new Appendix.EncryptToSelfMessage(encryptTo(ALICE, "encrypt to self message"), true, true))));
+        transactions.add(build(newBuilder(Attachment.ORDINARY_PAYMENT, Constants.ONE_NXT)
+                .recipientId(Account.getId(newPublicKey))
+                .appendix(new Appendix.PublicKeyAnnouncement(newPublicKey))
+                .appendix(new Appendix.PrunablePlainMessage("prunable plain message"))));
+        transactions.add(build(newBuilder(Attachment.ARBITRARY_MESSAGE, 0)
+                .recipientId(BOB.getId())
+                .appendix(new Appendix.PrunableEncryptedMessage(encryptTo(BOB, "prunable encrypted message"), true, true))));
+        transactions.add(build(newBuilder(new Attachment.MessagingAliasAssignment("lazy" + System.currentTimeMillis() % 1000000,
+                "http://www.example.com"), 0)));
+        for (TransactionImpl transaction : transactions) {
+            Nxt.getTransactionProcessor().broadcast(transaction);
+        }
+        generateBlock();
+
+        for (TransactionImpl transaction : transactions) {
+            // parse the prunable attachments from their JSON text, as they are received from peers
+            JSONObject prunableAttachments = transaction.getPrunableAttachmentJSON();
+            TransactionImpl parsed = TransactionImpl.newTransactionBuilder(transaction.getBytes(), prunableAttachments == null ?
+                    null : (JSONObject)JSONValue.parse(prunableAttachments.toJSONString())).build();
+            TransactionImpl loaded = loadTransaction(transaction.getId());
+            // compare the values computed from the stored bytes before the appendages are parsed
+            Assert.assertArrayEquals(parsed.getBytes(), loaded.getBytes());
+            Assert.assertEquals(parsed.getFlags(), loaded.getFlags());
+            Assert.assertEquals(parsed.getFullSize(), loaded.getFullSize());
+            Assert.assertEquals(parsed.getJSONObject(), loaded.getJSONObject());
+            List<Appendix.AbstractAppendix> parsedAppendages = parsed.getAppendages();
+            List<Appendix.AbstractAppendix> loadedAppendages = loaded.getAppendages();
+            Assert.assertEquals(parsedAppendages.size(), loadedAppendages.size());
+            for (int i = 0; i < parsedAppendages.size(); i++) {
+                Assert.assertEquals(parsedAppendages.get(i).getClass(), loadedAppendages.get(i).getClass());
+                Assert.assertEquals(parsedAppendages.get(i).getJSONObject(), loadedAppendages.get(i).getJSONObject());
+                Assert.assertEquals(parsedAppendages.get(i).getFullSize(), loadedAppendages.get(i).getFullSize());
+            }
+            Assert.assertArrayEquals(transaction.getBytes(), loaded.getBytes());
+            Assert.assertEquals(transaction.getJSONObject(), loaded.getJSONObject());
+        }
+    }
+
+    private static Transaction.Builder newBuilder(Attachment attachment, long amountNQT) {
+        return Nxt.newTransactionBuilder(ALICE.getPublicKey(), amountNQT, 0, (short)1440, attachment)
+                .timestamp(Nxt.getEpochTime());
+    }
+
+    private static TransactionImpl build(Transaction.Builder builder) throws NxtException.NotValidException {
+        return (TransactionImpl)builder.build(ALICE.getSecretPhrase());
+    }
+
+    private static EncryptedData encryptTo(Tester recipient, String message) {
+        return EncryptedData.encrypt(Convert.compress(Convert.toBytes(message)), ALICE.getSecretPhrase(),
+                recipient.getPublicKey());
+    }
+
+    // bypass the block cache, which holds the transactions as they were parsed
+    private static TransactionImpl loadTransaction(long transactionId) throws SQLException, NxtException.NotValidException {
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM transaction WHERE id = ?")) {
+            pstmt.setLong(1, transactionId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                Assert.assertTrue(rs.next());
+                return TransactionDb.loadTransaction(con, rs);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.crypto;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AnonymouslyEncryptedDataTest {
+
+    private static final String SENDER = "sender secret phrase";
+
+    private static final byte[] NONCE = new byte[32];
+
+    private static final byte[] PLAINTEXT = "recipient public key".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testLayersMatchSequentialEncryption() {
+        List<String> recipients = getRecipients(6);
+        List<byte[]> publicKeys = getPublicKeys(recipients);
+        byte[] bytes = AnonymouslyEncryptedData.encryptLayers(PLAINTEXT, SENDER, publicKeys, NONCE);
+        // each recipient removes one layer, starting with the outermost layer
+        byte[] expected = PLAINTEXT;
+        for (byte[] publicKey : publicKeys) {
+            expected = AnonymouslyEncryptedData.encrypt(expected, SENDER, publicKey, NONCE).getBytes();
+        }
+        assertEquals(expected.length, bytes.length);
+        for (int i = recipients.size() - 1; i >= 0; i--) {
+            AnonymouslyEncryptedData encryptedData = AnonymouslyEncryptedData.readEncryptedData(bytes);
+            assertArrayEquals(Crypto.getPublicKey(Crypto.getKeySeed(SENDER, publicKeys.get(i), NONCE)), encryptedData.getPublicKey());
+            bytes = encryptedData.decrypt(recipients.get(i));
+        }
+        assertArrayEquals(PLAINTEXT, bytes);
+    }
+
+    @Test
+    public void testDecryptLayersWithKeySeeds() {
+        List<String> recipients = getRecipients(5);
+        List<byte[]> publicKeys = getPublicKeys(recipients);
+        byte[] bytes = AnonymouslyEncryptedData.encryptLayers(PLAINTEXT, SENDER, publicKeys, NONCE);
+        List<byte[]> outerPublicKeys = new ArrayList<>(publicKeys);
+        Collections.reverse(outerPublicKeys);
+        List<byte[]> keySeeds = new ArrayList<>();
+        for (byte[] publicKey : outerPublicKeys) {
+            keySeeds.add(Crypto.getKeySeed(SENDER, publicKey, NONCE));
+        }
+        byte[] expected = bytes;
+        for (int i = 0; i < keySeeds.size(); i++) {
+            expected = AnonymouslyEncryptedData.readEncryptedData(expected).decrypt(keySeeds.get(i), outerPublicKeys.get(i));
+        }
+        assertArrayEquals(PLAINTEXT, expected);
+        assertArrayEquals(expected, AnonymouslyEncryptedData.decryptLayers(bytes, keySeeds, outerPublicKeys));
+    }
+
+    @Test
+    public void testDecryptList() {
+        String recipient = "recipient secret phrase";
+        byte[] publicKey = Crypto.getPublicKey(recipient);
+        byte[][] data = new byte[8][];
+        for (int i = 0; i < data.length; i++) {
+            byte[] nonce = new byte[32];
+            nonce[0] = (byte)i;
+            data[i] = AnonymouslyEncryptedData.encrypt(new byte[] {(byte)i, 1, 2, 3}, SENDER, publicKey, nonce).getBytes();
+        }
+        List<byte[]> decrypted = AnonymouslyEncryptedData.decrypt(data, recipient);
+        assertEquals(data.length, decrypted.size());
+        for (int i = 0; i < data.length; i++) {
+            assertArrayEquals(AnonymouslyEncryptedData.readEncryptedData(data[i]).decrypt(recipient), decrypted.get(i));
+            assertArrayEquals(new byte[] {(byte)i, 1, 2, 3}, decrypted.get(i));
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDecryptWithWrongKeySeed() {
+        byte[] publicKey = Crypto.getPublicKey("recipient secret phrase");
+        byte[] bytes = AnonymouslyEncryptedData.encrypt(PLAINTEXT, SENDER, publicKey, NONCE).getBytes();
+        AnonymouslyEncryptedData.decryptLayers(bytes, Collections.singletonList(new byte[32]), Collections.singletonList(publicKey));
+    }
+
+    private static List<String> getRecipients(int count) {
+        List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            recipients.add("recipient secret phrase " + i);
+        }
+        return recipients;
+    }
+
+    private static List<byte[]> getPublicKeys(List<String> recipients) {
+        List<byte[]> publicKeys = new ArrayList<>();
+        for (String recipient : recipients) {
+            publicKeys.add(Crypto.getPublicKey(recipient));
+        }
+        return publicKeys;
+    }
+}
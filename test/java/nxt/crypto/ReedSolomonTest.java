@@ -19,6 +19,8 @@ package nxt.crypto;
 import nxt.crypto.ReedSolomon.DecodeException;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
@@ -70,4 +72,21 @@ public class ReedSolomonTest {
         }
     }
 
+    @Test
+    public void testRandomValues() {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long id = random.nextLong();
+            String rs = ReedSolomon.encode(id);
+            try {
+                assertEquals(id, ReedSolomon.decode(rs));
+            } catch (DecodeException e) {
+                fail(e.toString());
+            }
+            assertEquals(rs, Crypto.rsEncode(id));
+            assertEquals(id, Crypto.rsDecode(rs.toLowerCase()));
+            assertEquals(id, Crypto.rsDecode(rs));
+        }
+    }
+
 }
@@ -0,0 +1,80 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.crypto;
+
+import nxt.util.Convert;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SigningContextTest {
+
+    private static final String SECRET_PHRASE = "hope peace happen touch easy pretend worthless talk them indeed wheel state";
+
+    @Test
+    public void sameSignatureAsFullDerivation() {
+        SigningContext context = new SigningContext(SECRET_PHRASE);
+        Assert.assertArrayEquals(Crypto.getPublicKey(Crypto.sha256().digest(Convert.toBytes(SECRET_PHRASE))), context.getPublicKey());
+        List<byte[]> messages = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            byte[] message = new byte[i * 13];
+            Crypto.getSecureRandom().nextBytes(message);
+            messages.add(message);
+        }
+        List<byte[]> signatures = context.sign(messages);
+        for (int i = 0; i < messages.size(); i++) {
+            byte[] signature = signatures.get(i);
+            Assert.assertArrayEquals(sign(messages.get(i), SECRET_PHRASE), signature);
+            Assert.assertArrayEquals(signature, Crypto.sign(messages.get(i), SECRET_PHRASE));
+            Assert.assertTrue(Crypto.verify(signature, messages.get(i), context.getPublicKey(), true));
+        }
+        context.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedContextCannotSign() {
+        SigningContext context = new SigningContext(SECRET_PHRASE);
+        byte[] publicKey = context.getPublicKey();
+        context.close();
+        Assert.assertArrayEquals(publicKey, context.getPublicKey());
+        context.sign(new byte[32]);
+    }
+
+    private static byte[] sign(byte[] message, String secretPhrase) {
+        byte[] P = new byte[32];
+        byte[] s = new byte[32];
+        MessageDigest digest = Crypto.sha256();
+        Curve25519.keygen(P, s, digest.digest(Convert.toBytes(secretPhrase)));
+        byte[] m = digest.digest(message);
+        digest.update(m);
+        byte[] x = digest.digest(s);
+        byte[] Y = new byte[32];
+        Curve25519.keygen(Y, null, x);
+        digest.update(m);
+        byte[] h = digest.digest(Y);
+        byte[] v = new byte[32];
+        Curve25519.sign(v, h, x, s);
+        byte[] signature = new byte[64];
+        System.arraycopy(v, 0, signature, 0, 32);
+        System.arraycopy(h, 0, signature, 32, 32);
+        return signature;
+    }
+
+}
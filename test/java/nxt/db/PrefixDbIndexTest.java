@@ -0,0 +1,165 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.db;
+
+import nxt.Alias;
+import nxt.BlockchainTest;
+import nxt.Constants;
+import nxt.Db;
+import nxt.DigitalGoodsStore;
+import nxt.Nxt;
+import nxt.TaggedData;
+import nxt.http.APICall;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+public class PrefixDbIndexTest extends BlockchainTest {
+
+    private static final String prefix = "px" + Long.toString(System.currentTimeMillis() % 1000000, 36);
+
+    @Test
+    public void lookupsMatchLikeQueryAfterPushAndPopOff() throws SQLException {
+        int height = Nxt.getBlockchain().getHeight();
+        for (int i = 0; i < 5; i++) {
+            setAlias(ALICE.getSecretPhrase(), prefix + "Alias" + (4 - i), "http://www.example.com/" + i);
+        }
+        new APICall.Builder("dgsListing").
+                param("secretPhrase", ALICE.getSecretPhrase()).
+                param("name", "Goods").
+                param("description", "Prefix index test goods").
+                param("tags", prefix + "b," + prefix + "a," + prefix + "c").
+                param("quantity", 1).
+                param("priceNQT", Constants.ONE_NXT).
+                param("feeNQT", 2 * Constants.ONE_NXT).
+                build().invoke();
+        new APICall.Builder("uploadTaggedData").
+                param("secretPhrase", BOB.getSecretPhrase()).
+                param("name", "Data").
+                param("data", "prefix index test data").
+                param("tags", prefix + "y," + prefix + "x").
+                param("feeNQT", 2 * Constants.ONE_NXT).
+                build().invoke();
+        generateBlock();
+        assertLookups();
+        setAlias(ALICE.getSecretPhrase(), prefix + "Alias5", "http://www.example.com/5");
+        generateBlock();
+        assertLookups();
+        Nxt.getBlockchainProcessor().popOffTo(height + 1);
+        assertLookups();
+        Nxt.getBlockchainProcessor().popOffTo(height);
+        assertLookups();
+    }
+
+    @Test
+    public void lookupsMatchLikeQueryAfterAliasChanges() throws SQLException {
+        String aliasName = prefix + "Moved";
+        setAlias(ALICE.getSecretPhrase(), aliasName, "http://www.example.com/first");
+        setAlias(ALICE.getSecretPhrase(), prefix + "Other", "http://www.example.com/other");
+        generateBlock();
+        assertLookups();
+        // a new version of the alias row replaces the latest row
+        setAlias(ALICE.getSecretPhrase(), aliasName, "http://www.example.com/second");
+        generateBlock();
+        assertLookups();
+        new APICall.Builder("sellAlias").
+                param("secretPhrase", ALICE.getSecretPhrase()).
+                param("aliasName", aliasName).
+                param("recipient", BOB.getStrId()).
+                param("priceNQT", 0).
+                param("feeNQT", Constants.ONE_NXT).
+                build().invoke();
+        generateBlock();
+        assertLookups();
+        Assert.assertEquals(BOB.getId(), Alias.getAlias(aliasName).getAccountId());
+        Nxt.getBlockchainProcessor().popOffTo(Nxt.getBlockchain().getHeight() - 2);
+        assertLookups();
+        Assert.assertEquals(ALICE.getId(), Alias.getAlias(aliasName).getAccountId());
+    }
+
+    private static void setAlias(String secretPhrase, String aliasName, String aliasURI) {
+        new APICall.Builder("setAlias").
+                param("secretPhrase", secretPhrase).
+                param("aliasName", aliasName).
+                param("aliasURI", aliasURI).
+                param("feeNQT", 2 * Constants.ONE_NXT).
+                build().invoke();
+    }
+
+    private static void assertLookups() throws SQLException {
+        String[] prefixes = new String[] {prefix, prefix.toUpperCase(), prefix + "alias", prefix + "a", prefix + "z", ""};
+        int[][] ranges = new int[][] {{0, -1}, {0, 1}, {1, 3}, {2, 2}};
+        for (String value : prefixes) {
+            for (int[] range : ranges) {
+                int from = range[0];
+                int to = range[1];
+                Assert.assertEquals(value + " " + from + "-" + to,
+                        query("SELECT id FROM alias WHERE alias_name_lower LIKE ? AND latest = TRUE ORDER BY alias_name_lower",
+                                value.toLowerCase(), from, to, rs -> rs.getLong(1)),
+                        list(Alias.getAliasesLike(value, from, to), Alias::getId));
+                Assert.assertEquals(value + " " + from + "-" + to,
+                        query("SELECT tag FROM tag WHERE tag LIKE ? AND latest = TRUE ORDER BY tag",
+                                value, from, to, rs -> rs.getString(1)),
+                        list(DigitalGoodsStore.Tag.getTagsLike(value, false, from, to), DigitalGoodsStore.Tag::getTag));
+                Assert.assertEquals(value + " " + from + "-" + to,
+                        query("SELECT tag FROM tag WHERE tag LIKE ? AND in_stock_count > 0 AND latest = TRUE ORDER BY tag",
+                                value, from, to, rs -> rs.getString(1)),
+                        list(DigitalGoodsStore.Tag.getTagsLike(value, true, from, to), DigitalGoodsStore.Tag::getTag));
+                Assert.assertEquals(value + " " + from + "-" + to,
+                        query("SELECT tag FROM data_tag WHERE tag LIKE ? AND latest = TRUE ORDER BY tag",
+                                value, from, to, rs -> rs.getString(1)),
+                        list(TaggedData.Tag.getTagsLike(value, from, to), TaggedData.Tag::getTag));
+            }
+        }
+        Assert.assertNull(Alias.getAlias(prefix + "Missing"));
+    }
+
+    private interface RowReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    private static <T> List<T> query(String sql, String value, int from, int to, RowReader<T> reader) throws SQLException {
+        DbClause dbClause = new DbClause.LikeClause("x", value);
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement(sql + DbUtils.limitsClause(from, to))) {
+            int i = dbClause.set(pstmt, 1);
+            DbUtils.setLimits(i, pstmt, from, to);
+            List<T> result = new ArrayList<>();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(reader.read(rs));
+                }
+            }
+            return result;
+        }
+    }
+
+    private static <T, R> List<R> list(DbIterator<T> iterator, Function<T, R> mapper) {
+        List<R> result = new ArrayList<>();
+        try (DbIterator<T> entities = iterator) {
+            entities.forEach(entity -> result.add(mapper.apply(entity)));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,133 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.db;
+
+import nxt.Account;
+import nxt.Alias;
+import nxt.Asset;
+import nxt.BlockchainTest;
+import nxt.Constants;
+import nxt.Db;
+import nxt.Nxt;
+import nxt.Order;
+import nxt.Shuffling;
+import nxt.http.APICall;
+import org.json.simple.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.IntSupplier;
+
+public class RowCountTriggerTest extends BlockchainTest {
+
+    @Test
+    public void countsMatchAfterPushAndPopOff() throws SQLException {
+        assertCounts();
+        int height = Nxt.getBlockchain().getHeight();
+        issueAssetAndAliases();
+        assertCounts();
+        Nxt.getBlockchainProcessor().popOffTo(height + 1);
+        assertCounts();
+        Nxt.getBlockchainProcessor().popOffTo(height);
+        assertCounts();
+    }
+
+    @Test
+    public void countsMatchAfterRollback() throws SQLException {
+        issueAssetAndAliases();
+        assertCounts();
+        Db.db.beginTransaction();
+        try (Connection con = Db.db.getConnection(); Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("DELETE FROM alias");
+            stmt.executeUpdate("DELETE FROM ask_order");
+            stmt.executeUpdate("UPDATE asset SET latest = FALSE");
+        } finally {
+            Db.db.rollbackTransaction();
+            Db.db.endTransaction();
+        }
+        assertCounts();
+    }
+
+    @Test
+    public void countsMatchAfterTrim() throws SQLException {
+        issueAssetAndAliases();
+        generateBlocks(5);
+        Nxt.getBlockchainProcessor().trimDerivedTables();
+        assertCounts();
+    }
+
+    private static void issueAssetAndAliases() {
+        JSONObject response = new APICall.Builder("issueAsset").
+                param("secretPhrase", ALICE.getSecretPhrase()).
+                param("name", "CountAsset").
+                param("description", "Row count test asset").
+                param("quantityQNT", 1000).
+                param("decimals", 0).
+                param("feeNQT", 1000 * Constants.ONE_NXT).
+                build().invoke();
+        String assetId = (String)response.get("transaction");
+        Assert.assertNotNull(assetId);
+        String alias = "count" + System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            new APICall.Builder("setAlias").
+                    param("secretPhrase", BOB.getSecretPhrase()).
+                    param("aliasName", alias + i).
+                    param("aliasURI", "http://www.example.com/" + i).
+                    param("feeNQT", 2 * Constants.ONE_NXT).
+                    build().invoke();
+        }
+        generateBlock();
+        new APICall.Builder("placeAskOrder").
+                param("secretPhrase", ALICE.getSecretPhrase()).
+                param("asset", assetId).
+                param("quantityQNT", 100).
+                param("priceNQT", Constants.ONE_NXT).
+                param("feeNQT", Constants.ONE_NXT).
+                build().invoke();
+        // a new version of an existing alias replaces the latest row
+        new APICall.Builder("setAlias").
+                param("secretPhrase", BOB.getSecretPhrase()).
+                param("aliasName", alias + 0).
+                param("aliasURI", "http://www.example.com/updated").
+                param("feeNQT", 2 * Constants.ONE_NXT).
+                build().invoke();
+        generateBlock();
+    }
+
+    private static void assertCounts() throws SQLException {
+        assertCount("public_key", Account::getCount, "latest = TRUE");
+        assertCount("account", Account::getActiveLeaseCount, "latest = TRUE AND active_lessee_id IS NOT NULL");
+        assertCount("account_lease", Account::getAccountLeaseCount, "latest = TRUE");
+        assertCount("alias", Alias::getCount, "latest = TRUE");
+        assertCount("asset", Asset::getCount, "latest = TRUE");
+        assertCount("ask_order", Order.Ask::getCount, "latest = TRUE");
+        assertCount("shuffling", Shuffling::getCount, "latest = TRUE");
+        assertCount("shuffling", Shuffling::getActiveCount, "latest = TRUE AND blocks_remaining IS NOT NULL");
+    }
+
+    private static void assertCount(String table, IntSupplier count, String where) throws SQLException {
+        try (Connection con = Db.db.getConnection(); Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table + " WHERE " + where)) {
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals(table + " WHERE " + where, rs.getInt(1), count.getAsInt());
+        }
+    }
+}
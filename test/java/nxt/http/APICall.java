@@ -119,10 +119,13 @@ public class APICall {
         HttpServletResponse resp = mock(HttpServletResponse.class);
         when(req.getRemoteHost()).thenReturn("localhost");
         when(req.getMethod()).thenReturn("POST");
+        Map<String, String[]> parameterMap = new HashMap<>();
         for (String key : params.keySet()) {
             when(req.getParameter(key)).thenReturn(firstOrNull(params.get(key)));
             when(req.getParameterValues(key)).thenReturn(toArrayOrNull(params.get(key)));
+            parameterMap.put(key, toArrayOrNull(params.get(key)));
         }
+        when(req.getParameterMap()).thenReturn(parameterMap);
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         PrintWriter writer = new PrintWriter(new OutputStreamWriter(out));
         try {
@@ -0,0 +1,94 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.http;
+
+import nxt.BlockchainTest;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class APIRequestStatisticsTest extends BlockchainTest {
+
+    private static final String remoteAddress = "192.0.2.1";
+
+    @Test
+    public void asyncRequestExitsOnCompletion() throws ServletException, IOException {
+        StringWriter out = new StringWriter();
+        invoke(mock(HttpServletRequest.class), out, "eventRegister");
+        Assert.assertEquals(Boolean.TRUE, ((JSONObject) JSONValue.parse(out.toString())).get("registered"));
+
+        APIRequestStatistics statistics = APIServlet.apiRequestStatistics.get("eventWait");
+        long calls = getCalls(statistics);
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        AsyncContext context = mock(AsyncContext.class);
+        when(req.startAsync()).thenReturn(context);
+        when(req.isAsyncStarted()).thenReturn(true);
+        when(req.getAsyncContext()).thenReturn(context);
+        out = new StringWriter();
+        invoke(req, out, "eventWait");
+        Assert.assertEquals(0, out.getBuffer().length());
+        Assert.assertEquals(1, statistics.getJSON().get("inFlight"));
+        Assert.assertEquals(calls, getCalls(statistics));
+
+        ArgumentCaptor<AsyncListener> listeners = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(context, atLeastOnce()).addListener(listeners.capture());
+        for (AsyncListener listener : listeners.getAllValues()) {
+            listener.onComplete(new AsyncEvent(context));
+        }
+        Assert.assertEquals(0, statistics.getJSON().get("inFlight"));
+        Assert.assertEquals(calls + 1, getCalls(statistics));
+
+        invoke(mock(HttpServletRequest.class), new StringWriter(), "eventRegister", "remove", "true");
+    }
+
+    private static long getCalls(APIRequestStatistics statistics) {
+        return (Long) statistics.getJSON().get("calls");
+    }
+
+    private static void invoke(HttpServletRequest req, StringWriter out, String requestType, String... parameters)
+            throws ServletException, IOException {
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        when(req.getParameter("requestType")).thenReturn(requestType);
+        for (int i = 0; i < parameters.length; i += 2) {
+            when(req.getParameter(parameters[i])).thenReturn(parameters[i + 1]);
+        }
+        when(req.getParameterMap()).thenReturn(Collections.emptyMap());
+        when(req.getRemoteHost()).thenReturn("localhost");
+        when(req.getRemoteAddr()).thenReturn(remoteAddress);
+        when(req.getMethod()).thenReturn("POST");
+        when(resp.getWriter()).thenReturn(new PrintWriter(out));
+        new APIServlet().doPost(req, resp);
+    }
+}
@@ -0,0 +1,183 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.http;
+
+import nxt.BlockchainTest;
+import nxt.Constants;
+import nxt.NxtException;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class APIResponseCacheTest extends BlockchainTest {
+
+    @BeforeClass
+    public static void enableCache() {
+        APIResponseCache.setMaxSize(1024 * 1024);
+    }
+
+    @AfterClass
+    public static void disableCache() {
+        APIResponseCache.setMaxSize(0);
+    }
+
+    @Test
+    public void hitMissAndNotModified() throws ServletException, IOException {
+        Assert.assertTrue(APIResponseCache.isEnabled());
+        long hits = getStatistic("hits");
+        long misses = getStatistic("misses");
+        long notModified = getStatistic("notModified");
+
+        Response miss = invoke(null, "requestType", "getBlock", "height", "1");
+        Assert.assertEquals(misses + 1, getStatistic("misses"));
+        Assert.assertNotNull(miss.json.get("requestProcessingTime"));
+        Assert.assertNotNull(miss.eTag);
+
+        Response hit = invoke(null, "requestType", "getBlock", "height", "1");
+        Assert.assertEquals(hits + 1, getStatistic("hits"));
+        Assert.assertNotNull(hit.json.get("requestProcessingTime"));
+        Assert.assertEquals(miss.eTag, hit.eTag);
+        miss.json.remove("requestProcessingTime");
+        hit.json.remove("requestProcessingTime");
+        Assert.assertEquals(miss.json, hit.json);
+
+        Response hitAgain = invoke(null, "requestType", "getBlock", "height", "1");
+        Assert.assertEquals(hits + 2, getStatistic("hits"));
+        Assert.assertNotNull(hitAgain.json.get("requestProcessingTime"));
+
+        Response notModifiedResponse = invoke(miss.eTag, "requestType", "getBlock", "height", "1");
+        Assert.assertEquals(notModified + 1, getStatistic("notModified"));
+        Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModifiedResponse.status);
+        Assert.assertNull(notModifiedResponse.json);
+
+        generateBlock();
+        Response afterBlock = invoke(miss.eTag, "requestType", "getBlock", "height", "1");
+        Assert.assertEquals(misses + 2, getStatistic("misses"));
+        Assert.assertEquals(0, afterBlock.status);
+        Assert.assertNotEquals(miss.eTag, afterBlock.eTag);
+        afterBlock.json.remove("requestProcessingTime");
+        Assert.assertEquals(miss.json, afterBlock.json);
+    }
+
+    @Test
+    public void blockWithTransactionsIsNotCached() throws ServletException, IOException {
+        long misses = getStatistic("misses");
+        Response response = invoke(null, "requestType", "getBlock", "height", "1", "includeTransactions", "true");
+        Assert.assertNotNull(response.json.get("transactions"));
+        Assert.assertNull(response.eTag);
+        response = invoke(null, "requestType", "getBlocks", "lastIndex", "1", "includeTransactions", "true");
+        Assert.assertNotNull(response.json.get("blocks"));
+        Assert.assertNull(response.eTag);
+        Assert.assertEquals(misses, getStatistic("misses"));
+    }
+
+    @Test
+    public void unconfirmedTransactionChangesTag() throws ServletException, IOException {
+        Response before = invoke(null, "requestType", "getBalance", "account", ALICE.getStrId());
+        Assert.assertNotNull(before.eTag);
+        JSONObject response = new APICall.Builder("sendMoney").
+                param("secretPhrase", ALICE.getSecretPhrase()).
+                param("recipient", BOB.getStrId()).
+                param("amountNQT", 100 * Constants.ONE_NXT).
+                param("feeNQT", Constants.ONE_NXT).
+                build().invoke();
+        Assert.assertNull(response.get("errorCode"));
+        Response after = invoke(before.eTag, "requestType", "getBalance", "account", ALICE.getStrId());
+        Assert.assertEquals(0, after.status);
+        Assert.assertNotEquals(before.eTag, after.eTag);
+        Assert.assertEquals((Long)before.json.get("unconfirmedBalanceNQT") - 101 * Constants.ONE_NXT,
+                ((Long)after.json.get("unconfirmedBalanceNQT")).longValue());
+    }
+
+    @Test
+    public void cachedResponseIsNotShared() throws NxtException {
+        HttpServletRequest req = mockRequest(null, "requestType", "getBlock", "height", "1");
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        String key = APIResponseCache.getKey(req);
+        JSONObject miss = (JSONObject)APIResponseCache.processRequest(GetBlock.instance, key, req, resp);
+        String expected = miss.toJSONString();
+        ((List)miss.get("transactions")).add("1");
+        JSONObject hit = (JSONObject)APIResponseCache.processRequest(GetBlock.instance, key, req, resp);
+        Assert.assertEquals(expected, hit.toJSONString());
+        ((List)hit.get("transactions")).add("2");
+        hit.put("requestProcessingTime", 1L);
+        JSONObject hitAgain = (JSONObject)APIResponseCache.processRequest(GetBlock.instance, key, req, resp);
+        Assert.assertEquals(expected, hitAgain.toJSONString());
+    }
+
+    private static long getStatistic(String name) {
+        return (Long)APIResponseCache.getStatistics().get(name);
+    }
+
+    private static HttpServletRequest mockRequest(String ifNoneMatch, String... parameters) {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        Map<String, String[]> parameterMap = new HashMap<>();
+        for (int i = 0; i < parameters.length; i += 2) {
+            when(req.getParameter(parameters[i])).thenReturn(parameters[i + 1]);
+            when(req.getParameterValues(parameters[i])).thenReturn(new String[] {parameters[i + 1]});
+            parameterMap.put(parameters[i], new String[] {parameters[i + 1]});
+        }
+        when(req.getParameterMap()).thenReturn(parameterMap);
+        when(req.getRemoteHost()).thenReturn("localhost");
+        when(req.getMethod()).thenReturn("GET");
+        when(req.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        return req;
+    }
+
+    private static Response invoke(String ifNoneMatch, String... parameters) throws ServletException, IOException {
+        HttpServletRequest req = mockRequest(ifNoneMatch, parameters);
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        StringWriter out = new StringWriter();
+        when(resp.getWriter()).thenReturn(new PrintWriter(out));
+        new APIServlet().doGet(req, resp);
+        Response response = new Response();
+        response.json = out.getBuffer().length() > 0 ? (JSONObject)JSONValue.parse(out.toString()) : null;
+        ArgumentCaptor<String> eTag = ArgumentCaptor.forClass(String.class);
+        verify(resp, atLeast(0)).setHeader(eq("ETag"), eTag.capture());
+        response.eTag = eTag.getAllValues().isEmpty() ? null : eTag.getValue();
+        ArgumentCaptor<Integer> status = ArgumentCaptor.forClass(Integer.class);
+        verify(resp, atLeast(0)).setStatus(status.capture());
+        response.status = status.getAllValues().isEmpty() ? 0 : status.getValue();
+        return response;
+    }
+
+    private static final class Response {
+        private JSONObject json;
+        private String eTag;
+        private int status;
+    }
+}
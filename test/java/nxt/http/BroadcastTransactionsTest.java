@@ -0,0 +1,109 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.http;
+
+import nxt.BlockchainTest;
+import nxt.Constants;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BroadcastTransactionsTest extends BlockchainTest {
+
+    @Test
+    public void broadcastAndRebroadcast() {
+        JSONArray transactions = new JSONArray();
+        transactions.add(createTransaction(100));
+        transactions.add("00");
+        transactions.add(createTransaction(200));
+
+        JSONObject response = broadcast(transactions);
+        Assert.assertEquals(2L, response.get("accepted"));
+        Assert.assertEquals(0L, response.get("known"));
+        JSONArray results = (JSONArray) response.get("transactions");
+        Assert.assertEquals(3, results.size());
+        Assert.assertNotNull(((JSONObject) results.get(0)).get("transaction"));
+        Assert.assertNull(((JSONObject) results.get(0)).get("known"));
+        Assert.assertNotNull(((JSONObject) results.get(1)).get("errorCode"));
+        Assert.assertNotNull(((JSONObject) results.get(2)).get("transaction"));
+        Assert.assertEquals(-300 * Constants.ONE_NXT - 2 * Constants.ONE_NXT, ALICE.getUnconfirmedBalanceDiff());
+
+        transactions.remove(1);
+        response = broadcast(transactions);
+        Assert.assertEquals(0L, response.get("accepted"));
+        Assert.assertEquals(2L, response.get("known"));
+        results = (JSONArray) response.get("transactions");
+        Assert.assertEquals(Boolean.TRUE, ((JSONObject) results.get(0)).get("known"));
+        Assert.assertEquals(Boolean.TRUE, ((JSONObject) results.get(1)).get("known"));
+        Assert.assertEquals(-300 * Constants.ONE_NXT - 2 * Constants.ONE_NXT, ALICE.getUnconfirmedBalanceDiff());
+
+        generateBlock();
+        transactions.add(createTransaction(300));
+        response = broadcast(transactions);
+        Assert.assertEquals(1L, response.get("accepted"));
+        Assert.assertEquals(2L, response.get("known"));
+        results = (JSONArray) response.get("transactions");
+        Assert.assertNull(((JSONObject) results.get(2)).get("known"));
+        Assert.assertEquals(-300 * Constants.ONE_NXT - 2 * Constants.ONE_NXT, ALICE.getBalanceDiff());
+        Assert.assertEquals(-600 * Constants.ONE_NXT - 3 * Constants.ONE_NXT, ALICE.getUnconfirmedBalanceDiff());
+    }
+
+    @Test
+    public void duplicateInSameRequest() {
+        JSONArray transactions = new JSONArray();
+        String transactionBytes = createTransaction(100);
+        transactions.add(transactionBytes);
+        transactions.add(transactionBytes);
+        JSONObject response = broadcast(transactions);
+        Assert.assertEquals(1L, response.get("accepted"));
+        Assert.assertEquals(1L, response.get("known"));
+        JSONArray results = (JSONArray) response.get("transactions");
+        Assert.assertNull(((JSONObject) results.get(0)).get("known"));
+        Assert.assertEquals(Boolean.TRUE, ((JSONObject) results.get(1)).get("known"));
+    }
+
+    @Test
+    public void tooManyTransactions() {
+        JSONArray transactions = new JSONArray();
+        String transactionBytes = createTransaction(100);
+        for (int i = 0; i <= Constants.MAX_NUMBER_OF_TRANSACTIONS; i++) {
+            transactions.add(transactionBytes);
+        }
+        JSONObject response = broadcast(transactions);
+        Assert.assertEquals(4L, response.get("errorCode"));
+        Assert.assertEquals(0, ALICE.getUnconfirmedBalanceDiff());
+    }
+
+    private static String createTransaction(long amount) {
+        JSONObject response = new APICall.Builder("sendMoney").
+                param("secretPhrase", ALICE.getSecretPhrase()).
+                param("recipient", BOB.getStrId()).
+                param("amountNQT", amount * Constants.ONE_NXT).
+                param("feeNQT", Constants.ONE_NXT).
+                param("broadcast", "false").
+                build().invoke();
+        Assert.assertNull(response.get("errorCode"));
+        return (String) response.get("transactionBytes");
+    }
+
+    private static JSONObject broadcast(JSONArray transactions) {
+        return new APICall.Builder("broadcastTransactions").
+                param("transactions", transactions.toJSONString()).
+                build().invoke();
+    }
+}
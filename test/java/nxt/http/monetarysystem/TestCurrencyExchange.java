@@ -20,6 +20,7 @@ import nxt.AccountCurrencyBalance;
 import nxt.BlockchainTest;
 import nxt.Constants;
 import nxt.CurrencyType;
+import nxt.Nxt;
 import nxt.http.APICall;
 import nxt.util.Convert;
 import nxt.util.Logger;
@@ -163,7 +164,39 @@ public class TestCurrencyExchange extends BlockchainTest {
         Assert.assertEquals(initialBuyerBalance.getAccountId(), Convert.parseUnsignedLong((String)exchange.get("buyer")));
     }
 
+    @Test
+    public void offerExpiration() {
+        APICall apiCall1 = new TestCurrencyIssuance.Builder().type(CurrencyType.EXCHANGEABLE.getCode()).build();
+        String currencyId = TestCurrencyIssuance.issueCurrencyApi(apiCall1);
+        int expirationHeight = Nxt.getBlockchain().getHeight() + 3;
+        JSONObject publishExchangeOfferResponse = publishExchangeOffer(currencyId, expirationHeight);
+        String offerId = (String) publishExchangeOfferResponse.get("transaction");
+
+        generateBlocks(2);
+        Assert.assertEquals(expirationHeight - 1, Nxt.getBlockchain().getHeight());
+        Assert.assertEquals(offerId, getOfferId(currencyId));
+
+        generateBlock();
+        Assert.assertNull(getOfferId(currencyId));
+
+        // the offer is restored when the expiration block is popped off, and expires again
+        Nxt.getBlockchainProcessor().popOffTo(expirationHeight - 1);
+        Assert.assertEquals(offerId, getOfferId(currencyId));
+        generateBlock();
+        Assert.assertNull(getOfferId(currencyId));
+    }
+
+    private String getOfferId(String currencyId) {
+        JSONObject response = new APICall.Builder("getBuyOffers").param("currency", currencyId).build().invoke();
+        JSONArray offers = (JSONArray) response.get("offers");
+        return offers.isEmpty() ? null : (String) ((JSONObject) offers.get(0)).get("offer");
+    }
+
     private JSONObject publishExchangeOffer(String currencyId) {
+        return publishExchangeOffer(currencyId, Integer.MAX_VALUE);
+    }
+
+    private JSONObject publishExchangeOffer(String currencyId, int expirationHeight) {
         APICall apiCall = new APICall.Builder("publishExchangeOffer").
                 secretPhrase(ALICE.getSecretPhrase()).feeNQT(Constants.ONE_NXT).
                 param("deadline", "1440").
@@ -174,7 +207,7 @@ public class TestCurrencyExchange extends BlockchainTest {
                 param("totalSellLimit", "5000").
                 param("initialBuySupply", "1000").
                 param("initialSellSupply", "500").
-                param("expirationHeight", "" + Integer.MAX_VALUE).
+                param("expirationHeight", "" + expirationHeight).
                 build();
 
         JSONObject publishExchangeOfferResponse = apiCall.invoke();
@@ -0,0 +1,45 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.peer;
+
+import nxt.util.JSON;
+import org.json.simple.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PeerErrorResponseTest {
+
+    @Test
+    public void busyReplyDoesNotDeactivate() {
+        PeerImpl peer = new PeerImpl("192.0.2.1", null);
+        peer.setState(Peer.State.CONNECTED);
+        JSONObject response = new JSONObject();
+        response.put("error", Errors.BUSY);
+        Assert.assertFalse(peer.processErrorResponse(JSON.emptyJSON, response, Assert::fail));
+        Assert.assertEquals(Peer.State.CONNECTED, peer.getState());
+    }
+
+    @Test
+    public void errorReplyDeactivates() {
+        PeerImpl peer = new PeerImpl("192.0.2.2", null);
+        peer.setState(Peer.State.CONNECTED);
+        JSONObject response = new JSONObject();
+        response.put("error", Errors.UNSUPPORTED_REQUEST_TYPE);
+        Assert.assertTrue(peer.processErrorResponse(JSON.emptyJSON, response, Assert::fail));
+        Assert.assertEquals(Peer.State.DISCONNECTED, peer.getState());
+    }
+}
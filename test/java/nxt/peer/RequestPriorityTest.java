@@ -0,0 +1,55 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.peer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestPriorityTest {
+
+    @Test
+    public void highPriorityNotQueuedBehindNormal() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger busy = new AtomicInteger();
+        int accepted = 0;
+        try {
+            for (int i = 0; i < 1000; i++) {
+                if (!RequestPriority.NORMAL.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, busy::incrementAndGet)) {
+                    break;
+                }
+                accepted++;
+            }
+            Assert.assertTrue(accepted < 1000);
+            CountDownLatch done = new CountDownLatch(1);
+            Assert.assertTrue(RequestPriority.HIGH.execute(done::countDown, Assert::fail));
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+}
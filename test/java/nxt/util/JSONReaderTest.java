@@ -0,0 +1,163 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.util;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+
+public class JSONReaderTest {
+
+    @Test
+    public void sameAsJsonSimple() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            String json = JSON.toJSONString(randomObject(random, 0));
+            Object expected = JSONValue.parseWithException(json);
+            Assert.assertEquals(expected, JSONReader.parse(json));
+            Assert.assertEquals(expected, JSONReader.parse(new StringReader(json)));
+            Assert.assertEquals(expected, JSONReader.parse(new SingleCharReader(json)));
+        }
+    }
+
+    @Test
+    public void values() throws Exception {
+        String json = " { \"a\" : [ 1 , -2, 9223372036854775807, -9223372036854775808, 1.5, -2.5e3, true, false, null ],"
+                + "\"b\\n\\\"\" : \"x\\u0041\\/\\t\\\\\", \"c\": {} ,\"d\":[]}\r\n";
+        Object expected = JSONValue.parseWithException(json);
+        Object parsed = JSONReader.parse(json);
+        Assert.assertEquals(expected, parsed);
+        JSONArray array = (JSONArray)((JSONObject)parsed).get("a");
+        Assert.assertEquals(Long.MAX_VALUE, array.get(2));
+        Assert.assertEquals(Long.MIN_VALUE, array.get(3));
+        Assert.assertEquals(-2500.0, array.get(5));
+        Assert.assertEquals("xA/\t\\", ((JSONObject)parsed).get("b\n\""));
+        Assert.assertEquals(expected, JSONReader.parse(new SingleCharReader(json)));
+    }
+
+    @Test
+    public void errors() {
+        assertError("", "Unexpected token END OF FILE at position 0.");
+        assertError("   ", null);
+        assertError("{\"a\":1", null);
+        assertError("{\"a\" 1}", null);
+        assertError("{\"a\":1,}", null);
+        assertError("[1 2]", null);
+        assertError("[1,2]]", null);
+        assertError("\"abc", null);
+        assertError("tru", null);
+        assertError("nul1", null);
+        assertError("{\"a\":--1}", null);
+        assertError("99999999999999999999", null);
+        assertError("\"\\x\"", null);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append('[');
+        }
+        assertError(sb.toString(), null);
+    }
+
+    private static void assertError(String json, String message) {
+        try {
+            JSONReader.parse(json);
+            Assert.fail("No exception for " + json);
+        } catch (ParseException e) {
+            if (message != null) {
+                Assert.assertEquals(message, e.toString());
+            }
+        }
+    }
+
+    private static JSONObject randomObject(Random random, int depth) {
+        JSONObject object = new JSONObject();
+        int count = random.nextInt(8);
+        for (int i = 0; i < count; i++) {
+            object.put(randomKey(random), randomValue(random, depth + 1));
+        }
+        return object;
+    }
+
+    private static Object randomValue(Random random, int depth) {
+        switch (random.nextInt(depth < 4 ? 9 : 7)) {
+            case 0:
+                return random.nextLong();
+            case 1:
+                return (long)random.nextInt(1000);
+            case 2:
+                return random.nextDouble() * 1000;
+            case 3:
+                return randomString(random);
+            case 4:
+                return random.nextBoolean();
+            case 5:
+                return null;
+            case 6:
+                return Convert.toHexString(new byte[random.nextInt(64)]);
+            case 7:
+                return randomObject(random, depth);
+            default:
+                JSONArray array = new JSONArray();
+                int count = random.nextInt(8);
+                for (int i = 0; i < count; i++) {
+                    array.add(randomValue(random, depth + 1));
+                }
+                return array;
+        }
+    }
+
+    private static String randomKey(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = 1 + random.nextInt(random.nextBoolean() ? 10 : 40);
+        for (int i = 0; i < length; i++) {
+            sb.append((char)('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+    private static String randomString(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(40);
+        for (int i = 0; i < length; i++) {
+            int type = random.nextInt(10);
+            sb.append(type == 0 ? (char)random.nextInt(0x20) : type == 1 ? (char)(0x80 + random.nextInt(0x3000)) :
+                    type == 2 ? "\"\\/".charAt(random.nextInt(3)) : (char)('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private static final class SingleCharReader extends FilterReader {
+
+        private SingleCharReader(String s) {
+            super(new StringReader(s));
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, 1));
+        }
+    }
+}
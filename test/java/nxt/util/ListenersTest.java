@@ -0,0 +1,78 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package nxt.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ListenersTest {
+
+    private enum Event {
+        FIRST, SECOND
+    }
+
+    @Test
+    public void asyncListenerKeepsOrder() throws InterruptedException {
+        Listeners<Integer, Event> listeners = new Listeners<>();
+        List<Integer> received = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Listener<Integer> listener = i -> {
+            received.add(i);
+            if (i == 9999) {
+                done.countDown();
+            }
+        };
+        Assert.assertTrue(listeners.addAsyncListener(listener, Event.FIRST));
+        Assert.assertTrue(listeners.addAsyncListener(listener, Event.SECOND));
+        for (int i = 0; i < 10000; i++) {
+            listeners.notify(i, i % 3 == 0 ? Event.FIRST : Event.SECOND);
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(10000, received.size());
+        for (int i = 0; i < received.size(); i++) {
+            Assert.assertEquals(i, received.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void removeAsyncListener() throws InterruptedException {
+        Listeners<Integer, Event> listeners = new Listeners<>();
+        List<Integer> received = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Listener<Integer> listener = i -> {
+            received.add(i);
+            done.countDown();
+        };
+        Assert.assertTrue(listeners.addAsyncListener(listener, Event.FIRST));
+        Assert.assertTrue(listeners.addAsyncListener(listener, Event.SECOND));
+        Assert.assertTrue(listeners.removeListener(listener, Event.FIRST));
+        Assert.assertFalse(listeners.removeListener(listener, Event.FIRST));
+        listeners.notify(1, Event.FIRST);
+        listeners.notify(2, Event.SECOND);
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(listeners.removeListener(listener, Event.SECOND));
+        Assert.assertFalse(listeners.removeListener(listener, Event.SECOND));
+        Assert.assertEquals(1, received.size());
+        Assert.assertEquals(2, received.get(0).intValue());
+    }
+}
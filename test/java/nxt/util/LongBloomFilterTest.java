@@ -0,0 +1,63 @@
+/******************************************************************************
+ * Copyright © 2013-2016 The Nxt Core Developers.                             *
+ *                                                                            *
+ * See the AUTHORS.txt, DEVELOPER-AGREEMENT.txt and LICENSE.txt files at      *
+ * the top-level directory of this distribution for the individual copyright  *
+ * holder information and the developer policies on copyright and licensing.  *
+ *                                                                            *
+ * Unless otherwise agreed in a custom licensing agreement, no part of the    *
+ * Nxt software, including this file, may be copied, modified, propagated,    *
+ * or distributed except according to the terms contained in the LICENSE.txt  *
+ * file.                                                                      *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package nxt.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class LongBloomFilterTest {
+
+    @Test
+    public void noFalseNegatives() {
+        Random random = new Random(1);
+        long[] keys = new long[100000];
+        LongBloomFilter filter = new LongBloomFilter(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+            filter.add(keys[i]);
+        }
+        for (long key : keys) {
+            Assert.assertTrue(filter.mightContain(key));
+        }
+    }
+
+    @Test
+    public void fewFalsePositives() {
+        Random random = new Random(2);
+        LongBloomFilter filter = new LongBloomFilter(100000);
+        for (int i = 0; i < 100000; i++) {
+            filter.add(random.nextLong());
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("False positives: " + falsePositives, falsePositives < 1000);
+    }
+
+    @Test
+    public void capacity() {
+        Assert.assertTrue(new LongBloomFilter(0).getCapacity() >= 1 << 16);
+        Assert.assertTrue(new LongBloomFilter(100000).getCapacity() >= 100000);
+        Assert.assertTrue(new LongBloomFilter(1000000).getCapacity() >= 1000000);
+        Assert.assertTrue(new LongBloomFilter(1000000).getCapacity() < 2000000);
+    }
+}